@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+/**
+ * Context of the benchmarked state machines. Unlike the sequential context of
+ * the tests, it does not grow with the number of steps.
+ *
+ * @author Fabien Renaud
+ */
+public final class BenchmarkContext {
+
+  public int counter;
+  public int entries;
+  public int exits;
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Weighted mix of the events sent to the state machines.
+ *
+ * @author Fabien Renaud
+ */
+public final class EventMix {
+
+  private final Event[] events;
+  private final int[] cumulativeWeights;
+
+  private EventMix(final Event[] events, final int[] weights) {
+    this.events = events;
+    this.cumulativeWeights = new int[weights.length];
+    int sum = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] < 0) {
+        throw new IllegalArgumentException("Negative weight for " + events[i]);
+      }
+      sum += weights[i];
+      cumulativeWeights[i] = sum;
+    }
+    if (sum == 0) {
+      throw new IllegalArgumentException("No event to send");
+    }
+  }
+
+  /**
+   * Mixes the events of the loop of a shape, all with the same weight.
+   *
+   * @param shape The shape of the state machines.
+   * @return The mix of the events of the shape.
+   */
+  public static EventMix of(final MachineShape shape) {
+    int[] weights = new int[shape.events().length];
+    Arrays.fill(weights, 1);
+    return new EventMix(shape.events(), weights);
+  }
+
+  /**
+   * Parses a mix of string events: {@code name=weight,name=weight,...}. The
+   * weight of an event given without one is 1.
+   *
+   * @param spec The mix.
+   * @return The mix.
+   */
+  public static EventMix parse(final String spec) {
+    String[] entries = spec.split(",");
+    Event[] events = new Event[entries.length];
+    int[] weights = new int[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      int eq = entries[i].indexOf('=');
+      if (eq < 0) {
+        events[i] = new StringEvent(entries[i].trim());
+        weights[i] = 1;
+      } else {
+        events[i] = new StringEvent(entries[i].substring(0, eq).trim());
+        weights[i] = Integer.parseInt(entries[i].substring(eq + 1).trim());
+      }
+    }
+    return new EventMix(events, weights);
+  }
+
+  /**
+   * Draws an event.
+   *
+   * @param random The source of randomness of the calling thread.
+   * @return An event of the mix.
+   */
+  public Event next(final Random random) {
+    if (events.length == 1) {
+      return events[0];
+    }
+    int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    int i = 0;
+    while (cumulativeWeights[i] <= r) {
+      i++;
+    }
+    return events[i];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < events.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(events[i]).append('=').append(cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.LockStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.PoolStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+
+/**
+ * The benchmarked state machine executors.
+ *
+ * <p>
+ * The pool executors run the steps on the worker threads of their shard
+ * pool. Their operations are measured until the worker is done with them so
+ * that they compare with the synchronous executors.</p>
+ *
+ * @author Fabien Renaud
+ */
+public enum ExecutorKind {
+
+  SYNC(0),
+  LOCK(0),
+  POOL_1(1),
+  POOL_4(4);
+
+  /**
+   * An event none of the benchmarked state machines accepts.
+   */
+  private static final Event AWAIT = new StringEvent("await");
+  private final int shards;
+
+  private ExecutorKind(final int shards) {
+    this.shards = shards;
+  }
+
+  /**
+   * Creates the shard pool the executors of this kind run on.
+   *
+   * @return A new shard pool with daemon worker threads or null when the
+   * executors of this kind do not need one.
+   */
+  public StateMachineShardPoolExecutor newPool() {
+    if (shards == 0) {
+      return null;
+    }
+    return new StateMachineShardPoolExecutor(shards, (r) -> {
+      Thread t = new Thread(r, "benchmark-shard");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Creates a new executor.
+   *
+   * @param pool The shard pool created by {@link #newPool()}.
+   * @return A new executor.
+   */
+  public StateMachineExecutor<BenchmarkContext> newExecutor(final StateMachineShardPoolExecutor pool) {
+    switch (this) {
+      case SYNC:
+        return new SyncStateMachineExecutor();
+      case LOCK:
+        return new LockStateMachineExecutor();
+      default:
+        return new PoolStateMachineExecutor(pool);
+    }
+  }
+
+  /**
+   * Takes an event and waits for the end of the step it triggers.
+   *
+   * @param fsm An executor of this kind.
+   * @param event The event to take.
+   * @return The outcome of the step for pool executors, null otherwise.
+   */
+  public Object take(final StateMachineExecutor<BenchmarkContext> fsm, final Event event) {
+    if (shards == 0) {
+      fsm.take(event);
+      return null;
+    }
+    return ((PoolStateMachineExecutor) fsm).takeAsync(event).toCompletableFuture().join();
+  }
+
+  /**
+   * Waits for the worker of a pool executor to be done with everything queued
+   * so far. Does nothing for the other executors.
+   *
+   * <p>
+   * Snapshots are queued ahead of the other items, so the wait is done with an
+   * event queued behind them, which the state machine denies.</p>
+   *
+   * @param fsm An executor of this kind.
+   */
+  public void await(final StateMachineExecutor<BenchmarkContext> fsm) {
+    if (shards != 0) {
+      ((PoolStateMachineExecutor) fsm).takeAsync(AWAIT).toCompletableFuture().join();
+    }
+  }
+
+}
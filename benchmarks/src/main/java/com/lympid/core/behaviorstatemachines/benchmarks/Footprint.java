@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineStateFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap retained by live state machine instances.
+ *
+ * <p>
+ * Many instances are created and kept reachable while the used heap is
+ * compared before and after, once the garbage collector is done. Whatever the
+ * instances share, such as the state machine, the shard pool or the
+ * scheduler, is created beforehand and not counted. Whatever they make
+ * reachable from elsewhere, such as the scheduled timers, is counted.</p>
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.lympid.core.behaviorstatemachines.benchmarks.Footprint [instances]
+ * </pre>
+ *
+ * @author Fabien Renaud
+ */
+public final class Footprint {
+
+  public static final int DEFAULT_INSTANCES = 10000;
+
+  private Footprint() {
+  }
+
+  /**
+   * Measures the bytes retained per instance.
+   *
+   * @param factory Creates one instance.
+   * @param count The number of instances to create.
+   * @return The bytes retained per instance.
+   */
+  public static long bytesPerInstance(final Supplier<?> factory, final int count) {
+    for (int i = 0; i < Math.min(count, 100); i++) {
+      factory.get();
+    }
+
+    Object[] instances = new Object[count];
+    long before = usedHeap();
+    for (int i = 0; i < count; i++) {
+      instances[i] = factory.get();
+    }
+    long after = usedHeap();
+    if (instances[count - 1] == null) {
+      throw new IllegalStateException();
+    }
+    return (after - before) / count;
+  }
+
+  /**
+   * Measures the bytes retained per started executor, context included.
+   *
+   * @param shape The shape of the state machine.
+   * @param executor The kind of executor.
+   * @param count The number of executors to create.
+   * @return The bytes retained per executor.
+   */
+  public static long bytesPerInstance(final MachineShape shape, final ExecutorKind executor, final int count) {
+    RunningMachine running = new RunningMachine();
+    running.shape = shape;
+    running.executor = executor;
+    running.setUp();
+    try {
+      return bytesPerInstance(() -> {
+        StateMachineExecutor<BenchmarkContext> fsm = running.newExecutor();
+        fsm.go();
+        executor.await(fsm);
+        return fsm;
+      }, count);
+    } finally {
+      running.tearDown();
+    }
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+    }
+    return used;
+  }
+
+  public static void main(final String[] args) {
+    int count = args.length == 0 ? DEFAULT_INSTANCES : Integer.parseInt(args[0]);
+    ExecutorKind[] executors = ExecutorKind.values();
+
+    StringBuilder header = new StringBuilder(String.format("%-16s %-28s", "shape", "state"));
+    for (ExecutorKind executor : executors) {
+      header.append(String.format(" %8s", executor));
+    }
+    System.out.println(header);
+
+    for (MachineShape shape : MachineShape.values()) {
+      String state = StateMachineStateFactory.get(shape.builder().newInstance().metadata()).getClass().getSimpleName();
+      StringBuilder line = new StringBuilder(String.format("%-16s %-28s", shape, state));
+      for (ExecutorKind executor : executors) {
+        line.append(String.format(" %8d", bytesPerInstance(shape, executor, count)));
+      }
+      System.out.println(line);
+    }
+    System.out.println("bytes per started executor and its context, " + count + " instances");
+  }
+
+}
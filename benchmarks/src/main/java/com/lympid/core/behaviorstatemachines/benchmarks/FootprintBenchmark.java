@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained per started executor, reported as the secondary
+ * {@code bytesPerInstance} result so that it is tracked with the other
+ * benchmarks. The primary result, the time to create and start all the
+ * instances, is a side effect.
+ *
+ * @author Fabien Renaud
+ * @see Footprint
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@State(Scope.Thread)
+public class FootprintBenchmark {
+
+  @Param
+  public MachineShape shape;
+  @Param
+  public ExecutorKind executor;
+  @Param("10000")
+  public int instances;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Bytes {
+
+    public long bytesPerInstance;
+
+    @Setup(Level.Iteration)
+    public void clean() {
+      bytesPerInstance = 0;
+    }
+  }
+
+  @Benchmark
+  public void footprint(final Bytes bytes) {
+    bytes.bytesPerInstance = Footprint.bytesPerInstance(shape, executor, instances);
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Distribution of the keys, the indices of the state machines, events are sent
+ * to.
+ *
+ * @author Fabien Renaud
+ */
+public abstract class KeyDistribution {
+
+  /**
+   * Parses a distribution: {@code uniform}, {@code zipf} or {@code zipf:s}
+   * where {@code s} is the exponent of the Zipfian distribution, 0.99 by
+   * default.
+   *
+   * @param spec The distribution.
+   * @param keys The number of keys.
+   * @return The distribution.
+   * @throws IllegalArgumentException When the distribution is unknown.
+   */
+  public static KeyDistribution parse(final String spec, final int keys) {
+    if ("uniform".equals(spec)) {
+      return new Uniform(keys);
+    }
+    if ("zipf".equals(spec)) {
+      return new Zipfian(keys, 0.99);
+    }
+    if (spec.startsWith("zipf:")) {
+      return new Zipfian(keys, Double.parseDouble(spec.substring(5)));
+    }
+    throw new IllegalArgumentException("Unknown key distribution: " + spec);
+  }
+
+  /**
+   * Draws a key.
+   *
+   * @param random The source of randomness of the calling thread.
+   * @return A key between 0 inclusive and the number of keys exclusive.
+   */
+  public abstract int next(Random random);
+
+  private static final class Uniform extends KeyDistribution {
+
+    private final int keys;
+
+    Uniform(final int keys) {
+      this.keys = keys;
+    }
+
+    @Override
+    public int next(final Random random) {
+      return random.nextInt(keys);
+    }
+
+    @Override
+    public String toString() {
+      return "uniform";
+    }
+  }
+
+  /**
+   * Zipfian distribution: key {@code k} is drawn with a probability
+   * proportional to {@code 1 / (k + 1)^s}. Keys are drawn by a binary search
+   * of the cumulative distribution.
+   */
+  private static final class Zipfian extends KeyDistribution {
+
+    private final double[] cdf;
+    private final double exponent;
+
+    Zipfian(final int keys, final double exponent) {
+      this.exponent = exponent;
+      this.cdf = new double[keys];
+      double sum = 0;
+      for (int k = 0; k < keys; k++) {
+        sum += 1 / Math.pow(k + 1, exponent);
+        cdf[k] = sum;
+      }
+      for (int k = 0; k < keys; k++) {
+        cdf[k] /= sum;
+      }
+    }
+
+    @Override
+    public int next(final Random random) {
+      double u = random.nextDouble();
+      int low = 0;
+      int high = cdf.length - 1;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (cdf[mid] < u) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    @Override
+    public String toString() {
+      return "zipf:" + exponent;
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of {@code newInstance()} for generated state machines of growing
+ * sizes. The time per simple state should stay flat as the state machine
+ * grows.
+ *
+ * @author Fabien Renaud
+ * @see ModelGenerator
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class LargeModelBenchmark {
+
+  @Param({"1000", "10000", "50000"})
+  public int states;
+  @Param({"8"})
+  public int fanOut;
+  @Param({"false", "true"})
+  public boolean parallelValidation;
+
+  private StateMachineBuilder<BenchmarkContext> builder;
+
+  @Setup(Level.Invocation)
+  public void newBuilder() {
+    builder = ModelGenerator.generate(states, fanOut).parallelValidation(parallelValidation);
+  }
+
+  @Benchmark
+  public StateMachine newInstance() {
+    return builder.newInstance();
+  }
+
+}
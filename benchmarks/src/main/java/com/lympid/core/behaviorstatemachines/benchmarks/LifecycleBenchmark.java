@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.AbstractStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineExecutorPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of starting a state machine with {@code go()}, up to the end of its
+ * initial run-to-completion step.
+ *
+ * <p>
+ * Executors are created before and paused after each invocation, outside of
+ * the measurement.</p>
+ *
+ * <p>
+ * The sessions measure a whole short-lived run instead: a new executor which
+ * goes and is paused, and an executor acquired from and released to a
+ * {@link StateMachineExecutorPool}.</p>
+ *
+ * @author Fabien Renaud
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LifecycleBenchmark {
+
+  @Benchmark
+  public StateMachineExecutor go(final RunningMachine m, final Fresh f) {
+    f.fsm.go();
+    m.executor.await(f.fsm);
+    return f.fsm;
+  }
+
+  @Benchmark
+  public StateMachineExecutor newSession(final RunningMachine m) {
+    StateMachineExecutor<BenchmarkContext> fsm = m.newExecutor();
+    fsm.go();
+    m.executor.await(fsm);
+    fsm.pause();
+    return fsm;
+  }
+
+  @Benchmark
+  public StateMachineExecutor pooledSession(final RunningMachine m, final Pooled p) {
+    AbstractStateMachineExecutor fsm = p.executors.acquire(new BenchmarkContext());
+    m.executor.await(fsm);
+    p.executors.release(fsm);
+    return fsm;
+  }
+
+  @State(Scope.Thread)
+  public static class Fresh {
+
+    StateMachineExecutor<BenchmarkContext> fsm;
+
+    @Setup(Level.Invocation)
+    public void newExecutor(final RunningMachine m) {
+      fsm = m.newExecutor();
+    }
+
+    @TearDown(Level.Invocation)
+    public void pause() {
+      fsm.pause();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Pooled {
+
+    StateMachineExecutorPool<AbstractStateMachineExecutor> executors;
+
+    @Setup(Level.Trial)
+    public void newPool(final RunningMachine m) {
+      executors = new StateMachineExecutorPool<>(m.machine, () -> (AbstractStateMachineExecutor) m.newExecutor(), 1);
+    }
+  }
+
+}
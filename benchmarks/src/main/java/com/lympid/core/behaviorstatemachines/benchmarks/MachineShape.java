@@ -0,0 +1,442 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.EntryPointBuilder;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.builder.SubStateMachineBuilder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shapes of the benchmarked state machines. Each shape follows one family
+ * of the test state machines but never terminates: its events can be taken
+ * in a loop, forever.
+ *
+ * @author Fabien Renaud
+ */
+public enum MachineShape {
+
+  /**
+   * Two simple states with entry and exit behaviors and a guarded transition,
+   * as in the simple state tests.
+   */
+  SIMPLE("go") {
+    @Override
+    public StateMachineBuilder<BenchmarkContext> builder() {
+      StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .entry((c) -> c.entries++)
+            .exit((c) -> c.exits++)
+            .transition("t1")
+              .on("go")
+              .guard((e, c) -> c.counter >= 0)
+              .effect((e, c) -> c.counter++)
+              .target("B");
+
+      builder
+        .region()
+          .state("B")
+            .entry((c) -> c.entries++)
+            .exit((c) -> c.exits++)
+            .transition("t2")
+              .on("go")
+              .target("A");
+
+      return builder;
+    }
+  },
+  /**
+   * A composite state left and entered again through its initial pseudo
+   * state, as in the composite state tests.
+   */
+  COMPOSITE("next", "next", "out", "in") {
+    @Override
+    public StateMachineBuilder<BenchmarkContext> builder() {
+      StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("C");
+
+      CompositeStateBuilder<BenchmarkContext> composite = new CompositeStateBuilder<>("C");
+      composite
+        .region()
+          .initial()
+            .transition("t1")
+              .target("C1");
+      composite
+        .region()
+          .state("C1")
+            .transition("t2")
+              .on("next")
+              .target("C2");
+      composite
+        .region()
+          .state("C2")
+            .transition("t3")
+              .on("next")
+              .target("C1");
+
+      builder
+        .region()
+          .state(composite)
+            .entry((c) -> c.entries++)
+            .exit((c) -> c.exits++)
+            .transition("t4")
+              .on("out")
+              .target("D");
+
+      builder
+        .region()
+          .state("D")
+            .transition("t5")
+              .on("in")
+              .target("C");
+
+      return builder;
+    }
+  },
+  /**
+   * An orthogonal state of two regions, as in the orthogonal state tests.
+   */
+  ORTHOGONAL("go1", "go2", "go1", "go2", "out", "in") {
+    @Override
+    public StateMachineBuilder<BenchmarkContext> builder() {
+      StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("O");
+
+      OrthogonalStateBuilder<BenchmarkContext> orthogonal = new OrthogonalStateBuilder<>("O");
+      toggle(orthogonal, "r1", "A", "B", "go1");
+      toggle(orthogonal, "r2", "C", "D", "go2");
+
+      builder
+        .region()
+          .state(orthogonal)
+            .transition("t1")
+              .on("out")
+              .target("E");
+
+      builder
+        .region()
+          .state("E")
+            .transition("t2")
+              .on("in")
+              .target("O");
+
+      return builder;
+    }
+  },
+  /**
+   * A composite state entered again through its deep history, as in the
+   * history pseudo state tests.
+   */
+  HISTORY("next", "x", "out", "back", "next", "out", "back") {
+    @Override
+    public StateMachineBuilder<BenchmarkContext> builder() {
+      StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("H");
+
+      CompositeStateBuilder<BenchmarkContext> inner = new CompositeStateBuilder<>("H2");
+      inner
+        .region()
+          .initial()
+            .transition("t1")
+              .target("X1");
+      inner
+        .region()
+          .state("X1")
+            .transition("t2")
+              .on("x")
+              .target("X2");
+      inner
+        .region()
+          .state("X2")
+            .transition("t3")
+              .on("x")
+              .target("X1");
+
+      CompositeStateBuilder<BenchmarkContext> outer = new CompositeStateBuilder<>("H");
+      outer
+        .region()
+          .initial()
+            .transition("t4")
+              .target("H1");
+      outer
+        .region()
+          .deepHistory("history");
+      outer
+        .region()
+          .state("H1")
+            .transition("t5")
+              .on("next")
+              .target("H2");
+      outer
+        .region()
+          .state(inner)
+            .transition("t6")
+              .on("next")
+              .target("H1");
+
+      builder
+        .region()
+          .state(outer)
+            .transition("t7")
+              .on("out")
+              .target("P");
+
+      builder
+        .region()
+          .state("P")
+            .transition("t8")
+              .on("back")
+              .target("history");
+
+      return builder;
+    }
+  },
+  /**
+   * Dynamic and static conditional branches, as in the choice and junction
+   * pseudo state tests.
+   */
+  CHOICE_JUNCTION("go") {
+    @Override
+    public StateMachineBuilder<BenchmarkContext> builder() {
+      StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .on("go")
+              .effect((e, c) -> c.counter++)
+              .target("choice");
+
+      builder
+        .region()
+          .choice("choice")
+            .transition("t2")
+              .guard((c) -> (c.counter & 1) == 0)
+              .target("B")
+            .transition("t3")
+              .guard((c) -> (c.counter & 1) != 0)
+              .target("C");
+
+      builder
+        .region()
+          .state("B")
+            .transition("t4")
+              .on("go")
+              .target("junction");
+
+      builder
+        .region()
+          .state("C")
+            .transition("t5")
+              .on("go")
+              .target("junction");
+
+      builder
+        .region()
+          .junction("junction")
+            .transition("t6")
+              .guard((c) -> c.counter >= 0)
+              .target("A")
+            .transition("t7")
+              .guard((c) -> c.counter < 0)
+              .target("A");
+
+      return builder;
+    }
+  },
+  /**
+   * The same submachine referenced twice and chained through its entry and
+   * exit points, as in the submachine state tests.
+   */
+  SUBMACHINE("go") {
+    @Override
+    public StateMachineBuilder<BenchmarkContext> builder() {
+      StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("sub1::entryPoint");
+
+      StateMachineBuilder<BenchmarkContext> subMachine = subStateMachine();
+
+      builder
+        .region()
+          .state(subMachine, "sub1")
+            .connectionPoint()
+              .exitPoint("exitPoint")
+                .transition("t1")
+                  .target("sub2::entryPoint");
+
+      builder
+        .region()
+          .state(subMachine, "sub2")
+            .connectionPoint()
+              .exitPoint("exitPoint")
+                .transition("t2")
+                  .target("sub1::entryPoint");
+
+      return builder;
+    }
+  },
+  /**
+   * States with a time event which is scheduled when they are entered and
+   * cancelled when they are left, as in the time event tests. The time events
+   * never fire.
+   */
+  TIME_EVENT("go") {
+    @Override
+    public StateMachineBuilder<BenchmarkContext> builder() {
+      StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .on("go")
+              .target("B")
+            .transition("t2")
+              .after(1, TimeUnit.HOURS)
+              .target("end");
+
+      builder
+        .region()
+          .state("B")
+            .transition("t3")
+              .on("go")
+              .target("A")
+            .transition("t4")
+              .after(1, TimeUnit.HOURS)
+              .target("end");
+
+      builder
+        .region()
+          .finalState("end");
+
+      return builder;
+    }
+  };
+
+  private final Event[] events;
+
+  private MachineShape(final String... events) {
+    this.events = new Event[events.length];
+    for (int i = 0; i < events.length; i++) {
+      this.events[i] = new StringEvent(events[i]);
+    }
+  }
+
+  /**
+   * Creates a new builder of the state machine.
+   *
+   * @return A new state machine builder.
+   */
+  public abstract StateMachineBuilder<BenchmarkContext> builder();
+
+  /**
+   * Gets the events to take in a loop once the state machine is started.
+   *
+   * @return The events of one loop. Must not be modified.
+   */
+  public Event[] events() {
+    return events;
+  }
+
+  private static void toggle(final OrthogonalStateBuilder<BenchmarkContext> builder, final String region, final String a, final String b, final String event) {
+    builder
+      .region(region)
+        .initial()
+          .transition()
+            .target(a);
+    builder
+      .region(region)
+        .state(a)
+          .transition()
+            .on(event)
+            .target(b);
+    builder
+      .region(region)
+        .state(b)
+          .transition()
+            .on(event)
+            .target(a);
+  }
+
+  private static StateMachineBuilder<BenchmarkContext> subStateMachine() {
+    SubStateMachineBuilder<BenchmarkContext> builder = new SubStateMachineBuilder<>("sub");
+
+    builder
+      .connectionPoint()
+        .entryPoint(new EntryPointBuilder<BenchmarkContext>("entryPoint")
+          .transition("t0")
+            .effect((c) -> c.counter++)
+            .target("A")
+        )
+        .exitPoint("exitPoint");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("exitPoint");
+
+    return builder;
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.RegionBuilder;
+import com.lympid.core.behaviorstatemachines.builder.SimpleStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates large state machines to measure how building and validating them
+ * scales.
+ *
+ * <p>
+ * The simple states are the leaves of a tree of composite states with a given
+ * fan out. In each region, the states are chained by {@code next} events and
+ * every composite state is left by an {@code out} event to its next sibling.
+ * Every simple state also has a {@code jump} transition to a simple state of
+ * another branch of the tree, so that transitions cross all the levels of the
+ * hierarchy.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class ModelGenerator {
+
+  private final int fanOut;
+  private final List<String> leaves = new ArrayList<>();
+  private final List<SimpleStateBuilder<BenchmarkContext>> leafBuilders = new ArrayList<>();
+
+  private ModelGenerator(final int fanOut) {
+    this.fanOut = fanOut;
+  }
+
+  /**
+   * Generates a state machine.
+   *
+   * @param states The number of simple states.
+   * @param fanOut The maximum number of states of a region, at least 2.
+   * @return A new builder of the generated state machine.
+   */
+  public static StateMachineBuilder<BenchmarkContext> generate(final int states, final int fanOut) {
+    if (states < 1 || fanOut < 2) {
+      throw new IllegalArgumentException("states: " + states + ", fanOut: " + fanOut);
+    }
+    StateMachineBuilder<BenchmarkContext> builder = new StateMachineBuilder<>("generated" + states);
+    ModelGenerator generator = new ModelGenerator(fanOut);
+    generator.fill(builder.region(), "s", states);
+    generator.jumps();
+    return builder;
+  }
+
+  private void fill(final RegionBuilder<BenchmarkContext> region, final String prefix, final int states) {
+    int children = Math.min(fanOut, states);
+    region
+      .initial()
+        .transition()
+          .target(prefix + "_0");
+
+    for (int i = 0; i < children; i++) {
+      String name = prefix + "_" + i;
+      String next = prefix + "_" + ((i + 1) % children);
+      int budget = states / children + (i < states % children ? 1 : 0);
+      if (budget == 1) {
+        SimpleStateBuilder<BenchmarkContext> leaf = region.state(name);
+        leaf
+          .transition()
+            .on("next")
+            .target(next);
+        leaves.add(name);
+        leafBuilders.add(leaf);
+      } else {
+        CompositeStateBuilder<BenchmarkContext> composite = new CompositeStateBuilder<>(name);
+        fill(composite.region(), name, budget);
+        region
+          .state(composite)
+            .transition()
+              .on("out")
+              .target(next);
+      }
+    }
+  }
+
+  private void jumps() {
+    int n = leaves.size();
+    for (int i = 0; i < n; i++) {
+      leafBuilders.get(i)
+        .transition()
+          .on("jump")
+          .target(leaves.get((i + n / 2 + 1) % n));
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A started state machine of a given shape run by a given kind of executor.
+ * The state machine is built once per trial.
+ *
+ * @author Fabien Renaud
+ */
+@State(Scope.Thread)
+public class RunningMachine {
+
+  @Param
+  public MachineShape shape;
+  @Param
+  public ExecutorKind executor;
+
+  StateMachine machine;
+  StateMachineShardPoolExecutor pool;
+  ScheduledThreadPoolExecutor scheduler;
+  StateMachineExecutor<BenchmarkContext> fsm;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    machine = shape.builder().newInstance();
+    pool = executor.newPool();
+    scheduler = new ScheduledThreadPoolExecutor(1, (r) -> {
+      Thread t = Executors.defaultThreadFactory().newThread(r);
+      t.setDaemon(true);
+      return t;
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    fsm = newExecutor();
+    fsm.go();
+    executor.await(fsm);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Creates a new executor of the state machine, not started yet.
+   *
+   * @return A new executor.
+   */
+  StateMachineExecutor<BenchmarkContext> newExecutor() {
+    StateMachineExecutor<BenchmarkContext> e = executor.newExecutor(pool);
+    e.setStateMachine(machine);
+    e.setContext(new BenchmarkContext());
+    e.configuration().executor(scheduler);
+    return e;
+  }
+
+  /**
+   * Takes the next event of the loop of the shape.
+   *
+   * @return The outcome of the step for pool executors, null otherwise.
+   */
+  Object take() {
+    Object result = executor.take(fsm, shape.events()[next]);
+    if (++next == shape.events().length) {
+      next = 0;
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.impl.PoolStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.ShardStatistics;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor;
+import com.lympid.core.behaviorstatemachines.metrics.HistogramSnapshot;
+import com.lympid.core.behaviorstatemachines.metrics.LatencyHistogram;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load harness of the {@link StateMachineShardPoolExecutor}: M producer
+ * threads send events to N state machines run by a pool of S shards, for
+ * every given number of shards.
+ *
+ * <p>
+ * Producers run an open loop: every event has an intended send time set by
+ * the target rate, whether or not the previous events are done. Latencies are
+ * measured from the intended send time to the end of the run-to-completion
+ * step, so a stalled pool is charged for all the events it delays
+ * (coordinated omission correction). The latencies measured from the actual
+ * send time are reported too. With a rate of 0, producers send as fast as the
+ * in-flight limit lets them.</p>
+ *
+ * <p>
+ * The imbalance of the pool is the number of items the busiest shard ran
+ * divided by the mean over all shards, during the measurement.</p>
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.lympid.core.behaviorstatemachines.benchmarks.ShardPoolLoad \
+ *   --shards 1,2,4,8,16,32,64 --machines 100000 --producers 8 --rate 500000 --skew zipf:0.99
+ * </pre>
+ *
+ * @author Fabien Renaud
+ */
+public final class ShardPoolLoad {
+
+  private static final String USAGE
+    = "Options:\n"
+    + "  --shards 1,2,4,...    numbers of shards to run, one after the other (1,2,4,8,16,32,64)\n"
+    + "  --machines N          number of state machines (10000)\n"
+    + "  --producers M         number of producer threads (4)\n"
+    + "  --rate R              target events per second over all producers, 0 for a closed loop (100000)\n"
+    + "  --warmup S            seconds of warm up, not measured (2)\n"
+    + "  --duration S          seconds of measurement (10)\n"
+    + "  --skew D              key distribution: uniform, zipf or zipf:exponent (uniform)\n"
+    + "  --shape SHAPE         shape of the state machines: " + Arrays.toString(MachineShape.values()) + " (SIMPLE)\n"
+    + "  --mix e=w,...         weighted events to send (the events of the shape)\n"
+    + "  --inflight K          maximum number of events in flight over all producers (100000)\n"
+    + "  --quantum Q           quantum of the pool (" + StateMachineShardPoolExecutor.DEFAULT_QUANTUM + ")\n";
+
+  private static final ThreadFactory DAEMONS = (r) -> {
+    Thread t = Executors.defaultThreadFactory().newThread(r);
+    t.setDaemon(true);
+    return t;
+  };
+
+  private final int shards;
+  private final int machines;
+  private final int producers;
+  private final long rate;
+  private final long warmup;
+  private final long duration;
+  private final KeyDistribution keys;
+  private final MachineShape shape;
+  private final EventMix mix;
+  private final int inflight;
+  private final int quantum;
+
+  private final LatencyHistogram corrected = new LatencyHistogram();
+  private final LatencyHistogram uncorrected = new LatencyHistogram();
+  private final AtomicLong sent = new AtomicLong();
+
+  private ShardPoolLoad(final int shards, final Map<String, String> options) {
+    this.shards = shards;
+    this.machines = Integer.parseInt(option(options, "machines", "10000"));
+    this.producers = Integer.parseInt(option(options, "producers", "4"));
+    this.rate = Long.parseLong(option(options, "rate", "100000"));
+    this.warmup = TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(option(options, "warmup", "2")) * 1000));
+    this.duration = TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(option(options, "duration", "10")) * 1000));
+    this.keys = KeyDistribution.parse(option(options, "skew", "uniform"), machines);
+    this.shape = MachineShape.valueOf(option(options, "shape", "SIMPLE"));
+    this.mix = options.containsKey("mix") ? EventMix.parse(options.get("mix")) : EventMix.of(shape);
+    this.inflight = Integer.parseInt(option(options, "inflight", "100000"));
+    this.quantum = Integer.parseInt(option(options, "quantum", Integer.toString(StateMachineShardPoolExecutor.DEFAULT_QUANTUM)));
+    if (machines <= 0 || producers <= 0 || rate < 0 || inflight < producers || duration <= 0) {
+      throw new IllegalArgumentException("Invalid options: " + options);
+    }
+  }
+
+  public static void main(final String[] args) throws InterruptedException {
+    Map<String, String> options;
+    try {
+      options = parse(args);
+    } catch (IllegalArgumentException ex) {
+      System.err.println(ex.getMessage());
+      System.err.print(USAGE);
+      System.exit(2);
+      return;
+    }
+    if (options.containsKey("help")) {
+      System.out.print(USAGE);
+      return;
+    }
+
+    List<Result> results = new ArrayList<>();
+    for (String s : option(options, "shards", "1,2,4,8,16,32,64").split(",")) {
+      ShardPoolLoad load = new ShardPoolLoad(Integer.parseInt(s.trim()), options);
+      Result result = load.run();
+      result.print(System.out);
+      results.add(result);
+    }
+
+    System.out.println();
+    System.out.println(String.format("%6s %12s %10s %10s %10s %10s %10s %9s", "shards", "events/s", "p50 us", "p99 us", "p99.9 us", "p99.99 us", "max us", "imbalance"));
+    for (Result r : results) {
+      System.out.println(String.format("%6d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f %9.2f",
+        r.shards, r.throughput,
+        micros(r.corrected.percentile(0.5)), micros(r.corrected.percentile(0.99)),
+        micros(r.corrected.percentile(0.999)), micros(r.corrected.percentile(0.9999)),
+        micros(r.corrected.max()), r.imbalance));
+    }
+  }
+
+  private static Map<String, String> parse(final String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+      }
+      String name = args[i].substring(2);
+      if ("help".equals(name)) {
+        options.put(name, "");
+      } else if (i + 1 < args.length) {
+        options.put(name, args[++i]);
+      } else {
+        throw new IllegalArgumentException("Missing value of " + args[i]);
+      }
+    }
+    return options;
+  }
+
+  private static String option(final Map<String, String> options, final String name, final String defaultValue) {
+    String value = options.get(name);
+    return value == null ? defaultValue : value;
+  }
+
+  private static double micros(final long nanos) {
+    return nanos / 1000.0;
+  }
+
+  private Result run() throws InterruptedException {
+    StateMachineShardPoolExecutor pool = new StateMachineShardPoolExecutor(shards, DAEMONS, quantum);
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, DAEMONS);
+    scheduler.setRemoveOnCancelPolicy(true);
+
+    StateMachine machine = shape.builder().newInstance();
+    PoolStateMachineExecutor[] fsms = new PoolStateMachineExecutor[machines];
+    for (int i = 0; i < machines; i++) {
+      PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool, i);
+      fsm.setStateMachine(machine);
+      fsm.setContext(new BenchmarkContext());
+      fsm.configuration().executor(scheduler);
+      fsm.go();
+      fsms[i] = fsm;
+    }
+
+    long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+    long measureStart = start + warmup;
+    long end = measureStart + duration;
+    Producer[] threads = new Producer[producers];
+    for (int i = 0; i < producers; i++) {
+      threads[i] = new Producer(i, fsms, start, measureStart, end);
+      threads[i].start();
+    }
+
+    sleepUntil(measureStart);
+    List<ShardStatistics> before = pool.shardStatistics();
+    sleepUntil(end);
+    List<ShardStatistics> after = pool.shardStatistics();
+
+    for (Producer p : threads) {
+      p.join();
+      p.drain();
+    }
+    long drained = System.nanoTime();
+    scheduler.shutdownNow();
+
+    return new Result(shards, corrected.snapshot(), uncorrected.snapshot(), before, after,
+      (double) corrected.count() * TimeUnit.SECONDS.toNanos(1) / Math.max(duration, drained - measureStart));
+  }
+
+  private static void sleepUntil(final long deadline) {
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  private final class Producer extends Thread {
+
+    private final PoolStateMachineExecutor[] fsms;
+    private final long start;
+    private final long measureStart;
+    private final long end;
+    private final long interval;
+    private final int permits;
+    private final Semaphore inflightPermits;
+    private final Random random;
+
+    Producer(final int index, final PoolStateMachineExecutor[] fsms, final long start, final long measureStart, final long end) {
+      super("producer-" + index);
+      setDaemon(true);
+      this.fsms = fsms;
+      /*
+       * Producers are shifted from each other so that they do not all send at
+       * the same instants.
+       */
+      this.interval = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(producers) / rate;
+      this.start = start + interval * index / producers;
+      this.measureStart = measureStart;
+      this.end = end;
+      this.permits = inflight / producers;
+      this.inflightPermits = new Semaphore(permits);
+      this.random = new Random(index);
+    }
+
+    @Override
+    public void run() {
+      for (long i = 0;; i++) {
+        long intended;
+        if (interval == 0) {
+          intended = System.nanoTime();
+        } else {
+          intended = start + i * interval;
+          sleepUntil(intended);
+        }
+        if (intended >= end) {
+          return;
+        }
+
+        inflightPermits.acquireUninterruptibly();
+        PoolStateMachineExecutor fsm = fsms[keys.next(random)];
+        Event event = mix.next(random);
+        final boolean measured = intended >= measureStart;
+        final long intendedTime = intended;
+        final long sendTime = System.nanoTime();
+        sent.incrementAndGet();
+        fsm.takeAsync(event).whenComplete((r, ex) -> {
+          if (measured) {
+            long now = System.nanoTime();
+            corrected.record(now - intendedTime);
+            uncorrected.record(now - sendTime);
+          }
+          inflightPermits.release();
+        });
+      }
+    }
+
+    void drain() {
+      inflightPermits.acquireUninterruptibly(permits);
+    }
+  }
+
+  private final class Result {
+
+    private final int shards;
+    private final HistogramSnapshot corrected;
+    private final HistogramSnapshot uncorrected;
+    private final double throughput;
+    private final double[] shardRates;
+    private final double[] shardUtilizations;
+    private final double imbalance;
+
+    Result(final int shards, final HistogramSnapshot corrected, final HistogramSnapshot uncorrected, final List<ShardStatistics> before, final List<ShardStatistics> after, final double throughput) {
+      this.shards = shards;
+      this.corrected = corrected;
+      this.uncorrected = uncorrected;
+      this.throughput = throughput;
+      this.shardRates = new double[shards];
+      this.shardUtilizations = new double[shards];
+      double max = 0;
+      double sum = 0;
+      for (int i = 0; i < shards; i++) {
+        shardRates[i] = after.get(i).dequeueRate(before.get(i));
+        shardUtilizations[i] = after.get(i).utilization(before.get(i));
+        max = Math.max(max, shardRates[i]);
+        sum += shardRates[i];
+      }
+      this.imbalance = sum == 0 ? 0 : max * shards / sum;
+    }
+
+    void print(final PrintStream out) {
+      out.println("== " + shards + " shards, " + machines + " machines, " + producers + " producers, "
+        + (rate == 0 ? "closed loop" : rate + " events/s") + ", " + keys + ", " + shape + " {" + mix + "}");
+      out.println(String.format("  throughput  %.0f events/s (%d sent)", throughput, sent.get()));
+      out.println("  latency     " + percentiles(corrected));
+      out.println("  service     " + percentiles(uncorrected) + " (from the actual send time)");
+      out.println(String.format("  imbalance   %.2f", imbalance));
+      for (int i = 0; i < shards; i++) {
+        out.println(String.format("  shard %-4d  %12.0f items/s  %5.1f%% busy", i, shardRates[i], shardUtilizations[i] * 100));
+      }
+    }
+
+    private String percentiles(final HistogramSnapshot h) {
+      return String.format("p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus p99.99=%.1fus max=%.1fus",
+        micros(h.percentile(0.5)), micros(h.percentile(0.9)), micros(h.percentile(0.99)),
+        micros(h.percentile(0.999)), micros(h.percentile(0.9999)), micros(h.max()));
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineSnapshot;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of taking a snapshot of a running state machine and of resuming a new
+ * executor from a snapshot.
+ *
+ * <p>
+ * Resumed executors are created before and paused after each invocation,
+ * outside of the measurement.</p>
+ *
+ * @author Fabien Renaud
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+
+  @Benchmark
+  public StateMachineSnapshot snapshot(final RunningMachine m) {
+    return m.fsm.snapshot();
+  }
+
+  @Benchmark
+  public StateMachineExecutor resume(final RunningMachine m, final Resumed r) {
+    r.fsm.resume(r.snapshot);
+    m.executor.await(r.fsm);
+    return r.fsm;
+  }
+
+  @State(Scope.Thread)
+  public static class Resumed {
+
+    StateMachineSnapshot snapshot;
+    StateMachineExecutor<BenchmarkContext> fsm;
+
+    @Setup(Level.Trial)
+    public void setUp(final RunningMachine m) {
+      m.take();
+      snapshot = m.fsm.snapshot();
+    }
+
+    @Setup(Level.Invocation)
+    public void newExecutor(final RunningMachine m) {
+      fsm = m.newExecutor();
+    }
+
+    @TearDown(Level.Invocation)
+    public void pause() {
+      fsm.pause();
+    }
+  }
+
+}
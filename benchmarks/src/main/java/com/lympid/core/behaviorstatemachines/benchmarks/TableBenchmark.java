@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.benchmarks;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineTable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Throughput of many instances of a flat state machine run by a
+ * {@link StateMachineTable}, compared with as many synchronous executors.
+ * Every operation takes one event: the instances take the events of the loop
+ * of the shape in a round robin.
+ *
+ * @author Fabien Renaud
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TableBenchmark {
+
+  private static final int BATCH = 10000;
+
+  @Param({"SIMPLE", "CHOICE_JUNCTION", "TIME_EVENT"})
+  public MachineShape shape;
+  @Param("100000")
+  public int instances;
+  @Param({"1", "4"})
+  public int segments;
+
+  private RunningMachine running;
+  private Event[] loop;
+  private StateMachineExecutor<BenchmarkContext>[] executors;
+  private StateMachineTable table;
+  private final int[] batchInstances = new int[BATCH];
+  private final Event[] batchEvents = new Event[BATCH];
+  private long position;
+
+  @Setup
+  public void setUp() {
+    running = new RunningMachine();
+    running.shape = shape;
+    running.executor = ExecutorKind.SYNC;
+    running.setUp();
+    loop = shape.events();
+
+    executors = new StateMachineExecutor[instances];
+    for (int i = 0; i < instances; i++) {
+      executors[i] = running.newExecutor();
+      executors[i].go();
+    }
+
+    BenchmarkContext[] contexts = new BenchmarkContext[instances];
+    for (int i = 0; i < instances; i++) {
+      contexts[i] = new BenchmarkContext();
+    }
+    table = new StateMachineTable(running.machine, instances, (i) -> contexts[i]);
+    for (int i = 0; i < instances; i++) {
+      table.go(i);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    running.tearDown();
+  }
+
+  private void nextBatch() {
+    for (int i = 0; i < BATCH; i++, position++) {
+      batchInstances[i] = (int) (position % instances);
+      batchEvents[i] = loop[(int) (position / instances % loop.length)];
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void executors() {
+    nextBatch();
+    for (int i = 0; i < BATCH; i++) {
+      executors[batchInstances[i]].take(batchEvents[i]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int table() {
+    nextBatch();
+    int accepted = 0;
+    for (int i = 0; i < BATCH; i++) {
+      if (table.take(batchInstances[i], batchEvents[i])) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int batch() {
+    nextBatch();
+    return table.take(batchInstances, batchEvents, segments);
+  }
+
+}
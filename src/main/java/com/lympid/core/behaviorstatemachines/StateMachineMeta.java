@@ -15,6 +15,9 @@
  */
 package com.lympid.core.behaviorstatemachines;
 
+import com.lympid.core.basicbehaviors.Event;
+import java.util.BitSet;
+
 /**
  * Provide information about the state machine that typically requires a full
  * traversal to collect.
@@ -120,4 +123,48 @@ public interface StateMachineMeta {
    */
   Region region(String id);
 
+  /**
+   * Gets the number of distinct events triggering the transitions of the state
+   * machine or any of its sub machines. The completion event counts as one when
+   * the state machine has transitions with no triggers.
+   *
+   * <p>
+   * Implementations which do not number the events return 0, the default. The
+   * executors then never deny an event up front.</p>
+   *
+   * @return The number of distinct events.
+   */
+  default int countOfEvents() {
+    return 0;
+  }
+
+  /**
+   * Gets the ordinal of an event among the events triggering the transitions
+   * of the state machine or any of its sub machines.
+   *
+   * @param event An event.
+   * @return The ordinal of the event, lower than {@link #countOfEvents()}, or
+   * -1 when no transition is triggered by that event.
+   */
+  default int eventOrdinal(Event event) {
+    return -1;
+  }
+
+  /**
+   * Gets the ordinals of the events a state or any of the states enclosing it
+   * has outgoing transitions for. When none of the active states accepts an
+   * event, that event can be denied without looking for transitions.
+   *
+   * <p>
+   * The returned set is shared and must not be modified.</p>
+   *
+   * @param state A state of the state machine.
+   * @return The ordinals of the events accepted by the state or its ancestors.
+   *
+   * @see #eventOrdinal(Event)
+   */
+  default BitSet acceptedEvents(State state) {
+    return new BitSet();
+  }
+
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.artifact;
+
+import com.lympid.core.behaviorstatemachines.BiTransitionBehavior;
+import com.lympid.core.behaviorstatemachines.BiTransitionConstraint;
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateBehavior;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Behaviors and guards to bind to a state machine read from a model artifact.
+ *
+ * <p>
+ * Behaviors which cannot be instantiated from their class name, such as
+ * lambdas or behaviors holding state, are not part of an artifact. Their slot
+ * is bound at load time to the behavior registered here under the id of the
+ * state or transition owning them. Entry and exit behaviors are also keyed by
+ * their index in the list of entry or exit behaviors of their state.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class BehaviorRegistry {
+
+  private final Map<String, Object> behaviors = new HashMap<>();
+
+  /**
+   * Registers all the behaviors and guards of a state machine. Useful when the
+   * artifact is written and read by the same application.
+   *
+   * @param machine A state machine.
+   * @return A registry of all the behaviors of the state machine.
+   */
+  public static BehaviorRegistry of(final StateMachine machine) {
+    final BehaviorRegistry registry = new BehaviorRegistry();
+    machine.accept(new SimpleVisitor() {
+
+      @Override
+      public void visit(final State v) {
+        int i = 0;
+        for (StateBehavior b : v.entry()) {
+          registry.entry(v.getId(), i++, b);
+        }
+        i = 0;
+        for (StateBehavior b : v.exit()) {
+          registry.exit(v.getId(), i++, b);
+        }
+        if (v.doActivity() != null) {
+          registry.activity(v.getId(), v.doActivity());
+        }
+      }
+
+      @Override
+      public void visit(final Transition v) {
+        if (v.guard() != null) {
+          registry.guard(v.getId(), v.guard());
+        }
+        if (v.effect() != null) {
+          registry.effect(v.getId(), v.effect());
+        }
+      }
+
+      @Override
+      public void visit(final FinalState v) {
+      }
+
+      @Override
+      public void visit(final PseudoState v) {
+      }
+
+      @Override
+      public void visit(final ConnectionPointReference v) {
+      }
+
+      @Override
+      public void visit(final Region v) {
+      }
+
+      @Override
+      public void visit(final StateMachine v) {
+      }
+    });
+    return registry;
+  }
+
+  /**
+   * Registers the entry behaviors of a state, from index 0.
+   *
+   * @param stateId The id of a state.
+   * @param behaviors The entry behaviors of the state.
+   * @return This registry.
+   */
+  public BehaviorRegistry entry(final String stateId, final StateBehavior... behaviors) {
+    for (int i = 0; i < behaviors.length; i++) {
+      entry(stateId, i, behaviors[i]);
+    }
+    return this;
+  }
+
+  public BehaviorRegistry entry(final String stateId, final int index, final StateBehavior behavior) {
+    return put(key("entry", stateId, index), behavior);
+  }
+
+  /**
+   * Registers the exit behaviors of a state, from index 0.
+   *
+   * @param stateId The id of a state.
+   * @param behaviors The exit behaviors of the state.
+   * @return This registry.
+   */
+  public BehaviorRegistry exit(final String stateId, final StateBehavior... behaviors) {
+    for (int i = 0; i < behaviors.length; i++) {
+      exit(stateId, i, behaviors[i]);
+    }
+    return this;
+  }
+
+  public BehaviorRegistry exit(final String stateId, final int index, final StateBehavior behavior) {
+    return put(key("exit", stateId, index), behavior);
+  }
+
+  public BehaviorRegistry activity(final String stateId, final StateBehavior behavior) {
+    return put(key("activity", stateId, 0), behavior);
+  }
+
+  public BehaviorRegistry guard(final String transitionId, final BiTransitionConstraint guard) {
+    return put(key("guard", transitionId, 0), guard);
+  }
+
+  public BehaviorRegistry effect(final String transitionId, final BiTransitionBehavior effect) {
+    return put(key("effect", transitionId, 0), effect);
+  }
+
+  /**
+   * Gets a registered behavior.
+   *
+   * @param slot The slot of the behavior: entry, exit, activity, guard or
+   * effect.
+   * @param id The id of the state or transition owning the behavior.
+   * @param index The index of the behavior in its slot.
+   * @return The behavior.
+   * @throws IllegalArgumentException When no behavior is registered for the
+   * slot.
+   */
+  Object get(final String slot, final String id, final int index) {
+    Object b = behaviors.get(key(slot, id, index));
+    if (b == null) {
+      throw new IllegalArgumentException("No " + slot + " #" + index + " registered for " + id);
+    }
+    return b;
+  }
+
+  private BehaviorRegistry put(final String key, final Object behavior) {
+    if (behavior == null) {
+      throw new IllegalArgumentException("The behavior must not be null: " + key);
+    }
+    behaviors.put(key, behavior);
+    return this;
+  }
+
+  private static String key(final String slot, final String id, final int index) {
+    return slot + '/' + id + '/' + index;
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.artifact;
+
+/**
+ * Layout of a model artifact.
+ *
+ * <p>
+ * An artifact starts with a header: the {@link #MAGIC} number and the
+ * {@link #VERSION} of the format. Then come the number of state machines,
+ * regions, vertices and transitions (ints) followed by:</p>
+ * <ol>
+ * <li>the declarations of the state machines and regions: id and name,</li>
+ * <li>the declarations of the vertices: tag ({@link #STATE},
+ * {@link #FINAL_STATE}, {@link #PSEUDO_STATE} or {@link #REFERENCE}), id,
+ * name and the kind of the pseudo states,</li>
+ * <li>the contents of the state machines: regions and connection points,</li>
+ * <li>the contents of the regions: owner and sub vertices,</li>
+ * <li>the contents of the vertices: owners, behaviors, regions, connection
+ * points and sub state machine, depending on their tag,</li>
+ * <li>the transitions, ordered by region: id, name, kind, container, source,
+ * target, triggers, guard and effect,</li>
+ * <li>the outgoing transitions of each vertex, in order.</li>
+ * </ol>
+ * <p>
+ * Elements refer to each other by their index in their declaration list, -1
+ * standing for none. Lists are written as a size followed by the elements.
+ * Strings which may be null are written as a boolean followed by the string.
+ * Behaviors are written as a tag: {@link #NONE}, {@link #CLASS} or
+ * {@link #OPPOSITE_CLASS} followed by a class name, or {@link #BOUND} followed
+ * by the index of the behavior in its slot. Numbers are big-endian.</p>
+ *
+ * @author Fabien Renaud
+ */
+final class ModelFormat {
+
+  static final int MAGIC = 0x4C594D44;
+  static final short VERSION = 1;
+  static final byte STATE = 'S';
+  static final byte FINAL_STATE = 'F';
+  static final byte PSEUDO_STATE = 'P';
+  static final byte REFERENCE = 'R';
+  static final byte NONE = 0;
+  static final byte CLASS = 'C';
+  static final byte OPPOSITE_CLASS = 'O';
+  static final byte BOUND = 'B';
+  static final byte STRING_EVENT = 'S';
+  static final byte TIME_EVENT = 'T';
+  static final byte CODEC_EVENT = 'E';
+
+  private ModelFormat() {
+  }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.artifact;
+
+import com.lympid.core.basicbehaviors.Constraint;
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.RelativeTimeEvent;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.BiTransitionBehavior;
+import com.lympid.core.behaviorstatemachines.BiTransitionConstraint;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.PseudoStateKind;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.StateBehavior;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.TransitionKind;
+import com.lympid.core.behaviorstatemachines.builder.BehaviorFactory;
+import com.lympid.core.behaviorstatemachines.builder.ConstraintFactory;
+import com.lympid.core.behaviorstatemachines.impl.FreezeVisitor;
+import com.lympid.core.behaviorstatemachines.impl.MutableConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.impl.MutableFinalState;
+import com.lympid.core.behaviorstatemachines.impl.MutablePseudoState;
+import com.lympid.core.behaviorstatemachines.impl.MutableRegion;
+import com.lympid.core.behaviorstatemachines.impl.MutableState;
+import com.lympid.core.behaviorstatemachines.impl.MutableStateMachine;
+import com.lympid.core.behaviorstatemachines.impl.MutableTransition;
+import com.lympid.core.behaviorstatemachines.impl.MutableVertex;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineMetaVisitor;
+import com.lympid.core.behaviorstatemachines.trace.EventCodec;
+import com.lympid.core.common.Trigger;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a state machine from a model artifact written by a
+ * {@link ModelWriter}.
+ *
+ * <p>
+ * The state machine is rebuilt as it was written: neither the builders nor the
+ * validators are run again. Only the metadata of the state machine are
+ * collected, which takes a single walk of the model. Behaviors written by
+ * class name are instantiated through the same factories as the builders use;
+ * the others are looked up in the {@link BehaviorRegistry}.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class ModelReader {
+
+  private static final PseudoStateKind[] PSEUDO_STATE_KINDS = PseudoStateKind.values();
+  private static final TransitionKind[] TRANSITION_KINDS = TransitionKind.values();
+  private final BehaviorRegistry registry;
+  private final EventCodec codec;
+
+  /**
+   * @param registry The behaviors which are not written by class name. May be
+   * null when the artifact has none.
+   */
+  public ModelReader(final BehaviorRegistry registry) {
+    this(registry, null);
+  }
+
+  /**
+   * @param registry The behaviors which are not written by class name. May be
+   * null when the artifact has none.
+   * @param codec Decodes the events written by the codec of the
+   * {@link ModelWriter}. May be null when the writer had none.
+   */
+  public ModelReader(final BehaviorRegistry registry, final EventCodec codec) {
+    this.registry = registry;
+    this.codec = codec;
+  }
+
+  public static StateMachine read(final Path file, final BehaviorRegistry registry) throws IOException {
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+      return new ModelReader(registry).read(is);
+    }
+  }
+
+  /**
+   * Reads a state machine.
+   *
+   * @param is The stream to read the artifact from. It is not closed.
+   * @return The state machine.
+   * @throws IOException When reading fails, the stream is not a model artifact
+   * or a behavior class cannot be found.
+   * @throws IllegalArgumentException When a behavior is missing from the
+   * registry.
+   */
+  public StateMachine read(final InputStream is) throws IOException {
+    DataInputStream in = new DataInputStream(is);
+    if (in.readInt() != ModelFormat.MAGIC) {
+      throw new IOException("Not a model artifact");
+    }
+    short version = in.readShort();
+    if (version != ModelFormat.VERSION) {
+      throw new IOException("Unsupported model artifact version: " + version);
+    }
+    MutableStateMachine[] machines = new MutableStateMachine[in.readInt()];
+    MutableRegion[] regions = new MutableRegion[in.readInt()];
+    MutableVertex[] vertices = new MutableVertex[in.readInt()];
+    MutableTransition[] transitions = new MutableTransition[in.readInt()];
+
+    for (int i = 0; i < machines.length; i++) {
+      machines[i] = new MutableStateMachine(readString(in));
+      machines[i].setName(readString(in));
+    }
+    for (int i = 0; i < regions.length; i++) {
+      regions[i] = new MutableRegion(readString(in));
+      regions[i].setName(readString(in));
+    }
+    for (int i = 0; i < vertices.length; i++) {
+      vertices[i] = readDeclaration(in);
+    }
+
+    for (MutableStateMachine m : machines) {
+      m.setRegions(readRegions(in, regions));
+      for (PseudoState cp : readPseudoStates(in, vertices)) {
+        m.connectionPoint().add(cp);
+      }
+    }
+    for (MutableRegion r : regions) {
+      r.setStateMachine(get(machines, in.readInt()));
+      r.setState((MutableState) get(vertices, in.readInt()));
+      int n = in.readInt();
+      for (int i = 0; i < n; i++) {
+        r.addVertex(vertices[in.readInt()]);
+      }
+    }
+    for (MutableVertex v : vertices) {
+      readContents(in, v, machines, regions, vertices);
+    }
+
+    for (int i = 0; i < transitions.length; i++) {
+      transitions[i] = readTransition(in, regions, vertices);
+    }
+    for (MutableVertex v : vertices) {
+      int n = in.readInt();
+      if (n == 0) {
+        v.setOutgoing(Collections.EMPTY_LIST);
+      } else {
+        List<Transition> outgoing = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          outgoing.add(transitions[in.readInt()]);
+        }
+        v.setOutgoing(outgoing);
+      }
+    }
+
+    MutableStateMachine machine = machines[0];
+    StateMachineMetaVisitor metaVisitor = new StateMachineMetaVisitor();
+    machine.accept(metaVisitor);
+    machine.setMetadata(metaVisitor.getMeta());
+    machine.accept(new FreezeVisitor());
+    return machine;
+  }
+
+  private MutableVertex readDeclaration(final DataInputStream in) throws IOException {
+    byte tag = in.readByte();
+    String id = readString(in);
+    String name = readString(in);
+    MutableVertex v;
+    switch (tag) {
+      case ModelFormat.STATE:
+        v = new MutableState(id);
+        break;
+      case ModelFormat.FINAL_STATE:
+        v = new MutableFinalState(id);
+        break;
+      case ModelFormat.PSEUDO_STATE:
+        v = new MutablePseudoState(id, PSEUDO_STATE_KINDS[in.readByte()]);
+        break;
+      case ModelFormat.REFERENCE:
+        v = new MutableConnectionPointReference(id);
+        break;
+      default:
+        throw new IOException("Unknown vertex: " + tag);
+    }
+    v.setName(name);
+    return v;
+  }
+
+  private void readContents(final DataInputStream in, final MutableVertex v, final MutableStateMachine[] machines, final MutableRegion[] regions, final MutableVertex[] vertices) throws IOException {
+    if (v instanceof MutableFinalState) {
+      return;
+    }
+    if (v instanceof MutableState) {
+      MutableState s = (MutableState) v;
+      s.setEntry(readStateBehaviors(in, "entry", s.getId()));
+      s.setExit(readStateBehaviors(in, "exit", s.getId()));
+      s.setDoActivity((StateBehavior) readBehavior(in, "activity", s.getId(), false));
+      s.setRegions(readRegions(in, regions));
+      s.setSubStateMachine(get(machines, in.readInt()));
+      s.connection((MutableConnectionPointReference) get(vertices, in.readInt()));
+      for (PseudoState cp : readPseudoStates(in, vertices)) {
+        s.connectionPoint().add(cp);
+      }
+    } else if (v instanceof MutablePseudoState) {
+      MutablePseudoState ps = (MutablePseudoState) v;
+      ps.setStateMachine(get(machines, in.readInt()));
+      ps.setState((MutableState) get(vertices, in.readInt()));
+    } else {
+      MutableConnectionPointReference ref = (MutableConnectionPointReference) v;
+      ref.setState((MutableState) get(vertices, in.readInt()));
+      ref.entry().addAll(readPseudoStates(in, vertices));
+      ref.exit().addAll(readPseudoStates(in, vertices));
+    }
+  }
+
+  private MutableTransition readTransition(final DataInputStream in, final MutableRegion[] regions, final MutableVertex[] vertices) throws IOException {
+    String id = readString(in);
+    String name = readString(in);
+    TransitionKind kind = TRANSITION_KINDS[in.readByte()];
+    MutableRegion container = regions[in.readInt()];
+    MutableVertex source = vertices[in.readInt()];
+    MutableVertex target = vertices[in.readInt()];
+    int n = in.readInt();
+    List<Trigger> triggers = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      triggers.add(new Trigger(readEvent(in)));
+    }
+    BiTransitionConstraint guard = (BiTransitionConstraint) readBehavior(in, "guard", id, true);
+    BiTransitionBehavior effect = (BiTransitionBehavior) readBehavior(in, "effect", id, false);
+
+    MutableTransition transition = new MutableTransition(container, source, target, guard, effect, kind, id);
+    transition.setName(name);
+    transition.triggers().addAll(triggers);
+    target.incoming().add(transition);
+    container.transition().add(transition);
+    return transition;
+  }
+
+  private Event readEvent(final DataInputStream in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case ModelFormat.STRING_EVENT:
+        return new StringEvent(in.readUTF());
+      case ModelFormat.TIME_EVENT:
+        return new RelativeTimeEvent(in.readLong(), TimeUnit.MILLISECONDS);
+      case ModelFormat.CODEC_EVENT:
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        if (codec == null) {
+          throw new IOException("No codec to decode the trigger events");
+        }
+        return codec.decode(payload);
+      default:
+        throw new IOException("Unknown event: " + tag);
+    }
+  }
+
+  private List<StateBehavior> readStateBehaviors(final DataInputStream in, final String slot, final String id) throws IOException {
+    int n = in.readInt();
+    if (n == 0) {
+      return Collections.EMPTY_LIST;
+    }
+    List<StateBehavior> behaviors = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      behaviors.add((StateBehavior) readBehavior(in, slot, id, false));
+    }
+    return behaviors;
+  }
+
+  private Object readBehavior(final DataInputStream in, final String slot, final String id, final boolean constraint) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case ModelFormat.NONE:
+        return null;
+      case ModelFormat.CLASS:
+        Class c = loadClass(in.readUTF());
+        return constraint ? ConstraintFactory.get(c) : BehaviorFactory.toBehavior(c);
+      case ModelFormat.OPPOSITE_CLASS:
+        return ConstraintFactory.getNegation((Class<? extends Constraint>) loadClass(in.readUTF()));
+      case ModelFormat.BOUND:
+        int index = in.readInt();
+        if (registry == null) {
+          throw new IllegalArgumentException("No " + slot + " #" + index + " registered for " + id);
+        }
+        return registry.get(slot, id, index);
+      default:
+        throw new IOException("Unknown behavior: " + tag);
+    }
+  }
+
+  private static Class loadClass(final String name) throws IOException {
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    try {
+      return Class.forName(name, true, loader == null ? ModelReader.class.getClassLoader() : loader);
+    } catch (ClassNotFoundException ex) {
+      throw new IOException("Unknown behavior class: " + name, ex);
+    }
+  }
+
+  private static List<Region> readRegions(final DataInputStream in, final MutableRegion[] regions) throws IOException {
+    int n = in.readInt();
+    List<Region> list = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      list.add(regions[in.readInt()]);
+    }
+    return list;
+  }
+
+  private static List<PseudoState> readPseudoStates(final DataInputStream in, final MutableVertex[] vertices) throws IOException {
+    int n = in.readInt();
+    List<PseudoState> list = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      list.add((PseudoState) vertices[in.readInt()]);
+    }
+    return list;
+  }
+
+  private static <T> T get(final T[] elements, final int index) {
+    return index < 0 ? null : elements[index];
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF().intern() : null;
+  }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.artifact;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.OppositeBiTransitionConstraint;
+import com.lympid.core.basicbehaviors.RelativeTimeEvent;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateBehavior;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.impl.CompoundTransition;
+import com.lympid.core.behaviorstatemachines.trace.EventCodec;
+import com.lympid.core.common.Trigger;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a state machine to a model artifact, to be read by a
+ * {@link ModelReader} without building nor validating it again.
+ *
+ * <p>
+ * Behaviors and guards are written by class name when their class is public,
+ * has a public default constructor and no instance field: such behaviors are
+ * instantiated by the reader the same way the builders instantiate behaviors
+ * given by class. Other behaviors, e.g. lambdas, are left to a
+ * {@link BehaviorRegistry} to bind when the artifact is read.</p>
+ *
+ * <p>
+ * Triggers of {@link StringEvent}s and {@link RelativeTimeEvent}s are always
+ * written. Other events are written by the {@link EventCodec} given to the
+ * writer.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class ModelWriter {
+
+  private final EventCodec codec;
+  private final Map<StateMachine, Integer> machines = new IdentityHashMap<>();
+  private final Map<Region, Integer> regions = new IdentityHashMap<>();
+  private final Map<Vertex, Integer> vertices = new IdentityHashMap<>();
+  private final List<StateMachine> machineList = new ArrayList<>();
+  private final List<Region> regionList = new ArrayList<>();
+  private final List<Vertex> vertexList = new ArrayList<>();
+  private final Map<Transition, Integer> transitions = new IdentityHashMap<>();
+  private DataOutputStream out;
+
+  public ModelWriter() {
+    this(null);
+  }
+
+  /**
+   * @param codec Encodes the events of the triggers which are neither
+   * {@link StringEvent}s nor {@link RelativeTimeEvent}s. May be null.
+   */
+  public ModelWriter(final EventCodec codec) {
+    this.codec = codec;
+  }
+
+  public static void write(final StateMachine machine, final Path file) throws IOException {
+    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+      new ModelWriter().write(machine, os);
+    }
+  }
+
+  /**
+   * Writes a state machine.
+   *
+   * @param machine A state machine, as returned by
+   * {@link com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder#newInstance()}.
+   * @param os The stream to write the artifact to. It is not closed.
+   * @throws IOException When writing fails.
+   * @throws IllegalArgumentException When the event of a trigger cannot be
+   * written.
+   */
+  public synchronized void write(final StateMachine machine, final OutputStream os) throws IOException {
+    machines.clear();
+    regions.clear();
+    vertices.clear();
+    machineList.clear();
+    regionList.clear();
+    vertexList.clear();
+    transitions.clear();
+    add(machine);
+    List<Transition> transitionList = new ArrayList<>();
+    for (Region r : regionList) {
+      for (Transition t : r.transition()) {
+        transitions.put(t, transitionList.size());
+        transitionList.add(t);
+      }
+    }
+
+    out = new DataOutputStream(os);
+    try {
+      out.writeInt(ModelFormat.MAGIC);
+      out.writeShort(ModelFormat.VERSION);
+      out.writeInt(machineList.size());
+      out.writeInt(regionList.size());
+      out.writeInt(vertexList.size());
+      out.writeInt(transitionList.size());
+
+      for (StateMachine m : machineList) {
+        writeString(m.getId());
+        writeString(m.getName());
+      }
+      for (Region r : regionList) {
+        writeString(r.getId());
+        writeString(r.getName());
+      }
+      for (Vertex v : vertexList) {
+        writeDeclaration(v);
+      }
+
+      for (StateMachine m : machineList) {
+        writeRegions(m.region());
+        writeVertices(m.connectionPoint());
+      }
+      for (Region r : regionList) {
+        out.writeInt(index(machines, r.stateMachine()));
+        out.writeInt(index(vertices, r.state()));
+        writeVertices(r.subVertex());
+      }
+      for (Vertex v : vertexList) {
+        writeContents(v);
+      }
+
+      for (Transition t : transitionList) {
+        writeTransition(t);
+      }
+      for (Vertex v : vertexList) {
+        List<Transition> outgoing = v instanceof FinalState ? Collections.EMPTY_LIST : modeled(v.outgoing());
+        out.writeInt(outgoing.size());
+        for (Transition t : outgoing) {
+          out.writeInt(index(transitions, t));
+        }
+      }
+      out.flush();
+    } finally {
+      out = null;
+    }
+  }
+
+  /**
+   * Gets the outgoing transitions of a vertex as modeled. The compound
+   * transitions of flattened chains of pseudo states are written as their
+   * first segment.
+   *
+   * @param outgoing The outgoing transitions of a vertex.
+   * @return The outgoing transitions of the vertex as modeled.
+   */
+  private static List<Transition> modeled(final Collection<? extends Transition> outgoing) {
+    List<Transition> list = new ArrayList<>(outgoing.size());
+    for (Transition t : outgoing) {
+      Transition m = t instanceof CompoundTransition ? ((CompoundTransition) t).segments().get(0) : t;
+      if (list.isEmpty() || list.get(list.size() - 1) != m) {
+        list.add(m);
+      }
+    }
+    return list;
+  }
+
+  private void add(final StateMachine machine) {
+    if (machine == null || machines.containsKey(machine)) {
+      return;
+    }
+    machines.put(machine, machineList.size());
+    machineList.add(machine);
+    for (PseudoState cp : machine.connectionPoint()) {
+      add(cp);
+    }
+    for (Region r : machine.region()) {
+      add(r);
+    }
+  }
+
+  private void add(final Region region) {
+    if (regions.containsKey(region)) {
+      return;
+    }
+    regions.put(region, regionList.size());
+    regionList.add(region);
+    for (Vertex v : region.subVertex()) {
+      add(v);
+    }
+  }
+
+  private void add(final Vertex vertex) {
+    if (vertex == null || vertices.containsKey(vertex)) {
+      return;
+    }
+    vertices.put(vertex, vertexList.size());
+    vertexList.add(vertex);
+    if (vertex instanceof State && !(vertex instanceof FinalState)) {
+      State s = (State) vertex;
+      add(s.subStateMachine());
+      for (PseudoState cp : s.connectionPoint()) {
+        add(cp);
+      }
+      add(s.connection());
+      for (Region r : s.region()) {
+        add(r);
+      }
+    }
+  }
+
+  private void writeDeclaration(final Vertex v) throws IOException {
+    if (v instanceof FinalState) {
+      out.writeByte(ModelFormat.FINAL_STATE);
+    } else if (v instanceof State) {
+      out.writeByte(ModelFormat.STATE);
+    } else if (v instanceof PseudoState) {
+      out.writeByte(ModelFormat.PSEUDO_STATE);
+    } else if (v instanceof ConnectionPointReference) {
+      out.writeByte(ModelFormat.REFERENCE);
+    } else {
+      throw new IllegalArgumentException("Unsupported vertex: " + v.getClass().getName());
+    }
+    writeString(v.getId());
+    writeString(v.getName());
+    if (v instanceof PseudoState) {
+      out.writeByte(((PseudoState) v).kind().ordinal());
+    }
+  }
+
+  private void writeContents(final Vertex v) throws IOException {
+    if (v instanceof FinalState) {
+      return;
+    }
+    if (v instanceof State) {
+      State s = (State) v;
+      writeBehaviors(s.entry());
+      writeBehaviors(s.exit());
+      writeBehavior(s.doActivity(), 0);
+      writeRegions(s.region());
+      out.writeInt(index(machines, s.subStateMachine()));
+      out.writeInt(index(vertices, s.connection()));
+      writeVertices(s.connectionPoint());
+    } else if (v instanceof PseudoState) {
+      PseudoState ps = (PseudoState) v;
+      out.writeInt(index(machines, ps.stateMachine()));
+      out.writeInt(index(vertices, ps.state()));
+    } else {
+      ConnectionPointReference ref = (ConnectionPointReference) v;
+      out.writeInt(index(vertices, ref.state()));
+      writeVertices(ref.entry());
+      writeVertices(ref.exit());
+    }
+  }
+
+  private void writeTransition(final Transition t) throws IOException {
+    writeString(t.getId());
+    writeString(t.getName());
+    out.writeByte(t.kind().ordinal());
+    out.writeInt(index(regions, t.container()));
+    out.writeInt(index(vertices, t.source()));
+    out.writeInt(index(vertices, t.target()));
+    out.writeInt(t.triggers().size());
+    for (Trigger tr : t.triggers()) {
+      writeEvent(tr.event());
+    }
+    if (t.guard() instanceof OppositeBiTransitionConstraint
+      && isInstantiable(((OppositeBiTransitionConstraint) t.guard()).opposite().getClass())) {
+      out.writeByte(ModelFormat.OPPOSITE_CLASS);
+      out.writeUTF(((OppositeBiTransitionConstraint) t.guard()).opposite().getClass().getName());
+    } else {
+      writeBehavior(t.guard(), 0);
+    }
+    writeBehavior(t.effect(), 0);
+  }
+
+  private void writeEvent(final Event event) throws IOException {
+    if (event.getClass() == StringEvent.class) {
+      out.writeByte(ModelFormat.STRING_EVENT);
+      out.writeUTF(event.toString());
+    } else if (event instanceof RelativeTimeEvent) {
+      out.writeByte(ModelFormat.TIME_EVENT);
+      out.writeLong(((RelativeTimeEvent) event).time());
+    } else {
+      byte[] payload = codec == null ? null : codec.encode(event);
+      if (payload == null) {
+        throw new IllegalArgumentException("The trigger event cannot be written: " + event);
+      }
+      out.writeByte(ModelFormat.CODEC_EVENT);
+      out.writeInt(payload.length);
+      out.write(payload);
+    }
+  }
+
+  private void writeBehaviors(final Collection<? extends StateBehavior> behaviors) throws IOException {
+    out.writeInt(behaviors.size());
+    int i = 0;
+    for (StateBehavior b : behaviors) {
+      writeBehavior(b, i++);
+    }
+  }
+
+  private void writeBehavior(final Object behavior, final int index) throws IOException {
+    if (behavior == null) {
+      out.writeByte(ModelFormat.NONE);
+    } else if (isInstantiable(behavior.getClass())) {
+      out.writeByte(ModelFormat.CLASS);
+      out.writeUTF(behavior.getClass().getName());
+    } else {
+      out.writeByte(ModelFormat.BOUND);
+      out.writeInt(index);
+    }
+  }
+
+  private void writeRegions(final Collection<? extends Region> list) throws IOException {
+    out.writeInt(list.size());
+    for (Region r : list) {
+      out.writeInt(index(regions, r));
+    }
+  }
+
+  private void writeVertices(final Collection<? extends Vertex> list) throws IOException {
+    out.writeInt(list.size());
+    for (Vertex v : list) {
+      out.writeInt(index(vertices, v));
+    }
+  }
+
+  private void writeString(final String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  private static <T> int index(final Map<T, Integer> map, final T element) {
+    if (element == null) {
+      return -1;
+    }
+    Integer i = map.get(element);
+    if (i == null) {
+      throw new IllegalArgumentException("Element not reachable from the state machine: " + element);
+    }
+    return i;
+  }
+
+  /**
+   * Checks whether instantiating a class with its default constructor gives
+   * a behavior equivalent to the one being written.
+   *
+   * @param c The class of a behavior.
+   * @return true when the class and its enclosing classes are public, it has
+   * a public default constructor and no instance field.
+   */
+  static boolean isInstantiable(final Class<?> c) {
+    if (c.isSynthetic() || c.isAnonymousClass() || c.isLocalClass()
+      || (c.isMemberClass() && !Modifier.isStatic(c.getModifiers()))) {
+      return false;
+    }
+    for (Class<?> k = c; k != null; k = k.getEnclosingClass()) {
+      if (!Modifier.isPublic(k.getModifiers())) {
+        return false;
+      }
+    }
+    try {
+      c.getConstructor();
+    } catch (NoSuchMethodException ex) {
+      return false;
+    }
+    for (Class<?> k = c; k != Object.class; k = k.getSuperclass()) {
+      for (Field f : k.getDeclaredFields()) {
+        if (!Modifier.isStatic(f.getModifiers())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+}
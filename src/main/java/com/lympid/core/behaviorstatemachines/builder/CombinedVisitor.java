@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.builder;
+
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+
+/**
+ * Visits a state machine with several visitors in a single pass. Each element
+ * is visited by all the visitors, in the given order, before moving on to the
+ * next element.
+ *
+ * @author Fabien Renaud
+ */
+final class CombinedVisitor extends SimpleVisitor {
+
+  private final SimpleVisitor[] visitors;
+
+  CombinedVisitor(final SimpleVisitor... visitors) {
+    this.visitors = visitors;
+  }
+
+  @Override
+  public void visit(final ConnectionPointReference visitable) {
+    for (SimpleVisitor v : visitors) {
+      v.visit(visitable);
+    }
+  }
+
+  @Override
+  public void visit(final State visitable) {
+    for (SimpleVisitor v : visitors) {
+      v.visit(visitable);
+    }
+  }
+
+  @Override
+  public void visit(final PseudoState visitable) {
+    for (SimpleVisitor v : visitors) {
+      v.visit(visitable);
+    }
+  }
+
+  @Override
+  public void visit(final FinalState visitable) {
+    for (SimpleVisitor v : visitors) {
+      v.visit(visitable);
+    }
+  }
+
+  @Override
+  public void visit(final Region visitable) {
+    for (SimpleVisitor v : visitors) {
+      v.visit(visitable);
+    }
+  }
+
+  @Override
+  public void visit(final StateMachine visitable) {
+    for (SimpleVisitor v : visitors) {
+      v.visit(visitable);
+    }
+  }
+
+  @Override
+  public void visit(final Transition visitable) {
+    for (SimpleVisitor v : visitors) {
+      v.visit(visitable);
+    }
+  }
+
+}
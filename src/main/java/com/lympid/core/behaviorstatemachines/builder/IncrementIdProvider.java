@@ -25,7 +25,7 @@ public class IncrementIdProvider implements IdProvider {
 
   @Override
   public String nextId() {
-    return Integer.toString(++count);
+    return Integer.toString(++count).intern();
   }
 
 }
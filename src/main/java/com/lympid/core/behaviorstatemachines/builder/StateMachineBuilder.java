@@ -17,10 +17,14 @@ package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.impl.FreezeVisitor;
+import com.lympid.core.behaviorstatemachines.impl.HierarchyFlattener;
 import com.lympid.core.behaviorstatemachines.impl.MutableRegion;
 import com.lympid.core.behaviorstatemachines.impl.MutableStateMachine;
+import com.lympid.core.behaviorstatemachines.impl.PseudoStateChainFlattener;
 import com.lympid.core.behaviorstatemachines.impl.StateMachineMetaVisitor;
 import com.lympid.core.behaviorstatemachines.validation.AllValidatorVisitor;
+import com.lympid.core.behaviorstatemachines.validation.ParallelValidatorVisitor;
 import com.lympid.core.common.UmlElement;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -42,6 +46,9 @@ public class StateMachineBuilder<C> implements Visitable {
   private String id;
   private final Map<String, RegionBuilder<C>> regionBuilders = new HashMap<>();
   private MutableStateMachine machine;
+  private boolean flattenPseudoStateChains;
+  private int flattenHierarchy;
+  private boolean parallelValidation;
 
   /**
    * Instantiates a state machine builder.
@@ -126,6 +133,66 @@ public class StateMachineBuilder<C> implements Visitable {
     return builder;
   }
 
+  /**
+   * Sets whether the chains of junctions, entry points and exit points are
+   * precomputed into compound transitions once the state machine is built and
+   * validated. Executors then cross a whole chain in a single step instead of
+   * one step per pseudo state. Disabled by default.
+   *
+   * <p>
+   * Must be set before the state machine is instantiated.</p>
+   *
+   * @param flatten true to flatten the chains of pseudo states.
+   * @return This builder.
+   *
+   * @see PseudoStateChainFlattener
+   */
+  public StateMachineBuilder<C> flattenPseudoStateChains(final boolean flatten) {
+    this.flattenPseudoStateChains = flatten;
+    return this;
+  }
+
+  /**
+   * Sets whether the hierarchy of composite states is compiled into an
+   * equivalent flat state machine made of the leaf states only, once the state
+   * machine is built and validated. Dispatching an event then never walks the
+   * enclosing composite states. Disabled by default.
+   *
+   * <p>
+   * The state machine is kept as modeled when it cannot be flattened or when
+   * the flat state machine would have more than {@code maxTransitions}
+   * transitions. Must be set before the state machine is instantiated.</p>
+   *
+   * @param maxTransitions The maximum number of transitions of the flat state
+   * machine, 0 to disable flattening.
+   * @return This builder.
+   *
+   * @see HierarchyFlattener
+   */
+  public StateMachineBuilder<C> flattenHierarchy(final int maxTransitions) {
+    this.flattenHierarchy = maxTransitions;
+    return this;
+  }
+
+  /**
+   * Sets whether the constraints of the elements of the state machine are
+   * checked in parallel when it is instantiated. Worth it for very large state
+   * machines only. Disabled by default.
+   *
+   * <p>
+   * When several elements are invalid, which one is reported is unspecified.
+   * Must be set before the state machine is instantiated.</p>
+   *
+   * @param parallel true to validate the state machine in parallel.
+   * @return This builder.
+   *
+   * @see ParallelValidatorVisitor
+   */
+  public StateMachineBuilder<C> parallelValidation(final boolean parallel) {
+    this.parallelValidation = parallel;
+    return this;
+  }
+
   /**
    * <strong>Builds and validates</strong> the state machine
    * <strong>once</strong>.
@@ -146,12 +213,36 @@ public class StateMachineBuilder<C> implements Visitable {
     if (machine == null) {
       accept(new IdMakerVisitor(new IncrementIdProvider()));
       MutableStateMachine m = build();
+      StateMachineMetaVisitor metaVisitor = new StateMachineMetaVisitor();
+      boolean metadataCollected = false;
 
-      m.accept(new AllValidatorVisitor());
+      if (parallelValidation) {
+        ParallelValidatorVisitor validator = new ParallelValidatorVisitor();
+        m.accept(validator);
+        validator.validate();
+      } else if (flattenHierarchy > 0 || flattenPseudoStateChains) {
+        m.accept(new AllValidatorVisitor());
+      } else {
+        /*
+         * The state machine is not transformed once validated: the metadata
+         * is collected in the same pass.
+         */
+        m.accept(new CombinedVisitor(new AllValidatorVisitor(), metaVisitor));
+        metadataCollected = true;
+      }
 
-      StateMachineMetaVisitor metaVisitor = new StateMachineMetaVisitor();
-      m.accept(metaVisitor);
+      MutableStateMachine flat = flattenHierarchy > 0 ? HierarchyFlattener.flatten(m, flattenHierarchy) : null;
+      if (flat != null) {
+        m = flat;
+      } else if (flattenPseudoStateChains) {
+        PseudoStateChainFlattener.flatten(m);
+      }
+
+      if (!metadataCollected) {
+        m.accept(metaVisitor);
+      }
       m.setMetadata(metaVisitor.getMeta());
+      m.accept(new FreezeVisitor());
       this.machine = m;
     }
     return machine;
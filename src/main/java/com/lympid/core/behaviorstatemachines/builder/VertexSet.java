@@ -17,13 +17,10 @@ package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
 import com.lympid.core.behaviorstatemachines.Vertex;
 import com.lympid.core.behaviorstatemachines.VertexUtils;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -43,7 +40,7 @@ final class VertexSet {
   private final Map<Vertex, Vertex> byVertex = new HashMap<>();
   private final Map<VertexBuilderReference, Vertex> byBuilder = new HashMap<>();
   private final Map<String, Vertex> byName = new HashMap<>();
-  private final List<State> subMachineStates = new ArrayList<>();
+  private final Map<StateMachine, State> subMachineStates = new HashMap<>();
 
   /**
    * Associates the specified vertex builder with the specified vertex instance
@@ -92,7 +89,7 @@ final class VertexSet {
     if (v == null) {
       byVertex.put(vertex, vertex);
       if (VertexUtils.subMachineState(vertex)) {
-        subMachineStates.add((State) vertex);
+        subMachineStates.putIfAbsent(((State) vertex).subStateMachine(), (State) vertex);
       }
       if (name != null && byName.put(name, vertex) != null) {
         throw new UnsupportedOperationException("Two vertices have the same name. Although that should allowed, it is unsupported at the moment. Name: " + name);
@@ -150,45 +147,41 @@ final class VertexSet {
       return v1.container();
     }
 
-    Deque<Region> r1 = parentRegions(v1);
-    Deque<Region> r2 = parentRegions(v2);
-    Region leastCommonRegion = null;
-    while (!r1.isEmpty() && !r2.isEmpty() && r1.peek().equals(r2.peek())) {
-      leastCommonRegion = r1.pop();
-      r2.pop();
+    /*
+     * Brings both regions at the same depth then walks up both of them until
+     * they meet.
+     */
+    Region r1 = v1.container();
+    Region r2 = v2.container();
+    int d1 = depth(r1);
+    int d2 = depth(r2);
+    for (; d1 > d2; d1--) {
+      r1 = parentRegion(r1);
     }
-    return leastCommonRegion;
+    for (; d2 > d1; d2--) {
+      r2 = parentRegion(r2);
+    }
+    while (r1 != null && !r1.equals(r2)) {
+      r1 = parentRegion(r1);
+      r2 = parentRegion(r2);
+    }
+    return r1;
   }
 
   /**
-   * Builds the stack of regions that is between the top level state machine and
-   * the specified vertex. The top region in the stack is always the region of
-   * the top level state machine; the last is always the region directly parent
-   * to the given vertex.
-   *
-   * <p>
-   * For instance, let a vertex V belong to a region R1, which is defined as the
-   * region of the composite state S, which belongs to a region R0, which is the
-   * region of the top level state machine. Then, the stack of regions this
-   * method returns for V is [R0, R1], with R0 being the region at the top of
-   * the stack.
-   * </p>
+   * Gets the number of regions between the top level state machine and the
+   * specified region, both included. The depth of a region of the top level
+   * state machine is 1.
    *
-   * @param vertex The vertex for which to find its region path from the top
-   * level state machine.
-   * @return An ordered stack of regions. The top region in the stack is always
-   * the region of the top level state machine; the last is always the region
-   * directly parent to the given vertex.
+   * @param region A region.
+   * @return The depth of the region.
    */
-  private Deque<Region> parentRegions(final Vertex vertex) {
-    Deque<Region> parents = new ArrayDeque<>();
-
-    Region r = vertex.container();
-    do {
-      parents.push(r);
-    } while ((r = parentRegion(r)) != null);
-
-    return parents;
+  private int depth(final Region region) {
+    int depth = 0;
+    for (Region r = region; r != null; r = parentRegion(r)) {
+      depth++;
+    }
+    return depth;
   }
 
   /**
@@ -211,13 +204,8 @@ final class VertexSet {
       return region.state().container();
     }
 
-    for (State s : subMachineStates) {
-      if (s.subStateMachine().equals(region.stateMachine())) {
-        return s.container();
-      }
-    }
-
-    return null;
+    State s = subMachineStates.get(region.stateMachine());
+    return s == null ? null : s.container();
   }
 
   /**
@@ -67,6 +67,13 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
   private Object context;
   private ExecutorConfiguration configuration = ExecutorConfiguration.DEFAULT;
   private ExecutorListener listeners = ExecutorListener.DEFAULT;
+  private List<String> firedTransitions;
+  /**
+   * Incremented by {@link #reset()}. The time events and the activities of a
+   * former run are ignored.
+   */
+  private volatile int generation;
+  private boolean recycled;
 
   public AbstractStateMachineExecutor(final int id) {
     this.id = id;
@@ -83,6 +90,9 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
 
   @Override
   public void setStateMachine(final StateMachine machine) {
+    if (machine != this.machine) {
+      this.recycled = false;
+    }
     this.machine = machine;
   }
 
@@ -95,6 +105,14 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
     return StateMachineStateFactory.get(machine.metadata());
   }
 
+  private StateMachineState newMachineState() {
+    if (recycled) {
+      recycled = false;
+      return machineState;
+    }
+    return createMachineState(machine);
+  }
+
   @Override
   public ExecutorConfiguration configuration() {
     if (configuration == ExecutorConfiguration.DEFAULT) {
@@ -127,7 +145,7 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
       throw new RuntimeException(); // TODO: custom exception
     }
 
-    machineState = createMachineState(machine);
+    machineState = newMachineState();
     if (configuration.autoStart()) {
       start();
     }
@@ -152,36 +170,107 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
     this.context = snapshot.context() instanceof Copyable
             ? ((Copyable) snapshot.context()).copy()
             : snapshot.context();
-    this.machineState = createMachineState(machine);
+    this.machineState = newMachineState();
     this.machineState.resume(snapshot);
     doAllActivities();
     scheduleAllTimeEvents();
   }
 
+  /**
+   * Stops the state machine and brings this executor back to where it was
+   * before {@link #go()}, ready for another context. The activities and the
+   * time events of the active states are cancelled and the ones already under
+   * way are ignored. The state machine, the configuration and the listeners
+   * are kept while the context is dropped. The machine state is reset and
+   * reused by the next {@link #go()}.
+   */
+  public void reset() {
+    generation++;
+    if (machineState != null) {
+      recycled = machineState.reset();
+    }
+    context = null;
+  }
+
   @Override
   public void take(final Event event) {
+    takeEvent(event);
+  }
+
+  /**
+   * Takes the given event and reports the outcome of the run-to-completion
+   * step it triggered.
+   *
+   * @param event The event to take.
+   * @return The outcome of the step.
+   */
+  protected StepResult step(final Event event) {
+    final List<String> fired = new ArrayList<>();
+    boolean accepted = step(event, fired);
+    return stepResult(event, accepted, fired);
+  }
+
+  /**
+   * Takes the given event and collects the ids of the transitions fired by the
+   * run-to-completion step it triggered.
+   *
+   * @param event The event to take.
+   * @param fired The list receiving the ids of the fired transitions.
+   * @return Whether the event was accepted.
+   */
+  boolean step(final Event event, final List<String> fired) {
+    firedTransitions = fired;
+    try {
+      return takeEvent(event);
+    } finally {
+      firedTransitions = null;
+    }
+  }
+
+  StepResult stepResult(final Event event, final boolean accepted, final List<String> fired) {
+    return new StepResult(event, accepted, fired, machineState);
+  }
+
+  private boolean takeEvent(final Event event) {
+    onMachineStepStarted(event);
+    boolean accepted = false;
+    try {
+      accepted = fireEvent(event);
+      return accepted;
+    } finally {
+      onMachineStepEnded(event, accepted);
+    }
+  }
+
+  private boolean fireEvent(final Event event) {
     if (!machineState.hasStarted()) {
       start();
     }
-    if (machineState.isTerminated()) {
+    if (machineState.isTerminated() || !machineState.accepts(event)) {
       onEventDenied(event);
-      return;
+      return false;
     }
 
     /*
      * Fire all the transition paths found for the given event applied to the
      * active state configuration.
      */
-    fireManyAndBeyond(event, transitionPaths(event, machineState.activeStates()));
+    return fireManyAndBeyond(event, transitionPaths(event, machineState.activeStates()));
   }
 
   protected void take(final Event event, final State state) {
-    if (machineState.isTerminated() || !machineState.isActive(state)) {
-      onEventDenied(event);
-      return;
-    }
+    onMachineStepStarted(event);
+    boolean accepted = false;
+    try {
+      if (machineState.isTerminated() || !machineState.isActive(state)) {
+        onEventDenied(event);
+        return;
+      }
 
-    fireOneAndBeyond(event, transitionPath(event, state));
+      accepted = fireOneAndBeyond(event, transitionPath(event, state));
+    } finally {
+      onMachineStepEnded(event, accepted);
+    }
   }
 
   protected void takeCompletionEvent() {
@@ -192,6 +281,95 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
     postFire();
   }
 
+  /**
+   * Takes a time event scheduled by the given generation of this executor. The
+   * event is ignored if the executor has been reset since.
+   *
+   * <p>
+   * Executors serializing their steps override this method so that the
+   * generation is checked under their lock or on the thread running their
+   * steps, and not before.</p>
+   *
+   * @param event The time event.
+   * @param state The state that scheduled the time event.
+   * @param generation The generation that scheduled the time event.
+   */
+  void take(final Event event, final State state, final int generation) {
+    if (isGeneration(generation)) {
+      take(event, state);
+    }
+  }
+
+  /**
+   * Takes the completion event of an activity started by the given generation
+   * of this executor. The completion is ignored if the executor has been reset
+   * since. Overridden like {@link #take(Event, State, int)}.
+   *
+   * @param state The state whose activity completed.
+   * @param generation The generation that started the activity.
+   */
+  void takeCompletionEvent(final State state, final int generation) {
+    if (completeActivity(state, generation)) {
+      takeCompletionEvent();
+    }
+  }
+
+  boolean isGeneration(final int generation) {
+    return generation == this.generation;
+  }
+
+  /**
+   * Records the completion of the activity of the given state.
+   *
+   * @param state The state whose activity completed.
+   * @param generation The generation that started the activity.
+   * @return {@code true} if the activity belongs to the current run and a
+   * completion event is due.
+   */
+  boolean completeActivity(final State state, final int generation) {
+    return isGeneration(generation) && machineState.activityCompleted(state);
+  }
+
+  /**
+   * Terminates the state machine right away, without running any exit
+   * behavior nor effect. The activities and the time events of the active
+   * states are cancelled. Subsequent events are denied.
+   */
+  protected void abort() {
+    if (machineState == null || machineState.isTerminated()) {
+      return;
+    }
+
+    machineState.pause();
+    terminate();
+    if (listeners.hasMachineTerminatedListener()) {
+      listeners.onMachineTerminated(this, machine, context);
+    }
+  }
+
+  /**
+   * Notifies the listeners that a step of the state machine took too long.
+   *
+   * @param duration The wall time of the step, in nanoseconds.
+   */
+  protected void stepOverrun(final long duration) {
+    if (listeners.hasMachineStepOverrunListener()) {
+      listeners.onMachineStepOverrun(this, machine, context, duration);
+    }
+  }
+
+  /**
+   * Notifies the listeners of the time an item of the state machine waited
+   * in a queue before running.
+   *
+   * @param duration The queue wait, in nanoseconds.
+   */
+  protected void queueWait(final long duration) {
+    if (listeners.hasMachineQueueWaitListener()) {
+      listeners.onMachineQueueWait(this, machine, context, duration);
+    }
+  }
+
   protected Future scheduleEvent(final TimeEvent event, final State state, final long delay) {
     return configuration.executor().schedule(new RunnableEvent(event, state), delay, TimeUnit.MILLISECONDS);
   }
@@ -296,21 +474,25 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
     status.setEventTimers(futures);
   }
 
-  private void fireManyAndBeyond(final Event event, final Collection<TreeNode<Transition>> paths) {
+  private boolean fireManyAndBeyond(final Event event, final Collection<TreeNode<Transition>> paths) {
     if (fireMany(event, paths)) {
       postFire();
-    } else {
-      onEventDenied(event);
-      // TODO: deferred triggers
+      return true;
     }
+
+    onEventDenied(event);
+    // TODO: deferred triggers
+    return false;
   }
 
-  private void fireOneAndBeyond(final Event event, final TreeNode<Transition> path) {
+  private boolean fireOneAndBeyond(final Event event, final TreeNode<Transition> path) {
     if (fireOne(event, path)) {
       postFire();
+      return true;
     } else {
       onEventDenied(event);
       // TODO: deferred triggers
+      return false;
     }
   }
 
@@ -371,6 +553,13 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
 
   private void fire(final Event event, final TreeNode<Transition> transitionNode) {
     Transition transition = transitionNode.content();
+    if (transition instanceof CompoundTransition) {
+      fire(event, (CompoundTransition) transition, transitionNode.children());
+      return;
+    }
+    if (firedTransitions != null) {
+      firedTransitions.add(transition.getId());
+    }
 
     if (listeners.hasTransitionStartedListener()) {
       listeners.onTransitionStarted(this, machine, context, event, transition);
@@ -395,6 +584,46 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
     }
   }
 
+  /**
+   * Fires the segments of a compound transition as if the pseudo states between
+   * them were entered one at a time.
+   *
+   * @param event The event that triggered the transition.
+   * @param transition The compound transition.
+   * @param paths The transitions to fire from the target of the compound
+   * transition.
+   */
+  private void fire(final Event event, final CompoundTransition transition, final List<TreeNode<Transition>> paths) {
+    final List<Transition> segments = transition.segments();
+    final int last = segments.size() - 1;
+    Event e = event;
+    for (int i = 0; i <= last; i++) {
+      Transition t = segments.get(i);
+      if (firedTransitions != null) {
+        firedTransitions.add(t.getId());
+      }
+
+      if (listeners.hasTransitionStartedListener()) {
+        listeners.onTransitionStarted(this, machine, context, e, t);
+      }
+
+      leave(t);
+      transitionEffect(e, t);
+      if (i == last) {
+        enter(t, t.target(), paths);
+      } else {
+        entry(activationPath(t.target()));
+      }
+      e = CompletionEvent.INSTANCE;
+    }
+
+    if (listeners.hasTransitionEndedListener()) {
+      for (int i = last; i >= 0; i--) {
+        listeners.onTransitionEnded(this, machine, context, i == 0 ? event : CompletionEvent.INSTANCE, segments.get(i));
+      }
+    }
+  }
+
   /*
    *
    * Leave methods
@@ -427,6 +656,12 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
   }
 
   private void leaveState(final State state) {
+    if (listeners.hasStateDwellListener()) {
+      StateStatus status = machineState.status(state);
+      if (status != null) {
+        listeners.onStateDwell(this, machine, context, state, System.currentTimeMillis() - status.getActivationTime());
+      }
+    }
     machineState.deactivate(state);
 
     if (!state.exit().isEmpty()) {
@@ -819,6 +1054,16 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
   }
 
   private boolean transitionGuard(final Event event, final Transition transition) {
+    if (transition instanceof CompoundTransition) {
+      Event e = event;
+      for (Transition t : ((CompoundTransition) transition).segments()) {
+        if (!transitionGuard(e, t)) {
+          return false;
+        }
+        e = CompletionEvent.INSTANCE;
+      }
+      return true;
+    }
     if (transition.guard() == null) {
       return true;
     }
@@ -884,6 +1129,18 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
     }
   }
 
+  private void onMachineStepStarted(final Event event) {
+    if (listeners.hasMachineStepStartedListener()) {
+      listeners.onMachineStepStarted(this, machine, context, event);
+    }
+  }
+
+  private void onMachineStepEnded(final Event event, final boolean accepted) {
+    if (listeners.hasMachineStepEndedListener()) {
+      listeners.onMachineStepEnded(this, machine, context, event, accepted);
+    }
+  }
+
   private void onEventDenied(final Event event) {
     if (listeners.hasEventDeniedListener()) {
       listeners.onEventDenied(this, machine, context, event);
@@ -900,10 +1157,12 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
 
     private final AbstractStateMachineExecutor executor;
     private final State state;
+    private final int generation;
 
     public RunnableActivity(final AbstractStateMachineExecutor executor, final State state) {
       this.executor = executor;
       this.state = state;
+      this.generation = executor.generation;
     }
 
     @Override
@@ -926,9 +1185,7 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
         }
       }
 
-      if (machineState.activityCompleted(state)) {
-        takeCompletionEvent();
-      }
+      takeCompletionEvent(state, generation);
     }
 
   }
@@ -937,15 +1194,17 @@ public abstract class AbstractStateMachineExecutor implements StateMachineExecut
 
     private final State state;
     private final Event event;
+    private final int generation;
 
     public RunnableEvent(final Event event, final State state) {
       this.state = state;
       this.event = event;
+      this.generation = AbstractStateMachineExecutor.this.generation;
     }
 
     @Override
     public void run() {
-      take(event, state);
+      take(event, state, generation);
     }
 
   }
@@ -15,6 +15,7 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.basicbehaviors.Event;
 import com.lympid.core.behaviorstatemachines.FinalState;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.PseudoStateKind;
@@ -22,6 +23,9 @@ import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
 import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,6 +45,9 @@ abstract class AbstractStateMachineState extends ResumableStateMachineState {
   private final Map<State, StateStatus> activeStateStatutes;
   private final Set<State> completedStates;
   private final Map<PseudoState, Set<Transition>> joins;
+  private final StateMachineMeta metadata;
+  private final int[] acceptingStates;
+  private final BitSet acceptedEvents;
 
   protected AbstractStateMachineState(final MutableStateConfiguration activeStates, final StateMachineMeta metadata) {
     super(metadata);
@@ -50,6 +57,9 @@ abstract class AbstractStateMachineState extends ResumableStateMachineState {
     this.activeStateStatutes = new HashMap<>();
     this.completedStates = new HashSet<>();
     this.joins = hashMap(metadata.countOf(PseudoStateKind.JOIN));
+    this.metadata = metadata;
+    this.acceptingStates = new int[metadata.countOfEvents()];
+    this.acceptedEvents = new BitSet(acceptingStates.length);
   }
 
   private Map hashMap(final int size) {
@@ -94,6 +104,12 @@ abstract class AbstractStateMachineState extends ResumableStateMachineState {
     }
 
     activeStateStatutes.put(state, new StateStatus(state));
+    BitSet events = metadata.acceptedEvents(state);
+    for (int i = events.nextSetBit(0); i >= 0; i = events.nextSetBit(i + 1)) {
+      if (acceptingStates[i]++ == 0) {
+        acceptedEvents.set(i);
+      }
+    }
     if (state.region().isEmpty() && state.doActivity() == null) {
       completedStates.add(state);
     }
@@ -120,10 +136,26 @@ abstract class AbstractStateMachineState extends ResumableStateMachineState {
     StateStatus status = activeStateStatutes.remove(state);
     assert status != null;
 
+    BitSet events = metadata.acceptedEvents(state);
+    for (int i = events.nextSetBit(0); i >= 0; i = events.nextSetBit(i + 1)) {
+      if (--acceptingStates[i] == 0) {
+        acceptedEvents.clear(i);
+      }
+    }
+
     clearActivity(status);
     clearEventTimers(status);
   }
 
+  @Override
+  public boolean accepts(final Event event) {
+    if (acceptingStates.length == 0) {
+      return true;
+    }
+    int ordinal = metadata.eventOrdinal(event);
+    return ordinal >= 0 && acceptedEvents.get(ordinal);
+  }
+
   @Override
   public StateStatus status(final State state) {
     return activeStateStatutes.get(state);
@@ -272,4 +304,21 @@ abstract class AbstractStateMachineState extends ResumableStateMachineState {
       clearEventTimers(status);
     }
   }
+
+  @Override
+  void clear() {
+    if (activeStates.state() != null) {
+      for (Object child : new ArrayList<>(activeStates.children())) {
+        activeStates.removeChild((MutableStateConfiguration) child);
+      }
+      activeStates.clear();
+    }
+    nodesByRegion.clear();
+    histories.clear();
+    activeStateStatutes.clear();
+    completedStates.clear();
+    joins.clear();
+    Arrays.fill(acceptingStates, 0);
+    acceptedEvents.clear();
+  }
 }
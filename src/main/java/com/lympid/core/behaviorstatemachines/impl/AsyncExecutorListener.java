@@ -0,0 +1,383 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.listener.AllListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepOverrunListener;
+import com.lympid.core.behaviorstatemachines.listener.StateDwellListener;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Listener moving the work of another listener out of the run-to-completion
+ * steps.
+ *
+ * <p>
+ * Every callback copies its arguments into a preallocated
+ * {@link ExecutorEventRecord} of a ring buffer and returns. A dedicated
+ * consumer thread hands the records over to the {@link Handler} in the order
+ * they were published. Consecutive records available at once are delivered as
+ * a batch, the last record of which is flagged. The ring buffer supports
+ * several producers, so one instance may be registered on many executors.</p>
+ *
+ * <p>
+ * When the ring buffer is full, the {@link Overflow overflow policy} decides
+ * whether the callback drops its record or waits for the consumer.</p>
+ *
+ * @param <C> Type of the context of the state machines. Contexts are never
+ * recorded.
+ *
+ * @author Fabien Renaud
+ */
+public final class AsyncExecutorListener<C> implements AllListener<C>, MachineStepOverrunListener<C>, StateDwellListener<C>, AutoCloseable {
+
+  private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  /**
+   * Value of the tail once the consumer thread has stopped. No slot can be
+   * claimed anymore.
+   */
+  private static final long CLOSED = -1;
+  private final Handler handler;
+  private final Overflow overflow;
+  private final ExecutorEventRecord[] records;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final Thread consumer;
+  private volatile long delivered;
+  private volatile boolean waiting;
+  private volatile boolean running = true;
+
+  public AsyncExecutorListener(final Handler handler, final int capacity, final Overflow overflow) {
+    this(handler, capacity, overflow, Executors.defaultThreadFactory());
+  }
+
+  /**
+   * @param handler Receives the records on the consumer thread.
+   * @param capacity The number of records of the ring buffer, rounded up to a
+   * power of two.
+   * @param overflow What callbacks do when the ring buffer is full.
+   * @param threadFactory Creates the consumer thread.
+   */
+  public AsyncExecutorListener(final Handler handler, final int capacity, final Overflow overflow, final ThreadFactory threadFactory) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("The capacity must be in ]0, 2^30]: " + capacity);
+    }
+    this.handler = handler;
+    this.overflow = overflow;
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.records = new ExecutorEventRecord[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      records[i] = new ExecutorEventRecord();
+      sequences.set(i, i);
+    }
+    this.mask = size - 1;
+
+    this.consumer = threadFactory.newThread(this::consume);
+    this.consumer.start();
+  }
+
+  /**
+   * Gets the number of records dropped because the ring buffer was full or
+   * the listener was closed.
+   *
+   * @return The number of dropped records.
+   */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  public long delivered() {
+    return delivered;
+  }
+
+  /**
+   * Gets the number of records the handler threw an exception for.
+   *
+   * @return The number of failed deliveries.
+   */
+  public long failures() {
+    return failures.sum();
+  }
+
+  public int capacity() {
+    return records.length;
+  }
+
+  /**
+   * Stops the consumer thread once it has delivered the records already
+   * published, including the ones being published by callbacks running
+   * concurrently. Callbacks invoked afterwards drop their records.
+   *
+   * <p>
+   * If interrupted while waiting for the consumer thread, returns with the
+   * interrupt status set. The consumer thread still stops on its own.</p>
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(consumer);
+    try {
+      consumer.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void publish(final ExecutorEvent kind, final StateMachineExecutor executor, final StateMachine machine, final Event event, final String stateId, final String transitionId, final Exception exception, final long duration) {
+    long pos;
+    int index;
+    for (;;) {
+      if (!running) {
+        dropped.increment();
+        return;
+      }
+      pos = tail.get();
+      if (pos == CLOSED) {
+        dropped.increment();
+        return;
+      }
+      index = (int) pos & mask;
+      long seq = sequences.get(index);
+      if (seq == pos) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+      } else if (seq < pos) {
+        /*
+         * The slot still holds the record published one lap earlier.
+         */
+        if (overflow == Overflow.DROP) {
+          dropped.increment();
+          return;
+        }
+        Thread.yield();
+      }
+    }
+
+    records[index].set(kind, executor.getId(), machine == null ? null : machine.getId(), event, stateId, transitionId, exception, duration);
+    sequences.set(index, pos + 1);
+    if (waiting) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  private void consume() {
+    long head = 0;
+    for (;;) {
+      int index = (int) head & mask;
+      if (sequences.get(index) == head + 1) {
+        ExecutorEventRecord record = records[index];
+        boolean endOfBatch = sequences.get((int) (head + 1) & mask) != head + 2;
+        try {
+          handler.onRecord(record, endOfBatch);
+        } catch (RuntimeException ex) {
+          failures.increment();
+        }
+        record.clear();
+        sequences.set(index, head + records.length);
+        head++;
+        delivered = head;
+      } else if (!running && head == tail.get()) {
+        /*
+         * Every claimed slot has been delivered. Closing the tail fails if a
+         * callback claims one more in the meantime, which is then delivered.
+         */
+        if (tail.compareAndSet(head, CLOSED)) {
+          return;
+        }
+      } else if (!running) {
+        /*
+         * A callback claimed the slot and is still filling it.
+         */
+        Thread.yield();
+      } else {
+        waiting = true;
+        if (sequences.get(index) != head + 1 && running) {
+          LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        waiting = false;
+      }
+    }
+  }
+
+  @Override
+  public void onEventAccepted(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    publish(ExecutorEvent.EVENT_ACCEPTED, executor, machine, event, null, null, null, 0);
+  }
+
+  @Override
+  public void onEventDeferred(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    publish(ExecutorEvent.EVENT_DEFERRED, executor, machine, event, null, null, null, 0);
+  }
+
+  @Override
+  public void onEventDenied(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    publish(ExecutorEvent.EVENT_DENIED, executor, machine, event, null, null, null, 0);
+  }
+
+  @Override
+  public void onMachineStarted(StateMachineExecutor executor, StateMachine machine, C context) {
+    publish(ExecutorEvent.MACHINE_STARTED, executor, machine, null, null, null, null, 0);
+  }
+
+  @Override
+  public void onMachineTerminated(StateMachineExecutor executor, StateMachine machine, C context) {
+    publish(ExecutorEvent.MACHINE_TERMINATED, executor, machine, null, null, null, null, 0);
+  }
+
+  @Override
+  public void onMachineStepOverrun(StateMachineExecutor executor, StateMachine machine, C context, long duration) {
+    publish(ExecutorEvent.MACHINE_STEP_OVERRUN, executor, machine, null, null, null, null, duration);
+  }
+
+  @Override
+  public void onStateActivityBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    publish(ExecutorEvent.STATE_ACTIVITY_BEFORE_EXECUTION, executor, machine, null, state.getId(), null, null, 0);
+  }
+
+  @Override
+  public void onStateActivityAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    publish(ExecutorEvent.STATE_ACTIVITY_AFTER_EXECUTION, executor, machine, null, state.getId(), null, null, 0);
+  }
+
+  @Override
+  public void onStateActivityException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    publish(ExecutorEvent.STATE_ACTIVITY_EXCEPTION, executor, machine, null, state.getId(), null, exception, 0);
+  }
+
+  @Override
+  public void onStateDwell(StateMachineExecutor executor, StateMachine machine, C context, State state, long duration) {
+    publish(ExecutorEvent.STATE_DWELL, executor, machine, null, state.getId(), null, null, duration);
+  }
+
+  @Override
+  public void onStateEnterBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    publish(ExecutorEvent.STATE_ENTER_BEFORE_EXECUTION, executor, machine, null, state.getId(), null, null, 0);
+  }
+
+  @Override
+  public void onStateEnterAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    publish(ExecutorEvent.STATE_ENTER_AFTER_EXECUTION, executor, machine, null, state.getId(), null, null, 0);
+  }
+
+  @Override
+  public void onStateEnterException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    publish(ExecutorEvent.STATE_ENTER_EXCEPTION, executor, machine, null, state.getId(), null, exception, 0);
+  }
+
+  @Override
+  public void onStateExitBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    publish(ExecutorEvent.STATE_EXIT_BEFORE_EXECUTION, executor, machine, null, state.getId(), null, null, 0);
+  }
+
+  @Override
+  public void onStateExitAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    publish(ExecutorEvent.STATE_EXIT_AFTER_EXECUTION, executor, machine, null, state.getId(), null, null, 0);
+  }
+
+  @Override
+  public void onStateExitException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    publish(ExecutorEvent.STATE_EXIT_EXCEPTION, executor, machine, null, state.getId(), null, exception, 0);
+  }
+
+  @Override
+  public void onTransitionStarted(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    publish(ExecutorEvent.TRANSITION_STARTED, executor, machine, event, null, transition.getId(), null, 0);
+  }
+
+  @Override
+  public void onTransitionEnded(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    publish(ExecutorEvent.TRANSITION_ENDED, executor, machine, event, null, transition.getId(), null, 0);
+  }
+
+  @Override
+  public void onTransitionGuardBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    publish(ExecutorEvent.TRANSITION_GUARD_BEFORE_EXECUTION, executor, machine, event, null, transition.getId(), null, 0);
+  }
+
+  @Override
+  public void onTransitionGuardAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    publish(ExecutorEvent.TRANSITION_GUARD_AFTER_EXECUTION, executor, machine, event, null, transition.getId(), null, 0);
+  }
+
+  @Override
+  public void onTransitionGuardException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
+    publish(ExecutorEvent.TRANSITION_GUARD_EXCEPTION, executor, machine, event, null, transition.getId(), exception, 0);
+  }
+
+  @Override
+  public void onTransitionEffectBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    publish(ExecutorEvent.TRANSITION_EFFECT_BEFORE_EXECUTION, executor, machine, event, null, transition.getId(), null, 0);
+  }
+
+  @Override
+  public void onTransitionEffectAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    publish(ExecutorEvent.TRANSITION_EFFECT_AFTER_EXECUTION, executor, machine, event, null, transition.getId(), null, 0);
+  }
+
+  @Override
+  public void onTransitionEffectException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
+    publish(ExecutorEvent.TRANSITION_EFFECT_EXCEPTION, executor, machine, event, null, transition.getId(), exception, 0);
+  }
+
+  /**
+   * Receives the records on the consumer thread.
+   */
+  public interface Handler {
+
+    /**
+     * @param record The record, only valid during this call.
+     * @param endOfBatch true if no other record is available yet. Handlers
+     * buffering their output should flush it.
+     */
+    void onRecord(ExecutorEventRecord record, boolean endOfBatch);
+  }
+
+  /**
+   * What callbacks do when the ring buffer is full.
+   */
+  public enum Overflow {
+
+    /**
+     * Drops the record and counts it. The run-to-completion step is never
+     * delayed.
+     */
+    DROP,
+    /**
+     * Waits for the consumer to free a slot. No record is lost but a slow
+     * handler slows the state machines down.
+     */
+    BLOCK
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.BiTransitionBehavior;
+import com.lympid.core.behaviorstatemachines.BiTransitionConstraint;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.TransitionKind;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.VertexUtils;
+import com.lympid.core.behaviorstatemachines.Visitor;
+import com.lympid.core.common.Trigger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chain of transitions going through junctions, entry points and exit points,
+ * precomputed by the {@link PseudoStateChainFlattener}.
+ *
+ * <p>
+ * A compound transition has the source and the triggers of its first segment
+ * and the target of its last one. Its guard is the conjunction of the guards of
+ * its segments and its effect runs the effects of its segments in order. The
+ * first segment is given the event which triggered the transition, the
+ * following ones the {@link CompletionEvent}, as when the pseudo states are
+ * crossed one at a time.</p>
+ *
+ * <p>
+ * Compound transitions only appear as outgoing transitions of vertices. The
+ * regions keep the transitions as modeled. Executors fire the segments one
+ * after another, leaving and entering states between them, so that listeners
+ * see the same transitions as for the model without compound transitions.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class CompoundTransition implements Transition {
+
+  private final String id;
+  private final List<Transition> segments;
+  private final BiTransitionConstraint guard;
+  private final BiTransitionBehavior effect;
+
+  CompoundTransition(final List<Transition> segments) {
+    assert segments.size() > 1;
+    this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+    StringBuilder sb = new StringBuilder();
+    for (Transition t : segments) {
+      if (sb.length() > 0) {
+        sb.append('+');
+      }
+      sb.append(t.getId());
+    }
+    this.id = sb.toString();
+    this.guard = new Guard(this.segments);
+    this.effect = new Effect(this.segments);
+  }
+
+  /**
+   * @return The transitions of the chain, in firing order.
+   */
+  public List<Transition> segments() {
+    return segments;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public String getName() {
+    return segments.get(0).getName();
+  }
+
+  @Override
+  public TransitionKind kind() {
+    return segments.get(0).kind();
+  }
+
+  @Override
+  public Collection<? extends Trigger> triggers() {
+    return segments.get(0).triggers();
+  }
+
+  @Override
+  public BiTransitionConstraint guard() {
+    return guard;
+  }
+
+  @Override
+  public BiTransitionBehavior effect() {
+    return effect;
+  }
+
+  @Override
+  public Vertex source() {
+    return segments.get(0).source();
+  }
+
+  @Override
+  public Vertex target() {
+    return segments.get(segments.size() - 1).target();
+  }
+
+  @Override
+  public Region container() {
+    return segments.get(0).container();
+  }
+
+  @Override
+  public void accept(Visitor visitor) {
+    visitor.visitOnEntry(this);
+    visitor.visitOnExit(this);
+  }
+
+  @Override
+  public String toString() {
+    return VertexUtils.nameOrId(this);
+  }
+
+  private static final class Guard implements BiTransitionConstraint<Event, Object> {
+
+    private final List<Transition> segments;
+
+    Guard(final List<Transition> segments) {
+      this.segments = segments;
+    }
+
+    @Override
+    public boolean test(final Event event, final Object context) {
+      Event e = event;
+      for (Transition t : segments) {
+        if (t.guard() != null && !t.guard().test(e, context)) {
+          return false;
+        }
+        e = CompletionEvent.INSTANCE;
+      }
+      return true;
+    }
+  }
+
+  private static final class Effect implements BiTransitionBehavior<Event, Object> {
+
+    private final List<Transition> segments;
+
+    Effect(final List<Transition> segments) {
+      this.segments = segments;
+    }
+
+    @Override
+    public void accept(final Event event, final Object context) {
+      Event e = event;
+      for (Transition t : segments) {
+        if (t.effect() != null) {
+          t.effect().accept(e, context);
+        }
+        e = CompletionEvent.INSTANCE;
+      }
+    }
+  }
+}
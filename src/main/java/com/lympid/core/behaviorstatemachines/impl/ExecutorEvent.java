@@ -19,10 +19,15 @@ import com.lympid.core.behaviorstatemachines.listener.EventAcceptedListener;
 import com.lympid.core.behaviorstatemachines.listener.EventDeferredListener;
 import com.lympid.core.behaviorstatemachines.listener.EventDeniedListener;
 import com.lympid.core.behaviorstatemachines.listener.MachineStartedListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineQueueWaitListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepEndedListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepOverrunListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepStartedListener;
 import com.lympid.core.behaviorstatemachines.listener.MachineTerminatedListener;
 import com.lympid.core.behaviorstatemachines.listener.StateActivityAfterExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateActivityBeforeExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateActivityExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateDwellListener;
 import com.lympid.core.behaviorstatemachines.listener.StateEnterAfterExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateEnterBeforeExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateEnterExceptionListener;
@@ -55,6 +60,10 @@ public enum ExecutorEvent {
    */
   MACHINE_STARTED(MachineStartedListener.class),
   MACHINE_TERMINATED(MachineTerminatedListener.class),
+  MACHINE_STEP_OVERRUN(MachineStepOverrunListener.class),
+  MACHINE_STEP_STARTED(MachineStepStartedListener.class),
+  MACHINE_STEP_ENDED(MachineStepEndedListener.class),
+  MACHINE_QUEUE_WAIT(MachineQueueWaitListener.class),
   /*
    *
    */
@@ -77,7 +86,8 @@ public enum ExecutorEvent {
   STATE_EXIT_EXCEPTION(StateExitExceptionListener.class),
   STATE_ACTIVITY_BEFORE_EXECUTION(StateActivityBeforeExecutionListener.class),
   STATE_ACTIVITY_AFTER_EXECUTION(StateActivityAfterExecutionListener.class),
-  STATE_ACTIVITY_EXCEPTION(StateActivityExceptionListener.class);
+  STATE_ACTIVITY_EXCEPTION(StateActivityExceptionListener.class),
+  STATE_DWELL(StateDwellListener.class);
 
   private final Class listenerClass;
 
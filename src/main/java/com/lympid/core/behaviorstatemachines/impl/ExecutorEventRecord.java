@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+
+/**
+ * Copy of the arguments of a listener callback, as delivered by an
+ * {@link AsyncExecutorListener}.
+ *
+ * <p>
+ * Elements of the state machine are referred to by their ids and the context
+ * of the state machine is never recorded. Records are slots of a ring buffer:
+ * a record is only valid during the call to the handler it is given to and is
+ * overwritten afterwards.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class ExecutorEventRecord {
+
+  private ExecutorEvent kind;
+  private long time;
+  private int executorId;
+  private String machineId;
+  private Event event;
+  private String stateId;
+  private String transitionId;
+  private Exception exception;
+  private long duration;
+
+  ExecutorEventRecord() {
+  }
+
+  void set(final ExecutorEvent kind, final int executorId, final String machineId, final Event event, final String stateId, final String transitionId, final Exception exception, final long duration) {
+    this.kind = kind;
+    this.time = System.nanoTime();
+    this.executorId = executorId;
+    this.machineId = machineId;
+    this.event = event;
+    this.stateId = stateId;
+    this.transitionId = transitionId;
+    this.exception = exception;
+    this.duration = duration;
+  }
+
+  void clear() {
+    event = null;
+    exception = null;
+  }
+
+  public ExecutorEvent kind() {
+    return kind;
+  }
+
+  /**
+   * Gets the time the callback was invoked at.
+   *
+   * @return A {@link System#nanoTime()} value.
+   */
+  public long time() {
+    return time;
+  }
+
+  public int executorId() {
+    return executorId;
+  }
+
+  public String machineId() {
+    return machineId;
+  }
+
+  /**
+   * Gets the event of the callback. Events are recorded by reference and are
+   * expected to be immutable.
+   *
+   * @return The event or null if the callback has no event.
+   */
+  public Event event() {
+    return event;
+  }
+
+  /**
+   * @return The id of the state of the callback or null if the callback has no
+   * state.
+   */
+  public String stateId() {
+    return stateId;
+  }
+
+  /**
+   * @return The id of the transition of the callback or null if the callback
+   * has no transition.
+   */
+  public String transitionId() {
+    return transitionId;
+  }
+
+  public Exception exception() {
+    return exception;
+  }
+
+  /**
+   * @return The duration of an overrun step in nanoseconds, the dwell time of
+   * a state in milliseconds; 0 for other callbacks.
+   */
+  public long duration() {
+    return duration;
+  }
+
+  @Override
+  public String toString() {
+    return kind + "{executor=" + executorId + ", machine=" + machineId + ", event=" + event
+      + ", state=" + stateId + ", transition=" + transitionId + ", exception=" + exception
+      + ", duration=" + duration + "}";
+  }
+
+}
@@ -26,10 +26,15 @@ import com.lympid.core.behaviorstatemachines.listener.EventDeferredListener;
 import com.lympid.core.behaviorstatemachines.listener.EventDeniedListener;
 import com.lympid.core.behaviorstatemachines.listener.MachineListener;
 import com.lympid.core.behaviorstatemachines.listener.MachineStartedListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineQueueWaitListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepEndedListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepOverrunListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepStartedListener;
 import com.lympid.core.behaviorstatemachines.listener.MachineTerminatedListener;
 import com.lympid.core.behaviorstatemachines.listener.StateActivityAfterExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateActivityBeforeExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateActivityExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateDwellListener;
 import com.lympid.core.behaviorstatemachines.listener.StateEnterAfterExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateEnterBeforeExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.StateEnterExceptionListener;
@@ -44,23 +49,32 @@ import com.lympid.core.behaviorstatemachines.listener.TransitionGuardAfterExecut
 import com.lympid.core.behaviorstatemachines.listener.TransitionGuardBeforeExecutionListener;
 import com.lympid.core.behaviorstatemachines.listener.TransitionGuardExceptionListener;
 import com.lympid.core.behaviorstatemachines.listener.TransitionStartedListener;
-import java.util.ArrayList;
-import java.util.EnumMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * Registry of the listeners of a state machine executor.
  *
- * @author Fabien Renaud
- */
-public class ExecutorListener<C> implements AllListener<C> {
+ * <p>
+ * The kinds of events having at least one listener are kept in a bit mask, so
+ * checking whether an event has listeners is a single AND. The listeners of
+ * each kind are kept in a copy-on-write array which is iterated by index on
+ * dispatch without allocating. Listeners may thus be added or removed from any
+ * thread while the state machine is running: a dispatch in progress keeps
+ * notifying the listeners registered when it started.</p>
+ *
+ * @author Fabien Renaud
+ */
+public class ExecutorListener<C> implements AllListener<C>, MachineStepOverrunListener<C>,
+        MachineStepStartedListener<C>, MachineStepEndedListener<C>, MachineQueueWaitListener<C>, StateDwellListener<C> {
 
+  private static final Object[] EMPTY = new Object[0];
   public static final ExecutorListener DEFAULT = new ExecutorListener();
-  private final Map<ExecutorEvent, List> listeners = new EnumMap<>(ExecutorEvent.class);
+  private final AtomicReferenceArray<Object[]> listeners = new AtomicReferenceArray<>(ExecutorEvent.values().length);
+  private volatile long mask;
 
   public ExecutorListener() {
-    for (ExecutorEvent ee : ExecutorEvent.values()) {
-      listeners.put(ee, new ArrayList());
+    for (int i = 0; i < listeners.length(); i++) {
+      listeners.set(i, EMPTY);
     }
   }
 
@@ -124,6 +138,54 @@ public class ExecutorListener<C> implements AllListener<C> {
     return remove(ExecutorEvent.MACHINE_TERMINATED, listener);
   }
 
+  public boolean hasMachineStepOverrunListener() {
+    return has(ExecutorEvent.MACHINE_STEP_OVERRUN);
+  }
+
+  public boolean addMachineStepOverrunListener(final MachineStepOverrunListener listener) {
+    return add(ExecutorEvent.MACHINE_STEP_OVERRUN, listener);
+  }
+
+  public boolean removeMachineStepOverrunListener(final MachineStepOverrunListener listener) {
+    return remove(ExecutorEvent.MACHINE_STEP_OVERRUN, listener);
+  }
+
+  public boolean hasMachineStepStartedListener() {
+    return has(ExecutorEvent.MACHINE_STEP_STARTED);
+  }
+
+  public boolean addMachineStepStartedListener(final MachineStepStartedListener listener) {
+    return add(ExecutorEvent.MACHINE_STEP_STARTED, listener);
+  }
+
+  public boolean removeMachineStepStartedListener(final MachineStepStartedListener listener) {
+    return remove(ExecutorEvent.MACHINE_STEP_STARTED, listener);
+  }
+
+  public boolean hasMachineStepEndedListener() {
+    return has(ExecutorEvent.MACHINE_STEP_ENDED);
+  }
+
+  public boolean addMachineStepEndedListener(final MachineStepEndedListener listener) {
+    return add(ExecutorEvent.MACHINE_STEP_ENDED, listener);
+  }
+
+  public boolean removeMachineStepEndedListener(final MachineStepEndedListener listener) {
+    return remove(ExecutorEvent.MACHINE_STEP_ENDED, listener);
+  }
+
+  public boolean hasMachineQueueWaitListener() {
+    return has(ExecutorEvent.MACHINE_QUEUE_WAIT);
+  }
+
+  public boolean addMachineQueueWaitListener(final MachineQueueWaitListener listener) {
+    return add(ExecutorEvent.MACHINE_QUEUE_WAIT, listener);
+  }
+
+  public boolean removeMachineQueueWaitListener(final MachineQueueWaitListener listener) {
+    return remove(ExecutorEvent.MACHINE_QUEUE_WAIT, listener);
+  }
+
   public boolean hasTransitionStartedListener() {
     return has(ExecutorEvent.TRANSITION_STARTED);
   }
@@ -328,6 +390,18 @@ public class ExecutorListener<C> implements AllListener<C> {
     return remove(ExecutorEvent.STATE_ACTIVITY_EXCEPTION, listener);
   }
 
+  public boolean hasStateDwellListener() {
+    return has(ExecutorEvent.STATE_DWELL);
+  }
+
+  public boolean addStateDwellListener(final StateDwellListener listener) {
+    return add(ExecutorEvent.STATE_DWELL, listener);
+  }
+
+  public boolean removeStateDwellListener(final StateDwellListener listener) {
+    return remove(ExecutorEvent.STATE_DWELL, listener);
+  }
+
   public void add(final MachineListener listener) {
     if (listener == null) {
       return;
@@ -353,202 +427,263 @@ public class ExecutorListener<C> implements AllListener<C> {
   }
 
   private boolean has(final ExecutorEvent event) {
-    return listeners.get(event).size() > 0;
+    return (mask & (1L << event.ordinal())) != 0;
   }
 
-  private boolean add(final ExecutorEvent event, final Object listener) {
+  private synchronized boolean add(final ExecutorEvent event, final Object listener) {
     if (listener == null) {
       return false;
     }
 
-    return listeners.get(event).add(listener);
+    Object[] list = listeners.get(event.ordinal());
+    Object[] copy = new Object[list.length + 1];
+    System.arraycopy(list, 0, copy, 0, list.length);
+    copy[list.length] = listener;
+    listeners.set(event.ordinal(), copy);
+    mask |= 1L << event.ordinal();
+    return true;
   }
 
-  private boolean remove(final ExecutorEvent event, final Object listener) {
+  private synchronized boolean remove(final ExecutorEvent event, final Object listener) {
     if (listener == null) {
       return false;
     }
 
-    return listeners.get(event).remove(listener);
+    Object[] list = listeners.get(event.ordinal());
+    for (int i = 0; i < list.length; i++) {
+      if (listener.equals(list[i])) {
+        if (list.length == 1) {
+          listeners.set(event.ordinal(), EMPTY);
+          mask &= ~(1L << event.ordinal());
+        } else {
+          Object[] copy = new Object[list.length - 1];
+          System.arraycopy(list, 0, copy, 0, i);
+          System.arraycopy(list, i + 1, copy, i, list.length - i - 1);
+          listeners.set(event.ordinal(), copy);
+        }
+        return true;
+      }
+    }
+    return false;
   }
 
-  private <T> List<T> get(final ExecutorEvent event) {
-    return listeners.get(event);
+  private Object[] get(final ExecutorEvent event) {
+    return listeners.get(event.ordinal());
   }
 
   @Override
   public void onEventAccepted(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
-    List<EventAcceptedListener<C>> list = get(ExecutorEvent.EVENT_ACCEPTED);
-    for (EventAcceptedListener<C> l : list) {
-      l.onEventAccepted(executor, machine, context, event);
+    Object[] list = get(ExecutorEvent.EVENT_ACCEPTED);
+    for (int i = 0; i < list.length; i++) {
+      ((EventAcceptedListener<C>) list[i]).onEventAccepted(executor, machine, context, event);
     }
   }
 
   @Override
   public void onEventDeferred(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
-    List<EventDeferredListener<C>> list = get(ExecutorEvent.EVENT_DEFERRED);
-    for (EventDeferredListener<C> l : list) {
-      l.onEventDeferred(executor, machine, context, event);
+    Object[] list = get(ExecutorEvent.EVENT_DEFERRED);
+    for (int i = 0; i < list.length; i++) {
+      ((EventDeferredListener<C>) list[i]).onEventDeferred(executor, machine, context, event);
     }
   }
 
   @Override
   public void onEventDenied(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
-    List<EventDeniedListener<C>> list = get(ExecutorEvent.EVENT_DENIED);
-    for (EventDeniedListener<C> l : list) {
-      l.onEventDenied(executor, machine, context, event);
+    Object[] list = get(ExecutorEvent.EVENT_DENIED);
+    for (int i = 0; i < list.length; i++) {
+      ((EventDeniedListener<C>) list[i]).onEventDenied(executor, machine, context, event);
     }
   }
 
   @Override
   public void onMachineStarted(StateMachineExecutor executor, StateMachine machine, C context) {
-    List<MachineStartedListener<C>> list = get(ExecutorEvent.MACHINE_STARTED);
-    for (MachineStartedListener<C> l : list) {
-      l.onMachineStarted(executor, machine, context);
+    Object[] list = get(ExecutorEvent.MACHINE_STARTED);
+    for (int i = 0; i < list.length; i++) {
+      ((MachineStartedListener<C>) list[i]).onMachineStarted(executor, machine, context);
     }
   }
 
   @Override
   public void onMachineTerminated(StateMachineExecutor executor, StateMachine machine, C context) {
-    List<MachineTerminatedListener<C>> list = get(ExecutorEvent.MACHINE_TERMINATED);
-    for (MachineTerminatedListener<C> l : list) {
-      l.onMachineTerminated(executor, machine, context);
+    Object[] list = get(ExecutorEvent.MACHINE_TERMINATED);
+    for (int i = 0; i < list.length; i++) {
+      ((MachineTerminatedListener<C>) list[i]).onMachineTerminated(executor, machine, context);
+    }
+  }
+
+  @Override
+  public void onMachineStepOverrun(StateMachineExecutor executor, StateMachine machine, C context, long duration) {
+    Object[] list = get(ExecutorEvent.MACHINE_STEP_OVERRUN);
+    for (int i = 0; i < list.length; i++) {
+      ((MachineStepOverrunListener<C>) list[i]).onMachineStepOverrun(executor, machine, context, duration);
+    }
+  }
+
+  @Override
+  public void onMachineStepStarted(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    Object[] list = get(ExecutorEvent.MACHINE_STEP_STARTED);
+    for (int i = 0; i < list.length; i++) {
+      ((MachineStepStartedListener<C>) list[i]).onMachineStepStarted(executor, machine, context, event);
+    }
+  }
+
+  @Override
+  public void onMachineStepEnded(StateMachineExecutor executor, StateMachine machine, C context, Event event, boolean accepted) {
+    Object[] list = get(ExecutorEvent.MACHINE_STEP_ENDED);
+    for (int i = 0; i < list.length; i++) {
+      ((MachineStepEndedListener<C>) list[i]).onMachineStepEnded(executor, machine, context, event, accepted);
+    }
+  }
+
+  @Override
+  public void onMachineQueueWait(StateMachineExecutor executor, StateMachine machine, C context, long duration) {
+    Object[] list = get(ExecutorEvent.MACHINE_QUEUE_WAIT);
+    for (int i = 0; i < list.length; i++) {
+      ((MachineQueueWaitListener<C>) list[i]).onMachineQueueWait(executor, machine, context, duration);
     }
   }
 
   @Override
   public void onStateActivityBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
-    List<StateActivityBeforeExecutionListener<C>> list = get(ExecutorEvent.STATE_ACTIVITY_BEFORE_EXECUTION);
-    for (StateActivityBeforeExecutionListener<C> l : list) {
-      l.onStateActivityBeforeExecution(executor, machine, context, state);
+    Object[] list = get(ExecutorEvent.STATE_ACTIVITY_BEFORE_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateActivityBeforeExecutionListener<C>) list[i]).onStateActivityBeforeExecution(executor, machine, context, state);
     }
   }
 
   @Override
   public void onStateActivityAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
-    List<StateActivityAfterExecutionListener<C>> list = get(ExecutorEvent.STATE_ACTIVITY_AFTER_EXECUTION);
-    for (StateActivityAfterExecutionListener<C> l : list) {
-      l.onStateActivityAfterExecution(executor, machine, context, state);
+    Object[] list = get(ExecutorEvent.STATE_ACTIVITY_AFTER_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateActivityAfterExecutionListener<C>) list[i]).onStateActivityAfterExecution(executor, machine, context, state);
     }
   }
 
   @Override
   public void onStateActivityException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
-    List<StateActivityExceptionListener<C>> list = get(ExecutorEvent.STATE_ACTIVITY_EXCEPTION);
-    for (StateActivityExceptionListener<C> l : list) {
-      l.onStateActivityException(executor, machine, context, state, exception);
+    Object[] list = get(ExecutorEvent.STATE_ACTIVITY_EXCEPTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateActivityExceptionListener<C>) list[i]).onStateActivityException(executor, machine, context, state, exception);
+    }
+  }
+
+  @Override
+  public void onStateDwell(StateMachineExecutor executor, StateMachine machine, C context, State state, long duration) {
+    Object[] list = get(ExecutorEvent.STATE_DWELL);
+    for (int i = 0; i < list.length; i++) {
+      ((StateDwellListener<C>) list[i]).onStateDwell(executor, machine, context, state, duration);
     }
   }
 
   @Override
   public void onStateEnterBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
-    List<StateEnterBeforeExecutionListener<C>> list = get(ExecutorEvent.STATE_ENTER_BEFORE_EXECUTION);
-    for (StateEnterBeforeExecutionListener<C> l : list) {
-      l.onStateEnterBeforeExecution(executor, machine, context, state);
+    Object[] list = get(ExecutorEvent.STATE_ENTER_BEFORE_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateEnterBeforeExecutionListener<C>) list[i]).onStateEnterBeforeExecution(executor, machine, context, state);
     }
   }
 
   @Override
   public void onStateEnterAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
-    List<StateEnterAfterExecutionListener<C>> list = get(ExecutorEvent.STATE_ENTER_AFTER_EXECUTION);
-    for (StateEnterAfterExecutionListener<C> l : list) {
-      l.onStateEnterAfterExecution(executor, machine, context, state);
+    Object[] list = get(ExecutorEvent.STATE_ENTER_AFTER_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateEnterAfterExecutionListener<C>) list[i]).onStateEnterAfterExecution(executor, machine, context, state);
     }
   }
 
   @Override
   public void onStateEnterException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
-    List<StateEnterExceptionListener<C>> list = get(ExecutorEvent.STATE_ENTER_EXCEPTION);
-    for (StateEnterExceptionListener<C> l : list) {
-      l.onStateEnterException(executor, machine, context, state, exception);
+    Object[] list = get(ExecutorEvent.STATE_ENTER_EXCEPTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateEnterExceptionListener<C>) list[i]).onStateEnterException(executor, machine, context, state, exception);
     }
   }
 
   @Override
   public void onStateExitBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
-    List<StateExitBeforeExecutionListener<C>> list = get(ExecutorEvent.STATE_EXIT_BEFORE_EXECUTION);
-    for (StateExitBeforeExecutionListener<C> l : list) {
-      l.onStateExitBeforeExecution(executor, machine, context, state);
+    Object[] list = get(ExecutorEvent.STATE_EXIT_BEFORE_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateExitBeforeExecutionListener<C>) list[i]).onStateExitBeforeExecution(executor, machine, context, state);
     }
   }
 
   @Override
   public void onStateExitAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
-    List<StateExitAfterExecutionListener<C>> list = get(ExecutorEvent.STATE_EXIT_AFTER_EXECUTION);
-    for (StateExitAfterExecutionListener<C> l : list) {
-      l.onStateExitAfterExecution(executor, machine, context, state);
+    Object[] list = get(ExecutorEvent.STATE_EXIT_AFTER_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateExitAfterExecutionListener<C>) list[i]).onStateExitAfterExecution(executor, machine, context, state);
     }
   }
 
   @Override
   public void onStateExitException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
-    List<StateExitExceptionListener<C>> list = get(ExecutorEvent.STATE_EXIT_EXCEPTION);
-    for (StateExitExceptionListener<C> l : list) {
-      l.onStateExitException(executor, machine, context, state, exception);
+    Object[] list = get(ExecutorEvent.STATE_EXIT_EXCEPTION);
+    for (int i = 0; i < list.length; i++) {
+      ((StateExitExceptionListener<C>) list[i]).onStateExitException(executor, machine, context, state, exception);
     }
   }
 
   @Override
   public void onTransitionStarted(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
-    List<TransitionStartedListener<C>> list = get(ExecutorEvent.TRANSITION_STARTED);
-    for (TransitionStartedListener<C> l : list) {
-      l.onTransitionStarted(executor, machine, context, event, transition);
+    Object[] list = get(ExecutorEvent.TRANSITION_STARTED);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionStartedListener<C>) list[i]).onTransitionStarted(executor, machine, context, event, transition);
     }
   }
 
   @Override
   public void onTransitionEnded(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
-    List<TransitionEndedListener<C>> list = get(ExecutorEvent.TRANSITION_ENDED);
-    for (TransitionEndedListener<C> l : list) {
-      l.onTransitionEnded(executor, machine, context, event, transition);
+    Object[] list = get(ExecutorEvent.TRANSITION_ENDED);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionEndedListener<C>) list[i]).onTransitionEnded(executor, machine, context, event, transition);
     }
   }
 
   @Override
   public void onTransitionGuardBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
-    List<TransitionGuardBeforeExecutionListener<C>> list = get(ExecutorEvent.TRANSITION_GUARD_BEFORE_EXECUTION);
-    for (TransitionGuardBeforeExecutionListener<C> l : list) {
-      l.onTransitionGuardBeforeExecution(executor, machine, context, event, transition);
+    Object[] list = get(ExecutorEvent.TRANSITION_GUARD_BEFORE_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionGuardBeforeExecutionListener<C>) list[i]).onTransitionGuardBeforeExecution(executor, machine, context, event, transition);
     }
   }
 
   @Override
   public void onTransitionGuardAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
-    List<TransitionGuardAfterExecutionListener<C>> list = get(ExecutorEvent.TRANSITION_GUARD_AFTER_EXECUTION);
-    for (TransitionGuardAfterExecutionListener<C> l : list) {
-      l.onTransitionGuardAfterExecution(executor, machine, context, event, transition);
+    Object[] list = get(ExecutorEvent.TRANSITION_GUARD_AFTER_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionGuardAfterExecutionListener<C>) list[i]).onTransitionGuardAfterExecution(executor, machine, context, event, transition);
     }
   }
 
   @Override
   public void onTransitionGuardException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
-    List<TransitionGuardExceptionListener<C>> list = get(ExecutorEvent.TRANSITION_GUARD_EXCEPTION);
-    for (TransitionGuardExceptionListener<C> l : list) {
-      l.onTransitionGuardException(executor, machine, context, event, transition, exception);
+    Object[] list = get(ExecutorEvent.TRANSITION_GUARD_EXCEPTION);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionGuardExceptionListener<C>) list[i]).onTransitionGuardException(executor, machine, context, event, transition, exception);
     }
   }
 
   @Override
   public void onTransitionEffectBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
-    List<TransitionEffectBeforeExecutionListener<C>> list = get(ExecutorEvent.TRANSITION_EFFECT_BEFORE_EXECUTION);
-    for (TransitionEffectBeforeExecutionListener<C> l : list) {
-      l.onTransitionEffectBeforeExecution(executor, machine, context, event, transition);
+    Object[] list = get(ExecutorEvent.TRANSITION_EFFECT_BEFORE_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionEffectBeforeExecutionListener<C>) list[i]).onTransitionEffectBeforeExecution(executor, machine, context, event, transition);
     }
   }
 
   @Override
   public void onTransitionEffectAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
-    List<TransitionEffectAfterExecutionListener<C>> list = get(ExecutorEvent.TRANSITION_EFFECT_AFTER_EXECUTION);
-    for (TransitionEffectAfterExecutionListener<C> l : list) {
-      l.onTransitionEffectAfterExecution(executor, machine, context, event, transition);
+    Object[] list = get(ExecutorEvent.TRANSITION_EFFECT_AFTER_EXECUTION);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionEffectAfterExecutionListener<C>) list[i]).onTransitionEffectAfterExecution(executor, machine, context, event, transition);
     }
   }
 
   @Override
   public void onTransitionEffectException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
-    List<TransitionEffectExceptionListener<C>> list = get(ExecutorEvent.TRANSITION_EFFECT_EXCEPTION);
-    for (TransitionEffectExceptionListener<C> l : list) {
-      l.onTransitionEffectException(executor, machine, context, event, transition, exception);
+    Object[] list = get(ExecutorEvent.TRANSITION_EFFECT_EXCEPTION);
+    for (int i = 0; i < list.length; i++) {
+      ((TransitionEffectExceptionListener<C>) list[i]).onTransitionEffectException(executor, machine, context, event, transition, exception);
     }
   }
 }
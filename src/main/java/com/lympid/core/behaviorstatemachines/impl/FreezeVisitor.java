@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+
+/**
+ * Freezes a complete state machine: the hash sets and linked lists used while
+ * building it are replaced by compact read-only lists, all the empty ones
+ * being shared. Iteration orders are preserved.
+ *
+ * <p>
+ * Outgoing transitions are not affected: they are already indexed into
+ * read-only slices when set. Elements which are not part of this package's
+ * mutable implementation are left untouched.</p>
+ *
+ * @author Fabien Renaud
+ */
+public class FreezeVisitor extends SimpleVisitor {
+
+  @Override
+  public void visit(final ConnectionPointReference v) {
+    freeze(v);
+  }
+
+  @Override
+  public void visit(final State v) {
+    freeze(v);
+  }
+
+  @Override
+  public void visit(final PseudoState v) {
+    freeze(v);
+  }
+
+  @Override
+  public void visit(final FinalState v) {
+    freeze(v);
+  }
+
+  @Override
+  public void visit(final Region v) {
+    if (v instanceof MutableRegion) {
+      ((MutableRegion) v).freeze();
+    }
+  }
+
+  @Override
+  public void visit(final StateMachine v) {
+    if (v instanceof MutableStateMachine) {
+      ((MutableStateMachine) v).freeze();
+    }
+  }
+
+  @Override
+  public void visit(final Transition v) {
+    if (v instanceof MutableTransition) {
+      ((MutableTransition) v).freeze();
+    }
+  }
+
+  private static void freeze(final Object v) {
+    if (v instanceof MutableVertex) {
+      ((MutableVertex) v).freeze();
+    }
+  }
+
+}
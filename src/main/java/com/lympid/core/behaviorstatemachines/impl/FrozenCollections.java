@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only, array-backed copies of the collections of a model.
+ *
+ * @author Fabien Renaud
+ */
+final class FrozenCollections {
+
+  private FrozenCollections() {
+  }
+
+  /**
+   * Copies a collection into a read-only list, in iteration order. Empty
+   * collections are all replaced by the same shared list.
+   *
+   * @param <T> The type of the elements.
+   * @param elements The elements to copy.
+   * @return A read-only list of the elements.
+   */
+  static <T> List<T> list(final Collection<? extends T> elements) {
+    switch (elements.size()) {
+      case 0:
+        return Collections.emptyList();
+      case 1:
+        return Collections.singletonList(elements.iterator().next());
+      default:
+        return Collections.unmodifiableList(Arrays.asList((T[]) elements.toArray()));
+    }
+  }
+
+}
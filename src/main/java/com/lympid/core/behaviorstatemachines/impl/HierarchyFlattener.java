@@ -0,0 +1,320 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.BiTransitionBehavior;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.PseudoStateKind;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateBehavior;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.TransitionKind;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.common.Trigger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a hierarchical state machine into an equivalent flat state machine
+ * made of its leaf states only.
+ *
+ * <p>
+ * Each leaf state gets its own outgoing transitions followed by the ones it
+ * inherits from its enclosing composite states, innermost first, so that
+ * inner transitions keep priority over outer ones. The entry and exit
+ * behaviors of the composite states left and entered by a transition, and the
+ * effects of the initial transitions followed to reach a leaf state, are
+ * precomputed into the effect of the flat transition, in the order they
+ * would run in the hierarchical machine. The flat machine runs on a
+ * {@link SimpleStateMachineState}.</p>
+ *
+ * <p>
+ * Only machines with a single top level region whose composite states all
+ * have a single region, an initial pseudo state, no do activity, no
+ * connection point and no time event can be flattened. Besides initial
+ * pseudo states, their vertices must be states or final states. A final state
+ * of a composite state becomes a simple state whose completion transitions
+ * are the ones of the composite state. The completion transitions of a
+ * composite state are otherwise dropped from the leaf states it encloses.</p>
+ *
+ * <p>
+ * Listeners and snapshots of the flat machine only see leaf states and flat
+ * transitions. An exception thrown by one of the behaviors of a precomputed
+ * sequence skips the remaining ones.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class HierarchyFlattener {
+
+  /**
+   * Default maximum number of transitions of a flat state machine.
+   */
+  public static final int DEFAULT_MAX_TRANSITIONS = 4096;
+
+  private final Map<State, MutableVertex> leaves = new IdentityHashMap<>();
+  private final MutableRegion region;
+  private final int maxTransitions;
+  private MutableVertex initial;
+  private boolean hierarchical;
+  private int transitions;
+
+  private HierarchyFlattener(final Region region, final int maxTransitions) {
+    this.region = new MutableRegion(region.getId());
+    this.region.setName(region.getName());
+    this.maxTransitions = maxTransitions;
+  }
+
+  /**
+   * Flattens a state machine.
+   *
+   * @param machine A validated state machine.
+   * @param maxTransitions The maximum number of transitions of the flat state
+   * machine.
+   * @return A new flat state machine without metadata or null when the state
+   * machine has no composite state, cannot be flattened or would exceed
+   * {@code maxTransitions}.
+   */
+  public static MutableStateMachine flatten(final StateMachine machine, final int maxTransitions) {
+    if (machine.region().size() != 1) {
+      return null;
+    }
+    Region top = machine.region().get(0);
+    HierarchyFlattener flattener = new HierarchyFlattener(top, maxTransitions);
+    List<State> leafStates = new ArrayList<>();
+    if (!flattener.declare(top, leafStates) || !flattener.hierarchical || !flattener.flattenAll(top, leafStates)) {
+      return null;
+    }
+
+    MutableStateMachine m = new MutableStateMachine(machine.getId());
+    m.setName(machine.getName());
+    m.addRegion(flattener.region);
+    return m;
+  }
+
+  /**
+   * Checks a region can be flattened and declares the flat vertices of its
+   * leaf states, recursively.
+   *
+   * @return false when the region cannot be flattened.
+   */
+  private boolean declare(final Region r, final List<State> leafStates) {
+    boolean top = r.state() == null;
+    for (Vertex v : r.subVertex()) {
+      if (v instanceof PseudoState) {
+        if (((PseudoState) v).kind() != PseudoStateKind.INITIAL) {
+          return false;
+        }
+        if (top) {
+          MutablePseudoState ps = new MutablePseudoState(v.getId(), PseudoStateKind.INITIAL);
+          ps.setName(v.getName());
+          region.addVertex(ps);
+          initial = ps;
+        }
+      } else if (v instanceof FinalState) {
+        MutableVertex fs = top ? new MutableFinalState(v.getId()) : new MutableState(v.getId());
+        fs.setName(v.getName());
+        region.addVertex(fs);
+        leaves.put((State) v, fs);
+        if (!top) {
+          leafStates.add((State) v);
+        }
+      } else if (v instanceof State) {
+        State s = (State) v;
+        if (s.isOrthogonal() || s.isSubMachineState() || !s.connectionPoint().isEmpty()) {
+          return false;
+        }
+        if (s.isComposite()) {
+          hierarchical = true;
+          if (s.doActivity() != null || s.region().get(0).initial() == null || hasTimeEvents(s)) {
+            return false;
+          }
+          if (!declare(s.region().get(0), leafStates)) {
+            return false;
+          }
+        } else {
+          MutableState fs = new MutableState(s.getId());
+          fs.setName(s.getName());
+          fs.setEntry(new ArrayList<>(s.entry()));
+          fs.setExit(new ArrayList<>(s.exit()));
+          fs.setDoActivity(s.doActivity());
+          region.addVertex(fs);
+          leaves.put(s, fs);
+          leafStates.add(s);
+        }
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasTimeEvents(final State state) {
+    for (Transition t : state.outgoing()) {
+      for (Trigger tr : t.triggers()) {
+        if (tr.event() instanceof TimeEvent) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean flattenAll(final Region top, final List<State> leafStates) {
+    if (initial != null) {
+      Transition t = top.initial().outgoing().iterator().next();
+      Transition ft = flatten(initial, null, t);
+      if (ft == null) {
+        return false;
+      }
+      initial.setOutgoing(Collections.singletonList(ft));
+    }
+    for (State leaf : leafStates) {
+      MutableVertex source = leaves.get(leaf);
+      List<Transition> outgoing = new ArrayList<>();
+      for (State s = leaf; s != null; s = s.container().state()) {
+        for (Transition t : s.outgoing()) {
+          if (s != leaf && t.triggers().isEmpty() && !completes(leaf, s)) {
+            continue;
+          }
+          Transition ft = flatten(source, leaf, t);
+          if (ft == null) {
+            return false;
+          }
+          outgoing.add(ft);
+        }
+      }
+      source.setOutgoing(outgoing);
+    }
+    return true;
+  }
+
+  private static boolean completes(final State leaf, final State state) {
+    return leaf instanceof FinalState && leaf.container().state() == state;
+  }
+
+  /**
+   * Flattens a transition for a given leaf state.
+   *
+   * @param source The flat source vertex.
+   * @param leaf The active leaf state when the transition is fired or null
+   * for the initial transition of the state machine.
+   * @param t The transition to flatten.
+   * @return The flat transition or null when it cannot be flattened or when
+   * the flat state machine exceeds its maximum number of transitions.
+   */
+  private Transition flatten(final MutableVertex source, final State leaf, final Transition t) {
+    if (++transitions > maxTransitions || !(t.target() instanceof State)) {
+      return null;
+    }
+    String id = leaf == null || t.source() == leaf ? t.getId() : t.getId() + '@' + leaf.getId();
+
+    MutableTransition ft;
+    if (t.kind() == TransitionKind.INTERNAL) {
+      ft = new MutableTransition(region, source, source, t.guard(), t.effect(), TransitionKind.INTERNAL, id);
+    } else {
+      Sequence sequence = new Sequence();
+      if (leaf != null) {
+        for (State s = leaf; s.container() != t.container(); ) {
+          s = s.container().state();
+          sequence.add(s.exit());
+        }
+      }
+      sequence.add(t.effect(), false);
+
+      /*
+       * The states enclosing the container of the transition remain active.
+       * The entry behaviors of the leaf state are run by the executor.
+       */
+      LinkedList<State> entered = new LinkedList<>();
+      for (State s = (State) t.target(); s != t.container().state(); s = s.container().state()) {
+        entered.addFirst(s);
+      }
+      for (State s : entered) {
+        if (s.isComposite()) {
+          sequence.add(s.entry());
+        }
+      }
+      State target = (State) t.target();
+      while (target.isComposite()) {
+        Region r = target.region().get(0);
+        Transition initial = r.initial().outgoing().iterator().next();
+        if (!(initial.target() instanceof State) || initial.target().container() != r) {
+          return null;
+        }
+        sequence.add(initial.effect(), true);
+        target = (State) initial.target();
+        if (target.isComposite()) {
+          sequence.add(target.entry());
+        }
+      }
+
+      MutableVertex flatTarget = leaves.get(target);
+      ft = new MutableTransition(region, source, flatTarget, t.guard(), sequence.effect(), TransitionKind.EXTERNAL, id);
+      flatTarget.incoming().add(ft);
+    }
+    ft.setName(t.getName());
+    ft.triggers().addAll(t.triggers());
+    region.transition().add(ft);
+    return ft;
+  }
+
+  private static final class Sequence {
+
+    private final List<BiTransitionBehavior> steps = new ArrayList<>();
+    private BiTransitionBehavior effect;
+
+    void add(final Iterable<? extends StateBehavior> behaviors) {
+      for (StateBehavior b : behaviors) {
+        steps.add((e, c) -> b.accept(c));
+      }
+    }
+
+    void add(final BiTransitionBehavior<Event, Object> b, final boolean completion) {
+      if (b != null) {
+        if (!completion && steps.isEmpty()) {
+          effect = b;
+        }
+        steps.add(completion ? (e, c) -> b.accept(CompletionEvent.INSTANCE, c) : b);
+      }
+    }
+
+    BiTransitionBehavior effect() {
+      if (steps.isEmpty()) {
+        return null;
+      }
+      if (steps.size() == 1 && effect != null) {
+        return effect;
+      }
+      final BiTransitionBehavior[] array = steps.toArray(new BiTransitionBehavior[steps.size()]);
+      return (BiTransitionBehavior<Event, Object>) (e, c) -> {
+        for (BiTransitionBehavior b : array) {
+          b.accept(e, c);
+        }
+      };
+    }
+  }
+
+}
@@ -15,10 +15,12 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.basicbehaviors.Event;
 import com.lympid.core.behaviorstatemachines.PseudoStateKind;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
+import java.util.BitSet;
 import java.util.Map;
 
 /**
@@ -39,6 +41,8 @@ public class ImmutableStateMachineMeta implements StateMachineMeta {
   private final Map<String, Region> regionById;
   private final int treeDepth;
   private final int countOfLeaves;
+  private final Map<Event, Integer> eventOrdinals;
+  private final Map<State, BitSet> acceptedEvents;
 
   public ImmutableStateMachineMeta(final MutableStateMachineMeta meta) {
     this.simpleStates = meta.hasSimpleStates();
@@ -53,6 +57,8 @@ public class ImmutableStateMachineMeta implements StateMachineMeta {
     this.regionById = meta.regionById();
     this.treeDepth = meta.treeDepth();
     this.countOfLeaves = meta.countOfLeaves();
+    this.eventOrdinals = meta.eventOrdinals();
+    this.acceptedEvents = meta.acceptedEvents();
   }
 
   @Override
@@ -115,4 +121,20 @@ public class ImmutableStateMachineMeta implements StateMachineMeta {
     return regionById.get(id);
   }
 
+  @Override
+  public int countOfEvents() {
+    return eventOrdinals.size();
+  }
+
+  @Override
+  public int eventOrdinal(final Event event) {
+    Integer ordinal = eventOrdinals.get(event);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  @Override
+  public BitSet acceptedEvents(final State state) {
+    return acceptedEvents.get(state);
+  }
+
 }
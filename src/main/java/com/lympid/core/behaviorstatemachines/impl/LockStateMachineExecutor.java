@@ -82,6 +82,26 @@ public class LockStateMachineExecutor extends AbstractStateMachineExecutor {
     }
   }
 
+  @Override
+  void take(final Event event, final State state, final int generation) {
+    lock.writeLock().lock();
+    try {
+      super.take(event, state, generation);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  void takeCompletionEvent(final State state, final int generation) {
+    lock.writeLock().lock();
+    try {
+      super.takeCompletionEvent(state, generation);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
   @Override
   public StateMachineSnapshot snapshot() {
     lock.readLock().lock();
@@ -112,4 +132,14 @@ public class LockStateMachineExecutor extends AbstractStateMachineExecutor {
     }
   }
 
+  @Override
+  public void reset() {
+    lock.writeLock().lock();
+    try {
+      super.reset();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
 }
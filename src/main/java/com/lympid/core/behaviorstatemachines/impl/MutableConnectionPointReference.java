@@ -21,16 +21,15 @@ import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.Visitor;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Set;
 
 /**
  *
- * @author Fabien Renaud
- */
+ * @author Fabien Renaud
+ */
 public class MutableConnectionPointReference extends MutableVertex implements ConnectionPointReference {
 
-  private final Set<PseudoState> entry = new HashSet<>();
-  private final Set<PseudoState> exit = new HashSet<>();
+  private Collection<PseudoState> entry = new HashSet<>();
+  private Collection<PseudoState> exit = new HashSet<>();
   private State state;
 
   public MutableConnectionPointReference(final String id) {
@@ -56,6 +55,17 @@ public class MutableConnectionPointReference extends MutableVertex implements Co
     this.state = state;
   }
 
+  /**
+   * Replaces the collections of this reference by compact read-only copies
+   * once the model is complete.
+   */
+  @Override
+  public void freeze() {
+    super.freeze();
+    entry = FrozenCollections.list(entry);
+    exit = FrozenCollections.list(exit);
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
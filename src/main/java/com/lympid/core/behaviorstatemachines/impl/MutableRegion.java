@@ -32,16 +32,16 @@ import java.util.UUID;
 
 /**
  *
- * @author Fabien Renaud
- */
+ * @author Fabien Renaud
+ */
 public final class MutableRegion implements Region {
 
   private final String id;
   private String name;
   private StateMachine stateMachine;
   private State state;
-  private final Collection<Transition> transition;
-  private final Collection<Vertex> subVertex;
+  private Collection<Transition> transition;
+  private Collection<Vertex> subVertex;
   private PseudoState initial;
   private PseudoState deepHistory;
   private PseudoState shallowHistory;
@@ -165,6 +165,15 @@ public final class MutableRegion implements Region {
     this.shallowHistory = pseudoState;
   }
 
+  /**
+   * Replaces the transitions and sub vertices of this region by compact
+   * read-only copies, in the same order, once the model is complete.
+   */
+  public void freeze() {
+    transition = FrozenCollections.list(transition);
+    subVertex = FrozenCollections.list(subVertex);
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
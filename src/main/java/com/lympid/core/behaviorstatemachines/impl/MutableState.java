@@ -28,7 +28,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  *
@@ -36,7 +35,7 @@ import java.util.Set;
  */
 public class MutableState extends MutableVertex implements State {
 
-  private final Set<PseudoState> connectionPoint = new HashSet<>();
+  private Collection<PseudoState> connectionPoint = new HashSet<>();
   private final List<Trigger> deferrableTrigger = Collections.EMPTY_LIST;
   private ConnectionPointReference connection;
   private StateBehavior doActivity;
@@ -145,6 +144,19 @@ public class MutableState extends MutableVertex implements State {
     this.subStateMachine = subStateMachine;
   }
 
+  /**
+   * Replaces the collections of this state by compact read-only copies once
+   * the model is complete.
+   */
+  @Override
+  public void freeze() {
+    super.freeze();
+    connectionPoint = FrozenCollections.list(connectionPoint);
+    entry = FrozenCollections.list(entry);
+    exit = FrozenCollections.list(exit);
+    region = FrozenCollections.list(region);
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
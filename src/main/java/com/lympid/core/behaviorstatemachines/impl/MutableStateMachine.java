@@ -28,19 +28,18 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 import java.util.UUID;
 
 /**
  *
- * @author Fabien Renaud
- */
+ * @author Fabien Renaud
+ */
 public final class MutableStateMachine implements StateMachine {
 
   private final String id;
   private String name;
   private List<Region> region = Collections.EMPTY_LIST;
-  private final Set<PseudoState> connectionPoint = new HashSet<>();
+  private Collection<PseudoState> connectionPoint = new HashSet<>();
   private StateMachineMeta metadata;
 
   public MutableStateMachine(final String id) {
@@ -96,6 +95,15 @@ public final class MutableStateMachine implements StateMachine {
     return metadata;
   }
 
+  /**
+   * Replaces the regions and connection points of this state machine by
+   * compact read-only copies once the model is complete.
+   */
+  public void freeze() {
+    region = FrozenCollections.list(region);
+    connectionPoint = FrozenCollections.list(connectionPoint);
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
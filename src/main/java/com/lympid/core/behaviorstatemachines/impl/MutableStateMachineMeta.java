@@ -15,15 +15,21 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.Event;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.PseudoStateKind;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachine;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
+import com.lympid.core.behaviorstatemachines.Transition;
 import com.lympid.core.common.TreeNode;
+import com.lympid.core.common.Trigger;
+import java.util.BitSet;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
@@ -45,6 +51,9 @@ public class MutableStateMachineMeta implements StateMachineMeta {
   private final Map<StateMachine, State> ownedStateMachines = new HashMap<>();
   private final Map<String, State> stateById = new HashMap<>();
   private final Map<String, Region> regionById = new HashMap<>();
+  private final Map<Event, Integer> eventOrdinals = new HashMap<>();
+  private final Map<State, BitSet> ownEvents = new IdentityHashMap<>();
+  private final Map<State, BitSet> acceptedEvents = new IdentityHashMap<>();
 
   public MutableStateMachineMeta() {
     for (PseudoStateKind kind : PseudoStateKind.values()) {
@@ -130,6 +139,28 @@ public class MutableStateMachineMeta implements StateMachineMeta {
     }
     
     stateById.put(state.getId(), state);
+
+    BitSet events = new BitSet();
+    for (Transition t : state.outgoing()) {
+      if (t.triggers().isEmpty()) {
+        events.set(register(CompletionEvent.INSTANCE));
+      } else {
+        for (Trigger tr : t.triggers()) {
+          events.set(register(tr.event()));
+        }
+      }
+    }
+    ownEvents.put(state, events);
+    acceptedEvents.clear();
+  }
+
+  private int register(final Event event) {
+    Integer ordinal = eventOrdinals.get(event);
+    if (ordinal == null) {
+      ordinal = eventOrdinals.size();
+      eventOrdinals.put(event, ordinal);
+    }
+    return ordinal;
   }
 
   void register(final Region region) {
@@ -203,4 +234,48 @@ public class MutableStateMachineMeta implements StateMachineMeta {
     return new HashMap<>(regionById);
   }
 
+  @Override
+  public int countOfEvents() {
+    return eventOrdinals.size();
+  }
+
+  @Override
+  public int eventOrdinal(final Event event) {
+    Integer ordinal = eventOrdinals.get(event);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  Map<Event, Integer> eventOrdinals() {
+    return new HashMap<>(eventOrdinals);
+  }
+
+  @Override
+  public BitSet acceptedEvents(final State state) {
+    BitSet events = acceptedEvents.get(state);
+    if (events == null) {
+      BitSet own = ownEvents.get(state);
+      if (own == null) {
+        return null;
+      }
+      events = (BitSet) own.clone();
+      State parent = state.container() == null ? null : state.container().state();
+      if (parent != null) {
+        BitSet inherited = acceptedEvents(parent);
+        if (inherited != null) {
+          events.or(inherited);
+        }
+      }
+      acceptedEvents.put(state, events);
+    }
+    return events;
+  }
+
+  Map<State, BitSet> acceptedEvents() {
+    Map<State, BitSet> copy = new IdentityHashMap<>(ownEvents.size());
+    for (State s : ownEvents.keySet()) {
+      copy.put(s, acceptedEvents(s));
+    }
+    return copy;
+  }
+
 }
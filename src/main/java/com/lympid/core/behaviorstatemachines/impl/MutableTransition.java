@@ -26,7 +26,6 @@ import com.lympid.core.behaviorstatemachines.Visitor;
 import com.lympid.core.common.Trigger;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -38,7 +37,7 @@ public final class MutableTransition implements Transition {
   private final String id;
   private String name;
   private final TransitionKind kind;
-  private final Set<Trigger> triggers = new HashSet<>();
+  private Collection<Trigger> triggers = new HashSet<>();
   private final BiTransitionConstraint guard;
   private final BiTransitionBehavior effect;
   private final Vertex source;
@@ -112,6 +111,14 @@ public final class MutableTransition implements Transition {
     this.container = container;
   }
 
+  /**
+   * Replaces the triggers of this transition by a compact read-only copy once
+   * the model is complete.
+   */
+  public void freeze() {
+    triggers = FrozenCollections.list(triggers);
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
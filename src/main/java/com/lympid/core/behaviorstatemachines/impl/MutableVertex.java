@@ -28,12 +28,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -42,11 +40,21 @@ import java.util.UUID;
  */
 public abstract class MutableVertex implements Vertex {
 
+  /**
+   * Maximum number of distinct events for which the outgoing transitions are
+   * looked up by a linear scan rather than in a hash map.
+   */
+  private static final int MAX_SCANNED_EVENTS = 8;
+  private static final Event[] NO_EVENTS = new Event[0];
+  private static final List[] NO_SLICES = new List[0];
+
   private final String id;
   private List<Transition> outgoing = Collections.EMPTY_LIST;
-  private Map<Event, List<Transition>> outgoingByEvent = Collections.EMPTY_MAP;
+  private Event[] events = NO_EVENTS;
+  private List<Transition>[] slices = NO_SLICES;
+  private Map<Event, List<Transition>> outgoingByEvent;
   private List<TimeEvent> outgoingTimeEvents = Collections.EMPTY_LIST;
-  private final Set<Transition> incoming = new HashSet<>();
+  private Collection<Transition> incoming = new HashSet<>();
   private String name;
   private Region container;
 
@@ -79,8 +87,16 @@ public abstract class MutableVertex implements Vertex {
 
   @Override
   public Collection<Transition> outgoing(final Event event) {
-    Collection<Transition> transitions = outgoingByEvent.get(event);
-    return transitions == null ? Collections.emptyList() : transitions;
+    if (outgoingByEvent != null) {
+      Collection<Transition> transitions = outgoingByEvent.get(event);
+      return transitions == null ? Collections.emptyList() : transitions;
+    }
+    for (int i = 0; i < events.length; i++) {
+      if (event.equals(events[i])) {
+        return slices[i];
+      }
+    }
+    return Collections.emptyList();
   }
 
   @Override
@@ -124,61 +140,66 @@ public abstract class MutableVertex implements Vertex {
     return VertexUtils.nameOrId(this);
   }
 
+  /**
+   * Sets the outgoing transitions of this vertex, in priority order, and
+   * indexes them by event into read-only slices.
+   *
+   * @param outgoing The outgoing transitions of the vertex.
+   */
   public void setOutgoing(final Collection<Transition> outgoing) {
+    this.outgoingByEvent = null;
     if (outgoing.isEmpty()) {
       this.outgoing = Collections.EMPTY_LIST;
-      this.outgoingByEvent = Collections.EMPTY_MAP;
+      this.events = NO_EVENTS;
+      this.slices = NO_SLICES;
       this.outgoingTimeEvents = Collections.EMPTY_LIST;
-    } else {
-      this.outgoing = new ArrayList<>(outgoing.size());
-      this.outgoingByEvent = new HashMap<>();
-      this.outgoingTimeEvents = new LinkedList<>();
+      return;
+    }
 
-      for (Transition t : outgoing) {
-        addOutgoingTransition(t);
+    Map<Event, List<Transition>> byEvent = new LinkedHashMap<>();
+    List<TimeEvent> timeEvents = new ArrayList<>();
+    for (Transition t : outgoing) {
+      if (t.triggers().isEmpty()) {
+        addOutgoingTransition(byEvent, t, CompletionEvent.INSTANCE);
+      } else {
+        for (Trigger tr : t.triggers()) {
+          addOutgoingTransition(byEvent, t, tr.event());
+          if (tr.event() instanceof TimeEvent && !timeEvents.contains((TimeEvent) tr.event())) {
+            timeEvents.add((TimeEvent) tr.event());
+          }
+        }
       }
-
-      /*
-       * Early optimization
-       */
-      this.outgoingByEvent = optimize(outgoingByEvent);
-      this.outgoingTimeEvents = outgoingTimeEvents.isEmpty()
-              ? Collections.EMPTY_LIST
-              : new ArrayList<>(outgoingTimeEvents);
     }
-  }
 
-  private void addOutgoingTransition(final Transition transition) {
-    outgoing.add(transition);
-    if (transition.triggers().isEmpty()) {
-      addOutgoingTransition(transition, CompletionEvent.INSTANCE);
-    } else {
-      for (Trigger tr : transition.triggers()) {
-        addOutgoingTransition(transition, tr.event());
+    this.outgoing = FrozenCollections.list(outgoing);
+    this.outgoingTimeEvents = FrozenCollections.list(timeEvents);
+    this.events = byEvent.keySet().toArray(new Event[byEvent.size()]);
+    this.slices = new List[events.length];
+    for (int i = 0; i < events.length; i++) {
+      slices[i] = FrozenCollections.list(byEvent.get(events[i]));
+    }
+    if (events.length > MAX_SCANNED_EVENTS) {
+      this.outgoingByEvent = new HashMap<>(events.length * 4 / 3 + 1);
+      for (int i = 0; i < events.length; i++) {
+        outgoingByEvent.put(events[i], slices[i]);
       }
     }
   }
 
-  private void addOutgoingTransition(final Transition transition, final Event event) {
-    if (event instanceof TimeEvent) {
-      TimeEvent timeEvent = (TimeEvent) event;
-      if (!outgoingTimeEvents.contains(timeEvent)) {
-        outgoingTimeEvents.add(timeEvent);
-      }
-    }
-    List<Transition> list = outgoingByEvent.get(event);
+  private static void addOutgoingTransition(final Map<Event, List<Transition>> byEvent, final Transition transition, final Event event) {
+    List<Transition> list = byEvent.get(event);
     if (list == null) {
-      list = new LinkedList<>();
-      outgoingByEvent.put(event, list);
+      list = new ArrayList<>(1);
+      byEvent.put(event, list);
     }
     list.add(transition);
   }
 
-  private Map<Event, List<Transition>> optimize(Map<Event, List<Transition>> map) {
-    final Map<Event, List<Transition>> newMap = new HashMap<>(map.size());
-    for (Entry<Event, List<Transition>> e : map.entrySet()) {
-      newMap.put(e.getKey(), new ArrayList<>(e.getValue()));
-    }
-    return newMap;
+  /**
+   * Replaces the incoming transitions of this vertex by a compact read-only
+   * copy once the model is complete. Transitions can no longer be added to it.
+   */
+  public void freeze() {
+    incoming = FrozenCollections.list(incoming);
   }
 }
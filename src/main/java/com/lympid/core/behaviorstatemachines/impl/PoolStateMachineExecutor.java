@@ -17,6 +17,8 @@ package com.lympid.core.behaviorstatemachines.impl;
 
 import com.lympid.core.basicbehaviors.Event;
 import com.lympid.core.behaviorstatemachines.State;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -28,15 +30,31 @@ import java.util.concurrent.Future;
 public class PoolStateMachineExecutor extends AbstractStateMachineExecutor {
 
   private final StateMachineShardPoolExecutor pool;
+  private final StateMachineShardPoolExecutor.Mailbox mailbox;
 
   public PoolStateMachineExecutor(final StateMachineShardPoolExecutor pool, final int id) {
     super(id);
     this.pool = pool;
+    this.mailbox = pool.mailbox(this);
   }
 
   public PoolStateMachineExecutor(final StateMachineShardPoolExecutor pool) {
     super();
     this.pool = pool;
+    this.mailbox = pool.mailbox(this);
+  }
+
+  StateMachineShardPoolExecutor.Mailbox mailbox() {
+    return mailbox;
+  }
+
+  /**
+   * Gets the step duration counters of this state machine.
+   *
+   * @return The live step statistics.
+   */
+  public StepStatistics stepStatistics() {
+    return mailbox.statistics();
   }
 
   @Override
@@ -57,6 +75,25 @@ public class PoolStateMachineExecutor extends AbstractStateMachineExecutor {
     super.take(event);
   }
 
+  /**
+   * Queues the given event and returns a stage completed by the shard worker
+   * once the run-to-completion step triggered by that event is over.
+   *
+   * @param event The event to take.
+   * @return A stage completed with the outcome of the step.
+   */
+  public CompletionStage<StepResult> takeAsync(final Event event) {
+    return pool.takeAsync(this, event);
+  }
+
+  boolean doTakeAsync(final Event event, final List<String> fired) {
+    return super.step(event, fired);
+  }
+
+  StepResult doStepResult(final Event event, final boolean accepted, final List<String> fired) {
+    return super.stepResult(event, accepted, fired);
+  }
+
   @Override
   protected void take(final Event event, final State state) {
     pool.take(this, event, state);
@@ -75,6 +112,28 @@ public class PoolStateMachineExecutor extends AbstractStateMachineExecutor {
     super.takeCompletionEvent();
   }
 
+  @Override
+  void take(final Event event, final State state, final int generation) {
+    pool.take(this, event, state, generation);
+  }
+
+  void doTake(final Event event, final State state, final int generation) {
+    if (isGeneration(generation)) {
+      super.take(event, state);
+    }
+  }
+
+  @Override
+  void takeCompletionEvent(final State state, final int generation) {
+    pool.takeCompletionEvent(this, state, generation);
+  }
+
+  void doTakeCompletionEvent(final State state, final int generation) {
+    if (completeActivity(state, generation)) {
+      super.takeCompletionEvent();
+    }
+  }
+
   @Override
   public void resume(final StateMachineSnapshot snapshot) {
     pool.resume(this, snapshot);
@@ -84,6 +143,18 @@ public class PoolStateMachineExecutor extends AbstractStateMachineExecutor {
     super.resume(snapshot);
   }
 
+  void doAbort() {
+    super.abort();
+  }
+
+  void doStepOverrun(final long duration) {
+    super.stepOverrun(duration);
+  }
+
+  void doQueueWait(final long duration) {
+    super.queueWait(duration);
+  }
+
   @Override
   public StateMachineSnapshot pause() {
     try {
@@ -118,4 +189,25 @@ public class PoolStateMachineExecutor extends AbstractStateMachineExecutor {
     return super.snapshot();
   }
 
+  /**
+   * Resets the state machine on the worker of its shard, after the items
+   * already queued, and waits for it. Must not be called from a behavior of
+   * this state machine.
+   */
+  @Override
+  public void reset() {
+    try {
+      asyncReset().get();
+    } catch (InterruptedException | ExecutionException ex) {
+    }
+  }
+
+  public Future<Void> asyncReset() {
+    return pool.reset(this);
+  }
+
+  void doReset() {
+    super.reset();
+  }
+
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.PseudoStateKind;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the transitions targeting junctions, entry points and exit points
+ * by {@link CompoundTransition}s going all the way to the first vertex which
+ * is none of those.
+ *
+ * <p>
+ * A transition reaching a junction with n outgoing transitions is replaced by
+ * n compound transitions, in the order of the outgoing transitions of the
+ * junction. The first enabled one is fired, as is the first enabled outgoing
+ * transition of the junction otherwise. The guards of the segments shared by
+ * several compound transitions may consequently be evaluated more than once:
+ * they are expected to be free of side effects.</p>
+ *
+ * <p>
+ * Choices, joins and forks are left untouched. Chains ending in a join, chains
+ * with a cycle and transitions which would expand into more than
+ * {@link #MAX_ALTERNATIVES} compound transitions are kept as modeled.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class PseudoStateChainFlattener {
+
+  /**
+   * Maximum number of compound transitions replacing a single transition.
+   */
+  public static final int MAX_ALTERNATIVES = 64;
+
+  private PseudoStateChainFlattener() {
+  }
+
+  /**
+   * Flattens the chains of pseudo states of a state machine, in place.
+   *
+   * @param machine A validated state machine.
+   * @return The number of compound transitions created.
+   */
+  public static int flatten(final StateMachine machine) {
+    final List<MutableVertex> vertices = new ArrayList<>();
+    machine.accept(new SimpleVisitor() {
+
+      @Override
+      public void visit(final ConnectionPointReference v) {
+      }
+
+      @Override
+      public void visit(final State v) {
+        vertices.add((MutableVertex) v);
+      }
+
+      @Override
+      public void visit(final PseudoState v) {
+        if (v.kind() != PseudoStateKind.FORK) {
+          vertices.add((MutableVertex) v);
+        }
+      }
+
+      @Override
+      public void visit(final FinalState v) {
+      }
+
+      @Override
+      public void visit(final Region v) {
+      }
+
+      @Override
+      public void visit(final StateMachine v) {
+      }
+
+      @Override
+      public void visit(final Transition v) {
+      }
+    });
+
+    /*
+     * All the chains are computed from the transitions as modeled before any
+     * vertex gets its outgoing transitions replaced.
+     */
+    int count = 0;
+    Map<MutableVertex, List<Transition>> flattened = new IdentityHashMap<>();
+    for (MutableVertex v : vertices) {
+      List<Transition> outgoing = null;
+      for (Transition t : v.outgoing()) {
+        List<Transition> alternatives = alternatives(t);
+        if (alternatives != null && outgoing == null) {
+          outgoing = new ArrayList<>(v.outgoing().size() + alternatives.size());
+          for (Transition previous : v.outgoing()) {
+            if (previous == t) {
+              break;
+            }
+            outgoing.add(previous);
+          }
+        }
+        if (outgoing != null) {
+          if (alternatives == null) {
+            outgoing.add(t);
+          } else {
+            outgoing.addAll(alternatives);
+            count += alternatives.size();
+          }
+        }
+      }
+      if (outgoing != null) {
+        flattened.put(v, outgoing);
+      }
+    }
+
+    for (Map.Entry<MutableVertex, List<Transition>> e : flattened.entrySet()) {
+      e.getKey().setOutgoing(e.getValue());
+    }
+    return count;
+  }
+
+  private static List<Transition> alternatives(final Transition transition) {
+    if (transition instanceof CompoundTransition || !crossable(transition.target())) {
+      return null;
+    }
+    List<Transition> path = new ArrayList<>();
+    List<Transition> alternatives = new ArrayList<>();
+    path.add(transition);
+    if (!expand(path, alternatives) || alternatives.isEmpty()) {
+      return null;
+    }
+    return alternatives;
+  }
+
+  private static boolean expand(final List<Transition> path, final List<Transition> alternatives) {
+    Vertex vertex = path.get(path.size() - 1).target();
+    if (!crossable(vertex)) {
+      if (vertex instanceof PseudoState && ((PseudoState) vertex).kind() == PseudoStateKind.JOIN) {
+        return false;
+      }
+      alternatives.add(new CompoundTransition(path));
+      return alternatives.size() <= MAX_ALTERNATIVES;
+    }
+
+    for (Transition t : path) {
+      if (t.source() == vertex) {
+        return false;
+      }
+    }
+    for (Transition next : vertex.outgoing()) {
+      path.add(next);
+      boolean expanded = expand(path, alternatives);
+      path.remove(path.size() - 1);
+      if (!expanded) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean crossable(final Vertex vertex) {
+    if (vertex instanceof PseudoState) {
+      switch (((PseudoState) vertex).kind()) {
+        case JUNCTION:
+        case ENTRY_POINT:
+        case EXIT_POINT:
+          return true;
+        default:
+          return false;
+      }
+    }
+    return false;
+  }
+
+}
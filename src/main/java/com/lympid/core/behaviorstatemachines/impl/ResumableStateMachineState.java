@@ -134,5 +134,20 @@ abstract class ResumableStateMachineState implements StateMachineState {
     }
   }
 
+  @Override
+  public boolean reset() {
+    pause();
+    clear();
+    this.started = false;
+    this.terminated = false;
+    return true;
+  }
+
   abstract void saveHistory(Region region, MutableStateConfiguration history);
+
+  /**
+   * Forgets the active states, the completed states and the history once the
+   * activities and the time events have been cancelled.
+   */
+  abstract void clear();
 }
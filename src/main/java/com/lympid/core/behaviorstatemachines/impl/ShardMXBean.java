@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+/**
+ * Management interface of one shard of a {@link StateMachineShardPoolExecutor}.
+ * Durations are in nanoseconds. Rates are left to the monitoring tools, which
+ * derive them from the counters.
+ *
+ * @see ShardStatistics
+ * @author Fabien Renaud
+ */
+public interface ShardMXBean {
+
+  long getQueueDepth();
+
+  long getEnqueuedCount();
+
+  long getDequeuedCount();
+
+  /**
+   * @return The fraction of its lifetime the worker spent running items.
+   */
+  double getUtilization();
+
+  double getQueueWaitMean();
+
+  long getQueueWait99thPercentile();
+
+  long getQueueWaitMax();
+
+  double getServiceTimeMean();
+
+  long getServiceTime99thPercentile();
+
+  long getServiceTimeMax();
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.metrics.HistogramSnapshot;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable copy of the metrics of one shard of a
+ * {@link StateMachineShardPoolExecutor}.
+ *
+ * <p>
+ * Queue wait is the time between the moment an item is queued in the mailbox
+ * of a state machine and the moment the worker starts running it. Service
+ * time is the time the worker spends running it. Both are in nanoseconds. A
+ * high queue wait with a low service time calls for more shards; a high
+ * service time calls for faster behaviors.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class ShardStatistics {
+
+  private final int shard;
+  private final long time;
+  private final long uptime;
+  private final long enqueued;
+  private final long dequeued;
+  private final long busyTime;
+  private final HistogramSnapshot queueWait;
+  private final HistogramSnapshot serviceTime;
+
+  ShardStatistics(final int shard, final long time, final long uptime, final long enqueued, final long dequeued, final long busyTime, final HistogramSnapshot queueWait, final HistogramSnapshot serviceTime) {
+    this.shard = shard;
+    this.time = time;
+    this.uptime = uptime;
+    this.enqueued = enqueued;
+    this.dequeued = dequeued;
+    this.busyTime = busyTime;
+    this.queueWait = queueWait;
+    this.serviceTime = serviceTime;
+  }
+
+  /**
+   * @return The index of the shard.
+   */
+  public int shard() {
+    return shard;
+  }
+
+  /**
+   * @return The time the copy was made at, as a {@link System#nanoTime()}
+   * value.
+   */
+  public long time() {
+    return time;
+  }
+
+  /**
+   * @return The time elapsed since the worker was created, in nanoseconds.
+   */
+  public long uptime() {
+    return uptime;
+  }
+
+  /**
+   * @return The number of items queued in the shard so far.
+   */
+  public long enqueued() {
+    return enqueued;
+  }
+
+  /**
+   * @return The number of items taken out of the queues of the shard so far.
+   */
+  public long dequeued() {
+    return dequeued;
+  }
+
+  /**
+   * @return The number of items waiting in the queues of the shard.
+   */
+  public long depth() {
+    return enqueued - dequeued;
+  }
+
+  /**
+   * @return The time the worker spent running items, in nanoseconds.
+   */
+  public long busyTime() {
+    return busyTime;
+  }
+
+  public HistogramSnapshot queueWait() {
+    return queueWait;
+  }
+
+  public HistogramSnapshot serviceTime() {
+    return serviceTime;
+  }
+
+  /**
+   * @return The fraction of its lifetime the worker spent running items.
+   */
+  public double utilization() {
+    return uptime == 0 ? 0 : (double) busyTime / uptime;
+  }
+
+  /**
+   * Gets the fraction of time the worker spent running items since a previous
+   * copy of the same shard.
+   *
+   * @param previous An earlier copy of the statistics of this shard.
+   * @return The utilization of the worker in between both copies.
+   */
+  public double utilization(final ShardStatistics previous) {
+    long elapsed = elapsed(previous);
+    return elapsed == 0 ? 0 : (double) (busyTime - previous.busyTime) / elapsed;
+  }
+
+  /**
+   * Gets the number of items queued per second since a previous copy of the
+   * same shard.
+   *
+   * @param previous An earlier copy of the statistics of this shard.
+   * @return The enqueue rate in between both copies.
+   */
+  public double enqueueRate(final ShardStatistics previous) {
+    return rate(enqueued - previous.enqueued, elapsed(previous));
+  }
+
+  /**
+   * Gets the number of items taken out of the queues per second since a
+   * previous copy of the same shard.
+   *
+   * @param previous An earlier copy of the statistics of this shard.
+   * @return The dequeue rate in between both copies.
+   */
+  public double dequeueRate(final ShardStatistics previous) {
+    return rate(dequeued - previous.dequeued, elapsed(previous));
+  }
+
+  private long elapsed(final ShardStatistics previous) {
+    if (previous.shard != shard) {
+      throw new IllegalArgumentException("Statistics of shard " + previous.shard + " compared with statistics of shard " + shard);
+    }
+    return time - previous.time;
+  }
+
+  private static double rate(final long count, final long elapsed) {
+    return elapsed == 0 ? 0 : (double) count * TimeUnit.SECONDS.toNanos(1) / elapsed;
+  }
+
+  @Override
+  public String toString() {
+    return "shard " + shard + "{depth=" + depth() + ", enqueued=" + enqueued + ", dequeued=" + dequeued
+      + ", utilization=" + utilization() + ", queueWait=" + queueWait + ", serviceTime=" + serviceTime + "}";
+  }
+
+}
@@ -15,11 +15,13 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.basicbehaviors.Event;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
 import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
@@ -32,12 +34,15 @@ import java.util.concurrent.Future;
  */
 public class SimpleStateMachineState extends ResumableStateMachineState {
 
+  private final StateMachineMeta metadata;
   private final SimpleStateConfiguration activeStates;
   private final Set<State> completed = new HashSet<>(1);
   private StateStatus status;
+  private BitSet acceptedEvents;
 
   public SimpleStateMachineState(final StateMachineMeta metadata) {
     super(metadata);
+    this.metadata = metadata;
     this.activeStates = new SimpleStateConfiguration();
   }
 
@@ -59,6 +64,7 @@ public class SimpleStateMachineState extends ResumableStateMachineState {
   @Override
   public void activate(final State state) {
     activeStates.setState(state);
+    acceptedEvents = metadata.acceptedEvents(state);
 
     status = new StateStatus(state);
     if (state.doActivity() == null) {
@@ -71,12 +77,22 @@ public class SimpleStateMachineState extends ResumableStateMachineState {
     assert activeStates.state() == state;
 
     activeStates.clear();
+    acceptedEvents = null;
     completed.clear();
     clearActivity();
     clearEventTimers();
     status = null;
   }
 
+  @Override
+  public boolean accepts(final Event event) {
+    if (metadata.countOfEvents() == 0) {
+      return true;
+    }
+    int ordinal = metadata.eventOrdinal(event);
+    return ordinal >= 0 && acceptedEvents != null && acceptedEvents.get(ordinal);
+  }
+
   @Override
   public StateStatus status(final State state) {
     return status;
@@ -184,4 +200,12 @@ public class SimpleStateMachineState extends ResumableStateMachineState {
       clearEventTimers();
     }
   }
+
+  @Override
+  void clear() {
+    activeStates.clear();
+    acceptedEvents = null;
+    completed.clear();
+    status = null;
+  }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pool of executors of one state machine.
+ *
+ * <p>
+ * An executor released to the pool is {@link AbstractStateMachineExecutor#reset() reset}:
+ * its activities and time events are cancelled and its context dropped. It
+ * keeps its machine state, with the collections sized by its former run, its
+ * configuration and its listeners. Acquiring an executor starts it with a new
+ * context. The most recently released executor is reused first.</p>
+ *
+ * <p>
+ * Executors are created by a factory, which configures them. Released
+ * executors beyond the capacity of the pool are dropped. A pool is thread
+ * safe.</p>
+ *
+ * @param <E> The type of the executors.
+ *
+ * @author Fabien Renaud
+ */
+public final class StateMachineExecutorPool<E extends AbstractStateMachineExecutor> {
+
+  private final StateMachine machine;
+  private final Supplier<? extends E> factory;
+  private final int capacity;
+  private final ConcurrentLinkedDeque<E> idle = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong reused = new AtomicLong();
+
+  /**
+   * @param machine The state machine run by the executors.
+   * @param factory Creates and configures a new executor. The state machine
+   * is set by the pool.
+   * @param capacity The maximum number of idle executors kept.
+   */
+  public StateMachineExecutorPool(final StateMachine machine, final Supplier<? extends E> factory, final int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+    }
+    this.machine = Objects.requireNonNull(machine);
+    this.factory = Objects.requireNonNull(factory);
+    this.capacity = capacity;
+  }
+
+  public StateMachine stateMachine() {
+    return machine;
+  }
+
+  /**
+   * Takes an idle executor, or creates one, and starts it.
+   *
+   * @param context The context of the state machine.
+   * @return An executor which has gone.
+   */
+  public E acquire(final Object context) {
+    E executor = idle.pollFirst();
+    if (executor == null) {
+      executor = factory.get();
+      executor.setStateMachine(machine);
+      created.incrementAndGet();
+    } else {
+      size.decrementAndGet();
+      reused.incrementAndGet();
+    }
+
+    executor.setContext(context);
+    executor.go();
+    return executor;
+  }
+
+  /**
+   * Resets an executor and gives it back to the pool. The executor must not be
+   * used by the caller anymore.
+   *
+   * @param executor An executor acquired from this pool.
+   */
+  public void release(final E executor) {
+    if (executor.stateMachine() != machine) {
+      throw new IllegalArgumentException("The executor " + executor.getId() + " does not run the state machine of the pool: " + machine.getId());
+    }
+
+    executor.reset();
+    if (size.incrementAndGet() <= capacity) {
+      idle.offerFirst(executor);
+    } else {
+      size.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return The number of idle executors.
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * @return The number of executors created by the factory.
+   */
+  public long created() {
+    return created.get();
+  }
+
+  /**
+   * @return The number of executors acquired from the idle ones.
+   */
+  public long reused() {
+    return reused.get();
+  }
+
+}
@@ -17,80 +17,367 @@ package com.lympid.core.behaviorstatemachines.impl;
 
 import com.lympid.core.basicbehaviors.Event;
 import com.lympid.core.behaviorstatemachines.State;
-import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.metrics.LatencyHistogram;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
+ * Runs state machines on a fixed number of worker threads, each state machine
+ * being bound to one worker (shard) by its id.
+ *
+ * <p>
+ * Every state machine has its own mailbox. A worker serves the mailboxes of
+ * its shard in round-robin and runs at most {@code quantum} queued items of a
+ * mailbox per turn. A state machine with a large backlog thus only delays the
+ * other state machines of its shard by one quantum at a time.</p>
+ *
+ * <p>
+ * The wall time of every item is recorded in the {@link StepStatistics} of its
+ * state machine. Given a {@link StepWatchdog}, the pool also reports the state
+ * machines whose steps take too long and isolates or terminates them.</p>
+ *
+ * <p>
+ * Every shard measures how long items wait in the mailboxes before running
+ * (queue wait) and how long they run (service time), along with its queue
+ * depth, enqueue and dequeue counts and the utilization of its worker. They
+ * are read with {@link #shardStatistics()} or published as MBeans with
+ * {@link #registerMBeans(String)}.</p>
  *
  * @author Fabien Renaud
  */
 public class StateMachineShardPoolExecutor {
 
+  public static final int DEFAULT_QUANTUM = 16;
   private final Worker[] pool;
+  private final StepWatchdog watchdog;
+  private final Worker slowLane;
+  private final List<ObjectName> mbeans = new ArrayList<>();
 
   public StateMachineShardPoolExecutor(final int poolSize) {
     this(poolSize, Executors.defaultThreadFactory());
   }
 
   public StateMachineShardPoolExecutor(final int poolSize, final ThreadFactory threadFactory) {
+    this(poolSize, threadFactory, DEFAULT_QUANTUM);
+  }
+
+  /**
+   * @param poolSize The number of shards.
+   * @param threadFactory The factory creating the worker thread of each shard.
+   * @param quantum The maximum number of queued items of one state machine to
+   * run before moving on to the next state machine of the shard.
+   */
+  public StateMachineShardPoolExecutor(final int poolSize, final ThreadFactory threadFactory, final int quantum) {
+    this(poolSize, threadFactory, quantum, null);
+  }
+
+  /**
+   * @param poolSize The number of shards.
+   * @param threadFactory The factory creating the worker thread of each shard.
+   * @param quantum The maximum number of queued items of one state machine to
+   * run before moving on to the next state machine of the shard.
+   * @param watchdog The step watchdog or null not to watch steps.
+   */
+  public StateMachineShardPoolExecutor(final int poolSize, final ThreadFactory threadFactory, final int quantum, final StepWatchdog watchdog) {
+    if (quantum <= 0) {
+      throw new IllegalArgumentException("The quantum must be strictly positive: " + quantum);
+    }
+    this.watchdog = watchdog;
     this.pool = new Worker[poolSize];
     for (int i = 0; i < poolSize; i++) {
-      Worker worker = new Worker();
+      Worker worker = new Worker(i, quantum);
       pool[i] = worker;
-      worker.start();
+      threadFactory.newThread(worker).start();
+    }
+    if (watchdog != null && watchdog.policy() == StepWatchdog.Policy.QUARANTINE) {
+      slowLane = new Worker(poolSize, quantum);
+      threadFactory.newThread(slowLane).start();
+    } else {
+      slowLane = null;
     }
+    if (watchdog != null) {
+      threadFactory.newThread(new StepMonitor()).start();
+    }
+  }
+
+  Mailbox mailbox(final PoolStateMachineExecutor executor) {
+    int shard = executor.getId() % pool.length;
+    return new Mailbox(pool[shard], executor);
   }
 
   void start(final PoolStateMachineExecutor executor) {
-    queue(executor).add(new StateMachineStart(executor));
+    executor.mailbox().add(new StateMachineStart(executor));
   }
 
   void take(final PoolStateMachineExecutor executor, final Event event) {
-    queue(executor).add(new StateMachineEvent(executor, event));
+    executor.mailbox().add(new StateMachineEvent(executor, event));
+  }
+
+  CompletionStage<StepResult> takeAsync(final PoolStateMachineExecutor executor, final Event event) {
+    StateMachineStepEvent runnable = new StateMachineStepEvent(executor, event);
+    executor.mailbox().add(runnable);
+    return runnable.future;
   }
 
   void take(final PoolStateMachineExecutor executor, final Event event, final State state) {
-    queue(executor).add(new StateMachineStateEvent(executor, event, state));
+    executor.mailbox().add(new StateMachineStateEvent(executor, event, state));
+  }
+
+  void take(final PoolStateMachineExecutor executor, final Event event, final State state, final int generation) {
+    executor.mailbox().add(new StateMachineTimeEvent(executor, event, state, generation));
   }
 
   void takeCompletionEvent(final PoolStateMachineExecutor executor) {
-    queue(executor).addFirst(new StateMachineCompletionEvent(executor));
+    executor.mailbox().addFirst(new StateMachineCompletionEvent(executor));
   }
 
-  private LinkedBlockingDeque<Runnable> queue(final StateMachineExecutor executor) {
-    int shard = executor.getId() % pool.length;
-    return pool[shard].queue;
+  void takeCompletionEvent(final PoolStateMachineExecutor executor, final State state, final int generation) {
+    executor.mailbox().addFirst(new StateMachineActivityCompletion(executor, state, generation));
   }
 
   void resume(final PoolStateMachineExecutor executor, final StateMachineSnapshot snapshot) {
-    queue(executor).add(new StateMachineResumeRunnable(executor, snapshot));
+    executor.mailbox().add(new StateMachineResumeRunnable(executor, snapshot));
   }
 
   Future<StateMachineSnapshot> pause(final PoolStateMachineExecutor executor) {
     StateMachinePauseRunnable runnable = new StateMachinePauseRunnable(executor);
-    queue(executor).addFirst(runnable);
+    executor.mailbox().addFirst(runnable);
     return runnable;
   }
 
+  /**
+   * Queues a reset behind the items already queued for the state machine, so
+   * that they run before it.
+   */
+  Future<Void> reset(final PoolStateMachineExecutor executor) {
+    StateMachineReset runnable = new StateMachineReset(executor);
+    executor.mailbox().add(runnable);
+    return runnable.future;
+  }
+
   Future<StateMachineSnapshot> snapshot(final PoolStateMachineExecutor executor) {
     StateMachineSnapshotRunnable runnable = new StateMachineSnapshotRunnable(executor);
-    queue(executor).addFirst(runnable);
+    executor.mailbox().addFirst(runnable);
     return runnable;
   }
 
-  private static final class Worker extends Thread {
+  /**
+   * Copies the metrics of every shard. Comparing two copies of the same shard
+   * gives the rates and the utilization over the time elapsed in between.
+   *
+   * @return The statistics of the shards, by shard index.
+   */
+  public List<ShardStatistics> shardStatistics() {
+    List<ShardStatistics> list = new ArrayList<>(pool.length);
+    for (Worker worker : pool) {
+      list.add(worker.statistics());
+    }
+    return list;
+  }
+
+  /**
+   * Copies the metrics of the worker running the quarantined state machines.
+   *
+   * @return The statistics of the slow lane or null if the pool has none.
+   */
+  public ShardStatistics slowLaneStatistics() {
+    return slowLane == null ? null : slowLane.statistics();
+  }
+
+  /**
+   * Registers one {@link ShardMXBean} per shard in the platform MBean server,
+   * named {@code com.lympid.core:type=StateMachineShardPool,name=<name>,shard=<index>}.
+   * The slow lane, if any, has the index following the last shard.
+   *
+   * @param name The name of this pool.
+   * @return The names of the registered MBeans.
+   * @throws JMException When an MBean cannot be registered.
+   */
+  public synchronized List<ObjectName> registerMBeans(final String name) throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    List<Worker> workers = new ArrayList<>(pool.length + 1);
+    Collections.addAll(workers, pool);
+    if (slowLane != null) {
+      workers.add(slowLane);
+    }
+    List<ObjectName> names = new ArrayList<>(workers.size());
+    try {
+      for (Worker worker : workers) {
+        ObjectName objectName = new ObjectName("com.lympid.core:type=StateMachineShardPool,name=" + ObjectName.quote(name) + ",shard=" + worker.index);
+        server.registerMBean(new ShardBean(worker), objectName);
+        names.add(objectName);
+        mbeans.add(objectName);
+      }
+    } catch (JMException ex) {
+      unregisterMBeans();
+      throw ex;
+    }
+    return names;
+  }
+
+  /**
+   * Unregisters the MBeans registered by {@link #registerMBeans(String)}.
+   */
+  public synchronized void unregisterMBeans() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName objectName : mbeans) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException ex) {
+        // already unregistered
+      }
+    }
+    mbeans.clear();
+  }
+
+  /**
+   * Applies the policy of the watchdog to a state machine whose step has just
+   * overrun.
+   *
+   * @param mailbox The mailbox of the state machine.
+   * @param duration The wall time of the step.
+   * @param reported Whether the monitor has already reported the step while it
+   * was running.
+   */
+  private void overrun(final Mailbox mailbox, final long duration, final boolean reported) {
+    if (!reported) {
+      report(mailbox, duration);
+    }
+    switch (watchdog.policy()) {
+      case QUARANTINE:
+        if (mailbox.worker != slowLane) {
+          /*
+           * The mailbox is held by the current worker, which hands it over to
+           * the slow lane at the end of its turn.
+           */
+          mailbox.worker = slowLane;
+          mailbox.statistics.quarantine();
+        }
+        break;
+      case TERMINATE:
+        mailbox.executor.doAbort();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void report(final Mailbox mailbox, final long duration) {
+    mailbox.statistics.overrun();
+    mailbox.executor.doStepOverrun(duration);
+  }
+
+  /**
+   * Queue of the items to run for one state machine.
+   */
+  static final class Mailbox {
+
+    private final PoolStateMachineExecutor executor;
+    private final ConcurrentLinkedDeque<Task> queue = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final StepStatistics statistics = new StepStatistics();
+    private volatile Worker worker;
+
+    private Mailbox(final Worker worker, final PoolStateMachineExecutor executor) {
+      this.worker = worker;
+      this.executor = executor;
+    }
+
+    StepStatistics statistics() {
+      return statistics;
+    }
+
+    void add(final Task task) {
+      queue.addLast(enqueued(task));
+      schedule();
+    }
+
+    /**
+     * Queues an item ahead of the other items of this state machine only. It
+     * does not jump ahead of the other state machines of the shard.
+     *
+     * @param task The item to run next for this state machine.
+     */
+    void addFirst(final Task task) {
+      queue.addFirst(enqueued(task));
+      schedule();
+    }
+
+    /**
+     * Stamps an item with the shard it is counted in. The item leaves the
+     * depth of that shard when it is polled, even if the state machine has
+     * been moved to another worker in between.
+     */
+    private Task enqueued(final Task task) {
+      Worker w = worker;
+      task.mailbox = this;
+      task.shard = w;
+      task.enqueueTime = System.nanoTime();
+      w.enqueued.incrementAndGet();
+      return task;
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        worker.ready.add(this);
+      }
+    }
+
+  }
 
-    private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<>();
+  private final class Worker implements Runnable {
+
+    private final LinkedBlockingQueue<Mailbox> ready = new LinkedBlockingQueue<>();
+    private final int index;
+    private final int quantum;
+    private final long startTime = System.nanoTime();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dequeued = new AtomicLong();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    /**
+     * Written by the worker thread only.
+     */
+    private volatile long busyTime;
+    /**
+     * The item being run when steps are watched. The monitor clears it once it
+     * has reported the item as overrunning.
+     */
+    private final AtomicReference<Task> inFlight = new AtomicReference<>();
+
+    private Worker(final int index, final int quantum) {
+      this.index = index;
+      this.quantum = quantum;
+    }
 
-    private Worker() {
+    private ShardStatistics statistics() {
+      /*
+       * Dequeued first so the depth is never negative.
+       */
+      long deq = dequeued.get();
+      long enq = enqueued.get();
+      long now = System.nanoTime();
+      return new ShardStatistics(index, now, now - startTime, enq, deq, busyTime, queueWait.snapshot(), serviceTime.snapshot());
     }
 
     @Override
@@ -98,16 +385,210 @@ public class StateMachineShardPoolExecutor {
       Thread t = Thread.currentThread();
       while (!t.isInterrupted()) {
         try {
-          queue.takeFirst().run();
+          turn(ready.take());
         } catch (InterruptedException ex) {
           ex.printStackTrace(); // FIXME
         }
       }
     }
 
+    private void turn(final Mailbox mailbox) {
+      try {
+        Task task;
+        for (int i = 0; i < quantum && mailbox.worker == this && (task = mailbox.queue.pollFirst()) != null; i++) {
+          long start = System.nanoTime();
+          try {
+            task.shard.dequeued.incrementAndGet();
+            queueWait.record(start - task.enqueueTime);
+            try {
+              mailbox.executor.doQueueWait(start - task.enqueueTime);
+            } catch (RuntimeException ex) {
+              uncaught(ex);
+            }
+            if (watchdog != null) {
+              task.startTime = start;
+              inFlight.set(task);
+            }
+            try {
+              task.run();
+            } catch (RuntimeException ex) {
+              uncaught(ex);
+            } finally {
+              long duration = System.nanoTime() - start;
+              serviceTime.record(duration);
+              busyTime += duration;
+              mailbox.statistics.record(duration);
+              if (watchdog != null) {
+                boolean reported = !inFlight.compareAndSet(task, null);
+                if (duration > watchdog.threshold()) {
+                  try {
+                    overrun(mailbox, duration, reported);
+                  } catch (RuntimeException ex) {
+                    uncaught(ex);
+                  }
+                }
+              }
+            }
+          } finally {
+            task.complete();
+          }
+        }
+      } finally {
+        if (!mailbox.queue.isEmpty()) {
+          mailbox.worker.ready.add(mailbox);
+        } else {
+          /*
+           * An item may have been queued after the last poll but before the
+           * flag is cleared; its producer could not schedule the mailbox.
+           */
+          mailbox.scheduled.set(false);
+          if (!mailbox.queue.isEmpty()) {
+            mailbox.schedule();
+          }
+        }
+      }
+    }
+
+    /**
+     * Reports the item run by this worker if it has been running for longer
+     * than the threshold of the watchdog. Called by the monitor thread.
+     *
+     * @param now The time of the sample.
+     */
+    private void sample(final long now) {
+      Task task = inFlight.get();
+      if (task != null) {
+        long elapsed = now - task.startTime;
+        if (elapsed > watchdog.threshold() && inFlight.compareAndSet(task, null)) {
+          try {
+            report(task.mailbox, elapsed);
+          } catch (RuntimeException ex) {
+            uncaught(ex);
+          }
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Hands an exception thrown by a listener or an item over to the uncaught
+   * exception handler of the current thread, without terminating it.
+   */
+  private static void uncaught(final RuntimeException ex) {
+    Thread t = Thread.currentThread();
+    t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+  }
+
+  /**
+   * Samples the item run by every worker, twice per threshold of the watchdog,
+   * so that a step which takes too long is reported while it still runs, even
+   * if it never returns.
+   */
+  private final class StepMonitor implements Runnable {
+
+    @Override
+    public void run() {
+      long period = Math.max(watchdog.threshold() / 2, TimeUnit.MILLISECONDS.toNanos(1));
+      try {
+        while (true) {
+          TimeUnit.NANOSECONDS.sleep(period);
+          long now = System.nanoTime();
+          for (Worker worker : pool) {
+            worker.sample(now);
+          }
+          if (slowLane != null) {
+            slowLane.sample(now);
+          }
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  }
+
+  private static final class ShardBean implements ShardMXBean {
+
+    private final Worker worker;
+
+    private ShardBean(final Worker worker) {
+      this.worker = worker;
+    }
+
+    @Override
+    public long getQueueDepth() {
+      return worker.statistics().depth();
+    }
+
+    @Override
+    public long getEnqueuedCount() {
+      return worker.enqueued.get();
+    }
+
+    @Override
+    public long getDequeuedCount() {
+      return worker.dequeued.get();
+    }
+
+    @Override
+    public double getUtilization() {
+      return worker.statistics().utilization();
+    }
+
+    @Override
+    public double getQueueWaitMean() {
+      return worker.queueWait.snapshot().mean();
+    }
+
+    @Override
+    public long getQueueWait99thPercentile() {
+      return worker.queueWait.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getQueueWaitMax() {
+      return worker.queueWait.snapshot().max();
+    }
+
+    @Override
+    public double getServiceTimeMean() {
+      return worker.serviceTime.snapshot().mean();
+    }
+
+    @Override
+    public long getServiceTime99thPercentile() {
+      return worker.serviceTime.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getServiceTimeMax() {
+      return worker.serviceTime.snapshot().max();
+    }
+
+  }
+
+  /**
+   * Item of a mailbox.
+   */
+  static abstract class Task implements Runnable {
+
+    private Mailbox mailbox;
+    private Worker shard;
+    private long enqueueTime;
+    private long startTime;
+
+    /**
+     * Hands the outcome of {@link #run()} over to the caller waiting for it.
+     * Invoked by the worker once the service time of the task is recorded, so
+     * that the statistics read by the caller account for it.
+     */
+    void complete() {
+    }
+
   }
 
-  private static final class StateMachineStart implements Runnable {
+  private static final class StateMachineStart extends Task {
 
     private final PoolStateMachineExecutor executor;
 
@@ -122,7 +603,7 @@ public class StateMachineShardPoolExecutor {
 
   }
 
-  private static final class StateMachineEvent implements Runnable {
+  private static final class StateMachineEvent extends Task {
 
     private final PoolStateMachineExecutor executor;
     private final Event event;
@@ -139,7 +620,53 @@ public class StateMachineShardPoolExecutor {
 
   }
 
-  private static final class StateMachineStateEvent implements Runnable {
+  /**
+   * Event runnable completing a stage. Completing it happens on the worker
+   * thread and does not block.
+   */
+  private static final class StateMachineStepEvent extends Task {
+
+    private final PoolStateMachineExecutor executor;
+    private final Event event;
+    private final CompletableFuture<StepResult> future = new CompletableFuture<>();
+    private final List<String> fired = new ArrayList<>();
+    private boolean accepted;
+    private Throwable failure;
+
+    public StateMachineStepEvent(final PoolStateMachineExecutor executor, final Event event) {
+      this.executor = executor;
+      this.event = event;
+    }
+
+    @Override
+    public void run() {
+      try {
+        accepted = executor.doTakeAsync(event, fired);
+      } catch (Throwable ex) {
+        failure = ex;
+      }
+    }
+
+    /**
+     * The result is built here, once the watchdog policy has run, so that it
+     * reports a state machine terminated by the watchdog.
+     */
+    @Override
+    void complete() {
+      if (failure == null) {
+        try {
+          future.complete(executor.doStepResult(event, accepted, fired));
+        } catch (Throwable ex) {
+          future.completeExceptionally(ex);
+        }
+      } else {
+        future.completeExceptionally(failure);
+      }
+    }
+
+  }
+
+  private static final class StateMachineStateEvent extends Task {
 
     private final PoolStateMachineExecutor executor;
     private final Event event;
@@ -158,7 +685,7 @@ public class StateMachineShardPoolExecutor {
 
   }
 
-  private static final class StateMachineCompletionEvent implements Runnable {
+  private static final class StateMachineCompletionEvent extends Task {
 
     private final PoolStateMachineExecutor executor;
 
@@ -173,7 +700,85 @@ public class StateMachineShardPoolExecutor {
 
   }
 
-  private static final class StateMachineResumeRunnable implements Runnable {
+  /**
+   * Time event scheduled by a given run of the state machine. It is dropped on
+   * the worker if the state machine has been reset since.
+   */
+  private static final class StateMachineTimeEvent extends Task {
+
+    private final PoolStateMachineExecutor executor;
+    private final Event event;
+    private final State state;
+    private final int generation;
+
+    public StateMachineTimeEvent(final PoolStateMachineExecutor executor, final Event event, final State state, final int generation) {
+      this.executor = executor;
+      this.event = event;
+      this.state = state;
+      this.generation = generation;
+    }
+
+    @Override
+    public void run() {
+      executor.doTake(event, state, generation);
+    }
+
+  }
+
+  /**
+   * Completion of an activity started by a given run of the state machine. It
+   * is dropped on the worker if the state machine has been reset since.
+   */
+  private static final class StateMachineActivityCompletion extends Task {
+
+    private final PoolStateMachineExecutor executor;
+    private final State state;
+    private final int generation;
+
+    public StateMachineActivityCompletion(final PoolStateMachineExecutor executor, final State state, final int generation) {
+      this.executor = executor;
+      this.state = state;
+      this.generation = generation;
+    }
+
+    @Override
+    public void run() {
+      executor.doTakeCompletionEvent(state, generation);
+    }
+
+  }
+
+  private static final class StateMachineReset extends Task {
+
+    private final PoolStateMachineExecutor executor;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private Throwable failure;
+
+    public StateMachineReset(final PoolStateMachineExecutor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+      try {
+        executor.doReset();
+      } catch (Throwable ex) {
+        failure = ex;
+      }
+    }
+
+    @Override
+    void complete() {
+      if (failure == null) {
+        future.complete(null);
+      } else {
+        future.completeExceptionally(failure);
+      }
+    }
+
+  }
+
+  private static final class StateMachineResumeRunnable extends Task {
 
     private final PoolStateMachineExecutor executor;
     private final StateMachineSnapshot snapshot;
@@ -190,11 +795,12 @@ public class StateMachineShardPoolExecutor {
 
   }
   
-  private static abstract class StateMachineSnapshotFuture implements Future<StateMachineSnapshot>, Runnable {
+  private static abstract class StateMachineSnapshotFuture extends Task implements Future<StateMachineSnapshot> {
 
     private final CountDownLatch latch = new CountDownLatch(1);
     private final AtomicInteger status = new AtomicInteger();
     private StateMachineSnapshot snapshot;
+    private boolean taken;
     
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
@@ -225,14 +831,18 @@ public class StateMachineShardPoolExecutor {
 
     @Override
     public void run() {
-      if (isCancelled()) {
-        latch.countDown();
-        return;
+      if (!isCancelled()) {
+        snapshot = snapshot();
+        taken = true;
       }
-      
-      snapshot = snapshot();
+    }
+
+    @Override
+    void complete() {
       latch.countDown();
-      status.set(1);
+      if (taken) {
+        status.set(1);
+      }
     }
     
     abstract StateMachineSnapshot snapshot();
@@ -254,7 +864,7 @@ public class StateMachineShardPoolExecutor {
 
   }
 
-  private static final class StateMachineSnapshotRunnable extends StateMachineSnapshotFuture implements Runnable {
+  private static final class StateMachineSnapshotRunnable extends StateMachineSnapshotFuture {
 
     private final PoolStateMachineExecutor executor;
 
@@ -70,7 +70,7 @@ public final class StateMachineSnapshot<C> implements Serializable {
     return terminated;
   }
   
-  private StringTree createStateConfiguration(final StateConfiguration<?> config) {
+  static StringTree createStateConfiguration(final StateConfiguration<?> config) {
     if (config.state() == null) {
       return null;
     }
@@ -84,7 +84,7 @@ public final class StateMachineSnapshot<C> implements Serializable {
     return node;
   }
 
-  private void createStateConfiguration(final StateConfiguration<?> config, final List<StringTree> current) {StringTree node = new StringTree();
+  private static void createStateConfiguration(final StateConfiguration<?> config, final List<StringTree> current) {StringTree node = new StringTree();
     node.state = config.state().getId();
     if (!config.isEmpty()) {
       node.children = new ArrayList<>(config.size());
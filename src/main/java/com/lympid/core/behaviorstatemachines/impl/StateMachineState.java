@@ -15,6 +15,7 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.basicbehaviors.Event;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
@@ -35,6 +36,18 @@ public interface StateMachineState {
 
   void activate(State state);
 
+  /**
+   * Gets whether any active state may accept the given event. Events are never
+   * denied up front by default.
+   *
+   * @param event An event.
+   * @return false if no active state nor any of its ancestors has an outgoing
+   * transition triggered by the event.
+   */
+  default boolean accepts(Event event) {
+    return true;
+  }
+
   StateConfiguration<?> activeStates();
 
   StateConfiguration<?> activeStates(Region region);
@@ -81,6 +94,23 @@ public interface StateMachineState {
   
   void resume(StateMachineSnapshot<?> snapshot);
 
+  /**
+   * Cancels the activities and the time events of the active states and
+   * brings this state back to where it was when created: not started, no
+   * active state and no history. Its internal collections are kept for the
+   * next run.
+   *
+   * <p>
+   * By default, the state is only paused and is not reused.</p>
+   *
+   * @return true if this state can be reused for the next run; false if the
+   * executor must create a new one.
+   */
+  default boolean reset() {
+    pause();
+    return false;
+  }
+
   public static class SynchronizedStateMachineState implements StateMachineState {
 
     private final StateMachineState inst;
@@ -97,6 +127,15 @@ public interface StateMachineState {
       }
     }
 
+    @Override
+    public boolean accepts(Event event) {
+      boolean out;
+      synchronized (mutex) {
+        out = inst.accepts(event);
+      }
+      return out;
+    }
+
     @Override
     public StateConfiguration activeStates() {
       StateConfiguration out;
@@ -284,6 +323,15 @@ public interface StateMachineState {
       }
     }
 
+    @Override
+    public boolean reset() {
+      boolean out;
+      synchronized (mutex) {
+        out = inst.reset();
+      }
+      return out;
+    }
+
   }
 
 }
@@ -0,0 +1,596 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.RelativeTimeEvent;
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import static com.lympid.core.behaviorstatemachines.PseudoStateKind.JUNCTION;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateBehavior;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Runs many instances of one flat state machine, stored column-wise.
+ *
+ * <p>
+ * An instance is an index in the table. Its state is an ordinal in an
+ * {@code int[]} and the time that state was entered a value in a
+ * {@code long[]}. Its context is looked up by index. There is no executor,
+ * machine state nor state status object per instance, so a table holds
+ * millions of instances at a few bytes each.</p>
+ *
+ * <p>
+ * Events are taken with the semantics of the executors: an instance is
+ * started by its first event, the guards of all the candidate transitions are
+ * evaluated and the first enabled one is fired, completion transitions are
+ * fired right after each step and exceptions thrown by behaviors are
+ * swallowed, a guard throwing one being disabled. There are no listeners.</p>
+ *
+ * <p>
+ * Time events are not scheduled. They are fired by
+ * {@link #takeTimeEvents()}, which is meant to be called periodically: each
+ * call fires the time events which fell due since the previous call.</p>
+ *
+ * <p>
+ * Only state machines with a single region of simple states, final states,
+ * choices, junctions and terminate pseudo states are supported. Hierarchical
+ * state machines can be flattened with
+ * {@link com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder#flattenHierarchy(int)}
+ * first. Activities are not supported.</p>
+ *
+ * <p>
+ * A table is not thread safe. Batches can be split in segments of instances
+ * run in parallel on the fork/join pool, each instance still taking its
+ * events in order.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class StateMachineTable {
+
+  private static final int NOT_STARTED = 0;
+  private static final int NO_STATE = 1;
+  private static final int FIRST_STATE = 2;
+  private static final TimeEvent[] NO_TIME_EVENTS = new TimeEvent[0];
+  private final StateMachine machine;
+  private final IntFunction<?> contexts;
+  private final State[] vertices;
+  private final Map<State, Integer> ordinals;
+  private final TimeEvent[][] timeEvents;
+  private final boolean completionEvents;
+  /**
+   * The state of each instance: {@link #NOT_STARTED}, {@link #NO_STATE}, the
+   * ordinal of its active state or, once terminated, the bitwise complement of
+   * one of the former.
+   */
+  private final int[] states;
+  private final long[] activationTimes;
+  private long timeEventsTaken = Long.MIN_VALUE;
+
+  /**
+   * @param machine The state machine run by all the instances.
+   * @param size The number of instances.
+   * @param contexts Gives the context of an instance from its index.
+   */
+  public StateMachineTable(final StateMachine machine, final int size, final IntFunction<?> contexts) {
+    if (size < 0) {
+      throw new IllegalArgumentException("The size must be positive: " + size);
+    }
+    if (machine.region().size() != 1) {
+      throw new IllegalArgumentException("Only state machines with a single region are supported: " + machine.getId());
+    }
+    this.machine = machine;
+    this.contexts = Objects.requireNonNull(contexts);
+
+    final Region region = machine.region().get(0);
+    final List<State> all = new ArrayList<>(region.subVertex().size() + FIRST_STATE);
+    all.add(null);
+    all.add(null);
+    this.ordinals = new IdentityHashMap<>(region.subVertex().size());
+    for (Vertex v : region.subVertex()) {
+      if (v instanceof State) {
+        State s = (State) v;
+        if (!s.isSimple() || s.doActivity() != null) {
+          throw new IllegalArgumentException("Only simple states with no activity are supported: " + s.getId());
+        }
+        ordinals.put(s, all.size());
+        all.add(s);
+      } else {
+        switch (((PseudoState) v).kind()) {
+          case INITIAL:
+          case CHOICE:
+          case JUNCTION:
+          case TERMINATE:
+            break;
+          default:
+            throw new IllegalArgumentException("Unsupported pseudo state: " + ((PseudoState) v).kind());
+        }
+      }
+    }
+    this.vertices = all.toArray(new State[all.size()]);
+
+    this.timeEvents = new TimeEvent[vertices.length][];
+    for (int i = 0; i < vertices.length; i++) {
+      timeEvents[i] = i < FIRST_STATE ? NO_TIME_EVENTS : timeEvents(vertices[i]);
+    }
+
+    this.completionEvents = machine.metadata().hasCompletionEvents();
+    this.states = new int[size];
+    this.activationTimes = new long[size];
+  }
+
+  private static TimeEvent[] timeEvents(final State state) {
+    final Collection<? extends TimeEvent> events = state.outgoingTimeEvents();
+    if (events.isEmpty()) {
+      return NO_TIME_EVENTS;
+    }
+    for (TimeEvent e : events) {
+      if (!(e instanceof RelativeTimeEvent)) {
+        throw new IllegalArgumentException("Unsupported time event: " + e.getClass().getCanonicalName());
+      }
+    }
+    final TimeEvent[] sorted = events.toArray(new TimeEvent[events.size()]);
+    Arrays.sort(sorted, (a, b) -> Long.compare(a.time(), b.time()));
+    return sorted;
+  }
+
+  public StateMachine stateMachine() {
+    return machine;
+  }
+
+  /**
+   * @return The number of instances.
+   */
+  public int size() {
+    return states.length;
+  }
+
+  /**
+   * Starts an instance, if it has not started yet.
+   *
+   * @param instance The index of the instance.
+   */
+  public void go(final int instance) {
+    if (states[instance] == NOT_STARTED) {
+      start(instance, contexts.apply(instance));
+    }
+  }
+
+  public boolean isStarted(final int instance) {
+    return states[instance] != NOT_STARTED;
+  }
+
+  public boolean isTerminated(final int instance) {
+    return states[instance] < 0;
+  }
+
+  /**
+   * @param instance The index of the instance.
+   * @return The active state of the instance, which may be a final state
+   * once it terminated, or null when it has none.
+   */
+  public State state(final int instance) {
+    int s = states[instance];
+    if (s < 0) {
+      s = ~s;
+    }
+    return s < FIRST_STATE ? null : vertices[s];
+  }
+
+  /**
+   * @param instance The index of the instance.
+   * @return The time the active state of the instance was entered, in
+   * milliseconds.
+   */
+  public long activationTime(final int instance) {
+    return activationTimes[instance];
+  }
+
+  /**
+   * Takes an event for one instance, starting it first if needed.
+   *
+   * @param instance The index of the instance.
+   * @param event The event to take.
+   * @return true when the event fired a transition.
+   */
+  public boolean take(final int instance, final Event event) {
+    final Object context = contexts.apply(instance);
+    if (states[instance] == NOT_STARTED) {
+      start(instance, context);
+    }
+    final int s = states[instance];
+    if (s < FIRST_STATE) {
+      return false;
+    }
+
+    final Transition[] path = transitionPath(event, vertices[s], context);
+    if (path == null) {
+      return false;
+    }
+    fire(instance, context, event, path);
+    postFire(instance, context);
+    return true;
+  }
+
+  /**
+   * Takes a batch of events, in order.
+   *
+   * @param instances The index of the instance taking each event.
+   * @param events The events.
+   * @return The number of events which fired a transition.
+   */
+  public int take(final int[] instances, final Event[] events) {
+    if (instances.length != events.length) {
+      throw new IllegalArgumentException("There are " + instances.length + " instances for " + events.length + " events.");
+    }
+    int accepted = 0;
+    for (int i = 0; i < instances.length; i++) {
+      if (take(instances[i], events[i])) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * Takes a batch of events in parallel. The instances are split in
+   * contiguous segments which take their events on the fork/join pool. Each
+   * instance takes its events in the order of the batch.
+   *
+   * @param instances The index of the instance taking each event.
+   * @param events The events.
+   * @param segments The number of segments to split the instances in.
+   * @return The number of events which fired a transition.
+   */
+  public int take(final int[] instances, final Event[] events, final int segments) {
+    if (segments <= 1 || states.length <= 1) {
+      return take(instances, events);
+    }
+    if (instances.length != events.length) {
+      throw new IllegalArgumentException("There are " + instances.length + " instances for " + events.length + " events.");
+    }
+
+    /*
+     * Stable counting sort of the batch by segment.
+     */
+    final int span = span(segments);
+    final int count = (states.length + span - 1) / span;
+    final int[] offsets = new int[count + 1];
+    for (int instance : instances) {
+      offsets[instance / span + 1]++;
+    }
+    for (int i = 0; i < count; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    final int[] order = new int[instances.length];
+    final int[] next = offsets.clone();
+    for (int i = 0; i < instances.length; i++) {
+      order[next[instances[i] / span]++] = i;
+    }
+
+    return invokeAll(count, (segment) -> {
+      int accepted = 0;
+      for (int i = offsets[segment]; i < offsets[segment + 1]; i++) {
+        int k = order[i];
+        if (take(instances[k], events[k])) {
+          accepted++;
+        }
+      }
+      return accepted;
+    });
+  }
+
+  /**
+   * Fires the time events of all the instances which fell due since the
+   * previous call.
+   *
+   * @return The number of time events which fired a transition.
+   */
+  public int takeTimeEvents() {
+    return takeTimeEvents(1);
+  }
+
+  /**
+   * Fires the time events of all the instances which fell due since the
+   * previous call, splitting the instances in contiguous segments run in
+   * parallel on the fork/join pool.
+   *
+   * @param segments The number of segments to split the instances in.
+   * @return The number of time events which fired a transition.
+   */
+  public int takeTimeEvents(final int segments) {
+    final long from = timeEventsTaken;
+    final long to = System.currentTimeMillis();
+    final int fired;
+    if (!machine.metadata().hasTimeEvents()) {
+      fired = 0;
+    } else if (segments <= 1 || states.length <= 1) {
+      fired = takeTimeEvents(0, states.length, from, to);
+    } else {
+      final int span = span(segments);
+      fired = invokeAll((states.length + span - 1) / span, (segment) -> {
+        int start = segment * span;
+        return takeTimeEvents(start, Math.min(start + span, states.length), from, to);
+      });
+    }
+    timeEventsTaken = to;
+    return fired;
+  }
+
+  private int takeTimeEvents(final int start, final int end, final long from, final long to) {
+    int fired = 0;
+    for (int instance = start; instance < end; instance++) {
+      final int s = states[instance];
+      if (s < FIRST_STATE) {
+        continue;
+      }
+
+      final long activationTime = activationTimes[instance];
+      for (TimeEvent event : timeEvents[s]) {
+        final long deadline = activationTime + event.time();
+        if (deadline <= from || deadline > to) {
+          continue;
+        }
+        if (take(instance, event)) {
+          fired++;
+        }
+        if (states[instance] != s || activationTimes[instance] != activationTime) {
+          break; // the state was left, its other time events are cancelled
+        }
+      }
+    }
+    return fired;
+  }
+
+  private int span(final int segments) {
+    return (states.length + segments - 1) / segments;
+  }
+
+  private static int invokeAll(final int segments, final IntUnaryOperator segment) {
+    final List<ForkJoinTask<Integer>> tasks = new ArrayList<>(segments);
+    for (int i = 0; i < segments; i++) {
+      final int index = i;
+      tasks.add(ForkJoinTask.adapt(() -> segment.applyAsInt(index)));
+    }
+
+    int total = 0;
+    for (ForkJoinTask<Integer> task : ForkJoinTask.invokeAll(tasks)) {
+      total += task.join();
+    }
+    return total;
+  }
+
+  private void start(final int instance, final Object context) {
+    final PseudoState initial = machine.region().get(0).initial();
+    final Transition[] path = transitionPath(CompletionEvent.INSTANCE, initial, context);
+    if (path == null) {
+      throw new RuntimeException("No transition of the initial pseudo state is enabled: " + machine.getId());
+    }
+
+    states[instance] = NO_STATE;
+    fire(instance, context, CompletionEvent.INSTANCE, path);
+    postFire(instance, context);
+  }
+
+  private void postFire(final int instance, final Object context) {
+    if (!completionEvents) {
+      return;
+    }
+
+    /*
+     * Simple states with no activity are completed as soon as they are
+     * entered. Same infinite loop detection as the executors: stop as soon as
+     * firing the completion transitions changes neither the active state nor
+     * the context.
+     */
+    while (states[instance] >= FIRST_STATE) {
+      final int before = states[instance];
+      final int contextHashBefore = Objects.hashCode(context);
+
+      final Transition[] path = transitionPath(CompletionEvent.INSTANCE, vertices[before], context);
+      if (path == null) {
+        break;
+      }
+      fire(instance, context, CompletionEvent.INSTANCE, path);
+
+      if (states[instance] == before && Objects.hashCode(context) == contextHashBefore) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Fires a chain of transitions going through junctions.
+   */
+  private void fire(final int instance, final Object context, final Event event, final Transition[] path) {
+    Event e = event;
+    for (Transition t : path) {
+      fire(instance, context, e, t);
+      e = CompletionEvent.INSTANCE;
+    }
+  }
+
+  private void fire(final int instance, final Object context, final Event event, final Transition transition) {
+    if (transition instanceof CompoundTransition) {
+      Event e = event;
+      for (Transition t : ((CompoundTransition) transition).segments()) {
+        fire(instance, context, e, t);
+        e = CompletionEvent.INSTANCE;
+      }
+      return;
+    }
+
+    switch (transition.kind()) {
+      case EXTERNAL:
+      case LOCAL:
+        leave(instance, context);
+        transitionEffect(event, transition, context);
+        enter(instance, context, transition.target());
+        break;
+      case INTERNAL:
+        transitionEffect(event, transition, context);
+        break;
+      default:
+        throw new UnsupportedOperationException("Unknown transition kind: " + transition.kind());
+    }
+  }
+
+  private void leave(final int instance, final Object context) {
+    final int s = states[instance];
+    if (s < FIRST_STATE) {
+      return;
+    }
+
+    states[instance] = NO_STATE;
+    behaviors(vertices[s].exit(), context);
+  }
+
+  /**
+   * Runs entry or exit behaviors. As in the executors with no listener, an
+   * exception skips the remaining behaviors and is swallowed.
+   */
+  private static void behaviors(final Collection<? extends StateBehavior> behaviors, final Object context) {
+    if (behaviors.isEmpty()) {
+      return;
+    }
+
+    try {
+      for (StateBehavior b : behaviors) {
+        b.accept(context);
+      }
+    } catch (Exception ex) {
+      // swallowed
+    }
+  }
+
+  private void enter(final int instance, final Object context, final Vertex vertex) {
+    if (vertex instanceof State) {
+      final int s = ordinals.get((State) vertex);
+      states[instance] = s;
+      activationTimes[instance] = System.currentTimeMillis();
+
+      behaviors(((State) vertex).entry(), context);
+      if (vertex instanceof FinalState) {
+        states[instance] = ~s;
+      }
+      return;
+    }
+
+    final PseudoState pseudoState = (PseudoState) vertex;
+    switch (pseudoState.kind()) {
+      case CHOICE:
+        final Transition[] path = transitionPath(CompletionEvent.INSTANCE, pseudoState, context);
+        if (path == null) {
+          throw new RuntimeException("No transition of the choice pseudo state is enabled: " + pseudoState.getId());
+        }
+        fire(instance, context, CompletionEvent.INSTANCE, path);
+        break;
+      case JUNCTION:
+        break; // the path goes on with the next transition
+      case TERMINATE:
+        states[instance] = ~states[instance];
+        break;
+      default:
+        throw new UnsupportedOperationException("Unsupported pseudo state kind: " + pseudoState.kind());
+    }
+  }
+
+  /**
+   * Finds the first enabled chain of transitions leaving the given vertex,
+   * following junctions. As in the executors, the guards of all the candidate
+   * transitions are evaluated.
+   *
+   * @return The chain of transitions or null when none is enabled.
+   */
+  private Transition[] transitionPath(final Event event, final Vertex vertex, final Object context) {
+    Transition[] first = null;
+    for (Transition t : vertex.outgoing(event)) {
+      if (!transitionGuard(event, t, context)) {
+        continue;
+      }
+
+      Transition[] path;
+      final Vertex target = t.target();
+      if (target instanceof PseudoState && ((PseudoState) target).kind() == JUNCTION) {
+        final Transition[] next = transitionPath(CompletionEvent.INSTANCE, target, context);
+        if (next == null) {
+          continue;
+        }
+        path = new Transition[next.length + 1];
+        path[0] = t;
+        System.arraycopy(next, 0, path, 1, next.length);
+      } else {
+        path = new Transition[]{t};
+      }
+
+      if (first == null) {
+        first = path;
+      }
+    }
+    return first;
+  }
+
+  private static boolean transitionGuard(final Event event, final Transition transition, final Object context) {
+    if (transition instanceof CompoundTransition) {
+      Event e = event;
+      for (Transition t : ((CompoundTransition) transition).segments()) {
+        if (!transitionGuard(e, t, context)) {
+          return false;
+        }
+        e = CompletionEvent.INSTANCE;
+      }
+      return true;
+    }
+    if (transition.guard() == null) {
+      return true;
+    }
+
+    try {
+      return transition.guard().test(event, context);
+    } catch (Exception ex) {
+      return false;
+    }
+  }
+
+  private static void transitionEffect(final Event event, final Transition transition, final Object context) {
+    if (transition.effect() == null) {
+      return;
+    }
+
+    try {
+      transition.effect().accept(event, context);
+    } catch (Exception ex) {
+      // swallowed
+    }
+  }
+
+}
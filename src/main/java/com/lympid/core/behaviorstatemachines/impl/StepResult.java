@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineSnapshot.StringTree;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a single run-to-completion step triggered by an event.
+ *
+ * <p>
+ * The transitions are reported in the order they were fired, including the
+ * transitions fired by completion events within that same step.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class StepResult {
+
+  private final Event event;
+  private final boolean accepted;
+  private final boolean terminated;
+  private final List<String> transitions;
+  private final StringTree stateConfiguration;
+
+  StepResult(final Event event, final boolean accepted, final List<String> transitions, final StateMachineState state) {
+    this.event = event;
+    this.accepted = accepted;
+    this.terminated = state.isTerminated();
+    this.transitions = transitions.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(transitions);
+    this.stateConfiguration = StateMachineSnapshot.createStateConfiguration(state.activeStates());
+  }
+
+  /**
+   * Gets the event that triggered the step.
+   *
+   * @return The event taken by the state machine.
+   */
+  public Event event() {
+    return event;
+  }
+
+  /**
+   * Gets whether the event was accepted by the active state configuration.
+   *
+   * @return true when the event fired at least one transition; false when the
+   * event was denied.
+   */
+  public boolean isAccepted() {
+    return accepted;
+  }
+
+  /**
+   * Gets whether the state machine is terminated at the end of the step.
+   *
+   * @return true when the state machine is terminated.
+   */
+  public boolean isTerminated() {
+    return terminated;
+  }
+
+  /**
+   * Gets the ids of the transitions fired during the step.
+   *
+   * @return The ordered list of the ids of the fired transitions.
+   */
+  public List<String> transitions() {
+    return transitions;
+  }
+
+  /**
+   * Gets the active state configuration at the end of the step.
+   *
+   * @return The active state configuration or null if no state is active.
+   */
+  public StringTree stateConfiguration() {
+    return stateConfiguration;
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+/**
+ * Step duration counters of a pooled state machine.
+ *
+ * <p>
+ * A step is any item run by the shard worker on behalf of the state machine:
+ * start, event, completion event, pause, resume or snapshot. The counters are
+ * only written by the worker running the state machine and may be read from
+ * any thread.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class StepStatistics {
+
+  private volatile long steps;
+  private volatile long totalNanos;
+  private volatile long maxNanos;
+  private volatile long overruns;
+  private volatile boolean quarantined;
+
+  StepStatistics() {
+  }
+
+  void record(final long duration) {
+    steps++;
+    totalNanos += duration;
+    if (duration > maxNanos) {
+      maxNanos = duration;
+    }
+  }
+
+  void overrun() {
+    overruns++;
+  }
+
+  void quarantine() {
+    quarantined = true;
+  }
+
+  public long steps() {
+    return steps;
+  }
+
+  public long totalNanos() {
+    return totalNanos;
+  }
+
+  public long maxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * Gets the number of steps which lasted longer than the threshold of the
+   * {@link StepWatchdog}.
+   *
+   * @return The number of overruns.
+   */
+  public long overruns() {
+    return overruns;
+  }
+
+  /**
+   * Gets whether the state machine has been moved to the slow lane.
+   *
+   * @return true if the state machine runs on the slow lane.
+   */
+  public boolean isQuarantined() {
+    return quarantined;
+  }
+
+}
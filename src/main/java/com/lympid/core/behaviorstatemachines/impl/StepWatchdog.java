@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run-to-completion watchdog of a {@link StateMachineShardPoolExecutor}.
+ *
+ * <p>
+ * The shard workers measure the wall time of every step they run. A step
+ * lasting longer than the threshold is an overrun: the
+ * {@link com.lympid.core.behaviorstatemachines.listener.MachineStepOverrunListener overrun listeners}
+ * of the state machine are notified and the policy is applied.</p>
+ *
+ * <p>
+ * A monitor thread of the pool also samples the steps in flight, twice per
+ * threshold. A step still running past the threshold is reported right away,
+ * even if it never returns: the overrun listeners are then called from the
+ * monitor thread with the time elapsed so far. The policy is applied by the
+ * worker, once the step returns. Every overrun is reported once.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class StepWatchdog {
+
+  private final long threshold;
+  private final Policy policy;
+
+  /**
+   * @param threshold The longest acceptable wall time of a step.
+   * @param unit The unit of the threshold.
+   * @param policy What to do with a state machine which overran a step.
+   */
+  public StepWatchdog(final long threshold, final TimeUnit unit, final Policy policy) {
+    if (threshold <= 0) {
+      throw new IllegalArgumentException("The threshold must be strictly positive: " + threshold);
+    }
+    if (policy == null) {
+      throw new IllegalArgumentException("The policy must not be null.");
+    }
+    this.threshold = unit.toNanos(threshold);
+    this.policy = policy;
+  }
+
+  /**
+   * Gets the longest acceptable wall time of a step.
+   *
+   * @return The threshold in nanoseconds.
+   */
+  public long threshold() {
+    return threshold;
+  }
+
+  public Policy policy() {
+    return policy;
+  }
+
+  /**
+   * What to do with a state machine once one of its steps overran.
+   */
+  public enum Policy {
+
+    /**
+     * Only notifies the overrun listeners.
+     */
+    LOG,
+    /**
+     * Moves the state machine to the slow lane of the pool. The slow lane is a
+     * worker of its own, so the state machine no longer delays the other state
+     * machines of its shard. A quarantined state machine never leaves the slow
+     * lane.
+     */
+    QUARANTINE,
+    /**
+     * Terminates the state machine right away, without running any exit
+     * behavior. Subsequent events are denied.
+     */
+    TERMINATE
+  }
+}
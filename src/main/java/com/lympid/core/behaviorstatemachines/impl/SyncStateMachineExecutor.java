@@ -58,6 +58,16 @@ public class SyncStateMachineExecutor extends AbstractStateMachineExecutor {
     super.takeCompletionEvent();
   }
 
+  @Override
+  synchronized void take(final Event event, final State state, final int generation) {
+    super.take(event, state, generation);
+  }
+
+  @Override
+  synchronized void takeCompletionEvent(final State state, final int generation) {
+    super.takeCompletionEvent(state, generation);
+  }
+
   @Override
   public synchronized StateMachineSnapshot snapshot() {
     return super.snapshot();
@@ -73,4 +83,9 @@ public class SyncStateMachineExecutor extends AbstractStateMachineExecutor {
     super.resume(snapshot);
   }
 
+  @Override
+  public synchronized void reset() {
+    super.reset();
+  }
+
 }
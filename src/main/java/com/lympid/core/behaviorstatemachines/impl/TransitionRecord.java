@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+
+/**
+ * Entry of the history kept by a {@link TransitionRecorder}: a fired
+ * transition or a denied event.
+ *
+ * @author Fabien Renaud
+ */
+public final class TransitionRecord {
+
+  private final long time;
+  private final Event event;
+  private final Transition transition;
+  private final Vertex target;
+
+  TransitionRecord(final long time, final Event event, final Transition transition, final Vertex target) {
+    this.time = time;
+    this.event = event;
+    this.transition = transition;
+    this.target = target;
+  }
+
+  /**
+   * @return The time the entry was recorded at, as a
+   * {@link System#nanoTime()} value.
+   */
+  public long time() {
+    return time;
+  }
+
+  /**
+   * @return The event or null if the recorder had no room left to keep it.
+   */
+  public Event event() {
+    return event;
+  }
+
+  /**
+   * @return The transition fired or null if the event was denied.
+   */
+  public Transition transition() {
+    return transition;
+  }
+
+  /**
+   * @return The target of the transition or null if the event was denied.
+   */
+  public Vertex target() {
+    return target;
+  }
+
+  public boolean isAccepted() {
+    return transition != null;
+  }
+
+  @Override
+  public String toString() {
+    if (transition == null) {
+      return time + " " + event + " denied";
+    }
+    return time + " " + event + " " + transition.getName() + "#" + transition.getId() + " -> " + target.getName() + "#" + target.getId();
+  }
+
+}
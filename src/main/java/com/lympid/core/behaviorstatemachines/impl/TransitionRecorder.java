@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.listener.EventDeniedListener;
+import com.lympid.core.behaviorstatemachines.listener.StateActivityExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateEnterExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateExitExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionEffectExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionEndedListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionGuardExceptionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener keeping the history of the last transitions of one state machine.
+ *
+ * <p>
+ * Every fired transition and every denied event is written in a circular
+ * buffer of primitive tuples: time, event ordinal, transition ordinal and
+ * target ordinal. Ordinals index symbol tables filled the first time an event,
+ * a transition or a vertex is seen. Once the symbol tables hold every element
+ * of the state machine, recording does not allocate. Elements beyond the
+ * capacity of their table are recorded without their value.</p>
+ *
+ * <p>
+ * The history is copied with {@link #dump()}, from any thread. Given a
+ * {@link Handler}, it is also dumped whenever a behavior or a guard throws an
+ * exception.</p>
+ *
+ * <p>
+ * A recorder has a single writer and must only be attached to one executor.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class TransitionRecorder<C> implements TransitionEndedListener<C>, EventDeniedListener<C>,
+        TransitionGuardExceptionListener<C>, TransitionEffectExceptionListener<C>,
+        StateEnterExceptionListener<C>, StateExitExceptionListener<C>, StateActivityExceptionListener<C> {
+
+  private static final int NONE = -1;
+  private final long[] times;
+  private final int[] events;
+  private final int[] transitions;
+  private final int[] targets;
+  private final int mask;
+  private final int capacity;
+  private final Symbols eventSymbols;
+  private final Symbols transitionSymbols = new Symbols(4096);
+  private final Symbols vertexSymbols = new Symbols(4096);
+  private final Handler handler;
+  private volatile long count;
+
+  public TransitionRecorder(final int capacity) {
+    this(capacity, null);
+  }
+
+  /**
+   * @param capacity The number of entries kept.
+   * @param handler Receives the history when a behavior or a guard throws an
+   * exception or null not to dump on exceptions.
+   */
+  public TransitionRecorder(final int capacity, final Handler handler) {
+    this(capacity, 1024, handler);
+  }
+
+  /**
+   * @param capacity The number of entries kept. The buffer has a spare slot,
+   * the one being written, and its size is rounded up to a power of two.
+   * @param maxEvents The maximum number of distinct events remembered.
+   * @param handler Receives the history when a behavior or a guard throws an
+   * exception or null not to dump on exceptions.
+   */
+  public TransitionRecorder(final int capacity, final int maxEvents, final Handler handler) {
+    if (capacity <= 0 || capacity >= 1 << 30) {
+      throw new IllegalArgumentException("The capacity must be in ]0, 2^30[: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity) << 1;
+    this.times = new long[size];
+    this.events = new int[size];
+    this.transitions = new int[size];
+    this.targets = new int[size];
+    this.mask = size - 1;
+    this.capacity = capacity;
+    this.eventSymbols = new Symbols(maxEvents);
+    this.handler = handler;
+  }
+
+  public void attach(final ExecutorListener listeners) {
+    listeners.add(this);
+  }
+
+  public void detach(final ExecutorListener listeners) {
+    listeners.remove(this);
+  }
+
+  /**
+   * @return The number of entries recorded so far, including the ones which
+   * have been overwritten.
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Copies the history. Entries overwritten while copying are left out.
+   *
+   * @return The last entries, from the oldest to the most recent.
+   */
+  public List<TransitionRecord> dump() {
+    long end = count;
+    long start = Math.max(0, end - capacity);
+    List<TransitionRecord> list = new ArrayList<>((int) (end - start));
+    for (long i = start; i < end; i++) {
+      int slot = (int) i & mask;
+      list.add(new TransitionRecord(times[slot],
+        (Event) eventSymbols.get(events[slot]),
+        (Transition) transitionSymbols.get(transitions[slot]),
+        (Vertex) vertexSymbols.get(targets[slot])));
+    }
+
+    /*
+     * The writer may have lapped the oldest entries while they were copied.
+     * It fills the slot of entry n before it publishes a count of n + 1, so
+     * the entry sharing its slot with the one in flight is left out as well.
+     */
+    long overwritten = count - times.length - start + 1;
+    if (overwritten > 0) {
+      return new ArrayList<>(list.subList((int) Math.min(overwritten, list.size()), list.size()));
+    }
+    return list;
+  }
+
+  private void record(final Event event, final Transition transition, final Vertex target) {
+    long n = count;
+    int slot = (int) n & mask;
+    times[slot] = System.nanoTime();
+    events[slot] = eventSymbols.ordinal(event);
+    transitions[slot] = transition == null ? NONE : transitionSymbols.ordinal(transition);
+    targets[slot] = target == null ? NONE : vertexSymbols.ordinal(target);
+    count = n + 1;
+  }
+
+  private void failed(final Exception exception) {
+    if (handler != null) {
+      handler.onDump(dump(), exception);
+    }
+  }
+
+  @Override
+  public void onTransitionEnded(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    record(event, transition, transition.target());
+  }
+
+  @Override
+  public void onEventDenied(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    record(event, null, null);
+  }
+
+  @Override
+  public void onTransitionGuardException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
+    failed(exception);
+  }
+
+  @Override
+  public void onTransitionEffectException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
+    failed(exception);
+  }
+
+  @Override
+  public void onStateEnterException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    failed(exception);
+  }
+
+  @Override
+  public void onStateExitException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    failed(exception);
+  }
+
+  @Override
+  public void onStateActivityException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    failed(exception);
+  }
+
+  public interface Handler {
+
+    /**
+     * @param records The history of the state machine, from the oldest to the
+     * most recent entry.
+     * @param exception The exception thrown by a behavior or a guard.
+     */
+    void onDump(List<TransitionRecord> records, Exception exception);
+  }
+
+  /**
+   * Open addressing table giving ordinals to the objects it is given, in the
+   * order they are first seen. Written by a single thread; an ordinal is
+   * published to readers along with the entry it is recorded in.
+   */
+  private static final class Symbols {
+
+    private final Object[] keys;
+    private final int[] ordinals;
+    private final Object[] values;
+    private final int mask;
+    private int size;
+
+    Symbols(final int capacity) {
+      this.values = new Object[capacity];
+      int length = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+      this.keys = new Object[length];
+      this.ordinals = new int[length];
+      this.mask = length - 1;
+    }
+
+    int ordinal(final Object key) {
+      if (key == null) {
+        return NONE;
+      }
+      int h = key.hashCode();
+      int i = (h ^ (h >>> 16)) & mask;
+      Object k;
+      while ((k = keys[i]) != null) {
+        if (k == key || k.equals(key)) {
+          return ordinals[i];
+        }
+        i = (i + 1) & mask;
+      }
+      if (size == values.length) {
+        return NONE;
+      }
+      values[size] = key;
+      ordinals[i] = size;
+      keys[i] = key;
+      return size++;
+    }
+
+    Object get(final int ordinal) {
+      return ordinal == NONE ? null : values[ordinal];
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.listener;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+
+/**
+ * Notified by a pooled executor when an item of the state machine leaves its
+ * mailbox to be run.
+ *
+ * @author Fabien Renaud
+ */
+public interface MachineQueueWaitListener<C> extends MachineListener {
+
+  /**
+   * @param executor The executor of the state machine.
+   * @param machine The state machine.
+   * @param context The context of the state machine.
+   * @param duration The time the item waited in the mailbox, in nanoseconds.
+   */
+  void onMachineQueueWait(StateMachineExecutor executor, StateMachine machine, C context, long duration);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.listener;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+
+/**
+ * Notified when an event starts a run-to-completion step, before the
+ * transitions it triggers are looked up.
+ *
+ * @author Fabien Renaud
+ */
+public interface MachineStepStartedListener<C> extends MachineListener {
+
+  /**
+   * @param executor The executor of the state machine.
+   * @param machine The state machine.
+   * @param context The context of the state machine.
+   * @param event The event taken.
+   */
+  void onMachineStepStarted(StateMachineExecutor executor, StateMachine machine, C context, Event event);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.listener;
+
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+
+/**
+ * Notified when a state is about to be left, before its exit behaviors run.
+ *
+ * @author Fabien Renaud
+ */
+public interface StateDwellListener<C> extends MachineListener {
+
+  /**
+   * @param executor The executor of the state machine.
+   * @param machine The state machine.
+   * @param context The context of the state machine.
+   * @param state The state being left.
+   * @param duration The time spent in the state since its activation, in
+   * milliseconds.
+   */
+  void onStateDwell(StateMachineExecutor executor, StateMachine machine, C context, State state, long duration);
+}
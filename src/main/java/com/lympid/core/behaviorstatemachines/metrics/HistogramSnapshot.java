@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+/**
+ * Immutable copy of a {@link LatencyHistogram}.
+ *
+ * @author Fabien Renaud
+ */
+public final class HistogramSnapshot {
+
+  private final long[] counts;
+  private final long count;
+  private final long sum;
+  private final long max;
+
+  HistogramSnapshot(final long[] counts, final long sum, final long max) {
+    this.counts = counts;
+    long c = 0;
+    for (long n : counts) {
+      c += n;
+    }
+    this.count = c;
+    this.sum = sum;
+    this.max = max;
+  }
+
+  public long count() {
+    return count;
+  }
+
+  public long sum() {
+    return sum;
+  }
+
+  public long max() {
+    return max;
+  }
+
+  public double mean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * Gets the value under which the given fraction of the recorded values
+   * fall, within the precision of the buckets.
+   *
+   * @param quantile A fraction in [0, 1], e.g. 0.99 for the 99th percentile.
+   * @return The highest value of the bucket holding the quantile, capped by
+   * the maximum recorded value; 0 if the histogram is empty.
+   */
+  public long percentile(final double quantile) {
+    if (quantile < 0 || quantile > 1) {
+      throw new IllegalArgumentException("The quantile must be in [0, 1]: " + quantile);
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.highestValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "{count=" + count + ", mean=" + mean() + ", p50=" + percentile(0.5)
+      + ", p99=" + percentile(0.99) + ", max=" + max + "}";
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with logarithmic buckets.
+ *
+ * <p>
+ * Values below 8 have a bucket each. Every power of two above is split into 8
+ * linear sub-buckets, so a recorded value is known within 12.5%. Recording a
+ * value never allocates nor locks.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class LatencyHistogram {
+
+  static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a value. Negative values are recorded as 0.
+   *
+   * @param value The value to record.
+   */
+  public void record(final long value) {
+    long v = value < 0 ? 0 : value;
+    counts.incrementAndGet(index(v));
+    count.incrementAndGet();
+    sum.addAndGet(v);
+    long m;
+    while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+    }
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  /**
+   * Copies the histogram. Values recorded while copying may or may not be part
+   * of the snapshot.
+   *
+   * @return A snapshot of the histogram.
+   */
+  public HistogramSnapshot snapshot() {
+    long[] copy = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      copy[i] = counts.get(i);
+    }
+    return new HistogramSnapshot(copy, sum.get(), max.get());
+  }
+
+  static int index(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  static long highestValue(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long sub = index % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return ((SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+  }
+
+}
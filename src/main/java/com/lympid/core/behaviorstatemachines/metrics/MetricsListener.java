@@ -0,0 +1,301 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorListener;
+import com.lympid.core.behaviorstatemachines.listener.EventAcceptedListener;
+import com.lympid.core.behaviorstatemachines.listener.EventDeniedListener;
+import com.lympid.core.behaviorstatemachines.listener.StateDwellListener;
+import com.lympid.core.behaviorstatemachines.listener.StateEnterAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateEnterBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateExitAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateExitBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionEndedListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionGuardAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionGuardBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionStartedListener;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listener collecting counters and latency histograms per state, per
+ * transition and per event.
+ *
+ * <ul>
+ * <li>states: number of entries and exits, duration of the entry and exit
+ * behaviors in nanoseconds and dwell time in milliseconds,</li>
+ * <li>transitions: number of firings, duration of the guard and of the whole
+ * transition in nanoseconds,</li>
+ * <li>events: number of times accepted and denied.</li>
+ * </ul>
+ *
+ * <p>
+ * Metrics are only collected while the listener is {@link #attach(ExecutorListener) attached}.
+ * A detached listener costs nothing since executors check for the presence of
+ * listeners before invoking them. Once a state, transition or event has been
+ * seen, recording its metrics does not allocate. One instance may be attached
+ * to many executors, running on many threads.</p>
+ *
+ * <p>
+ * Events are compared with {@link Object#equals(Object)}. At most
+ * {@code maxEvents} distinct events are tracked; the following ones are
+ * counted together under a {@code null} key.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class MetricsListener<C> implements
+        EventAcceptedListener<C>, EventDeniedListener<C>,
+        StateEnterBeforeExecutionListener<C>, StateEnterAfterExecutionListener<C>,
+        StateExitBeforeExecutionListener<C>, StateExitAfterExecutionListener<C>, StateDwellListener<C>,
+        TransitionStartedListener<C>, TransitionEndedListener<C>,
+        TransitionGuardBeforeExecutionListener<C>, TransitionGuardAfterExecutionListener<C> {
+
+  private static final int MAX_NESTED_TRANSITIONS = 64;
+  private final int maxEvents;
+  private final Map<String, StateMetrics> states = new ConcurrentHashMap<>();
+  private final Map<String, TransitionMetrics> transitions = new ConcurrentHashMap<>();
+  private final Map<Event, EventMetrics> events = new ConcurrentHashMap<>();
+  private final EventMetrics otherEvents = new EventMetrics();
+  private final ThreadLocal<Clock> clocks = ThreadLocal.withInitial(Clock::new);
+
+  public MetricsListener() {
+    this(1024);
+  }
+
+  /**
+   * @param maxEvents The maximum number of distinct events to track.
+   */
+  public MetricsListener(final int maxEvents) {
+    this.maxEvents = maxEvents;
+  }
+
+  /**
+   * Starts collecting the metrics of the executor owning the given listeners.
+   *
+   * @param listeners The listeners of an executor.
+   */
+  public void attach(final ExecutorListener listeners) {
+    listeners.add(this);
+  }
+
+  /**
+   * Stops collecting the metrics of the executor owning the given listeners.
+   *
+   * @param listeners The listeners of an executor.
+   */
+  public void detach(final ExecutorListener listeners) {
+    listeners.remove(this);
+  }
+
+  /**
+   * Copies the metrics collected so far.
+   *
+   * @return An immutable copy of the metrics.
+   */
+  public MetricsSnapshot snapshot() {
+    Map<String, MetricsSnapshot.StateMetrics> s = new HashMap<>();
+    for (StateMetrics m : states.values()) {
+      s.put(m.id, new MetricsSnapshot.StateMetrics(m.id, m.name, m.entries.get(), m.exits.get(), m.entry.snapshot(), m.exit.snapshot(), m.dwell.snapshot()));
+    }
+    Map<String, MetricsSnapshot.TransitionMetrics> t = new HashMap<>();
+    for (TransitionMetrics m : transitions.values()) {
+      t.put(m.id, new MetricsSnapshot.TransitionMetrics(m.id, m.name, m.fired.get(), m.guard.snapshot(), m.latency.snapshot()));
+    }
+    Map<Event, MetricsSnapshot.EventMetrics> e = new HashMap<>();
+    for (Map.Entry<Event, EventMetrics> entry : events.entrySet()) {
+      e.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    if (otherEvents.accepted.get() != 0 || otherEvents.denied.get() != 0) {
+      e.put(null, otherEvents.snapshot());
+    }
+    return new MetricsSnapshot(s, t, e);
+  }
+
+  private StateMetrics metrics(final State state) {
+    StateMetrics m = states.get(state.getId());
+    if (m == null) {
+      m = states.computeIfAbsent(state.getId(), (id) -> new StateMetrics(state));
+    }
+    return m;
+  }
+
+  private TransitionMetrics metrics(final Transition transition) {
+    TransitionMetrics m = transitions.get(transition.getId());
+    if (m == null) {
+      m = transitions.computeIfAbsent(transition.getId(), (id) -> new TransitionMetrics(transition));
+    }
+    return m;
+  }
+
+  private EventMetrics metrics(final Event event) {
+    if (event == null) {
+      return otherEvents;
+    }
+    EventMetrics m = events.get(event);
+    if (m == null) {
+      if (events.size() >= maxEvents) {
+        return otherEvents;
+      }
+      m = events.computeIfAbsent(event, (e) -> new EventMetrics());
+    }
+    return m;
+  }
+
+  @Override
+  public void onEventAccepted(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    /*
+     * No transition is in progress when an event is accepted. Resetting the
+     * stack recovers from transitions which ended with an exception.
+     */
+    clocks.get().depth = 0;
+    metrics(event).accepted.incrementAndGet();
+  }
+
+  @Override
+  public void onEventDenied(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    metrics(event).denied.incrementAndGet();
+  }
+
+  @Override
+  public void onStateEnterBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    clocks.get().entry = System.nanoTime();
+  }
+
+  @Override
+  public void onStateEnterAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    StateMetrics m = metrics(state);
+    m.entries.incrementAndGet();
+    m.entry.record(System.nanoTime() - clocks.get().entry);
+  }
+
+  @Override
+  public void onStateExitBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    clocks.get().exit = System.nanoTime();
+  }
+
+  @Override
+  public void onStateExitAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    StateMetrics m = metrics(state);
+    m.exits.incrementAndGet();
+    m.exit.record(System.nanoTime() - clocks.get().exit);
+  }
+
+  @Override
+  public void onStateDwell(StateMachineExecutor executor, StateMachine machine, C context, State state, long duration) {
+    metrics(state).dwell.record(duration);
+  }
+
+  @Override
+  public void onTransitionStarted(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    clocks.get().push(System.nanoTime());
+  }
+
+  @Override
+  public void onTransitionEnded(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    long now = System.nanoTime();
+    TransitionMetrics m = metrics(transition);
+    m.fired.incrementAndGet();
+    long started = clocks.get().pop();
+    if (started != 0) {
+      m.latency.record(now - started);
+    }
+  }
+
+  @Override
+  public void onTransitionGuardBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    clocks.get().guard = System.nanoTime();
+  }
+
+  @Override
+  public void onTransitionGuardAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    metrics(transition).guard.record(System.nanoTime() - clocks.get().guard);
+  }
+
+  /**
+   * Start times of the behaviors in progress on one thread. Transitions nest
+   * when a compound transition goes through pseudo states.
+   */
+  private static final class Clock {
+
+    private long entry;
+    private long exit;
+    private long guard;
+    private final long[] transitions = new long[MAX_NESTED_TRANSITIONS];
+    private int depth;
+
+    void push(final long time) {
+      if (depth < transitions.length) {
+        transitions[depth] = time;
+      }
+      depth++;
+    }
+
+    long pop() {
+      if (depth == 0) {
+        return 0;
+      }
+      depth--;
+      return depth < transitions.length ? transitions[depth] : 0;
+    }
+  }
+
+  private static final class StateMetrics {
+
+    private final String id;
+    private final String name;
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong exits = new AtomicLong();
+    private final LatencyHistogram entry = new LatencyHistogram();
+    private final LatencyHistogram exit = new LatencyHistogram();
+    private final LatencyHistogram dwell = new LatencyHistogram();
+
+    StateMetrics(final State state) {
+      this.id = state.getId();
+      this.name = state.getName();
+    }
+  }
+
+  private static final class TransitionMetrics {
+
+    private final String id;
+    private final String name;
+    private final AtomicLong fired = new AtomicLong();
+    private final LatencyHistogram guard = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    TransitionMetrics(final Transition transition) {
+      this.id = transition.getId();
+      this.name = transition.getName();
+    }
+  }
+
+  private static final class EventMetrics {
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong denied = new AtomicLong();
+
+    MetricsSnapshot.EventMetrics snapshot() {
+      return new MetricsSnapshot.EventMetrics(accepted.get(), denied.get());
+    }
+  }
+}
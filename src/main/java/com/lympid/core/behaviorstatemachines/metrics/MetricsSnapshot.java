@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import com.lympid.core.basicbehaviors.Event;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable copy of the metrics collected by a {@link MetricsListener}.
+ *
+ * @author Fabien Renaud
+ */
+public final class MetricsSnapshot {
+
+  private final Map<String, StateMetrics> states;
+  private final Map<String, TransitionMetrics> transitions;
+  private final Map<Event, EventMetrics> events;
+
+  MetricsSnapshot(final Map<String, StateMetrics> states, final Map<String, TransitionMetrics> transitions, final Map<Event, EventMetrics> events) {
+    this.states = Collections.unmodifiableMap(states);
+    this.transitions = Collections.unmodifiableMap(transitions);
+    this.events = Collections.unmodifiableMap(events);
+  }
+
+  /**
+   * @return The metrics of the states, by state id.
+   */
+  public Map<String, StateMetrics> states() {
+    return states;
+  }
+
+  /**
+   * @return The metrics of the transitions, by transition id.
+   */
+  public Map<String, TransitionMetrics> transitions() {
+    return transitions;
+  }
+
+  /**
+   * @return The metrics of the events. The {@code null} key holds the events
+   * which were not tracked individually.
+   */
+  public Map<Event, EventMetrics> events() {
+    return events;
+  }
+
+  /**
+   * Finds the metrics of a state by name.
+   *
+   * @param name The name of a state.
+   * @return The metrics of the first state found with that name or null.
+   */
+  public StateMetrics state(final String name) {
+    for (StateMetrics m : states.values()) {
+      if (name.equals(m.name())) {
+        return m;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the metrics of a transition by name.
+   *
+   * @param name The name of a transition.
+   * @return The metrics of the first transition found with that name or null.
+   */
+  public TransitionMetrics transition(final String name) {
+    for (TransitionMetrics m : transitions.values()) {
+      if (name.equals(m.name())) {
+        return m;
+      }
+    }
+    return null;
+  }
+
+  public static final class StateMetrics {
+
+    private final String id;
+    private final String name;
+    private final long entries;
+    private final long exits;
+    private final HistogramSnapshot entry;
+    private final HistogramSnapshot exit;
+    private final HistogramSnapshot dwell;
+
+    StateMetrics(final String id, final String name, final long entries, final long exits, final HistogramSnapshot entry, final HistogramSnapshot exit, final HistogramSnapshot dwell) {
+      this.id = id;
+      this.name = name;
+      this.entries = entries;
+      this.exits = exits;
+      this.entry = entry;
+      this.exit = exit;
+      this.dwell = dwell;
+    }
+
+    public String id() {
+      return id;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    /**
+     * @return The number of times the entry behaviors were run.
+     */
+    public long entries() {
+      return entries;
+    }
+
+    /**
+     * @return The number of times the exit behaviors were run.
+     */
+    public long exits() {
+      return exits;
+    }
+
+    /**
+     * @return The duration of the entry behaviors, in nanoseconds.
+     */
+    public HistogramSnapshot entry() {
+      return entry;
+    }
+
+    /**
+     * @return The duration of the exit behaviors, in nanoseconds.
+     */
+    public HistogramSnapshot exit() {
+      return exit;
+    }
+
+    /**
+     * @return The time spent in the state, in milliseconds.
+     */
+    public HistogramSnapshot dwell() {
+      return dwell;
+    }
+  }
+
+  public static final class TransitionMetrics {
+
+    private final String id;
+    private final String name;
+    private final long fired;
+    private final HistogramSnapshot guard;
+    private final HistogramSnapshot latency;
+
+    TransitionMetrics(final String id, final String name, final long fired, final HistogramSnapshot guard, final HistogramSnapshot latency) {
+      this.id = id;
+      this.name = name;
+      this.fired = fired;
+      this.guard = guard;
+      this.latency = latency;
+    }
+
+    public String id() {
+      return id;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public long fired() {
+      return fired;
+    }
+
+    /**
+     * @return The duration of the guard, in nanoseconds.
+     */
+    public HistogramSnapshot guard() {
+      return guard;
+    }
+
+    /**
+     * @return The duration of the transition from start to end, in
+     * nanoseconds.
+     */
+    public HistogramSnapshot latency() {
+      return latency;
+    }
+  }
+
+  public static final class EventMetrics {
+
+    private final long accepted;
+    private final long denied;
+
+    EventMetrics(final long accepted, final long denied) {
+      this.accepted = accepted;
+      this.denied = denied;
+    }
+
+    public long accepted() {
+      return accepted;
+    }
+
+    public long denied() {
+      return denied;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.trace;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts events to and from the payloads of an execution trace.
+ *
+ * @author Fabien Renaud
+ */
+public interface EventCodec {
+
+  /**
+   * Codec of the {@link StringEvent}s. Other events are not traced.
+   */
+  EventCodec STRING = new EventCodec() {
+
+    @Override
+    public byte[] encode(final Event event) {
+      return event.getClass() == StringEvent.class ? event.toString().getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public Event decode(final byte[] payload) {
+      return new StringEvent(new String(payload, StandardCharsets.UTF_8));
+    }
+  };
+
+  /**
+   * Encodes an event. Events are encoded the first time they are seen and
+   * again when they come back after being evicted from the keys of the
+   * writer; equal events share the same payload in between.
+   *
+   * @param event The event to encode.
+   * @return The payload of the event or null if it cannot be encoded. The
+   * record of the event is then written without a payload.
+   */
+  byte[] encode(Event event);
+
+  /**
+   * @param payload A payload returned by {@link #encode(Event)}.
+   * @return The event.
+   */
+  Event decode(byte[] payload);
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.trace;
+
+/**
+ * Layout of an execution trace.
+ *
+ * <p>
+ * A trace starts with a header: the {@link #MAGIC} number and the
+ * {@link #VERSION} of the format. Then come records, each starting with a tag
+ * byte:</p>
+ * <ul>
+ * <li>{@link #PAYLOAD}: event key (int), payload length (int), payload bytes.
+ * It defines the payload of an event key and precedes the first record
+ * referring to that key. Keys are reused: a key evicted by the writer is
+ * defined again with the payload of another event, which replaces the former
+ * one from then on.</li>
+ * <li>{@link #ACCEPTED} or {@link #DENIED}: sequence number (long), executor
+ * id (int), event key (int). The key is {@link #UNENCODED} when the codec
+ * could not encode the event.</li>
+ * </ul>
+ * <p>
+ * Numbers are big-endian.</p>
+ *
+ * @author Fabien Renaud
+ */
+final class TraceFormat {
+
+  static final int MAGIC = 0x4C595452;
+  static final short VERSION = 2;
+  /**
+   * The oldest version still read. It never reuses keys nor writes
+   * {@link #UNENCODED} records.
+   */
+  static final short MIN_VERSION = 1;
+  static final int HEADER_SIZE = 6;
+  static final byte PAYLOAD = 'P';
+  static final byte ACCEPTED = 'A';
+  static final byte DENIED = 'D';
+  static final int EVENT_RECORD_SIZE = 17;
+  static final int PAYLOAD_RECORD_HEADER_SIZE = 9;
+  static final int UNENCODED = -1;
+
+  private TraceFormat() {
+  }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.trace;
+
+import com.lympid.core.basicbehaviors.Event;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the event records of an execution trace written by a
+ * {@link TraceWriter}. Payloads are decoded once per definition of an event
+ * key and the decoded events are shared by all the records referring to that
+ * key until it is defined again.
+ *
+ * @author Fabien Renaud
+ */
+public final class TraceReader implements Closeable {
+
+  private final FileChannel channel;
+  private final EventCodec codec;
+  private final ByteBuffer buffer;
+  private final List<Event> events = new ArrayList<>();
+  private long sequence;
+  private int executorId;
+  private Event event;
+  private boolean accepted;
+
+  public TraceReader(final Path file, final EventCodec codec) throws IOException {
+    this(file, codec, TraceWriter.DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param file The trace file.
+   * @param codec Decodes the payloads.
+   * @param bufferSize The size of the read buffer, in bytes.
+   * @throws IOException When the file cannot be read or is not a trace.
+   */
+  public TraceReader(final Path file, final EventCodec codec, final int bufferSize) throws IOException {
+    if (bufferSize < TraceFormat.HEADER_SIZE + TraceFormat.EVENT_RECORD_SIZE) {
+      throw new IllegalArgumentException("The buffer is too small: " + bufferSize);
+    }
+    this.codec = codec;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.buffer.flip();
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      if (!fill(TraceFormat.HEADER_SIZE) || buffer.getInt() != TraceFormat.MAGIC) {
+        throw new IOException("Not an execution trace: " + file);
+      }
+      short version = buffer.getShort();
+      if (version < TraceFormat.MIN_VERSION || version > TraceFormat.VERSION) {
+        throw new IOException("Unsupported trace version: " + version);
+      }
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Moves to the next event record.
+   *
+   * @return false at the end of the trace.
+   * @throws IOException When reading fails or the trace is truncated.
+   */
+  public boolean next() throws IOException {
+    while (fill(1)) {
+      byte tag = buffer.get();
+      switch (tag) {
+        case TraceFormat.PAYLOAD:
+          readPayload();
+          break;
+        case TraceFormat.ACCEPTED:
+        case TraceFormat.DENIED:
+          require(TraceFormat.EVENT_RECORD_SIZE - 1);
+          accepted = tag == TraceFormat.ACCEPTED;
+          sequence = buffer.getLong();
+          executorId = buffer.getInt();
+          int key = buffer.getInt();
+          event = key == TraceFormat.UNENCODED ? null : events.get(key);
+          return true;
+        default:
+          throw new IOException("Unknown record: " + tag);
+      }
+    }
+    return false;
+  }
+
+  public long sequence() {
+    return sequence;
+  }
+
+  public int executorId() {
+    return executorId;
+  }
+
+  /**
+   * @return The event of the record or null if the codec could not encode it
+   * when it was traced.
+   */
+  public Event event() {
+    return event;
+  }
+
+  /**
+   * @return Whether the event was accepted when it was traced.
+   */
+  public boolean isAccepted() {
+    return accepted;
+  }
+
+  private void readPayload() throws IOException {
+    require(TraceFormat.PAYLOAD_RECORD_HEADER_SIZE - 1);
+    int key = buffer.getInt();
+    byte[] payload = new byte[buffer.getInt()];
+    int offset = 0;
+    while (offset < payload.length) {
+      require(1);
+      int length = Math.min(buffer.remaining(), payload.length - offset);
+      buffer.get(payload, offset, length);
+      offset += length;
+    }
+    if (key == events.size()) {
+      events.add(codec.decode(payload));
+    } else if (key >= 0 && key < events.size()) {
+      events.set(key, codec.decode(payload));
+    } else {
+      throw new IOException("Unexpected event key: " + key);
+    }
+  }
+
+  private void require(final int size) throws IOException {
+    if (!fill(size)) {
+      throw new EOFException("Truncated trace");
+    }
+  }
+
+  private boolean fill(final int size) throws IOException {
+    if (buffer.remaining() >= size) {
+      return true;
+    }
+    buffer.compact();
+    try {
+      while (buffer.position() < size) {
+        if (channel.read(buffer) < 0) {
+          return false;
+        }
+      }
+    } finally {
+      buffer.flip();
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.trace;
+
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Feeds the events of an execution trace back to state machines, as fast as
+ * the executors take them.
+ *
+ * <p>
+ * Executors are created on demand, the first time the trace refers to their
+ * id. By default their listeners are replaced with an empty set so that
+ * nothing but the state machines themselves run during the replay.</p>
+ *
+ * <p>
+ * Traces hold no time events. The executors fire the time events of their
+ * state machines with their own timers, at wall-clock time rather than at
+ * their place in the traced stream. A state machine with time events is only
+ * replayed faithfully if its timeouts are not reached during the replay.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class TraceReplay {
+
+  private final EventCodec codec;
+  private final IntFunction<StateMachineExecutor> executors;
+  private boolean listeners;
+  private boolean deniedEvents = true;
+  private long unencoded;
+
+  /**
+   * @param codec Decodes the payloads of the trace.
+   * @param executors Creates the executor replaying the events of a traced
+   * executor id. The executor must have its state machine and context set and
+   * be started.
+   */
+  public TraceReplay(final EventCodec codec, final IntFunction<StateMachineExecutor> executors) {
+    this.codec = codec;
+    this.executors = executors;
+  }
+
+  /**
+   * @param listeners Whether to keep the listeners the executors were created
+   * with.
+   * @return This replay.
+   */
+  public TraceReplay listeners(final boolean listeners) {
+    this.listeners = listeners;
+    return this;
+  }
+
+  /**
+   * @param deniedEvents Whether to replay the events which were denied when
+   * they were traced.
+   * @return This replay.
+   */
+  public TraceReplay deniedEvents(final boolean deniedEvents) {
+    this.deniedEvents = deniedEvents;
+    return this;
+  }
+
+  /**
+   * @return The number of records of the last replay which were skipped
+   * because their event could not be encoded when traced. The state machines
+   * may have diverged from the traced ones if it is not zero.
+   */
+  public long unencoded() {
+    return unencoded;
+  }
+
+  /**
+   * Replays a trace.
+   *
+   * @param file The trace file.
+   * @return The number of events taken by the executors.
+   * @throws IOException When the trace cannot be read.
+   */
+  public long replay(final Path file) throws IOException {
+    Map<Integer, StateMachineExecutor> machines = new HashMap<>();
+    long count = 0;
+    unencoded = 0;
+    try (TraceReader reader = new TraceReader(file, codec)) {
+      while (reader.next()) {
+        if (!deniedEvents && !reader.isAccepted()) {
+          continue;
+        }
+        if (reader.event() == null) {
+          unencoded++;
+          continue;
+        }
+        if (reader.event() instanceof TimeEvent) {
+          /*
+           * Traces written by former versions hold the time events, which
+           * the executors fire themselves.
+           */
+          continue;
+        }
+        StateMachineExecutor executor = machines.get(reader.executorId());
+        if (executor == null) {
+          executor = executors.apply(reader.executorId());
+          if (!listeners) {
+            executor.setListeners(new ExecutorListener());
+          }
+          machines.put(reader.executorId(), executor);
+        }
+        executor.take(reader.event());
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
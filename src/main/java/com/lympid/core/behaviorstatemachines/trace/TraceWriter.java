@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.trace;
+
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorListener;
+import com.lympid.core.behaviorstatemachines.listener.EventAcceptedListener;
+import com.lympid.core.behaviorstatemachines.listener.EventDeniedListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Listener writing the events accepted and denied by state machines to a
+ * binary execution trace, in the {@link TraceFormat format} read by
+ * {@link TraceReader}.
+ *
+ * <p>
+ * Records are appended to a buffer which is written to the file channel when
+ * it is full, when {@link #flush()} is called and when the writer is closed.
+ * Every event is given a key the first time it is seen and its payload is
+ * written once; the following records only refer to the key. The writer keeps
+ * a bounded number of keys: the least recently used event gives its key up to
+ * a new one, whose payload is written under that key. Completion events and
+ * time events are not traced since executors generate them themselves.</p>
+ *
+ * <p>
+ * Events the codec cannot encode are written without a payload and counted by
+ * {@link #unencoded()}.</p>
+ *
+ * <p>
+ * One instance may be attached to many executors: records are totally ordered
+ * by their sequence number. Callbacks cannot throw I/O exceptions; the first
+ * one stops the writer and is available from {@link #failure()}.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class TraceWriter<C> implements EventAcceptedListener<C>, EventDeniedListener<C>, Closeable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  public static final int DEFAULT_KEYS = 1024;
+  private final FileChannel channel;
+  private final EventCodec codec;
+  private final ByteBuffer buffer;
+  private final int maxKeys;
+  private final Map<Event, Integer> keys = new LinkedHashMap<>(16, 0.75f, true);
+  private long sequence;
+  private long unencoded;
+  private IOException failure;
+  private boolean closed;
+
+  public TraceWriter(final Path file, final EventCodec codec) throws IOException {
+    this(file, codec, DEFAULT_BUFFER_SIZE);
+  }
+
+  public TraceWriter(final Path file, final EventCodec codec, final int bufferSize) throws IOException {
+    this(file, codec, bufferSize, DEFAULT_KEYS);
+  }
+
+  /**
+   * @param file The file to write the trace to. It is truncated if it exists.
+   * @param codec Encodes the events.
+   * @param bufferSize The size of the write buffer, in bytes.
+   * @param maxKeys The maximum number of events whose keys are kept.
+   * @throws IOException When the file cannot be opened.
+   */
+  public TraceWriter(final Path file, final EventCodec codec, final int bufferSize, final int maxKeys) throws IOException {
+    if (bufferSize < TraceFormat.HEADER_SIZE + TraceFormat.EVENT_RECORD_SIZE) {
+      throw new IllegalArgumentException("The buffer is too small: " + bufferSize);
+    }
+    if (maxKeys <= 0) {
+      throw new IllegalArgumentException("The number of keys must be strictly positive: " + maxKeys);
+    }
+    this.codec = codec;
+    this.maxKeys = maxKeys;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    buffer.putInt(TraceFormat.MAGIC);
+    buffer.putShort(TraceFormat.VERSION);
+  }
+
+  public void attach(final ExecutorListener listeners) {
+    listeners.add(this);
+  }
+
+  public void detach(final ExecutorListener listeners) {
+    listeners.remove(this);
+  }
+
+  /**
+   * @return The number of event records written so far.
+   */
+  public synchronized long written() {
+    return sequence;
+  }
+
+  /**
+   * @return The number of event records written without a payload because
+   * the codec could not encode their event.
+   */
+  public synchronized long unencoded() {
+    return unencoded;
+  }
+
+  /**
+   * @return The exception which stopped the writer or null.
+   */
+  public synchronized IOException failure() {
+    return failure;
+  }
+
+  @Override
+  public void onEventAccepted(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    write(TraceFormat.ACCEPTED, executor.getId(), event);
+  }
+
+  @Override
+  public void onEventDenied(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    write(TraceFormat.DENIED, executor.getId(), event);
+  }
+
+  private synchronized void write(final byte tag, final int executorId, final Event event) {
+    if (closed || failure != null || event == CompletionEvent.INSTANCE || event instanceof TimeEvent) {
+      return;
+    }
+    try {
+      Integer key = keys.get(event);
+      if (key == null) {
+        byte[] payload = codec.encode(event);
+        if (payload == null) {
+          unencoded++;
+          key = TraceFormat.UNENCODED;
+        } else {
+          key = newKey();
+          keys.put(event, key);
+          ensure(TraceFormat.PAYLOAD_RECORD_HEADER_SIZE);
+          buffer.put(TraceFormat.PAYLOAD);
+          buffer.putInt(key);
+          buffer.putInt(payload.length);
+          put(payload);
+        }
+      }
+      ensure(TraceFormat.EVENT_RECORD_SIZE);
+      buffer.put(tag);
+      buffer.putLong(sequence++);
+      buffer.putInt(executorId);
+      buffer.putInt(key);
+    } catch (IOException ex) {
+      failure = ex;
+    }
+  }
+
+  /**
+   * Gives the next free key or takes the key of the least recently used
+   * event.
+   */
+  private int newKey() {
+    if (keys.size() < maxKeys) {
+      return keys.size();
+    }
+    Iterator<Integer> eldest = keys.values().iterator();
+    int key = eldest.next();
+    eldest.remove();
+    return key;
+  }
+
+  private void put(final byte[] bytes) throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      ensure(1);
+      int length = Math.min(buffer.remaining(), bytes.length - offset);
+      buffer.put(bytes, offset, length);
+      offset += length;
+    }
+  }
+
+  private void ensure(final int size) throws IOException {
+    if (buffer.remaining() < size) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Writes the buffered records to the file.
+   *
+   * @throws IOException When writing fails or failed in a callback.
+   */
+  public synchronized void flush() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    if (!closed) {
+      drain();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      flush();
+    } finally {
+      closed = true;
+      channel.close();
+    }
+  }
+
+}
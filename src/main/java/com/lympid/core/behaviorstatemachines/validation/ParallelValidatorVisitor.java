@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.validation;
+
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Performs the same validation as {@link AllValidatorVisitor} but checks the
+ * constraints of the elements in parallel.
+ *
+ * <p>
+ * Visiting a state machine only checks the uniqueness of the ids and collects
+ * the elements. Their constraints are checked by {@link #validate()}, using
+ * the common fork/join pool. When several elements are invalid, which one is
+ * reported is unspecified.</p>
+ *
+ * @author Fabien Renaud
+ */
+public class ParallelValidatorVisitor extends SimpleVisitor {
+
+  private final IdValidator idValidator = new IdValidator();
+  private final List<Runnable> checks = new ArrayList<>();
+
+  /**
+   * Checks the constraints of all the visited elements.
+   *
+   * @throws ConstraintException If an element is invalid.
+   */
+  public void validate() {
+    checks.parallelStream().forEach(Runnable::run);
+  }
+
+  @Override
+  public void visit(final ConnectionPointReference visitable) {
+    idValidator.validate(visitable);
+    checks.add(() -> {
+      StandardValidator.validate(visitable);
+      ImplementationValidator.validate(visitable);
+    });
+  }
+
+  @Override
+  public void visit(final State visitable) {
+    idValidator.validate(visitable);
+    checks.add(() -> {
+      StandardValidator.validate(visitable);
+      ImplementationValidator.validate(visitable);
+    });
+  }
+
+  @Override
+  public void visit(final PseudoState visitable) {
+    idValidator.validate(visitable);
+    checks.add(() -> {
+      StandardValidator.validate(visitable);
+      ImplementationValidator.validate(visitable);
+    });
+  }
+
+  @Override
+  public void visit(final FinalState visitable) {
+    idValidator.validate(visitable);
+    checks.add(() -> {
+      StandardValidator.validate(visitable);
+      ImplementationValidator.validate(visitable);
+    });
+  }
+
+  @Override
+  public void visit(final Region visitable) {
+    idValidator.validate(visitable);
+    checks.add(() -> {
+      StandardValidator.validate(visitable);
+      ImplementationValidator.validate(visitable);
+    });
+  }
+
+  @Override
+  public void visit(final StateMachine visitable) {
+    idValidator.validate(visitable);
+    checks.add(() -> {
+      StandardValidator.validate(visitable);
+      ImplementationValidator.validate(visitable);
+    });
+  }
+
+  @Override
+  public void visit(final Transition visitable) {
+    idValidator.validate(visitable);
+    checks.add(() -> {
+      StandardValidator.validate(visitable);
+      StandardValidator.validate(visitable.kind(), visitable.source(), visitable.target());
+
+      ImplementationValidator.validate(visitable);
+      ImplementationValidator.validate(visitable.kind(), visitable.source(), visitable.target());
+    });
+  }
+
+}
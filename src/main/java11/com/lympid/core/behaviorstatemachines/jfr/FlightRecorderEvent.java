@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the flight recorder events of the state machines. Events are
+ * identified by the executor and the state machine they happened in.
+ *
+ * @author Fabien Renaud
+ */
+@Category({"Lympid", "State Machine"})
+@StackTrace(false)
+abstract class FlightRecorderEvent extends jdk.jfr.Event {
+
+  @Label("Executor Id")
+  int executorId;
+
+  @Label("Machine Id")
+  String machineId;
+
+  @Label("Machine Name")
+  String machineName;
+
+}
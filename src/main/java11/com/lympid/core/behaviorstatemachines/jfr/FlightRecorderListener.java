@@ -0,0 +1,390 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.jfr;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineQueueWaitListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepEndedListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStepStartedListener;
+import com.lympid.core.behaviorstatemachines.listener.StateActivityAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateActivityBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateActivityExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateEnterAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateEnterBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateEnterExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateExitAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateExitBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.StateExitExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionEffectAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionEffectBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionEffectExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionEndedListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionGuardAfterExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionGuardBeforeExecutionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionGuardExceptionListener;
+import com.lympid.core.behaviorstatemachines.listener.TransitionStartedListener;
+import jdk.jfr.EventType;
+
+/**
+ * Listener emitting JDK Flight Recorder events for the run-to-completion steps,
+ * the transitions, the guards, the behaviors, the time events and the queue
+ * waits of the state machines it is attached to.
+ *
+ * <p>
+ * All the events belong to the "Lympid / State Machine" category and are
+ * disabled by default; they are turned on by the settings of a recording, e.g.
+ * {@code com.lympid.statemachine.Step#enabled=true}. While no recording has
+ * them enabled, every callback returns after reading the flags of its events:
+ * no event is created and no per thread state is looked up. Durations are those of the events: the time between their begin
+ * and their commit.</p>
+ *
+ * <p>
+ * Events which begin and end in distinct callbacks are kept per thread, so one
+ * instance may be attached to many executors. Each one is kept along with the
+ * event, the transition or the state it began with: the callback ending it
+ * only commits the one it began, even when a recording starts or stops in
+ * between.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class FlightRecorderListener<C> implements
+        MachineStepStartedListener<C>, MachineStepEndedListener<C>, MachineQueueWaitListener<C>,
+        TransitionStartedListener<C>, TransitionEndedListener<C>,
+        TransitionGuardBeforeExecutionListener<C>, TransitionGuardAfterExecutionListener<C>, TransitionGuardExceptionListener<C>,
+        TransitionEffectBeforeExecutionListener<C>, TransitionEffectAfterExecutionListener<C>, TransitionEffectExceptionListener<C>,
+        StateEnterBeforeExecutionListener<C>, StateEnterAfterExecutionListener<C>, StateEnterExceptionListener<C>,
+        StateExitBeforeExecutionListener<C>, StateExitAfterExecutionListener<C>, StateExitExceptionListener<C>,
+        StateActivityBeforeExecutionListener<C>, StateActivityAfterExecutionListener<C>, StateActivityExceptionListener<C> {
+
+  private static final EventType STEP = EventType.getEventType(StepEvent.class);
+  private static final EventType TRANSITION = EventType.getEventType(TransitionEvent.class);
+  private static final EventType GUARD = EventType.getEventType(GuardEvent.class);
+  private static final EventType BEHAVIOR = EventType.getEventType(BehaviorEvent.class);
+  private static final EventType TIMER_FIRED = EventType.getEventType(TimerFiredEvent.class);
+  private static final EventType QUEUE_WAIT = EventType.getEventType(QueueWaitEvent.class);
+  private static final int MAX_NESTING = 64;
+  private final ThreadLocal<Frames> frames = ThreadLocal.withInitial(Frames::new);
+
+  /**
+   * Starts emitting the events of the executor owning the given listeners.
+   *
+   * @param listeners The listeners of an executor.
+   */
+  public void attach(final ExecutorListener listeners) {
+    listeners.add(this);
+  }
+
+  /**
+   * Stops emitting the events of the executor owning the given listeners.
+   *
+   * @param listeners The listeners of an executor.
+   */
+  public void detach(final ExecutorListener listeners) {
+    listeners.remove(this);
+  }
+
+  @Override
+  public void onMachineStepStarted(StateMachineExecutor executor, StateMachine machine, C context, Event event) {
+    if (event instanceof TimeEvent && TIMER_FIRED.isEnabled()) {
+      TimerFiredEvent e = init(new TimerFiredEvent(), executor, machine);
+      e.event = String.valueOf(event);
+      e.delay = ((TimeEvent) event).time();
+      e.commit();
+    }
+    if (STEP.isEnabled()) {
+      StepEvent e = init(new StepEvent(), executor, machine);
+      e.event = String.valueOf(event);
+      e.begin();
+      frames.get().steps.push(event, e);
+    }
+  }
+
+  @Override
+  public void onMachineStepEnded(StateMachineExecutor executor, StateMachine machine, C context, Event event, boolean accepted) {
+    if (STEP.isEnabled()) {
+      StepEvent e = (StepEvent) frames.get().steps.pop(event);
+      if (e != null) {
+        e.accepted = accepted;
+        e.commit();
+      }
+    }
+  }
+
+  @Override
+  public void onMachineQueueWait(StateMachineExecutor executor, StateMachine machine, C context, long duration) {
+    if (QUEUE_WAIT.isEnabled()) {
+      QueueWaitEvent e = init(new QueueWaitEvent(), executor, machine);
+      e.queueWait = duration;
+      e.commit();
+    }
+  }
+
+  @Override
+  public void onTransitionStarted(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    if (TRANSITION.isEnabled()) {
+      TransitionEvent e = init(new TransitionEvent(), executor, machine);
+      e.event = String.valueOf(event);
+      e.transitionId = transition.getId();
+      e.transitionName = transition.getName();
+      e.begin();
+      frames.get().transitions.push(transition, e);
+    }
+  }
+
+  @Override
+  public void onTransitionEnded(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    if (TRANSITION.isEnabled()) {
+      TransitionEvent e = (TransitionEvent) frames.get().transitions.pop(transition);
+      if (e != null) {
+        e.commit();
+      }
+    }
+  }
+
+  @Override
+  public void onTransitionGuardBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    if (GUARD.isEnabled()) {
+      GuardEvent e = init(new GuardEvent(), executor, machine);
+      e.event = String.valueOf(event);
+      e.transitionId = transition.getId();
+      e.transitionName = transition.getName();
+      e.begin();
+      frames.get().guard.set(transition, e);
+    }
+  }
+
+  @Override
+  public void onTransitionGuardAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    endGuard(transition, false);
+  }
+
+  @Override
+  public void onTransitionGuardException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
+    endGuard(transition, true);
+  }
+
+  @Override
+  public void onTransitionEffectBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    if (BEHAVIOR.isEnabled()) {
+      BehaviorEvent e = init(new BehaviorEvent(), executor, machine);
+      e.kind = "effect";
+      e.transitionId = transition.getId();
+      e.transitionName = transition.getName();
+      e.begin();
+      frames.get().effect.set(transition, e);
+    }
+  }
+
+  @Override
+  public void onTransitionEffectAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().effect.take(transition), false);
+    }
+  }
+
+  @Override
+  public void onTransitionEffectException(StateMachineExecutor executor, StateMachine machine, C context, Event event, Transition transition, Exception exception) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().effect.take(transition), true);
+    }
+  }
+
+  @Override
+  public void onStateEnterBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    if (BEHAVIOR.isEnabled()) {
+      frames.get().entry.set(state, begin("entry", executor, machine, state));
+    }
+  }
+
+  @Override
+  public void onStateEnterAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().entry.take(state), false);
+    }
+  }
+
+  @Override
+  public void onStateEnterException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().entry.take(state), true);
+    }
+  }
+
+  @Override
+  public void onStateExitBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    if (BEHAVIOR.isEnabled()) {
+      frames.get().exit.set(state, begin("exit", executor, machine, state));
+    }
+  }
+
+  @Override
+  public void onStateExitAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().exit.take(state), false);
+    }
+  }
+
+  @Override
+  public void onStateExitException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().exit.take(state), true);
+    }
+  }
+
+  @Override
+  public void onStateActivityBeforeExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    if (BEHAVIOR.isEnabled()) {
+      frames.get().activity.set(state, begin("activity", executor, machine, state));
+    }
+  }
+
+  @Override
+  public void onStateActivityAfterExecution(StateMachineExecutor executor, StateMachine machine, C context, State state) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().activity.take(state), false);
+    }
+  }
+
+  @Override
+  public void onStateActivityException(StateMachineExecutor executor, StateMachine machine, C context, State state, Exception exception) {
+    if (BEHAVIOR.isEnabled()) {
+      end(frames.get().activity.take(state), true);
+    }
+  }
+
+  private static <E extends FlightRecorderEvent> E init(final E e, final StateMachineExecutor executor, final StateMachine machine) {
+    e.executorId = executor.getId();
+    e.machineId = machine.getId();
+    e.machineName = machine.getName();
+    return e;
+  }
+
+  private static BehaviorEvent begin(final String kind, final StateMachineExecutor executor, final StateMachine machine, final State state) {
+    BehaviorEvent e = init(new BehaviorEvent(), executor, machine);
+    e.kind = kind;
+    e.stateId = state.getId();
+    e.stateName = state.getName();
+    e.begin();
+    return e;
+  }
+
+  private static void end(final FlightRecorderEvent event, final boolean failed) {
+    BehaviorEvent e = (BehaviorEvent) event;
+    if (e != null) {
+      e.failed = failed;
+      e.commit();
+    }
+  }
+
+  private void endGuard(final Transition transition, final boolean failed) {
+    if (GUARD.isEnabled()) {
+      GuardEvent e = (GuardEvent) frames.get().guard.take(transition);
+      if (e != null) {
+        e.failed = failed;
+        e.commit();
+      }
+    }
+  }
+
+  /**
+   * Events in progress on one thread. Steps nest when an effect takes an
+   * event on a synchronous executor; transitions nest when a compound
+   * transition goes through pseudo states.
+   */
+  private static final class Frames {
+
+    private final Stack steps = new Stack();
+    private final Stack transitions = new Stack();
+    private final Slot guard = new Slot();
+    private final Slot effect = new Slot();
+    private final Slot entry = new Slot();
+    private final Slot exit = new Slot();
+    private final Slot activity = new Slot();
+
+  }
+
+  /**
+   * Events in progress which nest. An event is popped by the marker it was
+   * pushed with, along with the events above it: those ended while their type
+   * was disabled. Events below it whose end was missed the same way are
+   * dropped when the stack is full.
+   */
+  private static final class Stack {
+
+    private final Object[] markers = new Object[MAX_NESTING];
+    private final FlightRecorderEvent[] events = new FlightRecorderEvent[MAX_NESTING];
+    private int depth;
+
+    void push(final Object marker, final FlightRecorderEvent event) {
+      if (depth == events.length) {
+        truncate(0);
+      }
+      markers[depth] = marker;
+      events[depth] = event;
+      depth++;
+    }
+
+    FlightRecorderEvent pop(final Object marker) {
+      for (int i = depth - 1; i >= 0; i--) {
+        if (markers[i] == marker) {
+          FlightRecorderEvent event = events[i];
+          truncate(i);
+          return event;
+        }
+      }
+      return null;
+    }
+
+    private void truncate(final int size) {
+      for (int i = size; i < depth; i++) {
+        markers[i] = null;
+        events[i] = null;
+      }
+      depth = size;
+    }
+  }
+
+  /**
+   * An event in progress which does not nest. It is taken by the marker it
+   * was set with only.
+   */
+  private static final class Slot {
+
+    private Object marker;
+    private FlightRecorderEvent event;
+
+    void set(final Object marker, final FlightRecorderEvent event) {
+      this.marker = marker;
+      this.event = event;
+    }
+
+    FlightRecorderEvent take(final Object marker) {
+      if (this.marker != marker) {
+        return null;
+      }
+      FlightRecorderEvent e = event;
+      this.marker = null;
+      this.event = null;
+      return e;
+    }
+  }
+}
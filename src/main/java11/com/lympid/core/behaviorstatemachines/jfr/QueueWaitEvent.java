@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Time an item of a state machine waited in the mailbox of a shard.
+ *
+ * @author Fabien Renaud
+ */
+@Name("com.lympid.statemachine.QueueWait")
+@Label("Queue Wait")
+@Description("Time an item of a state machine waited in the mailbox of a shard.")
+final class QueueWaitEvent extends FlightRecorderEvent {
+
+  @Label("Queue Wait")
+  @Timespan(Timespan.NANOSECONDS)
+  long queueWait;
+
+}
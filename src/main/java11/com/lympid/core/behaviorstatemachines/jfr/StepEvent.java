@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Run-to-completion step triggered by an event.
+ *
+ * @author Fabien Renaud
+ */
+@Name("com.lympid.statemachine.Step")
+@Label("Step")
+@Description("Run-to-completion step triggered by an event.")
+final class StepEvent extends FlightRecorderEvent {
+
+  @Label("Event")
+  String event;
+
+  @Label("Accepted")
+  boolean accepted;
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Transition fired, from its source to its target.
+ *
+ * @author Fabien Renaud
+ */
+@Name("com.lympid.statemachine.Transition")
+@Label("Transition")
+@Description("Transition fired, from its source to its target.")
+final class TransitionEvent extends FlightRecorderEvent {
+
+  @Label("Event")
+  String event;
+
+  @Label("Transition Id")
+  String transitionId;
+
+  @Label("Transition Name")
+  String transitionName;
+
+}
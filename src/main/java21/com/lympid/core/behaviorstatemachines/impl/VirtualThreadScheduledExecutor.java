@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduled executor service running every task on its own virtual thread.
+ *
+ * <p>
+ * Meant to be given to {@link ExecutorConfiguration#executor(ScheduledExecutorService)}
+ * so that state activities, which often block, do not hold a platform thread.
+ * Delays are tracked by a single timer thread which only hands the tasks off to
+ * new virtual threads when they are due. Cancelling the future returned by a
+ * {@code schedule} method therefore only prevents a task from starting.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class VirtualThreadScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+  private final ExecutorService tasks = Executors.newVirtualThreadPerTaskExecutor();
+  private final ScheduledThreadPoolExecutor timer;
+
+  public VirtualThreadScheduledExecutor() {
+    this.timer = new ScheduledThreadPoolExecutor(1, Thread.ofVirtual().name("lympid-timer").factory());
+    this.timer.setRemoveOnCancelPolicy(true);
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    tasks.execute(command);
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+    return timer.schedule(() -> tasks.execute(command), delay, unit);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The callable is run by the timer virtual thread itself in order for the
+   * returned future to hold its result.</p>
+   */
+  @Override
+  public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+    return timer.schedule(callable, delay, unit);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period, final TimeUnit unit) {
+    return timer.scheduleAtFixedRate(() -> tasks.execute(command), initialDelay, period, unit);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay, final long delay, final TimeUnit unit) {
+    return timer.scheduleWithFixedDelay(() -> tasks.execute(command), initialDelay, delay, unit);
+  }
+
+  @Override
+  public void shutdown() {
+    timer.shutdown();
+    tasks.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    List<Runnable> pending = timer.shutdownNow();
+    pending.addAll(tasks.shutdownNow());
+    return pending;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return timer.isShutdown() && tasks.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return timer.isTerminated() && tasks.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    if (!timer.awaitTermination(timeout, unit)) {
+      return false;
+    }
+    return tasks.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
+}
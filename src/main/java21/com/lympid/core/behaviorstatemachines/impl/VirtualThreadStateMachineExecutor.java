@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.State;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * State machine executor owning its own mailbox, drained by a virtual thread.
+ *
+ * <p>
+ * This is the virtual thread counterpart of {@link PoolStateMachineExecutor}:
+ * events are queued and processed one at a time, in order, but there are no
+ * shards. A virtual thread is started when the mailbox receives an event while
+ * no thread is draining it and terminates as soon as the mailbox is empty.
+ * Idle state machines hence hold no thread at all and a slow state machine
+ * never delays another one.</p>
+ *
+ * <p>
+ * Activities and time events are still run by the
+ * {@link ExecutorConfiguration#executor(java.util.concurrent.ScheduledExecutorService) configured executor}.
+ * Use {@link VirtualThreadScheduledExecutor} to run those on virtual threads as
+ * well.</p>
+ *
+ * @author Fabien Renaud
+ */
+public class VirtualThreadStateMachineExecutor extends AbstractStateMachineExecutor {
+
+  private final ConcurrentLinkedDeque<Runnable> mailbox = new ConcurrentLinkedDeque<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final ThreadFactory threadFactory;
+
+  public VirtualThreadStateMachineExecutor(final int id) {
+    super(id);
+    this.threadFactory = Thread.ofVirtual().name("lympid-machine-" + id).factory();
+  }
+
+  public VirtualThreadStateMachineExecutor() {
+    super();
+    this.threadFactory = Thread.ofVirtual().name("lympid-machine-" + getId()).factory();
+  }
+
+  @Override
+  protected void start() {
+    post(super::start);
+  }
+
+  @Override
+  public void take(final Event event) {
+    post(() -> super.take(event));
+  }
+
+  /**
+   * Queues the given event and returns a stage completed by the virtual thread
+   * of this state machine once the run-to-completion step triggered by that
+   * event is over.
+   *
+   * @param event The event to take.
+   * @return A stage completed with the outcome of the step.
+   */
+  public CompletionStage<StepResult> takeAsync(final Event event) {
+    final CompletableFuture<StepResult> future = new CompletableFuture<>();
+    post(() -> {
+      try {
+        future.complete(super.step(event));
+      } catch (Throwable ex) {
+        future.completeExceptionally(ex);
+      }
+    });
+    return future;
+  }
+
+  @Override
+  protected void take(final Event event, final State state) {
+    post(() -> super.take(event, state));
+  }
+
+  @Override
+  protected void takeCompletionEvent() {
+    postFirst(super::takeCompletionEvent);
+  }
+
+  @Override
+  void take(final Event event, final State state, final int generation) {
+    post(() -> {
+      if (isGeneration(generation)) {
+        super.take(event, state);
+      }
+    });
+  }
+
+  @Override
+  void takeCompletionEvent(final State state, final int generation) {
+    postFirst(() -> {
+      if (completeActivity(state, generation)) {
+        super.takeCompletionEvent();
+      }
+    });
+  }
+
+  @Override
+  public void resume(final StateMachineSnapshot snapshot) {
+    post(() -> super.resume(snapshot));
+  }
+
+  @Override
+  public StateMachineSnapshot pause() {
+    try {
+      return asyncPause().get();
+    } catch (InterruptedException | ExecutionException ex) {
+    }
+    return null;
+  }
+
+  public Future<StateMachineSnapshot> asyncPause() {
+    final CompletableFuture<StateMachineSnapshot> future = new CompletableFuture<>();
+    postFirst(() -> future.complete(super.pause()));
+    return future;
+  }
+
+  /**
+   * Resets the state machine on its virtual thread, after the items already
+   * queued, and waits for it. Must not be called from a behavior of this state
+   * machine.
+   */
+  @Override
+  public void reset() {
+    try {
+      asyncReset().get();
+    } catch (InterruptedException | ExecutionException ex) {
+    }
+  }
+
+  public Future<Void> asyncReset() {
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    post(() -> {
+      super.reset();
+      future.complete(null);
+    });
+    return future;
+  }
+
+  @Override
+  public StateMachineSnapshot snapshot() {
+    try {
+      return asyncSnapshot().get();
+    } catch (InterruptedException | ExecutionException ex) {
+    }
+    return null;
+  }
+
+  public Future<StateMachineSnapshot> asyncSnapshot() {
+    final CompletableFuture<StateMachineSnapshot> future = new CompletableFuture<>();
+    postFirst(() -> future.complete(super.snapshot()));
+    return future;
+  }
+
+  private void post(final Runnable runnable) {
+    mailbox.addLast(runnable);
+    schedule();
+  }
+
+  private void postFirst(final Runnable runnable) {
+    mailbox.addFirst(runnable);
+    schedule();
+  }
+
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      threadFactory.newThread(this::drain).start();
+    }
+  }
+
+  private void drain() {
+    try {
+      Runnable runnable;
+      while ((runnable = mailbox.pollFirst()) != null) {
+        runnable.run();
+      }
+    } finally {
+      /*
+       * An item may have been queued after the last poll but before the flag
+       * is cleared; its producer could not start a new thread.
+       */
+      scheduled.set(false);
+      if (!mailbox.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+
+}
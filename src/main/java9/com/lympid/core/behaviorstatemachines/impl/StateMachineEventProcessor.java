@@ -0,0 +1,288 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Reactive streams adapter feeding events to pooled state machine executors
+ * and publishing the outcome of every run-to-completion step.
+ *
+ * <p>
+ * The processor never has more than {@code capacity} events in flight: an event
+ * is in flight from the moment it is requested upstream until its
+ * {@link StepResult} is delivered downstream. Hence, the shard queues never
+ * hold more than {@code capacity} events coming from this processor and a slow
+ * downstream subscriber, or a slow state machine, stops the upstream publisher
+ * instead of letting events pile up in the pool.</p>
+ *
+ * <p>
+ * Step results are delivered in the order the steps complete. Events routed to
+ * the same executor thus keep their order; events routed to different
+ * executors may not.</p>
+ *
+ * @param <T> Type of the items received from upstream.
+ *
+ * @author Fabien Renaud
+ */
+public final class StateMachineEventProcessor<T> implements Flow.Processor<T, StepResult> {
+
+  private final Function<? super T, PoolStateMachineExecutor> executorOf;
+  private final Function<? super T, ? extends Event> eventOf;
+  private final int capacity;
+  private final Queue<StepResult> results = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger wip = new AtomicInteger();
+  private final AtomicLong requested = new AtomicLong();
+  private final AtomicInteger running = new AtomicInteger();
+  private volatile Flow.Subscription upstream;
+  private volatile Flow.Subscriber<? super StepResult> downstream;
+  private volatile boolean done;
+  private volatile boolean cancelled;
+  private volatile Throwable error;
+  private int outstanding;
+
+  /**
+   * Creates a processor routing each upstream item to an executor.
+   *
+   * @param executorOf Gives the executor that must take the event of an item.
+   * @param eventOf Gives the event of an item.
+   * @param capacity The maximum number of events in flight.
+   */
+  public StateMachineEventProcessor(final Function<? super T, PoolStateMachineExecutor> executorOf, final Function<? super T, ? extends Event> eventOf, final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity must be strictly positive: " + capacity);
+    }
+    this.executorOf = Objects.requireNonNull(executorOf);
+    this.eventOf = Objects.requireNonNull(eventOf);
+    this.capacity = capacity;
+  }
+
+  /**
+   * Creates a processor feeding all upstream events to a single executor.
+   *
+   * @param executor The executor taking all the events.
+   * @param capacity The maximum number of events in flight.
+   * @return A new processor.
+   */
+  public static StateMachineEventProcessor<Event> of(final PoolStateMachineExecutor executor, final int capacity) {
+    Objects.requireNonNull(executor);
+    return new StateMachineEventProcessor<>((e) -> executor, Function.identity(), capacity);
+  }
+
+  @Override
+  public void onSubscribe(final Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription);
+    if (upstream != null) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    if (cancelled) {
+      subscription.cancel();
+      return;
+    }
+    drain();
+  }
+
+  @Override
+  public void onNext(final T item) {
+    Objects.requireNonNull(item);
+    if (done) {
+      return;
+    }
+
+    final PoolStateMachineExecutor executor;
+    final Event event;
+    try {
+      executor = executorOf.apply(item);
+      event = eventOf.apply(item);
+    } catch (RuntimeException ex) {
+      fail(ex);
+      return;
+    }
+
+    running.incrementAndGet();
+    executor.takeAsync(event).whenComplete((result, ex) -> {
+      if (ex == null) {
+        results.offer(result);
+        running.decrementAndGet();
+        drain();
+      } else {
+        running.decrementAndGet();
+        fail(ex);
+      }
+    });
+  }
+
+  @Override
+  public void onError(final Throwable throwable) {
+    Objects.requireNonNull(throwable);
+    if (done) {
+      return;
+    }
+    error = throwable;
+    done = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    done = true;
+    drain();
+  }
+
+  /**
+   * Fails the stream because of this processor, as opposed to
+   * {@link #onError(Throwable)} which is signalled by upstream. The failure
+   * is delivered even if upstream has already completed, by the drain loop so
+   * that it is never signalled concurrently with onNext.
+   *
+   * @param throwable The cause of the failure.
+   */
+  private void fail(final Throwable throwable) {
+    if (error == null) {
+      error = throwable;
+    }
+    done = true;
+    Flow.Subscription subscription = upstream;
+    if (subscription != null) {
+      subscription.cancel();
+    }
+    drain();
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super StepResult> subscriber) {
+    Objects.requireNonNull(subscriber);
+    synchronized (this) {
+      if (downstream != null) {
+        subscriber.onSubscribe(new CancelledSubscription());
+        subscriber.onError(new IllegalStateException("Only one subscriber is supported."));
+        return;
+      }
+      downstream = subscriber;
+    }
+    subscriber.onSubscribe(new ResultSubscription());
+    drain();
+  }
+
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    int missed = 1;
+    for (;;) {
+      final Flow.Subscriber<? super StepResult> subscriber = downstream;
+
+      if (cancelled) {
+        results.clear();
+      } else if (subscriber != null) {
+        if (error != null) {
+          results.clear();
+          cancelled = true;
+          subscriber.onError(error);
+        } else {
+          long r = requested.get();
+          long emitted = 0;
+          while (emitted != r) {
+            StepResult result = results.poll();
+            if (result == null) {
+              break;
+            }
+            subscriber.onNext(result);
+            emitted++;
+          }
+
+          if (emitted != 0) {
+            outstanding -= emitted;
+            if (r != Long.MAX_VALUE) {
+              requested.addAndGet(-emitted);
+            }
+          }
+
+          if (done && running.get() == 0 && results.isEmpty()) {
+            cancelled = true;
+            subscriber.onComplete();
+          }
+        }
+      }
+
+      final Flow.Subscription subscription = upstream;
+      if (!cancelled && !done && subscription != null && outstanding < capacity) {
+        int n = capacity - outstanding;
+        outstanding = capacity;
+        subscription.request(n);
+      }
+
+      missed = wip.addAndGet(-missed);
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+
+  private final class ResultSubscription implements Flow.Subscription {
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        fail(new IllegalArgumentException("The number of requested items must be strictly positive: " + n));
+        return;
+      }
+      long r;
+      long u;
+      do {
+        r = requested.get();
+        u = r + n;
+        if (u < 0) {
+          u = Long.MAX_VALUE;
+        }
+      } while (!requested.compareAndSet(r, u));
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      Flow.Subscription subscription = upstream;
+      if (subscription != null) {
+        subscription.cancel();
+      }
+      drain();
+    }
+
+  }
+
+  private static final class CancelledSubscription implements Flow.Subscription {
+
+    @Override
+    public void request(final long n) {
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+  }
+}
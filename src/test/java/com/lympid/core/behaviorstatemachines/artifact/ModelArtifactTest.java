@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.artifact;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
+import com.lympid.core.behaviorstatemachines.BiTransitionConstraint;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateBehavior;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.BehaviorFactory;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.TextVisitor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ModelArtifactTest {
+
+  private static final List<Class<? extends AbstractStateMachineTest>> MODELS = Arrays.asList(
+    com.lympid.core.behaviorstatemachines.composite.Test1.class,
+    com.lympid.core.behaviorstatemachines.orthogonal.Test1.class,
+    com.lympid.core.behaviorstatemachines.pseudo.fork.Test2.class,
+    com.lympid.core.behaviorstatemachines.pseudo.history.deep.Test1.class,
+    com.lympid.core.behaviorstatemachines.pseudo.join.Test1.class,
+    com.lympid.core.behaviorstatemachines.pseudo.junction.Test3.class,
+    com.lympid.core.behaviorstatemachines.simple.Test21.class,
+    com.lympid.core.behaviorstatemachines.submachine.Test2.class,
+    com.lympid.core.behaviorstatemachines.submachine.Test4.class,
+    com.lympid.core.behaviorstatemachines.time.Test1.class
+  );
+
+  @Test
+  public void roundTrip() throws Exception {
+    for (Class<? extends AbstractStateMachineTest> c : MODELS) {
+      AbstractStateMachineTest test = c.newInstance();
+      test.setUp();
+      StateMachine machine = test.topLevelStateMachine();
+      StateMachine copy = read(write(machine), BehaviorRegistry.of(machine));
+
+      assertNotSame(machine, copy);
+      assertEquals(c.getName(), text(machine), text(copy));
+      assertEquals(c.getName(), machine.metadata().countOfLeaves(), copy.metadata().countOfLeaves());
+      assertEquals(c.getName(), machine.metadata().treeDepth(), copy.metadata().treeDepth());
+      assertEquals(c.getName(), machine.metadata().hasTimeEvents(), copy.metadata().hasTimeEvents());
+      assertEquals(c.getName(), machine.metadata().hasActivities(), copy.metadata().hasActivities());
+    }
+  }
+
+  @Test
+  public void flattenedPseudoStateChains() throws IOException {
+    StateMachine machine = new com.lympid.core.behaviorstatemachines.pseudo.junction.Test5().topLevelMachineBuilder()
+      .flattenPseudoStateChains(true)
+      .newInstance();
+    StateMachine copy = read(write(machine), BehaviorRegistry.of(machine));
+
+    assertEquals(text(machine), text(copy));
+    assertEquals(write(machine).length, write(copy).length);
+  }
+
+  @Test
+  public void run() throws IOException {
+    StateMachine machine = stateMachine().newInstance();
+    StateMachine copy = read(write(machine), BehaviorRegistry.of(machine));
+
+    Context expected = new Context();
+    Context actual = new Context();
+    StateMachineExecutor fsm1 = executor(machine, expected);
+    StateMachineExecutor fsm2 = executor(copy, actual);
+    for (String e : new String[]{"go", "back", "go", "back", "go"}) {
+      fsm1.take(new StringEvent(e));
+      fsm2.take(new StringEvent(e));
+      assertEquals(expected.log.toString(), actual.log.toString());
+    }
+    assertEquals("enter A;exit A;else;enter A;exit A;B;", actual.log.toString());
+  }
+
+  @Test
+  public void classBehaviors() throws IOException {
+    StateMachine machine = stateMachine().newInstance();
+    State a = state(machine, "A");
+    String elseId = null;
+    for (Transition t : a.outgoing()) {
+      if ("else".equals(t.getName())) {
+        elseId = t.getId();
+      }
+    }
+    StateMachine copy = read(write(machine), new BehaviorRegistry()
+      .exit(a.getId(), (c) -> { ((Context) c).log.append("exit A;"); })
+      .entry(state(machine, "B").getId(), (c) -> { ((Context) c).log.append("B;"); })
+      .effect(elseId, (e, c) -> { ((Context) c).log.append("else;"); ((Context) c).count++; }));
+
+    a = state(copy, "A");
+    StateBehavior entry = a.entry().iterator().next();
+    assertSame(BehaviorFactory.toBehavior(Enter.class), entry);
+
+    Context ctx = new Context();
+    StateMachineExecutor fsm = executor(copy, ctx);
+    fsm.take(new StringEvent("go"));
+    fsm.take(new StringEvent("back"));
+    fsm.take(new StringEvent("go"));
+    assertEquals("enter A;exit A;else;enter A;exit A;B;", ctx.log.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void missingBehavior() throws IOException {
+    read(write(stateMachine().newInstance()), new BehaviorRegistry());
+  }
+
+  @Test
+  public void notAnArtifact() {
+    try {
+      read(new byte[]{1, 2, 3, 4, 5, 6}, null);
+      fail("Expected an IOException");
+    } catch (IOException ex) {
+      assertEquals("Not a model artifact", ex.getMessage());
+    }
+  }
+
+  private static byte[] write(final StateMachine machine) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new ModelWriter().write(machine, out);
+    return out.toByteArray();
+  }
+
+  private static StateMachine read(final byte[] artifact, final BehaviorRegistry registry) throws IOException {
+    return new ModelReader(registry).read(new ByteArrayInputStream(artifact));
+  }
+
+  private static String text(final StateMachine machine) {
+    TextVisitor v = new TextVisitor();
+    machine.accept(v);
+    return v.toString();
+  }
+
+  private static StateMachineExecutor executor(final StateMachine machine, final Context ctx) {
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(machine);
+    fsm.setContext(ctx);
+    fsm.go();
+    return fsm;
+  }
+
+  private static State state(final StateMachine machine, final String name) {
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      if (name.equals(v.getName())) {
+        return (State) v;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private StateMachineBuilder<Context> builder;
+
+  private StateMachineBuilder<Context> stateMachine() {
+    if (builder != null) {
+      return builder;
+    }
+    builder = new StateMachineBuilder<>("artifact");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .entry(Enter.class)
+          .exit((c) -> { c.log.append("exit A;"); })
+          .transition("then")
+            .on("go")
+            .guard(Positive.class)
+            .target("B")
+          .transition("else")
+            .on("go")
+            .guardElse(Positive.class)
+            .effect((e, c) -> { c.log.append("else;"); c.count++; })
+            .target("C");
+
+    builder
+      .region()
+        .state("B")
+          .entry((c) -> { c.log.append("B;"); });
+
+    builder
+      .region()
+        .state("C")
+          .transition()
+            .on("back")
+            .target("A");
+
+    return builder;
+  }
+
+  public static final class Enter implements StateBehavior<Context> {
+
+    @Override
+    public void accept(final Context c) {
+      c.log.append("enter A;");
+    }
+  }
+
+  public static final class Positive implements BiTransitionConstraint<StringEvent, Context> {
+
+    @Override
+    public boolean test(final StringEvent e, final Context c) {
+      return c.count > 0;
+    }
+  }
+
+  private static final class Context {
+
+    final StringBuilder log = new StringBuilder();
+    int count;
+  }
+
+}
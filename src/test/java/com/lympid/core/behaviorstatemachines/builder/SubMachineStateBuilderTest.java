@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.builder;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class SubMachineStateBuilderTest {
+
+  @Test
+  public void distinctStatesPerReference() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("distinct");
+    StateMachineBuilder<SequentialContext> sub = innerStateMachine();
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("sub1");
+    builder
+      .region()
+        .state(sub, "sub1")
+          .transition()
+            .target("sub2");
+    builder
+      .region()
+        .state(sub, "sub2")
+          .transition()
+            .target("sub3");
+    builder
+      .region()
+        .state(sub, "sub3")
+          .transition()
+            .target("end");
+    builder
+      .region()
+        .finalState("end");
+
+    ElementCollector collector = new ElementCollector();
+    builder.newInstance().accept(collector);
+
+    assertEquals(3, collector.states.size());
+    for (int i = 1; i < collector.states.size(); i++) {
+      State s0 = collector.states.get(0);
+      State s = collector.states.get(i);
+      assertNotSame(s0, s);
+      assertNotSame(s0.container(), s.container());
+      assertSame(s0.entry().iterator().next(), s.entry().iterator().next());
+    }
+  }
+
+  @Test
+  public void nested() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("nested");
+    StateMachineBuilder<SequentialContext> middle = new StateMachineBuilder<>("middle");
+
+    middle
+      .region()
+        .initial()
+          .transition()
+            .target("in");
+    middle
+      .region()
+        .state(innerStateMachine(), "in")
+          .transition()
+            .target("end");
+    middle
+      .region()
+        .finalState("end");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("m1");
+    builder
+      .region()
+        .state(middle, "m1")
+          .transition()
+            .target("m2");
+    builder
+      .region()
+        .state(middle, "m2")
+          .transition()
+            .target("end");
+    builder
+      .region()
+        .finalState("end");
+
+    StateMachine machine = builder.newInstance();
+    ElementCollector collector = new ElementCollector();
+    machine.accept(collector);
+    assertEquals(2, collector.states.size());
+
+    SequentialContext ctx = new SequentialContext();
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(machine);
+    fsm.setContext(ctx);
+    fsm.go();
+    fsm.take(new StringEvent("done"));
+    fsm.take(new StringEvent("done"));
+
+    assertEquals(new SequentialContext().enter("X").enter("X").toString(), ctx.toString());
+    assertTrue(fsm.snapshot().isTerminated());
+  }
+
+  private static StateMachineBuilder<SequentialContext> innerStateMachine() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("inner");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("X");
+    builder
+      .region()
+        .state("X")
+          .entry((c) -> c.enter("X"))
+          .transition()
+            .on("done")
+            .target("end");
+    builder
+      .region()
+        .finalState("end");
+
+    return builder;
+  }
+
+  /**
+   * Collects the states named X and checks all the elements of the state
+   * machine have unique ids.
+   */
+  private static final class ElementCollector extends SimpleVisitor {
+
+    private final List<State> states = new ArrayList<>();
+    private final Set<String> ids = new HashSet<>();
+
+    private void add(final String id) {
+      assertTrue(id, ids.add(id));
+    }
+
+    @Override
+    public void visit(final ConnectionPointReference visitable) {
+      add(visitable.getId());
+    }
+
+    @Override
+    public void visit(final State visitable) {
+      add(visitable.getId());
+      if ("X".equals(visitable.getName())) {
+        states.add(visitable);
+      }
+    }
+
+    @Override
+    public void visit(final PseudoState visitable) {
+      add(visitable.getId());
+    }
+
+    @Override
+    public void visit(final FinalState visitable) {
+      add(visitable.getId());
+    }
+
+    @Override
+    public void visit(final Region visitable) {
+      add(visitable.getId());
+    }
+
+    @Override
+    public void visit(final StateMachine visitable) {
+      add(visitable.getId());
+    }
+
+    @Override
+    public void visit(final Transition visitable) {
+      add(visitable.getId());
+    }
+  }
+
+}
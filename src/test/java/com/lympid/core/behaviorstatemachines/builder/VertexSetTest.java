@@ -202,6 +202,53 @@ public class VertexSetTest {
     assertEquals(mainRegion, vertices.leastCommonAncestor(state22, state12));
   }
 
+  @Test
+  public void leastCommonAncestor_NestedStates() throws CommonAncestorException {
+    /*
+     * Build state machine
+     */
+    MutableStateMachine machine = new MutableStateMachine(id());
+    MutableRegion region0 = new MutableRegion(id());
+    MutableState stateA = new MutableState(id());
+    MutableRegion regionA = new MutableRegion(id());
+    MutableState stateB = new MutableState(id());
+    MutableRegion regionB = new MutableRegion(id());
+    MutableState stateC = new MutableState(id());
+    MutableState stateD = new MutableState(id());
+    MutableState stateE = new MutableState(id());
+
+    machine.addRegion(region0);
+    region0.addVertex(stateA);
+    region0.addVertex(stateD);
+
+    stateA.setRegions(Arrays.asList(regionA));
+    regionA.setState(stateA);
+    regionA.addVertex(stateB);
+    regionA.addVertex(stateE);
+
+    stateB.setRegions(Arrays.asList(regionB));
+    regionB.setState(stateB);
+    regionB.addVertex(stateC);
+
+    /*
+     * Actual tests
+     */
+    VertexSet vertices = new VertexSet();
+    vertices.add(stateA);
+    vertices.add(stateB);
+    vertices.add(stateC);
+    vertices.add(stateD);
+    vertices.add(stateE);
+
+    assertEquals(regionA, vertices.leastCommonAncestor(stateC, stateE));
+    assertEquals(regionA, vertices.leastCommonAncestor(stateE, stateC));
+    assertEquals(regionA, vertices.leastCommonAncestor(stateC, stateB));
+    assertEquals(region0, vertices.leastCommonAncestor(stateC, stateD));
+    assertEquals(region0, vertices.leastCommonAncestor(stateD, stateC));
+    assertEquals(region0, vertices.leastCommonAncestor(stateC, stateA));
+    assertEquals(region0, vertices.leastCommonAncestor(stateE, stateD));
+  }
+
   @Test
   public void leastCommonAncestor_SubStateMachine() throws CommonAncestorException {
     /*
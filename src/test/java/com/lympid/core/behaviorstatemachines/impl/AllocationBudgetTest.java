@@ -0,0 +1,578 @@
+/*
+ * Copyright 2015 Lympid.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.EntryPointBuilder;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.builder.SubStateMachineBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the bytes allocated per {@link StateMachineExecutor#take} against
+ * the budgets of the {@code allocation-budgets.properties} resource, for
+ * every executor and every shape of state machine.
+ *
+ * <p>
+ * The allocations are counted by the thread MX bean on the calling thread
+ * and, for the pool executor, on its worker thread too. Events are taken
+ * until the JIT compiler is done with the hot path before measuring. Run with
+ * {@code -Dallocation.budgets.print=true} to print all the measures.</p>
+ *
+ * <p>
+ * The budgets only hold for the JDK they were measured on, given by the
+ * {@code jdk} key of the resource: the test is skipped on any other JDK.</p>
+ *
+ * @author Fabien Renaud
+ */
+public class AllocationBudgetTest {
+
+  private static final int WARMUP = 50000;
+  private static final int TAKES = 10000;
+  private static final int ROUNDS = 5;
+  private static final boolean PRINT = Boolean.getBoolean("allocation.budgets.print");
+  private static com.sun.management.ThreadMXBean threads;
+  private static Properties budgets;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    budgets = new Properties();
+    try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("allocation-budgets.properties")) {
+      assertNotNull("Missing allocation-budgets.properties", in);
+      budgets.load(in);
+    }
+    String jdk = budgets.getProperty("jdk");
+    assertNotNull("Missing jdk in allocation-budgets.properties", jdk);
+    assumeTrue(jdk.trim().equals(System.getProperty("java.specification.version")));
+  }
+
+  @Test
+  public void simple() {
+    check(Shape.SIMPLE);
+  }
+
+  @Test
+  public void composite() {
+    check(Shape.COMPOSITE);
+  }
+
+  @Test
+  public void orthogonal() {
+    check(Shape.ORTHOGONAL);
+  }
+
+  @Test
+  public void history() {
+    check(Shape.HISTORY);
+  }
+
+  @Test
+  public void choiceJunction() {
+    check(Shape.CHOICE_JUNCTION);
+  }
+
+  @Test
+  public void subMachine() {
+    check(Shape.SUBMACHINE);
+  }
+
+  @Test
+  public void timeEvent() {
+    check(Shape.TIME_EVENT);
+  }
+
+  private static void check(final Shape shape) {
+    StateMachine machine = shape.builder().newInstance();
+    List<String> failures = new ArrayList<>();
+    for (Kind kind : Kind.values()) {
+      String key = shape.name().toLowerCase() + "." + kind.name().toLowerCase();
+      long bytes = kind.measure(machine, shape.events);
+      if (PRINT) {
+        System.out.println(key + "=" + bytes);
+      }
+      String budget = budgets.getProperty(key);
+      if (budget == null) {
+        failures.add(key + ": no budget, measured " + bytes + " bytes per take");
+      } else if (bytes > Long.parseLong(budget.trim())) {
+        failures.add(key + ": " + bytes + " bytes per take, budget is " + budget.trim());
+      }
+    }
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+
+  private static final class Context {
+
+    int counter;
+  }
+
+  /**
+   * The measured executors.
+   */
+  private enum Kind {
+
+    SYNC {
+      @Override
+      StateMachineExecutor newExecutor() {
+        return new SyncStateMachineExecutor();
+      }
+    },
+    LOCK {
+      @Override
+      StateMachineExecutor newExecutor() {
+        return new LockStateMachineExecutor();
+      }
+    },
+    POOL {
+      private Thread worker;
+
+      @Override
+      StateMachineExecutor newExecutor() {
+        StateMachineShardPoolExecutor pool = new StateMachineShardPoolExecutor(1, (r) -> {
+          worker = new Thread(r, "allocation-budget");
+          worker.setDaemon(true);
+          return worker;
+        });
+        return new PoolStateMachineExecutor(pool);
+      }
+
+      @Override
+      long allocatedBytes() {
+        return super.allocatedBytes() + threads.getThreadAllocatedBytes(worker.getId());
+      }
+
+      @Override
+      void await(final StateMachineExecutor fsm) {
+        try {
+          ((PoolStateMachineExecutor) fsm).takeAsync(AWAIT).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+          throw new AssertionError(ex);
+        }
+      }
+    };
+
+    /**
+     * An event none of the state machines accepts, taken by the pool executor
+     * to wait for the end of the previous steps.
+     */
+    private static final Event AWAIT = new StringEvent("await");
+
+    abstract StateMachineExecutor newExecutor();
+
+    long allocatedBytes() {
+      return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    void await(final StateMachineExecutor fsm) {
+    }
+
+    /**
+     * Measures the bytes allocated per take. The lowest of several rounds is
+     * kept so that a round disturbed by the JIT compiler does not count.
+     */
+    long measure(final StateMachine machine, final Event[] events) {
+      StateMachineExecutor fsm = start(newExecutor(), machine);
+      take(fsm, events, WARMUP);
+      await(fsm);
+
+      long min = Long.MAX_VALUE;
+      for (int i = 0; i < ROUNDS; i++) {
+        long before = allocatedBytes();
+        take(fsm, events, TAKES);
+        await(fsm);
+        min = Math.min(min, (allocatedBytes() - before) / TAKES);
+      }
+      return min;
+    }
+
+    private static StateMachineExecutor start(final StateMachineExecutor fsm, final StateMachine machine) {
+      fsm.configuration().executor(AbstractStateMachineTest.THREAD_POOL);
+      fsm.setStateMachine(machine);
+      fsm.setContext(new Context());
+      fsm.go();
+      return fsm;
+    }
+
+    private static void take(final StateMachineExecutor fsm, final Event[] events, final int count) {
+      for (int i = 0; i < count; i++) {
+        fsm.take(events[i % events.length]);
+      }
+    }
+  }
+
+  /**
+   * The measured state machines. None of them ever terminates: their events
+   * are taken in a loop.
+   */
+  private enum Shape {
+
+    SIMPLE("go") {
+      @Override
+      StateMachineBuilder<Context> builder() {
+        StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("A");
+
+        builder
+          .region()
+            .state("A")
+              .entry((c) -> c.counter++)
+              .exit((c) -> c.counter++)
+              .transition("t1")
+                .on("go")
+                .guard((e, c) -> c.counter >= 0)
+                .target("B");
+
+        builder
+          .region()
+            .state("B")
+              .transition("t2")
+                .on("go")
+                .target("A");
+
+        return builder;
+      }
+    },
+    COMPOSITE("next", "next", "out", "in") {
+      @Override
+      StateMachineBuilder<Context> builder() {
+        StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("C");
+
+        CompositeStateBuilder<Context> composite = new CompositeStateBuilder<>("C");
+        composite
+          .region()
+            .initial()
+              .transition("t1")
+                .target("C1");
+        composite
+          .region()
+            .state("C1")
+              .transition("t2")
+                .on("next")
+                .target("C2");
+        composite
+          .region()
+            .state("C2")
+              .transition("t3")
+                .on("next")
+                .target("C1");
+
+        builder
+          .region()
+            .state(composite)
+              .transition("t4")
+                .on("out")
+                .target("D");
+
+        builder
+          .region()
+            .state("D")
+              .transition("t5")
+                .on("in")
+                .target("C");
+
+        return builder;
+      }
+    },
+    ORTHOGONAL("go1", "go2", "go1", "go2", "out", "in") {
+      @Override
+      StateMachineBuilder<Context> builder() {
+        StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("O");
+
+        OrthogonalStateBuilder<Context> orthogonal = new OrthogonalStateBuilder<>("O");
+        toggle(orthogonal, "r1", "A", "B", "go1");
+        toggle(orthogonal, "r2", "C", "D", "go2");
+
+        builder
+          .region()
+            .state(orthogonal)
+              .transition("t1")
+                .on("out")
+                .target("E");
+
+        builder
+          .region()
+            .state("E")
+              .transition("t2")
+                .on("in")
+                .target("O");
+
+        return builder;
+      }
+    },
+    HISTORY("next", "out", "back") {
+      @Override
+      StateMachineBuilder<Context> builder() {
+        StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("H");
+
+        CompositeStateBuilder<Context> composite = new CompositeStateBuilder<>("H");
+        composite
+          .region()
+            .initial()
+              .transition("t1")
+                .target("H1");
+        composite
+          .region()
+            .deepHistory("history");
+        composite
+          .region()
+            .state("H1")
+              .transition("t2")
+                .on("next")
+                .target("H2");
+        composite
+          .region()
+            .state("H2")
+              .transition("t3")
+                .on("next")
+                .target("H1");
+
+        builder
+          .region()
+            .state(composite)
+              .transition("t4")
+                .on("out")
+                .target("P");
+
+        builder
+          .region()
+            .state("P")
+              .transition("t5")
+                .on("back")
+                .target("history");
+
+        return builder;
+      }
+    },
+    CHOICE_JUNCTION("go") {
+      @Override
+      StateMachineBuilder<Context> builder() {
+        StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("A");
+
+        builder
+          .region()
+            .state("A")
+              .transition("t1")
+                .on("go")
+                .effect((e, c) -> c.counter++)
+                .target("choice");
+
+        builder
+          .region()
+            .choice("choice")
+              .transition("t2")
+                .guard((c) -> (c.counter & 1) == 0)
+                .target("B")
+              .transition("t3")
+                .guard((c) -> (c.counter & 1) != 0)
+                .target("B");
+
+        builder
+          .region()
+            .state("B")
+              .transition("t4")
+                .on("go")
+                .target("junction");
+
+        builder
+          .region()
+            .junction("junction")
+              .transition("t5")
+                .guard((c) -> c.counter >= 0)
+                .target("A")
+              .transition("t6")
+                .guard((c) -> c.counter < 0)
+                .target("A");
+
+        return builder;
+      }
+    },
+    SUBMACHINE("go") {
+      @Override
+      StateMachineBuilder<Context> builder() {
+        StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("sub1::entryPoint");
+
+        StateMachineBuilder<Context> subMachine = subStateMachine();
+
+        builder
+          .region()
+            .state(subMachine, "sub1")
+              .connectionPoint()
+                .exitPoint("exitPoint")
+                  .transition("t1")
+                    .target("sub2::entryPoint");
+
+        builder
+          .region()
+            .state(subMachine, "sub2")
+              .connectionPoint()
+                .exitPoint("exitPoint")
+                  .transition("t2")
+                    .target("sub1::entryPoint");
+
+        return builder;
+      }
+    },
+    TIME_EVENT("go") {
+      @Override
+      StateMachineBuilder<Context> builder() {
+        StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("A");
+
+        builder
+          .region()
+            .state("A")
+              .transition("t1")
+                .on("go")
+                .target("B")
+              .transition("t2")
+                .after(1, TimeUnit.HOURS)
+                .target("end");
+
+        builder
+          .region()
+            .state("B")
+              .transition("t3")
+                .on("go")
+                .target("A")
+              .transition("t4")
+                .after(1, TimeUnit.HOURS)
+                .target("end");
+
+        builder
+          .region()
+            .finalState("end");
+
+        return builder;
+      }
+    };
+
+    private final Event[] events;
+
+    private Shape(final String... events) {
+      this.events = new Event[events.length];
+      for (int i = 0; i < events.length; i++) {
+        this.events[i] = new StringEvent(events[i]);
+      }
+    }
+
+    abstract StateMachineBuilder<Context> builder();
+
+    private static void toggle(final OrthogonalStateBuilder<Context> builder, final String region, final String a, final String b, final String event) {
+      builder
+        .region(region)
+          .initial()
+            .transition()
+              .target(a);
+      builder
+        .region(region)
+          .state(a)
+            .transition()
+              .on(event)
+              .target(b);
+      builder
+        .region(region)
+          .state(b)
+            .transition()
+              .on(event)
+              .target(a);
+    }
+
+    private static StateMachineBuilder<Context> subStateMachine() {
+      SubStateMachineBuilder<Context> builder = new SubStateMachineBuilder<>("sub");
+
+      builder
+        .connectionPoint()
+          .entryPoint(new EntryPointBuilder<Context>("entryPoint")
+            .transition("t0")
+              .effect((c) -> c.counter++)
+              .target("A")
+          )
+          .exitPoint("exitPoint");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .on("go")
+              .target("exitPoint");
+
+      return builder;
+    }
+  }
+
+}
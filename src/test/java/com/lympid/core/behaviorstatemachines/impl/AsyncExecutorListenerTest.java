@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class AsyncExecutorListenerTest {
+
+  @Test
+  public void delivery() throws InterruptedException {
+    final List<String> records = new ArrayList<>();
+    final AtomicInteger batches = new AtomicInteger();
+    AsyncExecutorListener<Object> async = new AsyncExecutorListener<>((record, endOfBatch) -> {
+      records.add(record.kind() + ":" + record.executorId());
+      if (endOfBatch) {
+        batches.incrementAndGet();
+      }
+    }, 64, AsyncExecutorListener.Overflow.BLOCK);
+
+    StateMachine machine = topLevelStateMachine().newInstance();
+    StateMachineExecutor fsm = new SyncStateMachineExecutor(3);
+    fsm.setStateMachine(machine);
+    fsm.listeners().addMachineStartedListener(async);
+    fsm.listeners().addEventAcceptedListener(async);
+    fsm.listeners().addEventDeniedListener(async);
+    fsm.go();
+    fsm.take(new StringEvent("nope"));
+    fsm.take(new StringEvent("go"));
+    async.close();
+
+    assertEquals("[MACHINE_STARTED:3, EVENT_ACCEPTED:3, EVENT_DENIED:3, EVENT_ACCEPTED:3]", records.toString());
+    assertEquals(4, async.delivered());
+    assertEquals(0, async.dropped());
+    assertTrue(batches.get() >= 1);
+  }
+
+  @Test
+  public void recordIds() throws InterruptedException {
+    final List<String> transitions = new ArrayList<>();
+    AsyncExecutorListener<Object> async = new AsyncExecutorListener<>((record, endOfBatch) -> {
+      if (record.kind() == ExecutorEvent.TRANSITION_ENDED) {
+        transitions.add(record.transitionId());
+      }
+    }, 16, AsyncExecutorListener.Overflow.BLOCK);
+
+    final List<String> expected = new ArrayList<>();
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(topLevelStateMachine().newInstance());
+    fsm.listeners().add(async);
+    fsm.listeners().addTransitionEndedListener((executor, machine, context, event, transition) -> expected.add(transition.getId()));
+    fsm.go();
+    fsm.take(new StringEvent("go"));
+    async.close();
+
+    assertEquals(2, transitions.size());
+    assertEquals(expected, transitions);
+  }
+
+  @Test
+  public void overflow_drop() throws InterruptedException {
+    final CountDownLatch gate = new CountDownLatch(1);
+    final CountDownLatch consuming = new CountDownLatch(1);
+    AsyncExecutorListener<Object> async = new AsyncExecutorListener<>((record, endOfBatch) -> {
+      consuming.countDown();
+      try {
+        gate.await();
+      } catch (InterruptedException ex) {
+        throw new RuntimeException(ex);
+      }
+    }, 4, AsyncExecutorListener.Overflow.DROP);
+
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    async.onMachineStarted(fsm, null, null);
+    consuming.await();
+    for (int i = 0; i < 9; i++) {
+      async.onMachineStarted(fsm, null, null);
+    }
+    gate.countDown();
+    async.close();
+
+    assertEquals(4, async.delivered());
+    assertEquals(6, async.dropped());
+  }
+
+  @Test
+  public void overflow_block() throws InterruptedException {
+    final AtomicInteger received = new AtomicInteger();
+    final AsyncExecutorListener<Object> async = new AsyncExecutorListener<>((record, endOfBatch) -> received.incrementAndGet(), 2, AsyncExecutorListener.Overflow.BLOCK);
+    final StateMachineExecutor fsm = new SyncStateMachineExecutor();
+
+    Thread[] producers = new Thread[4];
+    for (int i = 0; i < producers.length; i++) {
+      producers[i] = new Thread(() -> {
+        for (int j = 0; j < 1000; j++) {
+          async.onEventAccepted(fsm, null, null, null);
+        }
+      });
+      producers[i].start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    async.close();
+
+    assertEquals(4000, received.get());
+    assertEquals(4000, async.delivered());
+    assertEquals(0, async.dropped());
+  }
+
+  @Test
+  public void close_concurrentProducers() throws InterruptedException {
+    final AtomicInteger received = new AtomicInteger();
+    final AsyncExecutorListener<Object> async = new AsyncExecutorListener<>((record, endOfBatch) -> received.incrementAndGet(), 8, AsyncExecutorListener.Overflow.BLOCK);
+    final StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    final CountDownLatch started = new CountDownLatch(4);
+
+    Thread[] producers = new Thread[4];
+    for (int i = 0; i < producers.length; i++) {
+      producers[i] = new Thread(() -> {
+        started.countDown();
+        for (int j = 0; j < 100000; j++) {
+          async.onEventAccepted(fsm, null, null, null);
+        }
+      });
+      producers[i].start();
+    }
+    started.await();
+    async.close();
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    assertEquals(received.get(), async.delivered());
+    assertEquals(400000, async.delivered() + async.dropped());
+  }
+
+  private StateMachineBuilder topLevelStateMachine() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder("async");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    return builder;
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.listener.EventAcceptedListener;
+import com.lympid.core.behaviorstatemachines.listener.MachineStartedListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ExecutorListenerTest {
+
+  @Test
+  public void addRemove() {
+    ExecutorListener<Object> listeners = new ExecutorListener<>();
+    List<String> calls = new ArrayList<>();
+    EventAcceptedListener<Object> a = (executor, machine, context, event) -> calls.add("a");
+    EventAcceptedListener<Object> b = (executor, machine, context, event) -> calls.add("b");
+
+    assertFalse(listeners.hasEventAcceptedListener());
+    assertTrue(listeners.addEventAcceptedListener(a));
+    assertTrue(listeners.addEventAcceptedListener(b));
+    assertTrue(listeners.hasEventAcceptedListener());
+    assertFalse(listeners.hasMachineStartedListener());
+
+    listeners.onEventAccepted(null, null, null, new StringEvent("go"));
+    assertEquals("[a, b]", calls.toString());
+
+    assertTrue(listeners.removeEventAcceptedListener(a));
+    assertFalse(listeners.removeEventAcceptedListener(a));
+    listeners.onEventAccepted(null, null, null, new StringEvent("go"));
+    assertEquals("[a, b, b]", calls.toString());
+
+    assertTrue(listeners.removeEventAcceptedListener(b));
+    assertFalse(listeners.hasEventAcceptedListener());
+  }
+
+  @Test
+  public void removeWhileDispatching() {
+    final ExecutorListener<Object> listeners = new ExecutorListener<>();
+    final AtomicInteger calls = new AtomicInteger();
+    final MachineStartedListener<Object> second = (executor, machine, context) -> calls.incrementAndGet();
+    listeners.addMachineStartedListener((executor, machine, context) -> listeners.removeMachineStartedListener(second));
+    listeners.addMachineStartedListener(second);
+
+    listeners.onMachineStarted(null, null, null);
+    assertEquals(1, calls.get());
+    listeners.onMachineStarted(null, null, null);
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void attachDetachConcurrently() throws InterruptedException {
+    final ExecutorListener<Object> listeners = new ExecutorListener<>();
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicInteger calls = new AtomicInteger();
+    listeners.addMachineStartedListener((executor, machine, context) -> calls.incrementAndGet());
+
+    Thread tap = new Thread(() -> {
+      MachineStartedListener<Object> l = (executor, machine, context) -> {
+      };
+      while (running.get()) {
+        listeners.addMachineStartedListener(l);
+        listeners.removeMachineStartedListener(l);
+      }
+    });
+    tap.start();
+
+    for (int i = 0; i < 100000; i++) {
+      listeners.onMachineStarted(null, null, null);
+    }
+    running.set(false);
+    tap.join();
+
+    assertEquals(100000, calls.get());
+    assertTrue(listeners.hasMachineStartedListener());
+  }
+
+}
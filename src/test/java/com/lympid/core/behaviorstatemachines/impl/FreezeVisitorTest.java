@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.SimpleStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class FreezeVisitorTest {
+
+  @Test
+  public void readOnly() {
+    StateMachine machine = stateMachineBuilder(3).newInstance();
+    State a = state(machine, "A");
+    State b = state(machine, "B");
+
+    assertSame(a.connectionPoint(), b.connectionPoint());
+    assertSame(a.region(), b.region());
+    try {
+      b.incoming().clear();
+      fail();
+    } catch (UnsupportedOperationException ex) {
+    }
+    try {
+      machine.region().get(0).subVertex().clear();
+      fail();
+    } catch (UnsupportedOperationException ex) {
+    }
+    try {
+      a.outgoing().clear();
+      fail();
+    } catch (UnsupportedOperationException ex) {
+    }
+  }
+
+  @Test
+  public void outgoingByEvent_scanned() {
+    outgoingByEvent(3);
+  }
+
+  @Test
+  public void outgoingByEvent_hashed() {
+    outgoingByEvent(20);
+  }
+
+  private void outgoingByEvent(final int events) {
+    StateMachine machine = stateMachineBuilder(events).newInstance();
+    State a = state(machine, "A");
+
+    for (int i = 0; i < events; i++) {
+      Iterator<? extends Transition> it = a.outgoing(new StringEvent("e" + i)).iterator();
+      assertEquals("t" + i, it.next().getName());
+      if (i == 0) {
+        assertEquals("u0", it.next().getName());
+      }
+      assertTrue(!it.hasNext());
+    }
+    assertTrue(a.outgoing(new StringEvent("nope")).isEmpty());
+
+    List<String> names = new ArrayList<>();
+    for (Transition t : a.outgoing()) {
+      names.add(t.getName());
+    }
+    assertEquals("t0", names.get(0));
+    assertEquals("u0", names.get(events));
+  }
+
+  private static State state(final StateMachine machine, final String name) {
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      if (name.equals(v.getName())) {
+        return (State) v;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private StateMachineBuilder<Object> stateMachineBuilder(final int events) {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>("frozen");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    SimpleStateBuilder<Object> a = builder
+      .region()
+        .state("A");
+    for (int i = 0; i < events; i++) {
+      a.transition("t" + i)
+        .on("e" + i)
+        .target("B");
+    }
+    a.transition("u0")
+      .on("e0")
+      .target("B");
+
+    builder
+      .region()
+        .state("B");
+
+    return builder;
+  }
+
+}
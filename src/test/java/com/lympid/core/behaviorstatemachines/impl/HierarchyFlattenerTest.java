@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.SequentialContextInjector;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class HierarchyFlattenerTest {
+
+  @Test
+  public void flatten() {
+    StateMachine machine = HierarchyFlattener.flatten(stateMachineBuilder().newInstance(), HierarchyFlattener.DEFAULT_MAX_TRANSITIONS);
+    List<String> names = new ArrayList<>();
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      names.add(v.getName());
+    }
+    assertTrue(names.containsAll(Arrays.asList("A1", "A2", "B1", "B2", "Bend", "end")));
+    assertFalse(names.contains("A"));
+    assertFalse(names.contains("B"));
+
+    StateMachine built = stateMachineBuilder().flattenHierarchy(HierarchyFlattener.DEFAULT_MAX_TRANSITIONS).newInstance();
+    assertFalse(built.metadata().hasCompositeStates());
+  }
+
+  @Test
+  public void sizeLimit() {
+    assertNull(HierarchyFlattener.flatten(stateMachineBuilder().newInstance(), 8));
+
+    StateMachine built = stateMachineBuilder().flattenHierarchy(8).newInstance();
+    assertTrue(built.metadata().hasCompositeStates());
+  }
+
+  @Test
+  public void notHierarchical() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("flat");
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+    builder
+      .region()
+        .state("A");
+
+    assertNull(HierarchyFlattener.flatten(builder.newInstance(), HierarchyFlattener.DEFAULT_MAX_TRANSITIONS));
+  }
+
+  @Test
+  public void run() {
+    StateMachine modeled = stateMachineBuilder().newInstance();
+    StateMachine flattened = stateMachineBuilder().flattenHierarchy(HierarchyFlattener.DEFAULT_MAX_TRANSITIONS).newInstance();
+
+    SequentialContext expected = new SequentialContext();
+    SequentialContext actual = new SequentialContext();
+    StateMachineExecutor fsm1 = executor(modeled, expected);
+    StateMachineExecutor fsm2 = executor(flattened, actual);
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(leaf(fsm1.snapshot().stateConfiguration()), leaf(fsm2.snapshot().stateConfiguration()));
+
+    for (String e : new String[]{"go", "tick", "deep", "next", "tick", "up", "reset", "deep", "reset", "go", "deep", "next", "finish", "deep", "end"}) {
+      fsm1.take(new StringEvent(e));
+      fsm2.take(new StringEvent(e));
+      assertEquals(e, expected.toString(), actual.toString());
+      assertEquals(e, leaf(fsm1.snapshot().stateConfiguration()), leaf(fsm2.snapshot().stateConfiguration()));
+    }
+    assertEquals(vertex(flattened, "end").getId(), leaf(fsm2.snapshot().stateConfiguration()));
+  }
+
+  private static StateMachineExecutor executor(final StateMachine machine, final SequentialContext ctx) {
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(machine);
+    fsm.setContext(ctx);
+    fsm.go();
+    return fsm;
+  }
+
+  private static Vertex vertex(final StateMachine machine, final String name) {
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      if (name.equals(v.getName())) {
+        return v;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private static String leaf(final StateMachineSnapshot.StringTree tree) {
+    StateMachineSnapshot.StringTree t = tree;
+    while (t.children() != null && !t.children().isEmpty()) {
+      t = t.children().iterator().next();
+    }
+    return t.state();
+  }
+
+  private StateMachineBuilder<SequentialContext> stateMachineBuilder() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("hierarchy");
+
+    builder
+      .region()
+        .finalState("end");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state(compositeA());
+
+    builder.accept(new SequentialContextInjector());
+    return builder;
+  }
+
+  private CompositeStateBuilder<SequentialContext> compositeA() {
+    CompositeStateBuilder<SequentialContext> builder = new CompositeStateBuilder<>("A");
+
+    builder
+      .transition("t5")
+        .on("reset")
+        .target("A");
+
+    builder
+      .transition("t6")
+        .on("end")
+        .target("end");
+
+    builder
+      .selfTransition("t8")
+        .on("tick")
+        .target();
+
+    builder
+      .region()
+        .initial()
+          .transition("t10")
+            .target("A1");
+
+    builder
+      .region()
+        .state("A1")
+          .transition("t1")
+            .on("go")
+            .target("A2")
+          .transition("t9")
+            .on("reset")
+            .target("A2");
+
+    builder
+      .region()
+        .state("A2")
+          .transition("t2")
+            .on("deep")
+            .target("B");
+
+    builder
+      .region()
+        .state(compositeB());
+
+    return builder;
+  }
+
+  private CompositeStateBuilder<SequentialContext> compositeB() {
+    CompositeStateBuilder<SequentialContext> builder = new CompositeStateBuilder<>("B");
+
+    builder
+      .transition("t7")
+        .on("up")
+        .target("A1");
+
+    builder
+      .transition("t13")
+        .target("A2");
+
+    builder
+      .region()
+        .finalState("Bend");
+
+    builder
+      .region()
+        .initial()
+          .transition("t11")
+            .target("B1");
+
+    builder
+      .region()
+        .state("B1")
+          .transition("t4")
+            .on("next")
+            .target("B2");
+
+    builder
+      .region()
+        .state("B2")
+          .transition("t12")
+            .on("finish")
+            .target("Bend");
+
+    return builder;
+  }
+
+}
@@ -18,12 +18,24 @@ package com.lympid.core.behaviorstatemachines.impl;
 import com.lympid.core.basicbehaviors.StringEvent;
 import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
 import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.StateMachine;
 import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
 import com.lympid.core.behaviorstatemachines.builder.SequentialContextInjector;
 import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
 import static com.lympid.core.common.TestUtils.assertSequentialContextEquals;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -56,6 +68,370 @@ public class PoolStateMachineExecutorTest {
     run(new PoolStateMachineExecutor(pool, 17), false);
   }
   
+  @Test
+  public void takeAsync() throws Exception {
+    PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool);
+    fsm.setStateMachine(asyncStateMachine().newInstance());
+    fsm.go();
+
+    StepResult denied = fsm.takeAsync(new StringEvent("stop")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertFalse(denied.isAccepted());
+    assertFalse(denied.isTerminated());
+    assertTrue(denied.transitions().isEmpty());
+    assertEquals("A", stateName(fsm, denied));
+
+    StepResult accepted = fsm.takeAsync(new StringEvent("go")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertTrue(accepted.isAccepted());
+    assertFalse(accepted.isTerminated());
+    assertEquals(1, accepted.transitions().size());
+    assertEquals("B", stateName(fsm, accepted));
+
+    StepResult terminated = fsm.takeAsync(new StringEvent("stop")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertTrue(terminated.isAccepted());
+    assertTrue(terminated.isTerminated());
+    assertEquals(1, terminated.transitions().size());
+
+    StepResult afterTermination = fsm.takeAsync(new StringEvent("go")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertFalse(afterTermination.isAccepted());
+    assertTrue(afterTermination.isTerminated());
+  }
+
+  @Test
+  public void fairness() throws Exception {
+    StateMachine machine = shardStateMachine().newInstance();
+    ShardContext ctxA = new ShardContext();
+    PoolStateMachineExecutor fsmA = new PoolStateMachineExecutor(pool);
+    fsmA.setStateMachine(machine);
+    fsmA.setContext(ctxA);
+    fsmA.go();
+
+    PoolStateMachineExecutor fsmB = new PoolStateMachineExecutor(pool);
+    fsmB.setStateMachine(machine);
+    fsmB.setContext(new ShardContext());
+    fsmB.go();
+
+    /*
+     * Machine A holds the only worker while its backlog of ticks builds up.
+     */
+    fsmA.take(new StringEvent("block"));
+    for (int i = 0; i < 10000; i++) {
+      fsmA.take(new StringEvent("tick"));
+    }
+    CompletableFuture<Integer> ticksOfA = fsmB.takeAsync(new StringEvent("tick"))
+      .thenApply((r) -> ctxA.ticks.get())
+      .toCompletableFuture();
+    ctxA.gate.countDown();
+
+    assertTrue(ticksOfA.get(5, TimeUnit.SECONDS) <= StateMachineShardPoolExecutor.DEFAULT_QUANTUM);
+  }
+
+  @Test
+  public void watchdog_quarantine() throws Exception {
+    pool = new StateMachineShardPoolExecutor(1, Executors.defaultThreadFactory(), StateMachineShardPoolExecutor.DEFAULT_QUANTUM,
+      new StepWatchdog(DELAY / 2, TimeUnit.MILLISECONDS, StepWatchdog.Policy.QUARANTINE));
+    StateMachine machine = shardStateMachine().newInstance();
+    final AtomicInteger overruns = new AtomicInteger();
+    ShardContext ctxA = new ShardContext();
+    PoolStateMachineExecutor fsmA = new PoolStateMachineExecutor(pool);
+    fsmA.setStateMachine(machine);
+    fsmA.setContext(ctxA);
+    fsmA.listeners().addMachineStepOverrunListener((executor, m, context, duration) -> overruns.incrementAndGet());
+    fsmA.go();
+
+    PoolStateMachineExecutor fsmB = new PoolStateMachineExecutor(pool);
+    fsmB.setStateMachine(machine);
+    fsmB.setContext(new ShardContext());
+    fsmB.go();
+
+    assertTrue(fsmA.takeAsync(new StringEvent("slow")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+    assertEquals(1, overruns.get());
+    assertEquals(1, fsmA.stepStatistics().overruns());
+    assertTrue(fsmA.stepStatistics().isQuarantined());
+
+    fsmA.take(new StringEvent("block"));
+    StepResult result = fsmB.takeAsync(new StringEvent("tick")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertTrue(result.isAccepted());
+    assertFalse(fsmB.stepStatistics().isQuarantined());
+    assertEquals(0, fsmB.stepStatistics().overruns());
+
+    ctxA.gate.countDown();
+    assertTrue(fsmA.takeAsync(new StringEvent("tick")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+    assertEquals(4, fsmA.stepStatistics().steps());
+  }
+
+  @Test
+  public void watchdog_terminate() throws Exception {
+    pool = new StateMachineShardPoolExecutor(1, Executors.defaultThreadFactory(), StateMachineShardPoolExecutor.DEFAULT_QUANTUM,
+      new StepWatchdog(DELAY / 2, TimeUnit.MILLISECONDS, StepWatchdog.Policy.TERMINATE));
+    PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool);
+    fsm.setStateMachine(shardStateMachine().newInstance());
+    fsm.setContext(new ShardContext());
+    fsm.go();
+
+    StepResult result = fsm.takeAsync(new StringEvent("slow")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertTrue(result.isAccepted());
+    assertTrue(result.isTerminated());
+    result = fsm.takeAsync(new StringEvent("tick")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertFalse(result.isAccepted());
+    assertTrue(result.isTerminated());
+    assertEquals(1, fsm.stepStatistics().overruns());
+    assertFalse(fsm.stepStatistics().isQuarantined());
+  }
+
+  @Test
+  public void watchdog_blockedStep() throws Exception {
+    pool = new StateMachineShardPoolExecutor(1, Executors.defaultThreadFactory(), StateMachineShardPoolExecutor.DEFAULT_QUANTUM,
+      new StepWatchdog(DELAY / 2, TimeUnit.MILLISECONDS, StepWatchdog.Policy.LOG));
+    final CountDownLatch reported = new CountDownLatch(1);
+    final AtomicInteger overruns = new AtomicInteger();
+    ShardContext ctx = new ShardContext();
+    PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool);
+    fsm.setStateMachine(shardStateMachine().newInstance());
+    fsm.setContext(ctx);
+    fsm.listeners().addMachineStepOverrunListener((executor, m, context, duration) -> {
+      overruns.incrementAndGet();
+      reported.countDown();
+    });
+    fsm.go();
+
+    /*
+     * The step is reported while it is still blocked.
+     */
+    fsm.take(new StringEvent("block"));
+    assertTrue(reported.await(1, TimeUnit.SECONDS));
+    assertEquals(1, fsm.stepStatistics().overruns());
+
+    ctx.gate.countDown();
+    assertTrue(fsm.takeAsync(new StringEvent("tick")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+    assertEquals(1, overruns.get());
+    assertEquals(1, fsm.stepStatistics().overruns());
+  }
+
+  @Test
+  public void watchdog_terminate_cancelsActiveStates() throws Exception {
+    pool = new StateMachineShardPoolExecutor(1, Executors.defaultThreadFactory(), StateMachineShardPoolExecutor.DEFAULT_QUANTUM,
+      new StepWatchdog(DELAY / 2, TimeUnit.MILLISECONDS, StepWatchdog.Policy.TERMINATE));
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(2);
+    scheduler.setRemoveOnCancelPolicy(true);
+    try {
+      ActivityContext ctx = new ActivityContext();
+      PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool);
+      fsm.configuration().executor(scheduler);
+      fsm.setStateMachine(activityStateMachine().newInstance());
+      fsm.setContext(ctx);
+      fsm.go();
+      assertTrue(ctx.started.await(1, TimeUnit.SECONDS));
+      assertFalse(fsm.takeAsync(new StringEvent("nope")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+      assertEquals(1, scheduler.getQueue().size());
+
+      assertTrue(fsm.takeAsync(new StringEvent("slow")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+      assertTrue(fsm.takeAsync(new StringEvent("slow")).toCompletableFuture().get(1, TimeUnit.SECONDS).isTerminated());
+      assertTrue(ctx.interrupted.await(1, TimeUnit.SECONDS));
+      assertEquals(0, scheduler.getQueue().size());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void throwingListeners() throws Exception {
+    final AtomicInteger uncaught = new AtomicInteger();
+    pool = new StateMachineShardPoolExecutor(1, (r) -> {
+      Thread t = new Thread(r);
+      t.setUncaughtExceptionHandler((thread, ex) -> uncaught.incrementAndGet());
+      return t;
+    }, StateMachineShardPoolExecutor.DEFAULT_QUANTUM, new StepWatchdog(DELAY / 2, TimeUnit.MILLISECONDS, StepWatchdog.Policy.LOG));
+    PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool);
+    fsm.setStateMachine(shardStateMachine().newInstance());
+    fsm.setContext(new ShardContext());
+    fsm.listeners().addMachineQueueWaitListener((executor, m, context, duration) -> {
+      throw new IllegalStateException();
+    });
+    fsm.listeners().addMachineStepOverrunListener((executor, m, context, duration) -> {
+      throw new IllegalStateException();
+    });
+    fsm.go();
+
+    assertTrue(fsm.takeAsync(new StringEvent("slow")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+    assertTrue(fsm.takeAsync(new StringEvent("tick")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+    assertEquals(1, fsm.stepStatistics().overruns());
+    assertEquals(4, uncaught.get());
+  }
+
+  @Test
+  public void shardStatistics() throws Exception {
+    pool = new StateMachineShardPoolExecutor(2);
+    PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool, 1);
+    ShardContext ctx = new ShardContext();
+    fsm.setStateMachine(shardStateMachine().newInstance());
+    fsm.setContext(ctx);
+    fsm.go();
+    ShardStatistics before = pool.shardStatistics().get(1);
+
+    fsm.take(new StringEvent("block"));
+    for (int i = 0; i < 9; i++) {
+      fsm.take(new StringEvent("tick"));
+    }
+    Thread.sleep(DELAY);
+    ShardStatistics blocked = pool.shardStatistics().get(1);
+    assertEquals(9, blocked.depth());
+    assertTrue(blocked.enqueueRate(before) > 0);
+
+    ctx.gate.countDown();
+    assertTrue(fsm.takeAsync(new StringEvent("tick")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+    List<ShardStatistics> statistics = pool.shardStatistics();
+    assertEquals(2, statistics.size());
+    assertEquals(0, statistics.get(0).enqueued());
+    ShardStatistics after = statistics.get(1);
+    assertEquals(0, after.depth());
+    assertEquals(before.enqueued() + 11, after.enqueued());
+    assertEquals(after.enqueued(), after.dequeued());
+    assertEquals(after.dequeued(), after.serviceTime().count());
+    assertEquals(after.dequeued(), after.queueWait().count());
+    assertTrue(after.queueWait().max() >= TimeUnit.MILLISECONDS.toNanos(DELAY));
+    assertTrue(after.serviceTime().max() >= TimeUnit.MILLISECONDS.toNanos(DELAY / 2));
+    assertTrue(after.utilization(before) > 0);
+    assertTrue(after.dequeueRate(blocked) > 0);
+  }
+
+  @Test
+  public void shardMBeans() throws Exception {
+    pool = new StateMachineShardPoolExecutor(2);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    List<ObjectName> names = pool.registerMBeans("test");
+    try {
+      assertEquals(2, names.size());
+      PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool, 1);
+      fsm.setStateMachine(shardStateMachine().newInstance());
+      fsm.setContext(new ShardContext());
+      fsm.go();
+      assertTrue(fsm.takeAsync(new StringEvent("tick")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+
+      assertEquals(0L, server.getAttribute(names.get(0), "EnqueuedCount"));
+      assertEquals(2L, server.getAttribute(names.get(1), "DequeuedCount"));
+      assertEquals(0L, server.getAttribute(names.get(1), "QueueDepth"));
+    } finally {
+      pool.unregisterMBeans();
+    }
+    assertFalse(server.isRegistered(names.get(0)));
+    assertFalse(server.isRegistered(names.get(1)));
+  }
+
+  private String stateName(final StateMachineExecutor fsm, final StepResult result) {
+    return fsm.stateMachine().metadata().state(result.stateConfiguration().state()).getName();
+  }
+
+  private StateMachineBuilder asyncStateMachine() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder("async");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .transition("t2")
+            .on("stop")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    return builder;
+  }
+
+  private StateMachineBuilder shardStateMachine() {
+    StateMachineBuilder<ShardContext> builder = new StateMachineBuilder("shard");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .selfTransition("t1")
+            .on("block")
+            .effect((e, c) -> {
+              try {
+                c.gate.await();
+              } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+              }
+            })
+            .target()
+          .selfTransition("t2")
+            .on("tick")
+            .effect((e, c) -> c.ticks.incrementAndGet())
+            .target()
+          .selfTransition("t3")
+            .on("slow")
+            .effect((e, c) -> {
+              try {
+                Thread.sleep(DELAY);
+              } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+              }
+            })
+            .target();
+
+    return builder;
+  }
+
+  private StateMachineBuilder activityStateMachine() {
+    StateMachineBuilder<ActivityContext> builder = new StateMachineBuilder("activity");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .activity((c) -> {
+            c.started.countDown();
+            try {
+              Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException ex) {
+              c.interrupted.countDown();
+            }
+          })
+          .selfTransition("t1")
+            .on("slow")
+            .effect((e, c) -> {
+              try {
+                Thread.sleep(DELAY);
+              } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+              }
+            })
+            .target()
+          .transition("t2")
+            .after(1, TimeUnit.HOURS)
+            .target("B");
+
+    builder
+      .region()
+        .state("B");
+
+    return builder;
+  }
+
   private void run(final StateMachineExecutor<Context> fsm, final boolean pause) throws InterruptedException {
     SequentialContext expected = new SequentialContext();
     Context ctx = new Context();
@@ -175,4 +551,18 @@ public class PoolStateMachineExecutorTest {
     }
   }
 
+  private static final class ShardContext {
+
+    private final AtomicInteger ticks = new AtomicInteger();
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+  }
+
+  private static final class ActivityContext {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+  }
+
 }
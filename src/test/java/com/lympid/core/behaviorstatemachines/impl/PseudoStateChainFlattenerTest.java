@@ -0,0 +1,362 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.EntryPointBuilder;
+import com.lympid.core.behaviorstatemachines.builder.ExitPointBuilder;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.SequentialContextInjector;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.validation.TransitionConstraintException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class PseudoStateChainFlattenerTest {
+
+  @Test
+  public void flatten() {
+    StateMachine machine = stateMachineBuilder().newInstance();
+    assertEquals(4, PseudoStateChainFlattener.flatten(machine));
+    assertEquals(0, PseudoStateChainFlattener.flatten(machine));
+
+    Iterator<? extends Transition> it = vertex(machine, "A").outgoing().iterator();
+    CompoundTransition t = (CompoundTransition) it.next();
+    assertEquals(Arrays.asList("t1", "t2", "t4"), names(t));
+    assertEquals("B1", t.target().getName());
+    t = (CompoundTransition) it.next();
+    assertEquals(Arrays.asList("t1", "t3"), names(t));
+    assertEquals("C", t.target().getName());
+    assertFalse(it.hasNext());
+
+    t = (CompoundTransition) ((State) vertex(machine, "B")).region().get(0).subVertex().stream()
+      .filter((v) -> "B1".equals(v.getName()))
+      .findFirst().get().outgoing().iterator().next();
+    assertEquals(Arrays.asList("t5", "t6"), names(t));
+  }
+
+  /**
+   * A chain looping back to one of its junctions is kept as modeled.
+   */
+  @Test
+  public void cycle() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("cycle");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("j1");
+
+    builder
+      .region()
+        .junction("j1")
+          .transition("t2")
+            .target("j2");
+
+    builder
+      .region()
+        .junction("j2")
+          .transition("t3")
+            .guard((c) -> { return c.n > 0; })
+            .target("j1")
+          .transition("t4")
+            .guard((c) -> { return c.n <= 0; })
+            .target("B");
+
+    builder
+      .region()
+        .state("B");
+
+    StateMachine machine = builder.newInstance();
+    Transition t1 = vertex(machine, "A").outgoing().iterator().next();
+    Transition t2 = vertex(machine, "j1").outgoing().iterator().next();
+    assertEquals(0, PseudoStateChainFlattener.flatten(machine));
+    assertSame(t1, vertex(machine, "A").outgoing().iterator().next());
+    assertSame(t2, vertex(machine, "j1").outgoing().iterator().next());
+  }
+
+  /**
+   * A transition expanding into more than MAX_ALTERNATIVES compound
+   * transitions is kept as modeled while the shorter chains it goes through
+   * are flattened.
+   */
+  @Test
+  public void tooManyAlternatives() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("alternatives");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("j0");
+
+    String[] junctions = {"j0", "j1", "j2"};
+    for (int j = 0; j < junctions.length; j++) {
+      for (int i = 0; i < 5; i++) {
+        final int branch = i;
+        builder
+          .region()
+            .junction(junctions[j])
+              .transition()
+                .guard((c) -> { return c.n % 5 == branch; })
+                .target(j + 1 < junctions.length ? junctions[j + 1] : "B");
+      }
+    }
+
+    builder
+      .region()
+        .state("B");
+
+    StateMachine machine = builder.newInstance();
+    assertEquals(5 * 25 + 5 * 5, PseudoStateChainFlattener.flatten(machine));
+    assertFalse(vertex(machine, "A").outgoing().iterator().next() instanceof CompoundTransition);
+    assertTrue(vertex(machine, "j0").outgoing().iterator().next() instanceof CompoundTransition);
+  }
+
+  /**
+   * Chains of pseudo states cannot end in a join: the validation rejects them
+   * before they reach the flattener.
+   */
+  @Test(expected = TransitionConstraintException.class)
+  public void join() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("join");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("O");
+
+    OrthogonalStateBuilder<Context> orthogonal = new OrthogonalStateBuilder<>("O");
+    orthogonal
+      .region("r1")
+        .initial()
+          .transition("t1")
+            .target("A");
+    orthogonal
+      .region("r1")
+        .state("A")
+          .transition("t2")
+            .on("go")
+            .target("j");
+    orthogonal
+      .region("r1")
+        .junction("j")
+          .transition("t3")
+            .target("myJoin");
+    orthogonal
+      .region("r2")
+        .initial()
+          .transition("t4")
+            .target("C");
+    orthogonal
+      .region("r2")
+        .state("C")
+          .transition("t5")
+            .target("myJoin");
+
+    builder
+      .region()
+        .state(orthogonal);
+
+    builder
+      .region()
+        .join("myJoin")
+          .transition("t6")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    builder.flattenPseudoStateChains(true).newInstance();
+  }
+
+  @Test
+  public void run0() {
+    run(0);
+  }
+
+  @Test
+  public void run1() {
+    run(1);
+  }
+
+  private void run(final int n) {
+    StateMachine modeled = stateMachineBuilder().newInstance();
+    StateMachine flattened = stateMachineBuilder().flattenPseudoStateChains(true).newInstance();
+    assertTrue(vertex(flattened, "A").outgoing().iterator().next() instanceof CompoundTransition);
+
+    Context expected = new Context(n);
+    Context actual = new Context(n);
+    StringBuilder expectedTransitions = new StringBuilder();
+    StringBuilder actualTransitions = new StringBuilder();
+    StateMachineExecutor fsm1 = executor(modeled, expected, expectedTransitions);
+    StateMachineExecutor fsm2 = executor(flattened, actual, actualTransitions);
+    for (String e : new String[]{"go", "out", "back", "go", "back"}) {
+      fsm1.take(new StringEvent(e));
+      fsm2.take(new StringEvent(e));
+      assertEquals(expected.toString(), actual.toString());
+      assertEquals(expectedTransitions.toString(), actualTransitions.toString());
+      assertEquals(tree(fsm1.snapshot().stateConfiguration()), tree(fsm2.snapshot().stateConfiguration()));
+    }
+  }
+
+  private static StateMachineExecutor executor(final StateMachine machine, final Context ctx, final StringBuilder transitions) {
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(machine);
+    fsm.setContext(ctx);
+    ExecutorListener listeners = new ExecutorListener();
+    listeners.addTransitionStartedListener((executor, m, c, event, t) -> transitions.append('+').append(t.getName()).append(event == null ? "" : ":" + event));
+    listeners.addTransitionEndedListener((executor, m, c, event, t) -> transitions.append('-').append(t.getName()));
+    fsm.setListeners(listeners);
+    fsm.go();
+    return fsm;
+  }
+
+  private static Vertex vertex(final StateMachine machine, final String name) {
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      if (name.equals(v.getName())) {
+        return v;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private static String tree(final StateMachineSnapshot.StringTree tree) {
+    StringBuilder sb = new StringBuilder().append(tree.state());
+    if (tree.children() != null) {
+      for (StateMachineSnapshot.StringTree child : tree.children()) {
+        sb.append('(').append(tree(child)).append(')');
+      }
+    }
+    return sb.toString();
+  }
+
+  private static List<String> names(final CompoundTransition t) {
+    List<String> names = new ArrayList<>();
+    for (Transition s : t.segments()) {
+      names.add(s.getName());
+    }
+    return names;
+  }
+
+  private StateMachineBuilder<Context> stateMachineBuilder() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("flattener");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("j0");
+
+    builder
+      .region()
+        .junction("j0")
+          .transition("t2")
+            .guard((c) -> { return c.n > 0; })
+            .target("B_entryPoint")
+          .transition("t3")
+            .guard((c) -> { return c.n <= 0; })
+            .target("C");
+
+    builder
+      .region()
+        .state(compositeB());
+
+    builder
+      .region()
+        .state("C")
+          .transition("t7")
+            .on("back")
+            .target("A");
+
+    builder.accept(new SequentialContextInjector());
+    return builder;
+  }
+
+  private CompositeStateBuilder<Context> compositeB() {
+    CompositeStateBuilder<Context> builder = new CompositeStateBuilder<>("B");
+
+    builder
+      .connectionPoint()
+        .entryPoint(new EntryPointBuilder<Context>("B_entryPoint")
+          .transition("t4")
+            .target("B1"))
+        .exitPoint(new ExitPointBuilder<Context>("B_exitPoint")
+          .transition("t6")
+            .target("C"));
+
+    builder
+      .region()
+        .state("B1")
+          .transition("t5")
+            .on("out")
+            .target("B_exitPoint");
+
+    return builder;
+  }
+
+  private static final class Context extends SequentialContext {
+
+    final int n;
+
+    Context(final int n) {
+      this.n = n;
+    }
+  }
+
+}
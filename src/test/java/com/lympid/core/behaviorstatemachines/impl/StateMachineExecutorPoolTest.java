@@ -0,0 +1,377 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class StateMachineExecutorPoolTest {
+
+  @Test
+  public void reuse() {
+    StateMachineExecutorPool<SyncStateMachineExecutor> pool = new StateMachineExecutorPool<>(historyStateMachine().newInstance(), SyncStateMachineExecutor::new, 4);
+
+    SequentialContext ctx1 = new SequentialContext();
+    SyncStateMachineExecutor fsm = pool.acquire(ctx1);
+    fsm.take(new StringEvent("next"));
+    fsm.take(new StringEvent("out"));
+    fsm.take(new StringEvent("back"));
+    assertEquals("C2", name(fsm, fsm.snapshot().stateConfiguration().children().get(0).state()));
+    pool.release(fsm);
+    assertEquals(1, pool.size());
+    assertNull(fsm.snapshot().context());
+    assertFalse(fsm.snapshot().isStarted());
+
+    /*
+     * The history of the former run is forgotten.
+     */
+    SequentialContext ctx2 = new SequentialContext();
+    assertSame(fsm, pool.acquire(ctx2));
+    fsm.take(new StringEvent("out"));
+    fsm.take(new StringEvent("back"));
+    assertEquals("C1", name(fsm, fsm.snapshot().stateConfiguration().children().get(0).state()));
+
+    SequentialContext expected = new SequentialContext();
+    SyncStateMachineExecutor fresh = new SyncStateMachineExecutor();
+    fresh.setStateMachine(pool.stateMachine());
+    fresh.setContext(expected);
+    fresh.go();
+    fresh.take(new StringEvent("out"));
+    fresh.take(new StringEvent("back"));
+    assertEquals(expected.toString(), ctx2.toString());
+
+    assertEquals(0, pool.size());
+    assertEquals(1, pool.created());
+    assertEquals(1, pool.reused());
+  }
+
+  @Test
+  public void orthogonal() {
+    StateMachine machine = orthogonalStateMachine().newInstance();
+    StateMachineExecutorPool<LockStateMachineExecutor> pool = new StateMachineExecutorPool<>(machine, LockStateMachineExecutor::new, 1);
+
+    for (int i = 0; i < 3; i++) {
+      SequentialContext ctx = new SequentialContext();
+      LockStateMachineExecutor fsm = pool.acquire(ctx);
+      fsm.take(new StringEvent("go"));
+      fsm.take(new StringEvent("out"));
+      fsm.take(new StringEvent("in"));
+      assertEquals(new SequentialContext()
+        .enter("O").enter("C").enter("A")
+        .exit("A").enter("B")
+        .exit("C").exit("B").exit("O").enter("E")
+        .exit("E").enter("O").enter("C").enter("A").toString(), ctx.toString());
+      pool.release(fsm);
+    }
+    assertEquals(1, pool.created());
+    assertEquals(2, pool.reused());
+  }
+
+  @Test
+  public void capacity() {
+    StateMachineExecutorPool<SyncStateMachineExecutor> pool = new StateMachineExecutorPool<>(historyStateMachine().newInstance(), SyncStateMachineExecutor::new, 1);
+    SyncStateMachineExecutor fsm1 = pool.acquire(new SequentialContext());
+    SyncStateMachineExecutor fsm2 = pool.acquire(new SequentialContext());
+    pool.release(fsm1);
+    pool.release(fsm2);
+    assertEquals(1, pool.size());
+    assertSame(fsm1, pool.acquire(new SequentialContext()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void foreignExecutor() {
+    StateMachineExecutorPool<SyncStateMachineExecutor> pool = new StateMachineExecutorPool<>(historyStateMachine().newInstance(), SyncStateMachineExecutor::new, 1);
+    SyncStateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(historyStateMachine().newInstance());
+    pool.release(fsm);
+  }
+
+  @Test
+  public void timeEvents() throws InterruptedException {
+    final List<Runnable> scheduled = new CopyOnWriteArrayList<>();
+    final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1) {
+      @Override
+      public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        scheduled.add(command);
+        return super.schedule(command, delay, unit);
+      }
+    };
+    scheduler.setRemoveOnCancelPolicy(true);
+
+    try {
+      StateMachineExecutorPool<SyncStateMachineExecutor> pool = new StateMachineExecutorPool<>(timeEventStateMachine().newInstance(), () -> {
+        SyncStateMachineExecutor fsm = new SyncStateMachineExecutor();
+        fsm.configuration().executor(scheduler);
+        return fsm;
+      }, 1);
+
+      SequentialContext ctx1 = new SequentialContext();
+      SyncStateMachineExecutor fsm = pool.acquire(ctx1);
+      assertEquals(1, scheduler.getQueue().size());
+      pool.release(fsm);
+      assertEquals(0, scheduler.getQueue().size());
+
+      SequentialContext ctx2 = new SequentialContext();
+      assertSame(fsm, pool.acquire(ctx2));
+      assertEquals(1, scheduler.getQueue().size());
+
+      /*
+       * The time event of the former run fires late, after the reset: it is
+       * ignored although its state is active again.
+       */
+      scheduled.get(0).run();
+      assertEquals("A", name(fsm, fsm.snapshot().stateConfiguration().state()));
+      assertEquals("", ctx1.toString());
+      assertEquals("", ctx2.toString());
+
+      scheduled.get(1).run();
+      assertEquals("B", name(fsm, fsm.snapshot().stateConfiguration().state()));
+      assertEquals("", ctx1.toString());
+      assertEquals(new SequentialContext().effect("timeout").toString(), ctx2.toString());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void timeEvents_resetWhileFiring() throws InterruptedException {
+    final List<Runnable> scheduled = new CopyOnWriteArrayList<>();
+    final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1) {
+      @Override
+      public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        scheduled.add(command);
+        return super.schedule(command, delay, unit);
+      }
+    };
+    scheduler.setRemoveOnCancelPolicy(true);
+
+    try {
+      StateMachineExecutorPool<SyncStateMachineExecutor> pool = new StateMachineExecutorPool<>(timeEventStateMachine().newInstance(), () -> {
+        SyncStateMachineExecutor fsm = new SyncStateMachineExecutor();
+        fsm.configuration().executor(scheduler);
+        return fsm;
+      }, 1);
+
+      SequentialContext ctx1 = new SequentialContext();
+      SyncStateMachineExecutor fsm = pool.acquire(ctx1);
+
+      /*
+       * The time event of the first run fires while the executor is busy and
+       * only gets the executor once it has been reset and started again.
+       */
+      SequentialContext ctx2 = new SequentialContext();
+      Thread timer = new Thread(scheduled.get(0));
+      synchronized (fsm) {
+        timer.start();
+        while (timer.getState() != Thread.State.BLOCKED) {
+          Thread.yield();
+        }
+        pool.release(fsm);
+        assertSame(fsm, pool.acquire(ctx2));
+      }
+      timer.join();
+
+      assertEquals("A", name(fsm, fsm.snapshot().stateConfiguration().state()));
+      assertEquals("", ctx1.toString());
+      assertEquals("", ctx2.toString());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shardPool() {
+    StateMachineShardPoolExecutor shards = new StateMachineShardPoolExecutor(2);
+    StateMachineExecutorPool<PoolStateMachineExecutor> pool = new StateMachineExecutorPool<>(historyStateMachine().newInstance(), () -> new PoolStateMachineExecutor(shards), 2);
+
+    for (int i = 0; i < 3; i++) {
+      SequentialContext ctx = new SequentialContext();
+      PoolStateMachineExecutor fsm = pool.acquire(ctx);
+      fsm.take(new StringEvent("next"));
+      StepResult result = fsm.takeAsync(new StringEvent("out")).toCompletableFuture().join();
+      assertEquals("D", name(fsm, result.stateConfiguration().state()));
+      pool.release(fsm);
+      assertFalse(fsm.snapshot().isStarted());
+      assertEquals(new SequentialContext()
+        .enter("C").enter("C1")
+        .exit("C1").enter("C2")
+        .exit("C2").exit("C").enter("D").toString(), ctx.toString());
+    }
+    assertEquals(1, pool.created());
+  }
+
+  private static String name(final AbstractStateMachineExecutor fsm, final String stateId) {
+    return fsm.stateMachine().metadata().state(stateId).getName();
+  }
+
+  private static StateMachineBuilder<SequentialContext> historyStateMachine() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("history");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("C");
+
+    CompositeStateBuilder<SequentialContext> composite = new CompositeStateBuilder<>("C");
+    composite
+      .region()
+        .initial()
+          .transition()
+            .target("C1");
+    composite
+      .region()
+        .shallowHistory("history")
+          .transition()
+            .target("C1");
+    composite
+      .region()
+        .state("C1")
+          .entry((c) -> c.enter("C1"))
+          .exit((c) -> c.exit("C1"))
+          .transition()
+            .on("next")
+            .target("C2");
+    composite
+      .region()
+        .state("C2")
+          .entry((c) -> c.enter("C2"))
+          .exit((c) -> c.exit("C2"));
+
+    builder
+      .region()
+        .state(composite)
+          .entry((c) -> c.enter("C"))
+          .exit((c) -> c.exit("C"))
+          .transition()
+            .on("out")
+            .target("D");
+
+    builder
+      .region()
+        .state("D")
+          .entry((c) -> c.enter("D"))
+          .exit((c) -> c.exit("D"))
+          .transition()
+            .on("back")
+            .target("history");
+
+    return builder;
+  }
+
+  private static StateMachineBuilder<SequentialContext> orthogonalStateMachine() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("orthogonal");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("O");
+
+    OrthogonalStateBuilder<SequentialContext> orthogonal = new OrthogonalStateBuilder<>("O");
+    orthogonal
+      .region("r1")
+        .initial()
+          .transition()
+            .target("A");
+    orthogonal
+      .region("r1")
+        .state("A")
+          .entry((c) -> c.enter("A"))
+          .exit((c) -> c.exit("A"))
+          .transition()
+            .on("go")
+            .target("B");
+    orthogonal
+      .region("r1")
+        .state("B")
+          .entry((c) -> c.enter("B"))
+          .exit((c) -> c.exit("B"));
+    orthogonal
+      .region("r2")
+        .initial()
+          .transition()
+            .target("C");
+    orthogonal
+      .region("r2")
+        .state("C")
+          .entry((c) -> c.enter("C"))
+          .exit((c) -> c.exit("C"));
+
+    builder
+      .region()
+        .state(orthogonal)
+          .entry((c) -> c.enter("O"))
+          .exit((c) -> c.exit("O"))
+          .transition()
+            .on("out")
+            .target("E");
+
+    builder
+      .region()
+        .state("E")
+          .entry((c) -> c.enter("E"))
+          .exit((c) -> c.exit("E"))
+          .transition()
+            .on("in")
+            .target("O");
+
+    return builder;
+  }
+
+  private static StateMachineBuilder<SequentialContext> timeEventStateMachine() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("timeEvent");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition()
+            .after(1, TimeUnit.HOURS)
+            .effect((e, c) -> c.effect("timeout"))
+            .target("B");
+
+    builder
+      .region()
+        .state("B");
+
+    return builder;
+  }
+
+}
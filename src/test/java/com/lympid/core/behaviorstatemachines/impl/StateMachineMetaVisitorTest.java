@@ -15,11 +15,26 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.StringEvent;
 import com.lympid.core.behaviorstatemachines.PseudoStateKind;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -51,6 +66,226 @@ public class StateMachineMetaVisitorTest {
     for (PseudoStateKind kind : PseudoStateKind.values()) {
       assertEquals(0, meta.countOf(kind));
     }
+    assertEquals(0, meta.countOfEvents());
+  }
+
+  @Test
+  public void testAcceptedEvents() {
+    StateMachine machine = stateMachineBuilder().newInstance();
+    StateMachineMeta meta = machine.metadata();
+
+    assertEquals(4, meta.countOfEvents());
+    assertEquals(-1, meta.eventOrdinal(new StringEvent("nope")));
+    int a = meta.eventOrdinal(new StringEvent("a"));
+    int x = meta.eventOrdinal(new StringEvent("x"));
+    int y = meta.eventOrdinal(new StringEvent("y"));
+    int completion = meta.eventOrdinal(CompletionEvent.INSTANCE);
+
+    BitSet expected = new BitSet();
+    expected.set(a);
+    assertEquals(expected, meta.acceptedEvents(state(machine.region(), "A")));
+    expected.set(x);
+    assertEquals(expected, meta.acceptedEvents(state(machine.region(), "A1")));
+    expected.clear(x);
+    expected.set(y);
+    assertEquals(expected, meta.acceptedEvents(state(machine.region(), "A2")));
+    expected.clear();
+    expected.set(completion);
+    assertEquals(expected, meta.acceptedEvents(state(machine.region(), "B")));
+  }
+
+  @Test
+  public void testDeniedEvents() {
+    final List<String> denied = new ArrayList<>();
+    ExecutorListener listeners = new ExecutorListener();
+    listeners.addEventDeniedListener((executor, machine, context, event) -> denied.add(event.toString()));
+
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(stateMachineBuilder().newInstance());
+    fsm.setListeners(listeners);
+    fsm.go();
+
+    fsm.take(new StringEvent("nope"));
+    fsm.take(new StringEvent("y"));
+    fsm.take(new StringEvent("x"));
+    fsm.take(new StringEvent("x"));
+    fsm.take(new StringEvent("y"));
+    fsm.take(new StringEvent("a"));
+    assertTrue(fsm.snapshot().isTerminated());
+    fsm.take(new StringEvent("a"));
+    assertEquals(Arrays.asList("nope", "y", "x", "a"), denied);
+  }
+
+  /**
+   * Metadata implementing none of the methods numbering the events: no event
+   * is denied up front and the transitions still decide.
+   */
+  @Test
+  public void testDeniedEvents_legacyMeta() {
+    final List<String> denied = new ArrayList<>();
+    ExecutorListener listeners = new ExecutorListener();
+    listeners.addEventDeniedListener((executor, machine, context, event) -> denied.add(event.toString()));
+
+    StateMachineExecutor fsm = new SyncStateMachineExecutor() {
+      @Override
+      protected StateMachineState createMachineState(final StateMachine machine) {
+        return StateMachineStateFactory.get(new LegacyMeta(machine.metadata()));
+      }
+    };
+    fsm.setStateMachine(stateMachineBuilder().newInstance());
+    fsm.setListeners(listeners);
+    fsm.go();
+
+    fsm.take(new StringEvent("nope"));
+    fsm.take(new StringEvent("y"));
+    fsm.take(new StringEvent("x"));
+    fsm.take(new StringEvent("x"));
+    fsm.take(new StringEvent("y"));
+    fsm.take(new StringEvent("a"));
+    assertTrue(fsm.snapshot().isTerminated());
+    fsm.take(new StringEvent("a"));
+    assertEquals(Arrays.asList("nope", "y", "x", "a"), denied);
+  }
+
+  private static State state(final Collection<? extends Region> regions, final String name) {
+    for (Region r : regions) {
+      for (Vertex v : r.subVertex()) {
+        if (name.equals(v.getName())) {
+          return (State) v;
+        }
+        if (v instanceof State) {
+          State s = state(((State) v).region(), name);
+          if (s != null) {
+            return s;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  private StateMachineBuilder<Object> stateMachineBuilder() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>("accepted");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state(compositeA())
+          .transition()
+            .on("a")
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .transition()
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    return builder;
+  }
+
+  private static final class LegacyMeta implements StateMachineMeta {
+
+    private final StateMachineMeta meta;
+
+    LegacyMeta(final StateMachineMeta meta) {
+      this.meta = meta;
+    }
+
+    @Override
+    public boolean hasSimpleStates() {
+      return meta.hasSimpleStates();
+    }
+
+    @Override
+    public boolean hasCompositeStates() {
+      return meta.hasCompositeStates();
+    }
+
+    @Override
+    public boolean hasOrthogonalStates() {
+      return meta.hasOrthogonalStates();
+    }
+
+    @Override
+    public boolean hasSubmachineStates() {
+      return meta.hasSubmachineStates();
+    }
+
+    @Override
+    public boolean hasCompletionEvents() {
+      return meta.hasCompletionEvents();
+    }
+
+    @Override
+    public boolean hasTimeEvents() {
+      return meta.hasTimeEvents();
+    }
+
+    @Override
+    public boolean hasActivities() {
+      return meta.hasActivities();
+    }
+
+    @Override
+    public int countOf(final PseudoStateKind kind) {
+      return meta.countOf(kind);
+    }
+
+    @Override
+    public int treeDepth() {
+      return meta.treeDepth();
+    }
+
+    @Override
+    public int countOfLeaves() {
+      return meta.countOfLeaves();
+    }
+
+    @Override
+    public State state(final String id) {
+      return meta.state(id);
+    }
+
+    @Override
+    public Region region(final String id) {
+      return meta.region(id);
+    }
+  }
+
+  private CompositeStateBuilder<Object> compositeA() {
+    CompositeStateBuilder<Object> builder = new CompositeStateBuilder<>("A");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A1");
+
+    builder
+      .region()
+        .state("A1")
+          .transition()
+            .on("x")
+            .target("A2");
+
+    builder
+      .region()
+        .state("A2")
+          .transition()
+            .on("y")
+            .target("A1");
+
+    return builder;
   }
 
 }
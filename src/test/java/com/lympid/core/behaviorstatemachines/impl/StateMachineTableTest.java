@@ -0,0 +1,372 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class StateMachineTableTest {
+
+  private static final Event[] EVENTS = {
+    new StringEvent("go"),
+    new StringEvent("tick"),
+    new StringEvent("branch"),
+    new StringEvent("j"),
+    new StringEvent("e"),
+    new StringEvent("unknown")
+  };
+  private static final Event[] END_EVENTS = {
+    new StringEvent("kill"),
+    new StringEvent("end")
+  };
+
+  @Test
+  public void sameAsExecutor() {
+    final StateMachine machine = topLevelStateMachine().newInstance();
+    final int size = 32;
+    final Context[] tableContexts = contexts(size);
+    final StateMachineTable table = new StateMachineTable(machine, size, (i) -> tableContexts[i]);
+
+    final Context[] fsmContexts = contexts(size);
+    final SyncStateMachineExecutor[] fsms = new SyncStateMachineExecutor[size];
+    for (int i = 0; i < size; i++) {
+      fsms[i] = new SyncStateMachineExecutor();
+      fsms[i].setStateMachine(machine);
+      fsms[i].setContext(fsmContexts[i]);
+    }
+
+    final Random random = new Random(42);
+    for (int n = 0; n < 5000; n++) {
+      int i = random.nextInt(size);
+      Event event = randomEvent(random);
+      if (!table.isStarted(i)) {
+        fsms[i].go();
+      }
+      fsms[i].take(event);
+      table.take(i, event);
+    }
+
+    for (int i = 0; i < size; i++) {
+      StateMachineSnapshot snapshot = fsms[i].snapshot();
+      assertEquals(fsmContexts[i].toString(), tableContexts[i].toString());
+      assertEquals(fsmContexts[i].n, tableContexts[i].n);
+      assertEquals(snapshot.isTerminated(), table.isTerminated(i));
+      State state = table.state(i);
+      String expected = snapshot.stateConfiguration() == null ? null : snapshot.stateConfiguration().state();
+      assertEquals(expected, state == null ? null : state.getId());
+    }
+  }
+
+  @Test
+  public void run() {
+    final StateMachine machine = topLevelStateMachine().newInstance();
+    final Context ctx = new Context();
+    final StateMachineTable table = new StateMachineTable(machine, 1, (i) -> ctx);
+    assertFalse(table.isStarted(0));
+
+    assertFalse(table.take(0, new StringEvent("unknown")));
+    assertTrue(table.isStarted(0));
+    assertEquals("A", table.state(0).getName());
+    assertTrue(table.take(0, new StringEvent("tick")));
+    assertTrue(table.take(0, new StringEvent("tick")));
+    assertTrue(table.take(0, new StringEvent("go")));
+    assertEquals("B", table.state(0).getName());
+    assertTrue(table.take(0, new StringEvent("branch")));
+    assertEquals("D", table.state(0).getName());
+    assertTrue(table.take(0, new StringEvent("end")));
+    assertTrue(table.isTerminated(0));
+    assertEquals("end", table.state(0).getName());
+    assertFalse(table.take(0, new StringEvent("go")));
+
+    SequentialContext expected = new SequentialContext()
+      .enter("A")
+      .exit("A").effect("t1").enter("B")
+      .exit("B").enter("D")
+      .exit("D");
+    assertEquals(expected.toString(), ctx.toString());
+  }
+
+  @Test
+  public void terminate() {
+    final StateMachine machine = topLevelStateMachine().newInstance();
+    final Context ctx = new Context();
+    final StateMachineTable table = new StateMachineTable(machine, 1, (i) -> ctx);
+    table.go(0);
+    table.take(0, new StringEvent("tick"));
+    assertTrue(table.take(0, new StringEvent("go")));
+    assertEquals("C", table.state(0).getName());
+    assertTrue(table.take(0, new StringEvent("kill")));
+    assertTrue(table.isTerminated(0));
+    assertNull(table.state(0));
+  }
+
+  @Test
+  public void parallel() {
+    final StateMachine machine = topLevelStateMachine().newInstance();
+    final int size = 1000;
+    final Context[] sequentialContexts = contexts(size);
+    final StateMachineTable sequential = new StateMachineTable(machine, size, (i) -> sequentialContexts[i]);
+    final Context[] parallelContexts = contexts(size);
+    final StateMachineTable parallel = new StateMachineTable(machine, size, (i) -> parallelContexts[i]);
+
+    final Random random = new Random(7);
+    for (int batch = 0; batch < 5; batch++) {
+      int[] instances = new int[10000];
+      Event[] events = new Event[instances.length];
+      for (int i = 0; i < instances.length; i++) {
+        instances[i] = random.nextInt(size);
+        events[i] = randomEvent(random);
+      }
+      assertEquals(sequential.take(instances, events), parallel.take(instances, events, 7));
+    }
+
+    for (int i = 0; i < size; i++) {
+      assertEquals(sequentialContexts[i].toString(), parallelContexts[i].toString());
+      assertEquals(sequential.state(i), parallel.state(i));
+      assertEquals(sequential.isTerminated(i), parallel.isTerminated(i));
+    }
+  }
+
+  @Test
+  public void timeEvents() throws InterruptedException {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("timeEvents");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .selfTransition("tick")
+            .after(10, TimeUnit.MILLISECONDS)
+            .effect((e, c) -> c.effect("tick"))
+            .target()
+          .transition("timeout")
+            .after(20, TimeUnit.MILLISECONDS)
+            .effect((e, c) -> c.effect("timeout"))
+            .target("B");
+
+    builder
+      .region()
+        .state("B");
+
+    final int size = 4;
+    final Context[] contexts = contexts(size);
+    final StateMachineTable table = new StateMachineTable(builder.newInstance(), size, (i) -> contexts[i]);
+    for (int i = 0; i < size; i++) {
+      table.go(i);
+    }
+    assertEquals(0, table.takeTimeEvents());
+
+    Thread.sleep(50);
+    assertEquals(2 * size, table.takeTimeEvents(2));
+    assertEquals(0, table.takeTimeEvents());
+    for (int i = 0; i < size; i++) {
+      assertEquals("B", table.state(i).getName());
+      assertEquals(new SequentialContext().effect("tick").effect("timeout").toString(), contexts[i].toString());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compositeState() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("composite");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("C");
+
+    CompositeStateBuilder<Context> composite = new CompositeStateBuilder<>("C");
+    composite
+      .region()
+        .initial()
+          .transition()
+            .target("C1");
+    composite
+      .region()
+        .state("C1");
+
+    builder
+      .region()
+        .state(composite);
+
+    new StateMachineTable(builder.newInstance(), 1, (i) -> null);
+  }
+
+  /**
+   * The events ending the state machine are rare so that most instances keep
+   * running.
+   */
+  private static Event randomEvent(final Random random) {
+    if (random.nextInt(200) == 0) {
+      return END_EVENTS[random.nextInt(END_EVENTS.length)];
+    }
+    return EVENTS[random.nextInt(EVENTS.length)];
+  }
+
+  private static Context[] contexts(final int size) {
+    Context[] contexts = new Context[size];
+    for (int i = 0; i < size; i++) {
+      contexts[i] = new Context();
+    }
+    return contexts;
+  }
+
+  /**
+   * A flat state machine with guards, effects, internal and external
+   * transitions, a choice, a junction, a completion transition, a final state
+   * and a terminate pseudo state.
+   */
+  private static StateMachineBuilder<Context> topLevelStateMachine() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("table");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .entry((c) -> c.enter("A"))
+          .exit((c) -> c.exit("A"))
+          .transition("t1")
+            .on("go")
+            .guard((e, c) -> c.n % 2 == 0)
+            .effect((e, c) -> c.effect("t1"))
+            .target("B")
+          .transition("t2")
+            .on("go")
+            .target("C")
+          .selfTransition("t3")
+            .on("tick")
+            .effect((e, c) -> c.n++)
+            .target();
+
+    builder
+      .region()
+        .state("B")
+          .entry((c) -> c.enter("B"))
+          .exit((c) -> c.exit("B"))
+          .transition("t4")
+            .on("branch")
+            .target("choice");
+
+    builder
+      .region()
+        .choice("choice")
+          .transition("t5")
+            .guard((c) -> c.n % 3 == 0)
+            .effect((c) -> c.n++)
+            .target("C")
+          .transition("t6")
+            .guard((c) -> c.n % 3 != 0)
+            .target("D");
+
+    builder
+      .region()
+        .state("C")
+          .entry((c) -> c.enter("C"))
+          .exit((c) -> c.exit("C"))
+          .transition("t7")
+            .on("j")
+            .effect((e, c) -> c.effect("t7"))
+            .target("junction")
+          .transition("t8")
+            .on("kill")
+            .target("kill")
+          .transition("t9")
+            .on("go")
+            .target("A");
+
+    builder
+      .region()
+        .junction("junction")
+          .transition("t10")
+            .guard((c) -> c.n > 5)
+            .target("D")
+          .transition("t11")
+            .guard((c) -> c.n <= 5)
+            .effect((c) -> c.n += 2)
+            .target("A");
+
+    builder
+      .region()
+        .state("D")
+          .entry((c) -> c.enter("D"))
+          .exit((c) -> c.exit("D"))
+          .transition("t12")
+            .on("e")
+            .target("E")
+          .transition("t13")
+            .on("end")
+            .target("end")
+          .transition("t14")
+            .on("go")
+            .target("A");
+
+    builder
+      .region()
+        .state("E")
+          .entry((c) -> c.enter("E"))
+          .exit((c) -> c.exit("E"))
+          .transition("t15")
+            .guard((e, c) -> c.n % 2 == 1)
+            .effect((e, c) -> c.n++)
+            .target("A")
+          .transition("t16")
+            .on("go")
+            .effect((e, c) -> c.n++)
+            .target("E");
+
+    builder
+      .region()
+        .finalState("end");
+
+    builder
+      .region()
+        .terminate("kill");
+
+    return builder;
+  }
+
+  private static final class Context extends SequentialContext {
+
+    int n;
+  }
+
+}
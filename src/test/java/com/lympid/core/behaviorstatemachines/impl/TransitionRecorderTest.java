@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class TransitionRecorderTest {
+
+  @Test
+  public void history() {
+    TransitionRecorder<Object> recorder = new TransitionRecorder<>(4);
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(topLevelStateMachine().newInstance());
+    recorder.attach(fsm.listeners());
+    fsm.go();
+    assertEquals("[t0:A]", names(recorder.dump()));
+
+    fsm.take(new StringEvent("go"));
+    fsm.take(new StringEvent("nope"));
+    fsm.take(new StringEvent("back"));
+    fsm.take(new StringEvent("go"));
+
+    List<TransitionRecord> records = recorder.dump();
+    assertEquals(5, recorder.count());
+    assertEquals("[t1:B, denied, t2:A, t1:B]", names(records));
+    assertFalse(records.get(1).isAccepted());
+    assertEquals(new StringEvent("nope"), records.get(1).event());
+    assertNull(records.get(1).target());
+    assertEquals(new StringEvent("go"), records.get(3).event());
+    assertTrue(records.get(2).time() <= records.get(3).time());
+  }
+
+  @Test
+  public void maxEvents() {
+    TransitionRecorder<Object> recorder = new TransitionRecorder<>(8, 1, null);
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(topLevelStateMachine().newInstance());
+    recorder.attach(fsm.listeners());
+    fsm.go();
+    fsm.take(new StringEvent("go"));
+
+    List<TransitionRecord> records = recorder.dump();
+    assertEquals("[t0:A, t1:B]", names(records));
+    assertNull(records.get(1).event());
+  }
+
+  @Test
+  public void dumpOnException() {
+    final List<List<TransitionRecord>> dumps = new ArrayList<>();
+    final List<Exception> exceptions = new ArrayList<>();
+    TransitionRecorder<Object> recorder = new TransitionRecorder<>(8, (records, exception) -> {
+      dumps.add(records);
+      exceptions.add(exception);
+    });
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(topLevelStateMachine().newInstance());
+    recorder.attach(fsm.listeners());
+    fsm.go();
+    fsm.take(new StringEvent("go"));
+    fsm.take(new StringEvent("fail"));
+
+    assertEquals(1, dumps.size());
+    assertEquals("[t0:A, t1:B]", names(dumps.get(0)));
+    assertEquals("boom", exceptions.get(0).getMessage());
+    assertSame(fsm.stateMachine().metadata().state(dumps.get(0).get(1).target().getId()), dumps.get(0).get(1).target());
+  }
+
+  @Test
+  public void concurrentDump() throws InterruptedException {
+    final TransitionRecorder<Object> recorder = new TransitionRecorder<>(3);
+    final StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(topLevelStateMachine().newInstance());
+    recorder.attach(fsm.listeners());
+    fsm.go();
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    Thread writer = new Thread(() -> {
+      while (running.get()) {
+        fsm.take(new StringEvent("go"));
+        fsm.take(new StringEvent("back"));
+      }
+    });
+    writer.start();
+    try {
+      for (int i = 0; i < 100000; i++) {
+        List<TransitionRecord> records = recorder.dump();
+        assertTrue(records.size() <= 3);
+        for (int j = 0; j < records.size(); j++) {
+          TransitionRecord r = records.get(j);
+          String name = r.transition().getName();
+          assertEquals(name, "t1".equals(name) ? "B" : "A", r.target().getName());
+          if (j > 0) {
+            TransitionRecord previous = records.get(j - 1);
+            assertTrue(previous.time() <= r.time());
+            assertEquals("t1".equals(previous.transition().getName()) ? "t2" : "t1", name);
+          }
+        }
+      }
+    } finally {
+      running.set(false);
+      writer.join();
+    }
+  }
+
+  private static String names(final List<TransitionRecord> records) {
+    List<String> names = new ArrayList<>();
+    for (TransitionRecord r : records) {
+      names.add(r.isAccepted() ? r.transition().getName() + ":" + r.target().getName() : "denied");
+    }
+    return names.toString();
+  }
+
+  private StateMachineBuilder topLevelStateMachine() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder("recorder");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .transition("t2")
+            .on("back")
+            .target("A")
+          .selfTransition("t3")
+            .on("fail")
+            .effect((e, c) -> {
+              throw new IllegalStateException("boom");
+            })
+            .target();
+
+    return builder;
+  }
+
+}
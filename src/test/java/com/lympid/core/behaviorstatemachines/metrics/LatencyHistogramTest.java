@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void buckets() {
+    for (int i = 0; i < 8; i++) {
+      assertEquals(i, LatencyHistogram.index(i));
+      assertEquals(i, LatencyHistogram.highestValue(i));
+    }
+    assertEquals(8, LatencyHistogram.index(8));
+    assertEquals(16, LatencyHistogram.index(16));
+    assertEquals(16, LatencyHistogram.index(17));
+    assertEquals(17, LatencyHistogram.highestValue(16));
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+
+    for (long v = 1; v > 0 && v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+      int index = LatencyHistogram.index(v);
+      assertTrue(v <= LatencyHistogram.highestValue(index));
+      assertTrue(v > LatencyHistogram.highestValue(index - 1));
+    }
+  }
+
+  @Test
+  public void percentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    histogram.record(-5);
+
+    HistogramSnapshot snapshot = histogram.snapshot();
+    assertEquals(1001, snapshot.count());
+    assertEquals(500500, snapshot.sum());
+    assertEquals(1000, snapshot.max());
+    assertEquals(0, snapshot.percentile(0));
+    assertWithin(500, snapshot.percentile(0.5));
+    assertWithin(990, snapshot.percentile(0.99));
+    assertEquals(1000, snapshot.percentile(1));
+  }
+
+  @Test
+  public void empty() {
+    HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+    assertEquals(0, snapshot.count());
+    assertEquals(0, snapshot.percentile(0.99));
+    assertEquals(0, snapshot.mean(), 0);
+  }
+
+  private static void assertWithin(final long expected, final long actual) {
+    assertTrue(actual + " is not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8);
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class MetricsListenerTest {
+
+  @Test
+  public void run() throws InterruptedException {
+    MetricsListener<Object> metrics = new MetricsListener<>();
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(topLevelStateMachine().newInstance());
+    metrics.attach(fsm.listeners());
+    assertTrue(fsm.listeners().hasStateDwellListener());
+    fsm.go();
+
+    Thread.sleep(20);
+    fsm.take(new StringEvent("nope"));
+    fsm.take(new StringEvent("go"));
+    fsm.take(new StringEvent("go"));
+    fsm.take(new StringEvent("go"));
+
+    MetricsSnapshot snapshot = metrics.snapshot();
+    MetricsSnapshot.StateMetrics a = snapshot.state("A");
+    assertEquals(2, a.entries());
+    assertEquals(2, a.exits());
+    assertEquals(2, a.entry().count());
+    assertEquals(2, a.dwell().count());
+    assertTrue(a.dwell().max() >= 20);
+
+    MetricsSnapshot.TransitionMetrics t1 = snapshot.transition("t1");
+    assertEquals(2, t1.fired());
+    assertEquals(2, t1.guard().count());
+    assertEquals(2, t1.latency().count());
+    assertEquals(1, snapshot.transition("t2").fired());
+
+    assertEquals(3, snapshot.events().get(new StringEvent("go")).accepted());
+    assertEquals(1, snapshot.events().get(new StringEvent("nope")).denied());
+    assertNull(snapshot.events().get(null));
+
+    metrics.detach(fsm.listeners());
+    assertFalse(fsm.listeners().hasStateDwellListener());
+    assertFalse(fsm.listeners().hasEventAcceptedListener());
+  }
+
+  @Test
+  public void maxEvents() {
+    MetricsListener<Object> metrics = new MetricsListener<>(1);
+    StateMachineExecutor fsm = new SyncStateMachineExecutor();
+    fsm.setStateMachine(topLevelStateMachine().newInstance());
+    metrics.attach(fsm.listeners());
+    fsm.go();
+
+    fsm.take(new StringEvent("a"));
+    fsm.take(new StringEvent("b"));
+    fsm.take(new StringEvent("c"));
+
+    MetricsSnapshot snapshot = metrics.snapshot();
+    assertEquals(2, snapshot.events().size());
+    assertEquals(3, snapshot.events().get(null).denied());
+  }
+
+  private StateMachineBuilder topLevelStateMachine() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder("metrics");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .entry((c) -> { })
+          .exit((c) -> { })
+          .transition("t1")
+            .on("go")
+            .guard((e, c) -> true)
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .transition("t2")
+            .on("go")
+            .target("A");
+
+    return builder;
+  }
+
+}
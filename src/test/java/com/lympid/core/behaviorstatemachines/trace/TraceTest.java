@@ -0,0 +1,298 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.trace;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class TraceTest {
+
+  private Path file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("lympid", ".trace");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void writeAndRead() throws IOException {
+    StringBuilder longName = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      longName.append("long");
+    }
+    StateMachine machine = stateMachine().newInstance();
+    try (TraceWriter<Context> writer = new TraceWriter<>(file, EventCodec.STRING, 32)) {
+      StateMachineExecutor fsm1 = executor(machine, 1, new Context());
+      StateMachineExecutor fsm2 = executor(machine, 2, new Context());
+      writer.attach(fsm1.listeners());
+      writer.attach(fsm2.listeners());
+      fsm1.take(new StringEvent("inc"));
+      fsm2.take(new StringEvent(longName.toString()));
+      fsm1.take(new StringEvent("inc"));
+      fsm2.take(new StringEvent("inc"));
+      assertEquals(4, writer.written());
+      assertNull(writer.failure());
+    }
+
+    List<String> records = new ArrayList<>();
+    try (TraceReader reader = new TraceReader(file, EventCodec.STRING, 32)) {
+      StringEvent first = null;
+      while (reader.next()) {
+        String name = reader.event().toString();
+        records.add(reader.sequence() + ":" + reader.executorId() + ":" + (reader.isAccepted() ? "" : "!") + (name.length() > 10 ? name.length() : name));
+        if (first == null) {
+          first = (StringEvent) reader.event();
+        } else if (reader.event().equals(first)) {
+          assertSame(first, reader.event());
+        }
+      }
+    }
+    assertEquals("[0:1:inc, 1:2:!400, 2:1:inc, 3:2:inc]", records.toString());
+  }
+
+  @Test
+  public void replay() throws IOException {
+    StateMachine machine = stateMachine().newInstance();
+    Map<Integer, Context> traced = new HashMap<>();
+    try (TraceWriter<Context> writer = new TraceWriter<>(file, EventCodec.STRING)) {
+      List<StateMachineExecutor> executors = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        Context ctx = new Context();
+        traced.put(i, ctx);
+        StateMachineExecutor fsm = executor(machine, i, ctx);
+        writer.attach(fsm.listeners());
+        executors.add(fsm);
+      }
+      for (int i = 0; i < 100; i++) {
+        executors.get(i % 3).take(new StringEvent(i % 7 == 0 ? "nope" : "inc"));
+      }
+    }
+
+    final Map<Integer, Context> replayed = new HashMap<>();
+    final AtomicInteger listened = new AtomicInteger();
+    long count = new TraceReplay(EventCodec.STRING, (id) -> {
+      Context ctx = new Context();
+      replayed.put(id, ctx);
+      StateMachineExecutor fsm = executor(machine, id, ctx);
+      fsm.listeners().addEventAcceptedListener((executor, m, context, event) -> listened.incrementAndGet());
+      return fsm;
+    }).replay(file);
+
+    assertEquals(100, count);
+    assertEquals(0, listened.get());
+    assertEquals(traced.keySet(), replayed.keySet());
+    for (Integer id : traced.keySet()) {
+      assertEquals(traced.get(id).count.get(), replayed.get(id).count.get());
+    }
+
+    replayed.clear();
+    count = new TraceReplay(EventCodec.STRING, (id) -> {
+      Context ctx = new Context();
+      replayed.put(id, ctx);
+      return executor(machine, id, ctx);
+    }).deniedEvents(false).replay(file);
+    assertEquals(85, count);
+  }
+
+  @Test
+  public void evictedKeys() throws IOException {
+    StateMachine machine = stateMachine().newInstance();
+    List<String> names = new ArrayList<>();
+    try (TraceWriter<Context> writer = new TraceWriter<>(file, EventCodec.STRING, 64, 2)) {
+      StateMachineExecutor fsm = executor(machine, 1, new Context());
+      writer.attach(fsm.listeners());
+      for (int i = 0; i < 50; i++) {
+        String name = i % 3 == 0 ? "inc" : "e" + i % 5;
+        names.add(name);
+        fsm.take(new StringEvent(name));
+      }
+      assertEquals(50, writer.written());
+    }
+
+    List<String> records = new ArrayList<>();
+    try (TraceReader reader = new TraceReader(file, EventCodec.STRING, 64)) {
+      while (reader.next()) {
+        records.add(reader.event().toString());
+      }
+    }
+    assertEquals(names, records);
+  }
+
+  @Test
+  public void unencoded() throws IOException {
+    EventCodec codec = new EventCodec() {
+
+      @Override
+      public byte[] encode(final Event event) {
+        return event.toString().equals("inc") ? null : EventCodec.STRING.encode(event);
+      }
+
+      @Override
+      public Event decode(final byte[] payload) {
+        return EventCodec.STRING.decode(payload);
+      }
+    };
+
+    StateMachine machine = stateMachine().newInstance();
+    try (TraceWriter<Context> writer = new TraceWriter<>(file, codec)) {
+      StateMachineExecutor fsm = executor(machine, 1, new Context());
+      writer.attach(fsm.listeners());
+      fsm.take(new StringEvent("inc"));
+      fsm.take(new StringEvent("nope"));
+      fsm.take(new StringEvent("inc"));
+      assertEquals(3, writer.written());
+      assertEquals(2, writer.unencoded());
+    }
+
+    List<String> records = new ArrayList<>();
+    try (TraceReader reader = new TraceReader(file, codec)) {
+      while (reader.next()) {
+        records.add(reader.sequence() + ":" + reader.event());
+      }
+    }
+    assertEquals("[0:null, 1:nope, 2:null]", records.toString());
+
+    TraceReplay replay = new TraceReplay(codec, (id) -> executor(machine, id, new Context()));
+    assertEquals(1, replay.replay(file));
+    assertEquals(2, replay.unencoded());
+  }
+
+  @Test
+  public void timeEvents() throws Exception {
+    final CountDownLatch fired = new CountDownLatch(1);
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+    try (TraceWriter<Context> writer = new TraceWriter<>(file, EventCodec.STRING)) {
+      StateMachineExecutor fsm = new SyncStateMachineExecutor(1);
+      fsm.configuration().executor(scheduler);
+      fsm.setStateMachine(timeEventStateMachine(fired).newInstance());
+      fsm.setContext(new Context());
+      writer.attach(fsm.listeners());
+      fsm.go();
+      fsm.take(new StringEvent("inc"));
+      assertTrue(fired.await(1, TimeUnit.SECONDS));
+      assertEquals(1, writer.written());
+      assertEquals(0, writer.unencoded());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void notATrace() throws IOException {
+    Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    try {
+      new TraceReader(file, EventCodec.STRING).close();
+      assertTrue(false);
+    } catch (IOException ex) {
+      assertFalse(ex.getMessage().isEmpty());
+    }
+  }
+
+  private static StateMachineExecutor executor(final StateMachine machine, final int id, final Context ctx) {
+    StateMachineExecutor fsm = new SyncStateMachineExecutor(id);
+    fsm.setStateMachine(machine);
+    fsm.setContext(ctx);
+    fsm.go();
+    return fsm;
+  }
+
+  private StateMachineBuilder stateMachine() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder("trace");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .selfTransition("t1")
+            .on("inc")
+            .effect((e, c) -> c.count.incrementAndGet())
+            .target();
+
+    return builder;
+  }
+
+  private StateMachineBuilder timeEventStateMachine(final CountDownLatch fired) {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder("timeEvents");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .selfTransition("t1")
+            .on("inc")
+            .effect((e, c) -> c.count.incrementAndGet())
+            .target()
+          .transition("t2")
+            .after(10, TimeUnit.MILLISECONDS)
+            .effect((e, c) -> fired.countDown())
+            .target("B");
+
+    builder
+      .region()
+        .state("B");
+
+    return builder;
+  }
+
+  private static final class Context {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Lympid.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.validation;
+
+import com.lympid.core.behaviorstatemachines.PseudoStateKind;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.MutablePseudoState;
+import com.lympid.core.behaviorstatemachines.impl.MutableRegion;
+import com.lympid.core.behaviorstatemachines.impl.MutableState;
+import com.lympid.core.behaviorstatemachines.impl.MutableStateMachine;
+import com.lympid.core.behaviorstatemachines.impl.TextVisitor;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ParallelValidatorVisitorTest {
+
+  private static final int WIDTH = 20;
+
+  @Test
+  public void sameAsSequential() {
+    StateMachine sequential = stateMachine().newInstance();
+    StateMachine parallel = stateMachine().parallelValidation(true).newInstance();
+
+    assertEquals(text(sequential), text(parallel));
+    assertEquals(sequential.metadata().treeDepth(), parallel.metadata().treeDepth());
+    assertEquals(sequential.metadata().countOfLeaves(), parallel.metadata().countOfLeaves());
+    assertEquals(sequential.metadata().countOfEvents(), parallel.metadata().countOfEvents());
+  }
+
+  @Test(expected = RegionConstraintException.class)
+  public void invalidRegion() {
+    MutableStateMachine machine = new MutableStateMachine("1");
+    MutableRegion region = new MutableRegion("2");
+    machine.addRegion(region);
+    region.subVertex().add(new MutablePseudoState("3", PseudoStateKind.INITIAL));
+    region.subVertex().add(new MutablePseudoState("4", PseudoStateKind.INITIAL));
+
+    ParallelValidatorVisitor validator = new ParallelValidatorVisitor();
+    machine.accept(validator);
+    validator.validate();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void duplicateId() {
+    MutableStateMachine machine = new MutableStateMachine("1");
+    MutableRegion region = new MutableRegion("2");
+    machine.addRegion(region);
+    region.addVertex(new MutableState("2"));
+
+    machine.accept(new ParallelValidatorVisitor());
+  }
+
+  private static String text(final StateMachine machine) {
+    TextVisitor visitor = new TextVisitor();
+    machine.accept(visitor);
+    return visitor.toString();
+  }
+
+  /**
+   * Composite states of simple states, with transitions between the simple
+   * states of different composite states.
+   */
+  private static StateMachineBuilder<Object> stateMachine() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>("parallel");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("C0");
+
+    for (int i = 0; i < WIDTH; i++) {
+      CompositeStateBuilder<Object> composite = new CompositeStateBuilder<>("C" + i);
+      composite
+        .region()
+          .initial()
+            .transition()
+              .target("C" + i + "_0");
+
+      for (int j = 0; j < WIDTH; j++) {
+        composite
+          .region()
+            .state("C" + i + "_" + j)
+              .transition()
+                .on("next")
+                .target("C" + i + "_" + ((j + 1) % WIDTH))
+              .transition()
+                .on("jump")
+                .target("C" + ((i + 1) % WIDTH) + "_" + j);
+      }
+
+      builder
+        .region()
+          .state(composite)
+            .transition()
+              .on("out")
+              .target("C" + ((i + 1) % WIDTH));
+    }
+
+    return builder;
+  }
+
+}
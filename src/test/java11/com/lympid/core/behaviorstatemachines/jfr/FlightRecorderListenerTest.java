@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.jfr;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.PoolStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class FlightRecorderListenerTest {
+
+  @Test
+  public void recording() throws Exception {
+    List<RecordedEvent> events;
+    Path file = Files.createTempFile("lympid", ".jfr");
+    try (Recording recording = new Recording()) {
+      for (String name : new String[]{"Step", "Transition", "Guard", "Behavior", "QueueWait"}) {
+        recording.enable("com.lympid.statemachine." + name).withThreshold(Duration.ZERO);
+      }
+      recording.start();
+      run();
+      recording.stop();
+      recording.dump(file);
+      events = RecordingFile.readAllEvents(file);
+    } finally {
+      Files.delete(file);
+    }
+
+    List<RecordedEvent> steps = events("Step", events);
+    assertEquals(2, steps.size());
+    assertTrue(steps.get(0).getBoolean("accepted"));
+    assertFalse(steps.get(1).getBoolean("accepted"));
+    assertEquals("jfr", steps.get(0).getString("machineName"));
+    assertEquals(42, steps.get(0).getInt("executorId"));
+
+    List<RecordedEvent> guards = events("Guard", events);
+    assertEquals(2, guards.size());
+    assertEquals("t1", guards.get(0).getString("transitionName"));
+
+    List<String> transitions = new ArrayList<>();
+    for (RecordedEvent e : events("Transition", events)) {
+      transitions.add(e.getString("transitionName"));
+    }
+    assertTrue(transitions.contains("t0"));
+    assertTrue(transitions.contains("t1"));
+
+    List<String> behaviors = new ArrayList<>();
+    for (RecordedEvent e : events("Behavior", events)) {
+      behaviors.add(e.getString("kind") + ":" + (e.getString("stateName") != null ? e.getString("stateName") : e.getString("transitionName")));
+    }
+    assertTrue(behaviors.contains("entry:A"));
+    assertTrue(behaviors.contains("exit:A"));
+    assertTrue(behaviors.contains("effect:t1"));
+    assertTrue(behaviors.contains("entry:B"));
+
+    assertEquals(3, events("QueueWait", events).size());
+  }
+
+  @Test
+  public void noRecording() throws Exception {
+    run();
+  }
+
+  /**
+   * The nested step begins while no recording is on and ends while one is:
+   * it must not end the outer step, which began before.
+   */
+  @Test
+  public void recordingStartedDuringNestedStep() throws Exception {
+    List<RecordedEvent> events;
+    Path file = Files.createTempFile("lympid", ".jfr");
+    try (Recording first = new Recording(); Recording second = new Recording()) {
+      first.enable("com.lympid.statemachine.Step").withThreshold(Duration.ZERO);
+      second.enable("com.lympid.statemachine.Step").withThreshold(Duration.ZERO);
+
+      SyncStateMachineExecutor fsm = new SyncStateMachineExecutor();
+      new FlightRecorderListener().attach(fsm.listeners());
+      fsm.setStateMachine(nestedStateMachine(fsm, first, second).newInstance());
+      fsm.go();
+
+      first.start();
+      fsm.take(new StringEvent("go"));
+      second.stop();
+      second.dump(file);
+      events = RecordingFile.readAllEvents(file);
+    } finally {
+      Files.delete(file);
+    }
+
+    List<RecordedEvent> steps = events("Step", events);
+    assertEquals(1, steps.size());
+    assertEquals("go", steps.get(0).getString("event"));
+    assertTrue(steps.get(0).getDuration().toMillis() >= 100);
+  }
+
+  private void run() throws Exception {
+    StateMachineShardPoolExecutor pool = new StateMachineShardPoolExecutor(1);
+    PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool, 42);
+    new FlightRecorderListener().attach(fsm.listeners());
+    fsm.setStateMachine(stateMachine().newInstance());
+    fsm.go();
+    assertTrue(fsm.takeAsync(new StringEvent("go")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+    assertFalse(fsm.takeAsync(new StringEvent("go")).toCompletableFuture().get(1, TimeUnit.SECONDS).isAccepted());
+  }
+
+  private static List<RecordedEvent> events(final String name, final List<RecordedEvent> all) {
+    List<RecordedEvent> list = new ArrayList<>();
+    for (RecordedEvent e : all) {
+      if (e.getEventType().getName().equals("com.lympid.statemachine." + name)) {
+        list.add(e);
+      }
+    }
+    list.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+    return list;
+  }
+
+  private StateMachineBuilder stateMachine() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder("jfr");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .entry((c) -> {})
+          .exit((c) -> {})
+          .transition("t1")
+            .on("go")
+            .guard((e, c) -> true)
+            .effect((e, c) -> {})
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .entry((c) -> {})
+          .transition("t2")
+            .on("go")
+            .guard((e, c) -> false)
+            .target("A");
+
+    return builder;
+  }
+
+  private StateMachineBuilder nestedStateMachine(final SyncStateMachineExecutor fsm, final Recording first, final Recording second) {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder("nested");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .entry((c) -> {
+            first.stop();
+            fsm.take(new StringEvent("x"));
+            try {
+              Thread.sleep(100);
+            } catch (InterruptedException ex) {
+              throw new AssertionError(ex);
+            }
+          })
+          .transition("t2")
+            .on("x")
+            .effect((e, c) -> second.start())
+            .target("C");
+
+    builder
+      .region()
+        .state("C");
+
+    return builder;
+  }
+
+}
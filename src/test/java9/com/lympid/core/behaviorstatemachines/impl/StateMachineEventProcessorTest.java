@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class StateMachineEventProcessorTest {
+
+  private static final int EVENTS = 1000;
+  private StateMachineShardPoolExecutor pool;
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    pool = new StateMachineShardPoolExecutor(2);
+    machine = topLevelMachineBuilder().newInstance();
+  }
+
+  @Test
+  public void singleExecutor() throws InterruptedException {
+    PoolStateMachineExecutor fsm = executor();
+    StateMachineEventProcessor<Event> processor = StateMachineEventProcessor.of(fsm, 4);
+    ResultSubscriber subscriber = new ResultSubscriber(Long.MAX_VALUE);
+    processor.subscribe(subscriber);
+
+    try (SubmissionPublisher<Event> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(processor);
+      for (int i = 0; i < EVENTS; i++) {
+        publisher.submit(i % 10 == 0 ? new StringEvent("nope") : new StringEvent("tick"));
+      }
+    }
+
+    assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+    assertEquals(EVENTS, subscriber.results.size());
+    for (int i = 0; i < EVENTS; i++) {
+      assertEquals(i % 10 != 0, subscriber.results.get(i).isAccepted());
+    }
+  }
+
+  @Test
+  public void backPressure() throws InterruptedException {
+    final AtomicInteger requested = new AtomicInteger();
+    StateMachineEventProcessor<Event> processor = StateMachineEventProcessor.of(executor(), 3);
+    ResultSubscriber subscriber = new ResultSubscriber(0);
+    processor.subscribe(subscriber);
+
+    processor.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        requested.addAndGet((int) n);
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+    assertEquals(3, requested.get());
+
+    for (int i = 0; i < 3; i++) {
+      processor.onNext(new StringEvent("tick"));
+    }
+    Thread.sleep(50);
+    assertEquals(3, requested.get());
+    assertTrue(subscriber.results.isEmpty());
+
+    subscriber.subscription.request(2);
+    assertEquals(2, subscriber.results.size());
+    assertEquals(5, requested.get());
+  }
+
+  @Test
+  public void invalidRequest() throws InterruptedException {
+    final AtomicInteger cancelled = new AtomicInteger();
+    StateMachineEventProcessor<Event> processor = StateMachineEventProcessor.of(executor(), 3);
+    ResultSubscriber subscriber = new ResultSubscriber(0);
+    processor.subscribe(subscriber);
+    processor.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+      }
+
+      @Override
+      public void cancel() {
+        cancelled.incrementAndGet();
+      }
+    });
+
+    subscriber.subscription.request(0);
+    assertTrue(subscriber.completed.await(1, TimeUnit.SECONDS));
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertEquals(1, cancelled.get());
+
+    subscriber.subscription.request(1);
+    processor.onComplete();
+    assertEquals(1, subscriber.signals.get());
+  }
+
+  @Test
+  public void stepFailureAfterComplete() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger cancelled = new AtomicInteger();
+    PoolStateMachineExecutor fsm = executor();
+    fsm.listeners().addMachineStepEndedListener((executor, machine, context, event, accepted) -> {
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      throw new IllegalStateException("boom");
+    });
+
+    StateMachineEventProcessor<Event> processor = StateMachineEventProcessor.of(fsm, 3);
+    ResultSubscriber subscriber = new ResultSubscriber(Long.MAX_VALUE);
+    processor.subscribe(subscriber);
+    processor.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+      }
+
+      @Override
+      public void cancel() {
+        cancelled.incrementAndGet();
+      }
+    });
+
+    processor.onNext(new StringEvent("tick"));
+    processor.onComplete();
+    release.countDown();
+
+    assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+    assertTrue(subscriber.failed);
+    assertEquals("boom", subscriber.error.getMessage());
+    assertEquals(1, subscriber.signals.get());
+    assertEquals(1, cancelled.get());
+  }
+
+  @Test
+  public void manyExecutors() throws InterruptedException {
+    final List<PoolStateMachineExecutor> executors = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      executors.add(executor());
+    }
+
+    StateMachineEventProcessor<Integer> processor = new StateMachineEventProcessor<>(
+      (i) -> executors.get(i % executors.size()),
+      (i) -> new StringEvent("tick"),
+      16
+    );
+    ResultSubscriber subscriber = new ResultSubscriber(Long.MAX_VALUE);
+    processor.subscribe(subscriber);
+
+    try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(processor);
+      for (int i = 0; i < EVENTS; i++) {
+        publisher.submit(i);
+      }
+    }
+
+    assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+    assertEquals(EVENTS, subscriber.results.size());
+    assertFalse(subscriber.failed);
+  }
+
+  private PoolStateMachineExecutor executor() {
+    PoolStateMachineExecutor fsm = new PoolStateMachineExecutor(pool);
+    fsm.setStateMachine(machine);
+    fsm.go();
+    return fsm;
+  }
+
+  private StateMachineBuilder topLevelMachineBuilder() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder("processor");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .selfTransition("t1")
+            .on("tick")
+            .target();
+
+    return builder;
+  }
+
+  private static final class ResultSubscriber implements Flow.Subscriber<StepResult> {
+
+    private final long initialRequest;
+    private final List<StepResult> results = new ArrayList<>();
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final AtomicInteger signals = new AtomicInteger();
+    private Flow.Subscription subscription;
+    private boolean failed;
+    private Throwable error;
+
+    ResultSubscriber(final long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (initialRequest > 0) {
+        subscription.request(initialRequest);
+      }
+    }
+
+    @Override
+    public void onNext(StepResult item) {
+      results.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      failed = true;
+      error = throwable;
+      signals.incrementAndGet();
+      completed.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      signals.incrementAndGet();
+      completed.countDown();
+    }
+
+  }
+}